@@ -57,6 +57,8 @@ dependencies {
     implementation(libs.jacksonDatatypeJsr310)
     implementation(libs.protobufJava)
     implementation(libs.protobufJavaUtil)
+    implementation(libs.grpcNettyShaded)
+    implementation(libs.grpcStub)
 
     // IntelliJ Platform Gradle Plugin Dependencies Extension - read more: https://plugins.jetbrains.com/docs/intellij/tools-intellij-platform-gradle-plugin-dependencies-extension.html
     intellijPlatform {
@@ -172,6 +174,11 @@ tasks {
     publishPlugin {
         dependsOn(patchChangelog)
     }
+
+    test {
+        // Benchmarks (e.g. TelemetryRenderingTests.repaintCost) are skipped unless run with -Pbenchmarks=true
+        systemProperty("opentelemetry.benchmarks", providers.gradleProperty("benchmarks").getOrElse("false"))
+    }
 }
 
 intellijPlatformTesting {
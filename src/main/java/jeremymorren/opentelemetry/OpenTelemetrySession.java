@@ -4,16 +4,24 @@ import com.intellij.execution.process.ProcessEvent;
 import com.intellij.execution.process.ProcessListener;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.util.IconLoader;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.jetbrains.rd.util.lifetime.Lifetime;
 import com.jetbrains.rider.debugger.DotNetDebugProcess;
 import jeremymorren.opentelemetry.models.TelemetryItem;
 import jeremymorren.opentelemetry.models.TelemetryType;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.models.TraceSummary;
+import jeremymorren.opentelemetry.models.TraceTree;
 import jeremymorren.opentelemetry.otlp.OtlpHttpReceiverService;
 import jeremymorren.opentelemetry.otlp.OtlpProjectScope;
+import jeremymorren.opentelemetry.otlp.TelemetryHistory;
 import jeremymorren.opentelemetry.settings.AppSettingState;
 import jeremymorren.opentelemetry.settings.FilterTelemetryMode;
 import jeremymorren.opentelemetry.settings.ProjectSettingsState;
 import jeremymorren.opentelemetry.ui.OpenTelemetryToolWindow;
+import jeremymorren.opentelemetry.util.IncrementalTelemetryFilter;
+import jeremymorren.opentelemetry.util.TelemetryFilter;
+import jeremymorren.opentelemetry.util.TrigramIndex;
 import kotlin.Unit;
 import org.eclipse.lsp4j.jsonrpc.validation.NonNull;
 import org.jetbrains.annotations.NotNull;
@@ -23,17 +31,36 @@ import javax.swing.*;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OpenTelemetrySession {
+    // Filtering starts once typing pauses for this long
+    private static final long FILTER_DEBOUNCE_MILLIS = 150;
+    // Partial filter results are shown at most this often
+    private static final long FILTER_PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     @NotNull
     private static final Icon ICON = IconLoader.getIcon("/icons/pluginIcon.svg", OpenTelemetrySession.class);
     @NotNull
     private final DotNetDebugProcess dotNetDebugProcess;
     @NotNull
     private final List<TelemetryItem> telemetries = new ArrayList<>();
+    /**
+     * Number of batches added to telemetries; lets the tool window tell which batches a snapshot already contains
+     */
+    private long batchSequence;
+    /**
+     * Incremented whenever telemetry is removed from telemetries (invalidating previous filter results)
+     */
+    private long telemetriesEpoch;
+    /**
+     * Index of the free text in telemetries (guarded by the telemetries lock)
+     */
     @NotNull
-    private final List<TelemetryItem> filteredTelemetries = new ArrayList<>();
+    private final TrigramIndex searchIndex = new TrigramIndex();
     @NotNull
     private final Lifetime lifetime;
     @NotNull
@@ -42,20 +69,29 @@ public class OpenTelemetrySession {
     private String filter = "";
 
     /**
-     * Filter string, escaped to JSON string
+     * The current filter text, case sensitivity and visible telemetry types
      */
-    private String filterEscaped = "";
-
-    /**
-     * Filter string in lower case, escaped to JSON string
-     */
-    private String filterLowerCaseEscaped = "";
+    @NotNull
+    private volatile TelemetryFilter telemetryFilter = new TelemetryFilter("", false, EnumSet.allOf(TelemetryType.class));
 
+    // Filtering runs one at a time in the background; starting a run cancels any previous one
+    @NotNull
+    private final ScheduledExecutorService filterExecutor =
+            AppExecutorUtil.createBoundedScheduledExecutorService("OpenTelemetry Filter", 1);
+    @NotNull
+    private final IncrementalTelemetryFilter incrementalFilter = new IncrementalTelemetryFilter();
+    @NotNull
+    private final AtomicLong filterRun = new AtomicLong();
+    @Nullable
+    private ScheduledFuture<?> pendingFilter;
+    // The latest filter run whose first result hasn't been shown yet, or 0 (EDT only). Until it is shown the tool
+    // window holds back received telemetry, since the run's snapshot (which replaces the rows) may not contain it
+    private long heldFilterRun;
 
     @Nullable
     private OpenTelemetryToolWindow openTelemetryToolWindow;
     @Nullable
-    private AutoCloseable telemetryListenerRegistration;
+    private OtlpHttpReceiverService.ListenerRegistration telemetryListenerRegistration;
     private boolean firstMessage = true;
     private final ProjectSettingsState projectSettingsState;
 
@@ -67,12 +103,14 @@ public class OpenTelemetrySession {
         this.projectScopeKey = OtlpProjectScope.getScopeKey(dotNetDebugProcess.getProject());
 
         projectSettingsState = ProjectSettingsState.getInstance(dotNetDebugProcess.getProject());
+        updateTelemetryFilter();
 
         AppSettingState.getInstance().filterTelemetryMode.advise(lifetime, (v) -> {
             this.updateFilteredTelemetries();
             return Unit.INSTANCE;
         });
         AppSettingState.getInstance().caseInsensitiveSearch.advise(lifetime, (v) -> {
+            this.updateTelemetryFilter();
             this.updateFilteredTelemetries();
             return Unit.INSTANCE;
         });
@@ -84,7 +122,8 @@ public class OpenTelemetrySession {
 
     public void startListeningToOtlpReceiver() {
         OtlpHttpReceiverService.getInstance().ensureStarted();
-        telemetryListenerRegistration = OtlpHttpReceiverService.getInstance().addListener(projectScopeKey, this::addTelemetry);
+        telemetryListenerRegistration = OtlpHttpReceiverService.getInstance().addBatchListener(projectScopeKey, this::addTelemetries, this::removeTelemetries);
+        publishVisibleTypes();
         dotNetDebugProcess.getProcessHandler().addProcessListener(new ProcessListener() {
             @Override
             public void processTerminated(@NotNull ProcessEvent event) {
@@ -99,70 +138,108 @@ public class OpenTelemetrySession {
 
     public void setTelemetryVisible(@NotNull TelemetryType telemetryType, boolean visible) {
         projectSettingsState.setTelemetryVisible(telemetryType, visible);
+        updateTelemetryFilter();
+        publishVisibleTypes();
         updateFilteredTelemetries();
     }
 
+    /**
+     * Lets the receiver skip decoding signals whose telemetry types are all hidden (until they are shown again).
+     */
+    private void publishVisibleTypes() {
+        OtlpHttpReceiverService.ListenerRegistration registration = telemetryListenerRegistration;
+        if (registration != null) {
+            registration.setVisibleTypes(telemetryFilter.getVisibleTypes());
+        }
+    }
+
+    /**
+     * Changes the filter text; the telemetry is filtered in the background once typing pauses.
+     */
     public void updateFilter(@NonNull String filter) {
+        if (filter.equals(this.filter)) {
+            return;
+        }
         this.filter = filter;
+        updateTelemetryFilter();
+        scheduleFilteredTelemetries(FILTER_DEBOUNCE_MILLIS);
+    }
 
-        //NB: We have to escape the string to JSON to allow filtering on special characters
-        this.filterEscaped = escapeJson(filter);
-        this.filterLowerCaseEscaped = filterEscaped.toLowerCase(Locale.ROOT);
+    private void updateTelemetryFilter() {
+        EnumSet<TelemetryType> visibleTypes = EnumSet.noneOf(TelemetryType.class);
+        for (TelemetryType type : TelemetryType.values()) {
+            if (projectSettingsState.getTelemetryVisible(type)) {
+                visibleTypes.add(type);
+            }
+        }
+        this.telemetryFilter = new TelemetryFilter(
+                filter, AppSettingState.getInstance().caseInsensitiveSearch.getValue(), visibleTypes);
+    }
 
-        updateFilteredTelemetries();
+    /**
+     * Gets the item count and estimated memory usage of the project's telemetry history.
+     */
+    @NotNull
+    public TelemetryHistory.Usage getHistoryUsage() {
+        return OtlpHttpReceiverService.getInstance().getHistoryUsage(projectScopeKey);
+    }
+
+    /**
+     * Assembles the spans of a trace in the project's telemetry history into a tree.
+     *
+     * @return the tree, or null if no span of the trace has been received (or all were evicted)
+     */
+    @Nullable
+    public TraceTree getTrace(@NotNull TraceId traceId) {
+        return OtlpHttpReceiverService.getInstance().getTrace(projectScopeKey, traceId);
+    }
+
+    /**
+     * Gets the span count and version of a trace in the project's telemetry history, without assembling its tree.
+     *
+     * @return the summary, or null if no span of the trace has been received (or all were evicted)
+     */
+    @Nullable
+    public TraceSummary getTraceSummary(@NotNull TraceId traceId) {
+        return OtlpHttpReceiverService.getInstance().getTraceSummary(projectScopeKey, traceId);
     }
 
     public void clear() {
         OtlpHttpReceiverService.getInstance().clear(projectScopeKey);
         synchronized (telemetries) {
             this.telemetries.clear();
-            this.filteredTelemetries.clear();
+            this.searchIndex.clear();
+            this.telemetriesEpoch++;
         }
         updateFilteredTelemetries();
     }
 
-    private void addTelemetry(@NotNull TelemetryItem telemetry) {
+    /**
+     * Adds a batch of received telemetry, taking the lock and posting to the EDT once per batch.
+     * The tool window inserts visible telemetry in the current sort order itself.
+     */
+    private void addTelemetries(@NotNull List<TelemetryItem> batch) {
         // Compute data-model changes on the current (receiver) thread
         final boolean isFirst;
-        final int index;
-        final boolean visible;
+        final FilterTelemetryMode mode = AppSettingState.getInstance().filterTelemetryMode.getValue();
+        final List<TelemetryItem> visible = new ArrayList<>();
+        final long sequence;
         synchronized (telemetries) {
             isFirst = firstMessage;
             if (firstMessage) {
                 firstMessage = false;
             }
-            telemetries.add(telemetry);
-            int idx = -1;
-            boolean vis = false;
-            if (isTelemetryVisible(telemetry)) {
-                FilterTelemetryMode value = AppSettingState.getInstance().filterTelemetryMode.getValue();
-                switch (value) {
-                    case Timestamp:
-                        idx = Collections.binarySearch(filteredTelemetries, telemetry,
-                                Comparator.comparing(OpenTelemetrySession::getDuration));
-                        if (idx < 0)
-                            idx = ~idx;
-                        filteredTelemetries.add(idx, telemetry);
-                        break;
-                    case Duration:
-                        idx = Collections.binarySearch(filteredTelemetries, telemetry,
-                                Comparator.comparing(OpenTelemetrySession::getTimestamp));
-                        if (idx < 0)
-                            idx = ~idx;
-                        filteredTelemetries.add(idx, telemetry);
-                        break;
-                    default:
-                        filteredTelemetries.add(telemetry);
-                        break;
+            sequence = batchSequence++;
+            telemetries.addAll(batch);
+            searchIndex.addAll(batch);
+            for (TelemetryItem telemetry : batch) {
+                if (isTelemetryVisible(telemetry)) {
+                    visible.add(telemetry);
                 }
-                vis = true;
             }
-            index = idx;
-            visible = vis;
         }
 
         // All UI operations must happen on the EDT
-        final FilterTelemetryMode mode = AppSettingState.getInstance().filterTelemetryMode.getValue();
         ApplicationManager.getApplication().invokeLater(() -> {
             if (isFirst) {
                 openTelemetryToolWindow = new OpenTelemetryToolWindow(this, dotNetDebugProcess.getProject(), lifetime);
@@ -175,16 +252,56 @@ public class OpenTelemetrySession {
                                 null
                         )
                 );
+                if (heldFilterRun != 0) {
+                    openTelemetryToolWindow.holdTelemetryUpdates();
+                }
             }
             if (openTelemetryToolWindow != null) {
-                openTelemetryToolWindow.addTelemetry(index, telemetry, visible,
-                        mode == FilterTelemetryMode.Default);
+                openTelemetryToolWindow.addTelemetries(sequence, batch, visible, mode == FilterTelemetryMode.Default);
             }
         });
     }
 
+    /**
+     * Removes telemetry evicted from the project's telemetry history (to stay within its memory budget).
+     * The rows are removed from the tool window and the remembered filter result without filtering again.
+     */
+    private void removeTelemetries(@NotNull List<TelemetryItem> evicted) {
+        Set<TelemetryItem> evictedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        evictedSet.addAll(evicted);
+        int[] removedIndexes = new int[evictedSet.size()];
+        int removedCount = 0;
+        final long epoch;
+        synchronized (telemetries) {
+            int kept = 0;
+            for (int i = 0; i < telemetries.size(); i++) {
+                TelemetryItem telemetry = telemetries.get(i);
+                if (evictedSet.contains(telemetry)) {
+                    removedIndexes[removedCount++] = i;
+                } else {
+                    telemetries.set(kept++, telemetry);
+                }
+            }
+            telemetries.subList(kept, telemetries.size()).clear();
+            searchIndex.removeAll(evictedSet);
+            epoch = ++telemetriesEpoch;
+        }
+        final int[] indexes = Arrays.copyOf(removedIndexes, removedCount);
+        // Runs on the filter executor, so the removal reaches the EDT after the results of any run whose snapshot
+        // still contains the evicted telemetry
+        filterExecutor.execute(() -> {
+            incrementalFilter.remove(evictedSet, indexes, epoch);
+            ApplicationManager.getApplication().invokeLater(() -> {
+                final var tw = openTelemetryToolWindow;
+                if (tw != null) {
+                    tw.removeTelemetries(epoch, evictedSet);
+                }
+            });
+        });
+    }
+
     private void disposeTelemetryListener() {
-        AutoCloseable registration = telemetryListenerRegistration;
+        OtlpHttpReceiverService.ListenerRegistration registration = telemetryListenerRegistration;
         telemetryListenerRegistration = null;
         if (registration == null) {
             return;
@@ -197,24 +314,117 @@ public class OpenTelemetrySession {
         }
     }
 
+    /**
+     * Re-filters all telemetry in the background (without debouncing).
+     */
     private void updateFilteredTelemetries() {
-        synchronized (telemetries) {
-            filteredTelemetries.clear();
-            Stream<TelemetryItem> stream = telemetries.stream().filter(this::isTelemetryVisible);
-            stream = switch (AppSettingState.getInstance().filterTelemetryMode.getValue()) {
-                case Duration -> stream.sorted(Comparator.comparing(OpenTelemetrySession::getDuration));
-                case Timestamp -> stream.sorted(Comparator.comparing(OpenTelemetrySession::getTimestamp));
-                default -> stream;
-            };
-            filteredTelemetries.addAll(stream.toList());
+        scheduleFilteredTelemetries(0);
+    }
+
+    /**
+     * Schedules a background filter run, cancelling the pending or running one.
+     */
+    private synchronized void scheduleFilteredTelemetries(long delayMillis) {
+        long run = filterRun.incrementAndGet();
+        if (pendingFilter != null) {
+            pendingFilter.cancel(false);
         }
-        if (openTelemetryToolWindow != null) {
+        // Posted before the run takes its snapshot, so it reaches the EDT before any batch the snapshot misses
+        ApplicationManager.getApplication().invokeLater(() -> {
+            heldFilterRun = Math.max(heldFilterRun, run);
             final var tw = openTelemetryToolWindow;
-            final var snapshot = new ArrayList<>(telemetries);
-            final var filteredSnapshot = new ArrayList<>(filteredTelemetries);
-            ApplicationManager.getApplication().invokeLater(() ->
-                    tw.setTelemetries(snapshot, filteredSnapshot));
+            if (tw != null) {
+                tw.holdTelemetryUpdates();
+            }
+        });
+        pendingFilter = filterExecutor.schedule(() -> filterTelemetries(run), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Filters a snapshot of the telemetry on the filter executor, showing the matches progressively:
+     * the first partial result replaces the rows of the tool window, later ones are added to it.
+     * Telemetry received after the snapshot reaches the tool window through {@link #addTelemetries}.
+     */
+    private void filterTelemetries(long run) {
+        if (filterRun.get() != run) {
+            return;
         }
+        final TelemetryFilter criteria = telemetryFilter;
+        final Comparator<TelemetryItem> comparator = getTelemetryComparator();
+        final List<TelemetryItem> snapshot;
+        final List<TelemetryItem> indexCandidates;
+        final long epoch;
+        final long sequence;
+        synchronized (telemetries) {
+            snapshot = new ArrayList<>(telemetries);
+            indexCandidates = searchIndex.candidates(criteria.getQuery());
+            epoch = telemetriesEpoch;
+            sequence = batchSequence;
+        }
+
+        final List<TelemetryItem> pending = new ArrayList<>();
+        final long[] lastPost = {System.nanoTime()};
+        final boolean[] first = {true};
+        List<TelemetryItem> matches = incrementalFilter.filter(
+                criteria, snapshot, indexCandidates, epoch, () -> filterRun.get() != run, chunk -> {
+            pending.addAll(chunk);
+            if (System.nanoTime() - lastPost[0] >= FILTER_PROGRESS_INTERVAL_NANOS) {
+                postFilteredTelemetries(run, sequence, epoch, snapshot, new ArrayList<>(pending), comparator, first[0]);
+                pending.clear();
+                first[0] = false;
+                lastPost[0] = System.nanoTime();
+            }
+            return Unit.INSTANCE;
+        });
+        if (matches != null && (first[0] || !pending.isEmpty())) {
+            postFilteredTelemetries(run, sequence, epoch, snapshot, pending, comparator, first[0]);
+        }
+    }
+
+    private void postFilteredTelemetries(
+            long run,
+            long sequence,
+            long epoch,
+            @NotNull List<TelemetryItem> snapshot,
+            @NotNull List<TelemetryItem> matches,
+            @Nullable Comparator<TelemetryItem> comparator,
+            boolean first
+    ) {
+        if (first && comparator != null) {
+            // Later matches are inserted at their sorted position by the tool window
+            matches.sort(comparator);
+        }
+        ApplicationManager.getApplication().invokeLater(() -> {
+            // A newer run (scheduled later) keeps holding back received telemetry until its own snapshot is shown
+            final boolean release = first && run >= heldFilterRun;
+            if (release) {
+                heldFilterRun = 0;
+            }
+            final var tw = openTelemetryToolWindow;
+            if (tw == null) {
+                return;
+            }
+            if (first) {
+                tw.setTelemetries(run, sequence, epoch, snapshot, matches, comparator);
+                if (release) {
+                    tw.releaseTelemetryUpdates();
+                }
+            } else {
+                tw.addFilteredTelemetries(run, matches);
+            }
+        });
+    }
+
+    /**
+     * The order of the visible telemetry in the current filter mode, or null for arrival order.
+     */
+    @Nullable
+    public Comparator<TelemetryItem> getTelemetryComparator() {
+        return switch (AppSettingState.getInstance().filterTelemetryMode.getValue()) {
+            case Duration -> Comparator.comparing(OpenTelemetrySession::getDuration);
+            case Timestamp -> Comparator.comparing(OpenTelemetrySession::getTimestamp);
+            default -> null;
+        };
     }
 
     @NotNull
@@ -223,18 +433,7 @@ public class OpenTelemetrySession {
     }
 
     private boolean isTelemetryVisible(@NotNull TelemetryItem telemetry) {
-        var type = telemetry.getTelemetry().getType();
-        if (type != null && !projectSettingsState.getTelemetryVisible(type))
-            return false;
-
-        if (!filter.isEmpty()) {
-            if (AppSettingState.getInstance().caseInsensitiveSearch.getValue())
-                return telemetry.getLowerCaseJson().toLowerCase().contains(filterLowerCaseEscaped);
-            else
-                return telemetry.getJson().contains(filterEscaped);
-        }
-
-        return true;
+        return telemetryFilter.matches(telemetry);
     }
 
     private static Duration getDuration(TelemetryItem telemetry) {
@@ -248,8 +447,4 @@ public class OpenTelemetrySession {
             return Instant.EPOCH;
         return telemetry.getTimestamp();
     }
-
-    private static String escapeJson(String input) {
-        return input.replace("\\", "\\\\");
-    }
 }
\ No newline at end of file
@@ -9,9 +9,9 @@ import java.util.*
 
 data class Activity(
     val rootId: String? = null,
-    val traceId: String? = null,
-    val spanId: String? = null,
-    val parentSpanId: String? = null,
+    val traceId: TraceId? = null,
+    val spanId: SpanId? = null,
+    val parentSpanId: SpanId? = null,
     val activityTraceFlags: String? = null,
     val traceStateString: String? = null,
     val source: ActivitySource? = null,
@@ -28,39 +28,44 @@ data class Activity(
     val activityTraceFlagsDisplay: String?
         get() = formatActivityTraceFlags(activityTraceFlags)
 
+    // Derived properties read on every repaint and filter pass are computed once (in dependency order)
+
+    /**
+     * Exception (extracted from [events])
+     */
+    val exception: ActivityException? = findException()
+
     /**
      * The type of the activity.
      */
-    val type: TelemetryType
-        get() =
-            if (exception != null) TelemetryType.Exception
-            else if (kind == ActivityKind.Server && tags != null && tags.containsKey("url.path")) TelemetryType.Request
-            else if (kind == ActivityKind.Client) TelemetryType.Dependency
-            else TelemetryType.Activity
+    val type: TelemetryType =
+        if (exception != null) TelemetryType.Exception
+        else if (kind == ActivityKind.Server && tags != null && tags.containsKey("url.path")) TelemetryType.Request
+        else if (kind == ActivityKind.Client) TelemetryType.Dependency
+        else TelemetryType.Activity
 
     /**
      * The dependency type (HTTP or SQL) if the activity is a dependency.
      */
-    val dependencyType: DependencyType?
-        get() =
-            if (kind == ActivityKind.Client)
-            {
-                if (tags == null) null
-                else if (tags.containsKey("http.request.method")) DependencyType.HTTP
-                else if (tags.containsKey("db.system")) DependencyType.SQL
-                else null
-            }
-            else {
-                null
-            }
+    val dependencyType: DependencyType? =
+        if (kind == ActivityKind.Client)
+        {
+            if (tags == null) null
+            else if (tags.containsKey("http.request.method")) DependencyType.HTTP
+            else if (tags.containsKey("db.system")) DependencyType.SQL
+            else null
+        }
+        else {
+            null
+        }
 
     /**
      * True if the activity is an error.
      * See https://github.com/Azure/azure-sdk-for-net/blob/46819bd8a4bd0db2e2d3ab0a5fada5d82bb7295d/sdk/monitor/Azure.Monitor.OpenTelemetry.Exporter/src/Internals/TraceHelper.cs#L229
      */
 
-    val isError: Boolean
-        get() = status == ActivityStatusCode.Error ||
+    val isError: Boolean =
+        status == ActivityStatusCode.Error ||
                 tags?.containsKey("error.type") == true ||
                 tags?.getString("otel.status_code") == "ERROR"
 
@@ -74,25 +79,6 @@ data class Activity(
         tags?.getString("db.response.status_code") ?:
         tags?.getString("error.type")
 
-    /**
-     * Exception (extracted from [events])
-     */
-    val exception: ActivityException?
-        get() {
-            for (event in events ?: emptyList()) {
-                if (event.name == "exception" && event.tags != null && event.timestamp != null) {
-                    val tags = event.tags.getPrimitiveValues()
-                    val message = tags["exception.message"]
-                    val stacktrace = tags["exception.stacktrace"]
-                    val type = tags["exception.type"]
-                    if (message != null && stacktrace != null && type != null) {
-                        return ActivityException(event.timestamp, message, stacktrace, type)
-                    }
-                }
-            }
-            return null
-        }
-
     /**
      * The display string for the activity type (type and subtype).
      */
@@ -101,43 +87,18 @@ data class Activity(
             if (dependencyType == null) {
                 return type.name
             }
-            return "${type.name} - ${dependencyType!!.name}"
+            return "${type.name} - ${dependencyType.name}"
         }
 
     /**
      * Request path for request activity (request i.e. server side)
      */
-    val requestPath: String?
-        get() {
-            if (tags == null) return null
-            val sb = StringBuilder()
-            sb.append(tags.getStringOrDefault("url.path", ""))
-            if (tags.containsKey("url.query")) {
-                sb.append("?")
-                sb.append(tags.getString("url.query"))
-            }
-            if (sb.isEmpty()) return null
-            return sb.toString()
-        }
+    val requestPath: String? = formatRequestPath()
 
     /**
      * The URL path for HTTP request (dependency i.e. client side)
      */
-    val urlPath: String?
-        get() {
-            val value = tags?.getString("url.full") ?: return null
-            try {
-                // Try to parse the URL and return the path and query
-                val uri = URI(value)
-                if (uri.query == null) {
-                    // If there is no query, just return the path
-                    return uri.path
-                }
-                return "${uri.path}?${uri.query}"
-            } catch (e: Exception) {
-                return value
-            }
-        }
+    val urlPath: String? = formatUrlPath()
 
     /**
      * The database query for SQL activity.
@@ -162,11 +123,11 @@ data class Activity(
         if (rootId != null)
             traceIds["Root ID"] = rootId
         if (traceId != null)
-            traceIds["Trace ID"] = traceId
+            traceIds["Trace ID"] = traceId.toString()
         if (spanId != null)
-            traceIds["Span ID"] = spanId
+            traceIds["Span ID"] = spanId.toString()
         if (parentSpanId != null)
-            traceIds["Parent Span ID"] = parentSpanId
+            traceIds["Parent Span ID"] = parentSpanId.toString()
         if (activityTraceFlags != null)
             traceIds["Flags"] = activityTraceFlagsDisplay ?: activityTraceFlags
         return traceIds
@@ -201,10 +162,54 @@ data class Activity(
     /**
      * Detail string for the activity.
      */
-    val detail: String? get() {
+    val detail: String? = formatDetail()
+
+    private fun findException(): ActivityException? {
+        for (event in events ?: emptyList()) {
+            if (event.name == "exception" && event.tags != null && event.timestamp != null) {
+                val tags = event.tags.getPrimitiveValues()
+                val message = tags["exception.message"]
+                val stacktrace = tags["exception.stacktrace"]
+                val type = tags["exception.type"]
+                if (message != null && stacktrace != null && type != null) {
+                    return ActivityException(event.timestamp, message, stacktrace, type)
+                }
+            }
+        }
+        return null
+    }
+
+    private fun formatRequestPath(): String? {
+        if (tags == null) return null
+        val sb = StringBuilder()
+        sb.append(tags.getStringOrDefault("url.path", ""))
+        if (tags.containsKey("url.query")) {
+            sb.append("?")
+            sb.append(tags.getString("url.query"))
+        }
+        if (sb.isEmpty()) return null
+        return sb.toString()
+    }
+
+    private fun formatUrlPath(): String? {
+        val value = tags?.getString("url.full") ?: return null
+        try {
+            // Try to parse the URL and return the path and query
+            val uri = URI(value)
+            if (uri.query == null) {
+                // If there is no query, just return the path
+                return uri.path
+            }
+            return "${uri.path}?${uri.query}"
+        } catch (e: Exception) {
+            return value
+        }
+    }
+
+    private fun formatDetail(): String? {
         val parts = mutableListOf<String>()
         if (dependencyType != null) {
-            parts.add(dependencyType!!.name)
+            parts.add(dependencyType.name)
         }
         //Show the source if the type is activity (i.e. not request or dependency)
         if (source != null && type == TelemetryType.Activity) {
@@ -218,7 +223,7 @@ data class Activity(
             //If the request does not match a controller, display name will only be method
             //For those, add the request path to the detail
             if (type == TelemetryType.Request && requestPath != null && !displayName.contains(' ')) {
-                parts.add(requestPath!!)
+                parts.add(requestPath)
             }
         }
 
@@ -237,7 +242,7 @@ data class Activity(
             parts.add(dbQuery!!)
         }
         if (urlPath != null) {
-            parts.add(urlPath!!)
+            parts.add(urlPath)
         }
         if (parts.size == 0) {
             return null
@@ -0,0 +1,111 @@
+package jeremymorren.opentelemetry.models
+
+import java.time.Duration
+import java.time.Instant
+import java.util.IdentityHashMap
+
+/**
+ * The critical path of each root span of a [TraceTree] (the chain of spans that determined its end-to-end latency),
+ * and the self time of every span.
+ *
+ * The path is found by walking back from the end of a span: the child that finished last before the time walked
+ * back to so far is on the path, then the walk continues from that child's start.
+ * Time not covered by such a child is the parent's own time on the path. Children running in parallel with the
+ * one on the path are not on it, so overlapping async work isn't counted twice.
+ *
+ * Spans without a start time or duration are ignored.
+ */
+class CriticalPath(tree: TraceTree) {
+    private val criticalNanos = IdentityHashMap<TelemetryItem, Long>()
+    private val selfNanos = IdentityHashMap<TelemetryItem, Long>()
+
+    init {
+        // Without recursion (traces can be deep)
+        val pending = ArrayDeque<Window>()
+        for (root in tree.roots) {
+            val start = root.startNanos ?: continue
+            val end = root.endNanos ?: continue
+            pending.addLast(Window(root, start, end))
+        }
+        while (pending.isNotEmpty()) {
+            val (node, windowStart, windowEnd) = pending.removeLast()
+            var cursor = windowEnd
+            var own = 0L
+            for (child in node.children.filter { it.endNanos != null }.sortedByDescending { it.endNanos }) {
+                if (cursor <= windowStart) {
+                    break
+                }
+                // A child still running at the cursor was in parallel with the one already on the path,
+                // unless it outlived the window (e.g. fire-and-forget work), in which case it is truncated
+                if (child.endNanos!! > cursor && cursor < windowEnd) {
+                    continue
+                }
+                val childStart = maxOf(child.startNanos!!, windowStart)
+                val childEnd = minOf(child.endNanos!!, cursor)
+                if (childStart >= childEnd) {
+                    continue
+                }
+                own += cursor - childEnd
+                pending.addLast(Window(child, childStart, childEnd))
+                cursor = childStart
+            }
+            own += maxOf(cursor - windowStart, 0)
+            criticalNanos[node.item] = own
+        }
+
+        val nodes = ArrayDeque(tree.roots)
+        while (nodes.isNotEmpty()) {
+            val node = nodes.removeLast()
+            nodes.addAll(node.children)
+            val start = node.startNanos ?: continue
+            val end = node.endNanos ?: continue
+            selfNanos[node.item] = end - start - coveredNanos(node.children, start, end)
+        }
+    }
+
+    /**
+     * True if the span is on the critical path of its root span.
+     */
+    fun isOnPath(item: TelemetryItem): Boolean = criticalNanos.containsKey(item)
+
+    /**
+     * Gets the time the span itself (rather than a child) was on the critical path, or null if it isn't on the path.
+     */
+    fun getCriticalTime(item: TelemetryItem): Duration? = criticalNanos[item]?.let { Duration.ofNanos(it) }
+
+    /**
+     * Gets the time spent in the span outside of all of its children, or null if its times are unknown.
+     */
+    fun getSelfTime(item: TelemetryItem): Duration? = selfNanos[item]?.let { Duration.ofNanos(it) }
+
+    private data class Window(val node: SpanNode, val start: Long, val end: Long)
+
+    private companion object {
+        val SpanNode.startNanos: Long? get() = activity.startTime?.let { toNanos(it) }
+
+        val SpanNode.endNanos: Long? get() {
+            val start = activity.startTime ?: return null
+            val duration = activity.duration ?: return null
+            return toNanos(start) + duration.toNanos()
+        }
+
+        fun toNanos(instant: Instant): Long = instant.epochSecond * 1_000_000_000 + instant.nano
+
+        /**
+         * Gets the length of the union of the children's intervals within [start, end].
+         */
+        fun coveredNanos(children: List<SpanNode>, start: Long, end: Long): Long {
+            var covered = 0L
+            var coveredTo = start
+            for (child in children.filter { it.endNanos != null }.sortedBy { it.startNanos }) {
+                val childStart = maxOf(child.startNanos!!, coveredTo)
+                val childEnd = minOf(child.endNanos!!, end)
+                if (childEnd > childStart) {
+                    covered += childEnd - childStart
+                    coveredTo = childEnd
+                }
+            }
+            return covered
+        }
+    }
+}
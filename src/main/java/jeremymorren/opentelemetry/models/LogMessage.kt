@@ -9,8 +9,8 @@ data class LogMessage(
     val timestamp: Instant? = null,
     val exception: ExceptionInfo? = null,
     val attributes: ObjectDictionary? = null,
-    val traceId: String? = null,
-    val spanId: String? = null,
+    val traceId: TraceId? = null,
+    val spanId: SpanId? = null,
     val categoryName: String? = null,
     val eventId: EventId? = null
 )
@@ -18,7 +18,7 @@ data class LogMessage(
     /**
      * The telemetry type (determined from the log message).
      */
-    val type: TelemetryType get() =
+    val type: TelemetryType =
         if (exception != null) {
             TelemetryType.Exception
         }
@@ -32,9 +32,9 @@ data class LogMessage(
     val traceIds: Map<String, String>? get() {
         val traceIds = mutableMapOf<String, String>()
         if (traceId != null)
-            traceIds["TraceID"] = traceId
+            traceIds["TraceID"] = traceId.toString()
         if (spanId != null)
-            traceIds["SpanID"] = spanId
+            traceIds["SpanID"] = spanId.toString()
         if (traceIds.isEmpty()) {
             return null
         }
@@ -54,9 +54,16 @@ data class Metric(
     }
 
     /**
-     * Detail display string for the metric.
+     * Detail display string for the metric (computed once, as it is read on every repaint).
      */
-    val detail: String? get() {
+    val detail: String? = formatDetail()
+
+    /**
+     * The meter display string.
+     */
+    val meter: String? = formatMeter()
+
+    private fun formatDetail(): String? {
         val parts = mutableListOf<String>()
         if (!name.isNullOrEmpty()) {
             parts.add(name)
@@ -73,10 +80,7 @@ data class Metric(
         return parts.joinToString(" - ")
     }
 
-    /**
-     * The meter display string.
-     */
-    val meter: String? get() {
+    private fun formatMeter(): String? {
         if (meterName.isNullOrEmpty()) {
             return null
         }
@@ -89,7 +93,7 @@ data class Metric(
     /**
      * The measurement duration.
      */
-    val duration: Duration? get() = points?.firstNotNullOf { it.duration }
+    val duration: Duration? get() = points?.firstNotNullOfOrNull { it.duration }
 }
 
 /**
@@ -14,27 +14,51 @@ import kotlinx.serialization.encoding.Encoder
 import kotlinx.serialization.json.*
 
 /**
- * A map of polymorphic objects (serialized in C# as Dictionary<string, object>).
- * @property json The raw JSON object.
+ * An immutable map of polymorphic objects (serialized in C# as Dictionary<string, object>).
+ *
+ * Attribute sets are retained for every telemetry item, so they are stored compactly as a sorted key array and
+ * an aligned array of values (String, Boolean, Int, Long, Double, List or Map), looked up by binary search.
  */
 @Serializable(with = ObjectDictionary.ObjectDictionarySerializer::class)
-class ObjectDictionary(private val json: JsonObject) {
+class ObjectDictionary private constructor(
+    private val entryKeys: Array<String>,
+    private val entryValues: Array<Any?>
+) {
+    // Computed on first use (0 until then), as most dictionaries are never hashed
+    private var hash = 0
 
     /**
-     * The deserialized values
+     * Creates a dictionary from a JSON object.
      */
-    val values: Map<String, Any?> = createMap(json)
+    constructor(json: JsonObject) : this(json.keys.toTypedArray(), json.values.map { createObject(it) }.toTypedArray())
+
+    init {
+        sortByKey(entryKeys, entryValues)
+    }
+
+    /**
+     * The deserialized values (a read-only view, sorted by key).
+     */
+    val values: Map<String, Any?> get() = ValuesView()
 
     /**
      * Check if the dictionary contains a key.
      */
-    fun containsKey(key: String): Boolean = values.containsKey(key)
+    fun containsKey(key: String): Boolean = entryKeys.binarySearch(key) >= 0
+
+    /**
+     * Get a value from the dictionary, or null if the key is not present.
+     */
+    operator fun get(key: String): Any? {
+        val index = entryKeys.binarySearch(key)
+        return if (index >= 0) entryValues[index] else null
+    }
 
     /**
      * Get a value from the dictionary as a string.
      */
     fun getString(key: String): String? {
-        val value = values[key]
+        val value = get(key)
         if (value is String) {
             return value
         }
@@ -60,11 +84,11 @@ class ObjectDictionary(private val json: JsonObject) {
      */
     fun getPrimitiveValues(): Map<String, String> {
         val result = mutableMapOf<String, String>()
-        for ((key, value) in values) {
-            when (value) {
-                is String -> result[key] = value
-                is Number -> result[key] = value.toString()
-                is Boolean -> result[key] = value.toString()
+        for (i in entryKeys.indices) {
+            when (val value = entryValues[i]) {
+                is String -> result[entryKeys[i]] = value
+                is Number -> result[entryKeys[i]] = value.toString()
+                is Boolean -> result[entryKeys[i]] = value.toString()
                 // Ignore other types
             }
         }
@@ -76,17 +100,112 @@ class ObjectDictionary(private val json: JsonObject) {
     }
 
     override fun equals(other: Any?): Boolean {
-        if (other !is ObjectDictionary) {
+        if (this === other) {
+            return true
+        }
+        if (other !is ObjectDictionary || !entryKeys.contentEquals(other.entryKeys)) {
             return false
         }
-        return valueEquals(values, other.values)
+        if (hash != 0 && other.hash != 0 && hash != other.hash) {
+            return false
+        }
+        return entryValues.indices.all { valueEquals(entryValues[it], other.entryValues[it]) }
     }
 
     override fun hashCode(): Int {
-        return 0 //Not implemented
+        var h = hash
+        if (h == 0) {
+            // Consistent with valueEquals: values are only equal if they have the same type and content
+            h = 31 * entryKeys.contentHashCode() + entryValues.contentDeepHashCode()
+            hash = h
+        }
+        return h
+    }
+
+    private inner class ValuesView : AbstractMap<String, Any?>() {
+        override val size: Int get() = entryKeys.size
+
+        override fun containsKey(key: String): Boolean = this@ObjectDictionary.containsKey(key)
+
+        override fun get(key: String): Any? = this@ObjectDictionary[key]
+
+        override val entries: Set<Map.Entry<String, Any?>> = object : AbstractSet<Map.Entry<String, Any?>>() {
+            override val size: Int get() = entryKeys.size
+
+            override fun iterator(): Iterator<Map.Entry<String, Any?>> =
+                entryKeys.indices.asSequence().map { java.util.AbstractMap.SimpleImmutableEntry(entryKeys[it], entryValues[it]) }.iterator()
+        }
     }
 
     companion object {
+        /**
+         * Creates a dictionary from keys and aligned native values (String, Boolean, Int, Long, Double,
+         * List or Map), without an intermediate JSON object. The arrays are taken over (sorted in place);
+         * if a key occurs more than once the last value is kept.
+         */
+        @JvmStatic
+        fun of(keys: Array<String>, values: Array<Any?>): ObjectDictionary {
+            sortByKey(keys, values)
+            // The sort is stable, so the last of equal keys is the last received
+            var count = 0
+            for (i in keys.indices) {
+                if (count > 0 && keys[count - 1] == keys[i]) {
+                    count--
+                }
+                keys[count] = keys[i]
+                values[count] = values[i]
+                count++
+            }
+            if (count < keys.size) {
+                return ObjectDictionary(Array(count) { keys[it] }, values.copyOf(count))
+            }
+            return ObjectDictionary(keys, values)
+        }
+
+        /**
+         * Creates a JSON element from a native value (as stored in a dictionary).
+         */
+        @JvmStatic
+        fun toJson(value: Any?): JsonElement =
+            when (value) {
+                is String -> JsonPrimitive(value)
+                is Boolean -> JsonPrimitive(value)
+                is Number -> JsonPrimitive(value)
+                is List<*> -> JsonArray(value.map { toJson(it) })
+                is Map<*, *> -> JsonObject(value.entries.associate { (k, v) -> k.toString() to toJson(v) })
+                else -> JsonNull
+            }
+
+        /**
+         * Sorts the keys, and the values with them (stable, so the order of equal keys is kept).
+         */
+        private fun sortByKey(keys: Array<String>, values: Array<Any?>) {
+            if ((1 until keys.size).all { keys[it - 1] <= keys[it] }) {
+                return
+            }
+            if (keys.size > 32) {
+                val order = keys.indices.sortedBy { keys[it] }
+                val sortedKeys = Array(keys.size) { keys[order[it]] }
+                val sortedValues = Array(keys.size) { values[order[it]] }
+                sortedKeys.copyInto(keys)
+                sortedValues.copyInto(values)
+                return
+            }
+            // Insertion sort: attribute sets are usually small
+            for (i in 1 until keys.size) {
+                val key = keys[i]
+                val value = values[i]
+                var j = i - 1
+                while (j >= 0 && keys[j] > key) {
+                    keys[j + 1] = keys[j]
+                    values[j + 1] = values[j]
+                    j--
+                }
+                keys[j + 1] = key
+                values[j + 1] = value
+            }
+        }
+
         private fun createMap(json: JsonObject): Map<String, Any?> {
             val result = mutableMapOf<String, Any?>()
             for ((key, value) in json) {
@@ -134,8 +253,12 @@ class ObjectDictionary(private val json: JsonObject) {
             if (left is Int) {
                 return right is Int && left == right
             }
+            if (left is Long) {
+                return right is Long && left == right
+            }
             if (left is Double) {
-                return right is Double && left == right
+                // Compared like Double.equals (and hashCode): 0.0 and -0.0 differ, NaN equals NaN
+                return right is Double && left.compareTo(right) == 0
             }
             if (left is List<*>) {
                 return right is List<*> &&
@@ -162,7 +285,8 @@ class ObjectDictionary(private val json: JsonObject) {
         }
 
         override fun serialize(encoder: Encoder, value: ObjectDictionary) {
-            encoder.encodeSerializableValue(JsonObject.serializer(), value.json)
+            val json = JsonObject(value.entryKeys.indices.associate { value.entryKeys[it] to toJson(value.entryValues[it]) })
+            encoder.encodeSerializableValue(JsonObject.serializer(), json)
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package jeremymorren.opentelemetry.models
+
+/**
+ * The original OTLP message of a telemetry item, kept in a compact form (e.g. the serialized protobuf message)
+ * and rendered to JSON only when it is displayed.
+ */
+fun interface RawJsonSource {
+    fun render(): String
+
+    /**
+     * Approximate number of bytes retained by this source (excluding the rendered JSON).
+     */
+    fun estimatedSize(): Int = 0
+}
+
+/**
+ * Small LRU cache of rendered raw JSON, so re-selecting recently viewed rows does not render them again.
+ */
+internal object RawJsonCache {
+    private const val CAPACITY = 64
+
+    private val cache = object : LinkedHashMap<RawJsonSource, String>(CAPACITY, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<RawJsonSource, String>?): Boolean = size > CAPACITY
+    }
+
+    fun get(source: RawJsonSource): String {
+        synchronized(cache) {
+            cache[source]?.let { return it }
+        }
+        // Render outside the lock; a concurrent render of the same source is harmless
+        val json = source.render()
+        synchronized(cache) {
+            cache[source] = json
+        }
+        return json
+    }
+}
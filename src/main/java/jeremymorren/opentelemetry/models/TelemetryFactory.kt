@@ -1,5 +1,7 @@
 package jeremymorren.opentelemetry.models
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.annotation.JsonInclude
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.SerializationFeature
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
@@ -9,10 +11,30 @@ class TelemetryFactory {
         .registerModule(JavaTimeModule())
         .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
         .disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
-        .enable(SerializationFeature.INDENT_OUTPUT)
+        // The search JSON is retained for every item: leave out nulls and properties that repeat other properties
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .addMixIn(Telemetry::class.java, TelemetrySearchMixIn::class.java)
+        .addMixIn(Activity::class.java, ActivitySearchMixIn::class.java)
+        .addMixIn(LogMessage::class.java, LogMessageSearchMixIn::class.java)
+        .addMixIn(ObjectDictionary::class.java, ObjectDictionarySearchMixIn::class.java)
 
-    fun createFromTelemetry(telemetry: Telemetry, rawJson: String): TelemetryItem {
-        val json = objectMapper.writeValueAsString(telemetry)
+    fun createFromTelemetry(telemetry: Telemetry, rawJson: RawJsonSource): TelemetryItem {
+        // Compact UTF-8 (not an indented UTF-16 string): this is only used for searching
+        val json = objectMapper.writeValueAsBytes(telemetry)
         return TelemetryItem(json, rawJson, telemetry)
     }
-}
\ No newline at end of file
+}
+
+// traceIds repeats the IDs, sql repeats activity.dbQuery, exception and timestamp repeat activity/log properties
+@JsonIgnoreProperties("traceIds", "sql", "exception", "timestamp")
+private abstract class TelemetrySearchMixIn
+
+@JsonIgnoreProperties("traceIds")
+private abstract class ActivitySearchMixIn
+
+@JsonIgnoreProperties("traceIds")
+private abstract class LogMessageSearchMixIn
+
+// primitiveValues repeats values as strings
+@JsonIgnoreProperties("primitiveValues")
+private abstract class ObjectDictionarySearchMixIn
@@ -0,0 +1,197 @@
+package jeremymorren.opentelemetry.models
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.SerializerProvider
+import com.fasterxml.jackson.databind.annotation.JsonSerialize
+import com.fasterxml.jackson.databind.ser.std.StdSerializer
+
+/**
+ * A W3C trace ID (16 bytes), held as two longs so that comparing and hashing IDs is primitive.
+ *
+ * The hex form is only built when displayed ([toString]) and cached then.
+ * IDs that aren't 16 bytes (from non-conforming exporters) keep their original text instead.
+ */
+@JsonSerialize(using = TelemetryIdSerializer::class)
+class TraceId private constructor(
+    val high: Long,
+    val low: Long,
+    private val text: String?,
+) : TelemetryId() {
+    constructor(high: Long, low: Long) : this(high, low, null)
+
+    override fun encodeHex(): CharArray = text?.toCharArray() ?: HexEncoder.encode(high, low)
+
+    override fun equals(other: Any?): Boolean =
+        other is TraceId && high == other.high && low == other.low && text == other.text
+
+    override fun hashCode(): Int = (high xor low).hashCode() * 31 + (text?.hashCode() ?: 0)
+
+    companion object {
+        /**
+         * Reads a trace ID from its bytes, or null if there are none.
+         */
+        @JvmStatic
+        fun fromBytes(bytes: ByteArray): TraceId? = when (bytes.size) {
+            0 -> null
+            16 -> TraceId(HexEncoder.readLong(bytes, 0), HexEncoder.readLong(bytes, 8))
+            else -> TraceId(0, 0, HexEncoder.encode(bytes))
+        }
+
+        /**
+         * Parses a trace ID from hex (any case), or null if [text] is null or empty.
+         */
+        @JvmStatic
+        fun parse(text: String?): TraceId? {
+            if (text.isNullOrEmpty()) {
+                return null
+            }
+            if (text.length == 32 && HexEncoder.isHex(text)) {
+                return TraceId(HexEncoder.parseLong(text, 0), HexEncoder.parseLong(text, 16))
+            }
+            return TraceId(0, 0, text)
+        }
+    }
+}
+
+/**
+ * A W3C span ID (8 bytes), held as a long so that comparing and hashing IDs is primitive.
+ *
+ * The hex form is only built when displayed ([toString]) and cached then.
+ * IDs that aren't 8 bytes (from non-conforming exporters) keep their original text instead.
+ */
+@JsonSerialize(using = TelemetryIdSerializer::class)
+class SpanId private constructor(
+    val value: Long,
+    private val text: String?,
+) : TelemetryId() {
+    constructor(value: Long) : this(value, null)
+
+    /**
+     * True for the all-zero ID, which OTLP uses for "no parent".
+     */
+    val isZero: Boolean get() = value == 0L && (text == null || text.all { it == '0' })
+
+    override fun encodeHex(): CharArray = text?.toCharArray() ?: HexEncoder.encode(value)
+
+    override fun equals(other: Any?): Boolean = other is SpanId && value == other.value && text == other.text
+
+    override fun hashCode(): Int = value.hashCode() * 31 + (text?.hashCode() ?: 0)
+
+    companion object {
+        /**
+         * Reads a span ID from its bytes, or null if there are none.
+         */
+        @JvmStatic
+        fun fromBytes(bytes: ByteArray): SpanId? = when (bytes.size) {
+            0 -> null
+            8 -> SpanId(HexEncoder.readLong(bytes, 0))
+            else -> SpanId(0, HexEncoder.encode(bytes))
+        }
+
+        /**
+         * Parses a span ID from hex (any case), or null if [text] is null or empty.
+         */
+        @JvmStatic
+        fun parse(text: String?): SpanId? {
+            if (text.isNullOrEmpty()) {
+                return null
+            }
+            if (text.length == 16 && HexEncoder.isHex(text)) {
+                return SpanId(HexEncoder.parseLong(text, 0))
+            }
+            return SpanId(0, text)
+        }
+    }
+}
+
+/**
+ * Base of [TraceId] and [SpanId]: the lazily cached hex form.
+ */
+sealed class TelemetryId {
+    @Volatile
+    private var hex: String? = null
+
+    /**
+     * Builds the lowercase hex form (without caching it).
+     */
+    internal abstract fun encodeHex(): CharArray
+
+    override fun toString(): String = hex ?: String(encodeHex()).also { hex = it }
+}
+
+/**
+ * Writes IDs to the search JSON without creating (and caching) their hex strings.
+ */
+internal class TelemetryIdSerializer : StdSerializer<TelemetryId>(TelemetryId::class.java) {
+    override fun serialize(value: TelemetryId, gen: JsonGenerator, provider: SerializerProvider) {
+        val hex = value.encodeHex()
+        gen.writeString(hex, 0, hex.size)
+    }
+}
+
+/**
+ * Table-based lowercase hex encoding of IDs.
+ */
+internal object HexEncoder {
+    private val DIGITS = "0123456789abcdef".toCharArray()
+
+    fun encode(value: Long): CharArray {
+        val chars = CharArray(16)
+        write(value, chars, 0)
+        return chars
+    }
+
+    fun encode(high: Long, low: Long): CharArray {
+        val chars = CharArray(32)
+        write(high, chars, 0)
+        write(low, chars, 16)
+        return chars
+    }
+
+    fun encode(bytes: ByteArray): String {
+        val chars = CharArray(bytes.size * 2)
+        for (i in bytes.indices) {
+            val b = bytes[i].toInt()
+            chars[i * 2] = DIGITS[(b shr 4) and 0xf]
+            chars[i * 2 + 1] = DIGITS[b and 0xf]
+        }
+        return String(chars)
+    }
+
+    private fun write(value: Long, chars: CharArray, offset: Int) {
+        for (i in 0 until 16) {
+            chars[offset + i] = DIGITS[((value ushr (60 - i * 4)) and 0xf).toInt()]
+        }
+    }
+
+    /**
+     * Reads 8 big-endian bytes.
+     */
+    fun readLong(bytes: ByteArray, offset: Int): Long {
+        var value = 0L
+        for (i in offset until offset + 8) {
+            value = (value shl 8) or (bytes[i].toLong() and 0xff)
+        }
+        return value
+    }
+
+    fun isHex(text: CharSequence): Boolean = text.all { digit(it) >= 0 }
+
+    /**
+     * Parses 16 hex digits starting at [offset].
+     */
+    fun parseLong(text: CharSequence, offset: Int): Long {
+        var value = 0L
+        for (i in offset until offset + 16) {
+            value = (value shl 4) or digit(text[i]).toLong()
+        }
+        return value
+    }
+
+    private fun digit(c: Char): Int = when (c) {
+        in '0'..'9' -> c - '0'
+        in 'a'..'f' -> c - 'a' + 10
+        in 'A'..'F' -> c - 'A' + 10
+        else -> -1
+    }
+}
@@ -4,19 +4,63 @@
 
 package jeremymorren.opentelemetry.models
 
+import jeremymorren.opentelemetry.util.Utf8TextSearch
+import java.nio.charset.StandardCharsets
 import java.time.Duration
 import java.time.Instant
-import java.util.*
 
-data class TelemetryItem(
-    val json: String,
-    val rawJson: String,
+/**
+ * A received telemetry item.
+ *
+ * Only the structured [telemetry] and one compact search representation (the UTF-8 bytes of the compact
+ * domain-model JSON) are retained; [json] and [rawJson] are produced on demand.
+ */
+class TelemetryItem(
+    private val searchJson: ByteArray,
+    private val rawJsonSource: RawJsonSource,
     val telemetry: Telemetry
 )
 {
-    val lowerCaseJson: String = json.lowercase(Locale.getDefault())
+    constructor(json: String, rawJson: String, telemetry: Telemetry) :
+            this(json.toByteArray(StandardCharsets.UTF_8), RawJsonSource { rawJson }, telemetry)
 
     val timestamp: Instant? = telemetry.timestamp
 
     val duration: Duration? = telemetry.activity?.duration
-}
\ No newline at end of file
+
+    /**
+     * Approximate retained heap of this item in bytes (domain model, search JSON and raw message source).
+     *
+     * The domain model is estimated from the size of its compact JSON, which it closely mirrors.
+     */
+    val estimatedSize: Int =
+        ITEM_OVERHEAD + searchJson.size * (1 + MODEL_BYTES_PER_JSON_BYTE) + rawJsonSource.estimatedSize()
+
+    /**
+     * The domain model as (compact) JSON; decoded on each access.
+     */
+    val json: String get() = String(searchJson, StandardCharsets.UTF_8)
+
+    /**
+     * The original OTLP message as JSON; rendered on demand, with the most recently viewed items cached.
+     */
+    val rawJson: String get() = RawJsonCache.get(rawJsonSource)
+
+    /**
+     * Checks whether the domain-model JSON contains the search text.
+     */
+    fun matches(search: Utf8TextSearch): Boolean = search.matches(searchJson)
+
+    /**
+     * The UTF-8 bytes of the domain-model JSON searched by [matches] (for indexing; must not be modified).
+     */
+    internal val searchText: ByteArray get() = searchJson
+
+    private companion object {
+        // Fixed per-item objects (item, telemetry, array headers)
+        const val ITEM_OVERHEAD = 256
+
+        // Heap used by the domain model per byte of its compact JSON (object headers, boxed values, map entries)
+        const val MODEL_BYTES_PER_JSON_BYTE = 2
+    }
+}
@@ -0,0 +1,115 @@
+package jeremymorren.opentelemetry.models
+
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * A [TraceTree] flattened into the rows of a waterfall: depth first, children by start time.
+ *
+ * Rows are stored as parallel arrays indexed by row, so large traces need no per-row objects.
+ * Times are in nanoseconds relative to the start of the earliest span.
+ */
+class TraceTimeline(tree: TraceTree) {
+    /**
+     * The number of rows (spans).
+     */
+    val rowCount: Int = tree.spanCount
+
+    private val items = arrayOfNulls<TelemetryItem>(rowCount)
+
+    /**
+     * The nesting depth of each row (0 for roots).
+     */
+    val depths = IntArray(rowCount)
+
+    /**
+     * The start of each span relative to [start], or -1 if unknown.
+     */
+    val startNanos = LongArray(rowCount)
+
+    /**
+     * The duration of each span, or -1 if unknown.
+     */
+    val durationNanos = LongArray(rowCount)
+
+    /**
+     * The time until the first database response ([Activity.dbQueryTime]) of each span, or -1 if not a database call.
+     */
+    val dbQueryNanos = LongArray(rowCount)
+
+    /**
+     * The critical path and self times of the spans.
+     */
+    val criticalPath = CriticalPath(tree)
+
+    /**
+     * The start of the earliest span, or null if no span has a start time.
+     */
+    val start: Instant?
+
+    /**
+     * The end of the latest span relative to [start] (at least 1).
+     */
+    val totalNanos: Long
+
+    init {
+        var row = 0
+        for (root in tree.roots) {
+            // Depth first, without recursion (traces can be deep)
+            val pending = ArrayDeque<Pair<SpanNode, Int>>()
+            pending.addLast(root to 0)
+            while (pending.isNotEmpty()) {
+                val (node, depth) = pending.removeLast()
+                items[row] = node.item
+                depths[row++] = depth
+                for (i in node.children.indices.reversed()) {
+                    pending.addLast(node.children[i] to depth + 1)
+                }
+            }
+        }
+
+        start = items.mapNotNull { it!!.telemetry.activity!!.startTime }.minOrNull()
+        var end = 1L
+        for (i in 0 until rowCount) {
+            val activity = items[i]!!.telemetry.activity!!
+            startNanos[i] = activity.startTime?.let { Duration.between(start, it).toNanos() } ?: -1
+            durationNanos[i] = activity.duration?.toNanos() ?: -1
+            dbQueryNanos[i] = activity.dbQueryTime?.toNanos() ?: -1
+            if (startNanos[i] >= 0) {
+                end = maxOf(end, startNanos[i] + maxOf(durationNanos[i], 0))
+            }
+        }
+        totalNanos = end
+    }
+
+    /**
+     * The telemetry item of a row.
+     */
+    fun getItem(row: Int): TelemetryItem = items[row]!!
+
+    /**
+     * The row of an item (compared by identity), or -1 if it isn't part of the trace.
+     */
+    fun rowOf(item: TelemetryItem): Int = items.indexOfFirst { it === item }
+
+    companion object {
+        /**
+         * Gets a "round" interval (1, 2 or 5 times a power of ten nanoseconds) for the ticks of a time axis,
+         * such that a range of [rangeNanos] has at most [maxTicks] ticks.
+         */
+        @JvmStatic
+        fun tickInterval(rangeNanos: Long, maxTicks: Int): Long {
+            val ticks = maxOf(1, maxTicks)
+            val minInterval = maxOf(1L, (rangeNanos + ticks - 1) / ticks)
+            var magnitude = 1L
+            while (true) {
+                for (step in longArrayOf(1, 2, 5)) {
+                    if (step * magnitude >= minInterval) {
+                        return step * magnitude
+                    }
+                }
+                magnitude *= 10
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package jeremymorren.opentelemetry.models
+
+/**
+ * The spans of a trace received so far, assembled into a tree.
+ *
+ * @property traceId The trace ID.
+ * @property roots The root spans, and spans whose parent has not been received (or was evicted), by start time.
+ * @property spanCount The number of spans in the tree.
+ * @property version The version of the trace the tree was assembled from (see [TraceSummary.version]).
+ */
+class TraceTree(
+    val traceId: TraceId,
+    val roots: List<SpanNode>,
+    val spanCount: Int,
+    val version: Long
+)
+{
+    /**
+     * Finds the node of a span item (compared by identity), or null if it isn't part of the trace.
+     */
+    fun find(item: TelemetryItem): SpanNode? {
+        val pending = ArrayDeque(roots)
+        while (pending.isNotEmpty()) {
+            val node = pending.removeFirst()
+            if (node.item === item) {
+                return node
+            }
+            pending.addAll(node.children)
+        }
+        return null
+    }
+}
+
+/**
+ * The spans of a trace received so far, without assembling them into a tree.
+ *
+ * @property traceId The trace ID.
+ * @property spanCount The number of spans received so far.
+ * @property version Changes whenever a span of the trace is added or removed, so a [TraceTree] with the same version
+ * is still current.
+ */
+class TraceSummary(
+    val traceId: TraceId,
+    val spanCount: Int,
+    val version: Long
+)
+
+/**
+ * A span in a [TraceTree].
+ *
+ * @property item The telemetry item of the span.
+ * @property children The child spans, by start time.
+ * @property missingParent True if the span has a parent span ID, but the parent has not been received.
+ */
+class SpanNode(
+    val item: TelemetryItem,
+    val children: List<SpanNode>,
+    val missingParent: Boolean
+)
+{
+    val activity: Activity get() = item.telemetry.activity!!
+}
@@ -0,0 +1,24 @@
+package jeremymorren.opentelemetry.otlp
+
+/**
+ * A bounded, thread-safe cache that drops the least recently used entries beyond [maxEntries].
+ */
+internal class LruCache<K : Any, V : Any>(private val maxEntries: Int) {
+    private val map = object : LinkedHashMap<K, V>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<K, V>?): Boolean = size > maxEntries
+    }
+
+    /**
+     * Gets the value for [key], computing it if absent (nothing is cached when [compute] returns null).
+     */
+    fun getOrPut(key: K, compute: () -> V?): V? {
+        synchronized(map) {
+            map[key]?.let { return it }
+        }
+        // Compute outside the lock; if another thread computed the same key meanwhile, use its value
+        val value = compute() ?: return null
+        synchronized(map) {
+            return map.putIfAbsent(key, value) ?: value
+        }
+    }
+}
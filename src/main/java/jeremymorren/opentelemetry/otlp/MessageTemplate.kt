@@ -0,0 +1,138 @@
+package jeremymorren.opentelemetry.otlp
+
+import jeremymorren.opentelemetry.models.ObjectDictionary
+
+/**
+ * A log message template (Microsoft.Extensions.Logging / Serilog convention) parsed into literal text and
+ * placeholders, so that formatting a record is a single pass without a regex.
+ *
+ * A placeholder is `{Name}`, optionally with a Serilog destructuring prefix (`{@Name}`, `{$Name}`) and a format
+ * specifier (`{Name:fmt}`; the specifier may contain colons). The specifier is ignored when formatting.
+ */
+internal class MessageTemplate private constructor(
+    private val template: String,
+    private val segments: List<Segment>,
+) {
+    /**
+     * Replaces each placeholder with the matching attribute value; placeholders without one are kept as-is.
+     */
+    fun format(attributes: ObjectDictionary): String {
+        if (segments.isEmpty()) {
+            return template
+        }
+        val builder = StringBuilder(template.length + 16 * segments.size)
+        for (segment in segments) {
+            when (segment) {
+                is Literal -> builder.append(template, segment.start, segment.end)
+                is Placeholder -> {
+                    val value = attributes.getString(segment.key)
+                    if (value != null) builder.append(value) else builder.append(template, segment.start, segment.end)
+                }
+            }
+        }
+        return builder.toString()
+    }
+
+    private sealed interface Segment
+
+    /**
+     * Text copied from the template ([start] inclusive, [end] exclusive).
+     */
+    private class Literal(val start: Int, val end: Int) : Segment
+
+    /**
+     * A placeholder for attribute [key], spanning [start] to [end] in the template.
+     */
+    private class Placeholder(val key: String, val start: Int, val end: Int) : Segment
+
+    companion object {
+        /**
+         * The number of distinct templates kept. Apps usually have a few hundred.
+         */
+        private const val MAX_CACHED_TEMPLATES = 1024
+
+        /**
+         * Longer bodies are unlikely to be templates shared by many records, so they aren't cached.
+         */
+        private const val MAX_CACHED_LENGTH = 4096
+
+        private val cache = LruCache<String, MessageTemplate>(MAX_CACHED_TEMPLATES)
+
+        /**
+         * Gets the parsed template of a log body, from the cache if the body has been seen before.
+         */
+        fun of(body: String): MessageTemplate {
+            if (body.length > MAX_CACHED_LENGTH) {
+                return parse(body)
+            }
+            return cache.getOrPut(body) { parse(body) }!!
+        }
+
+        fun parse(template: String): MessageTemplate {
+            val segments = ArrayList<Segment>()
+            var literalStart = 0
+            var i = template.indexOf('{')
+            while (i >= 0) {
+                val end = placeholderEnd(template, i)
+                if (end < 0) {
+                    i = template.indexOf('{', i + 1)
+                    continue
+                }
+                if (literalStart < i) {
+                    segments.add(Literal(literalStart, i))
+                }
+                segments.add(Placeholder(placeholderKey(template, i), i, end))
+                literalStart = end
+                i = template.indexOf('{', end)
+            }
+            if (segments.isNotEmpty() && literalStart < template.length) {
+                segments.add(Literal(literalStart, template.length))
+            }
+            return MessageTemplate(template, segments)
+        }
+
+        /**
+         * Gets the end (exclusive) of the placeholder starting with the `{` at [start], or -1 if there isn't one.
+         * The name runs up to the first `}`, `:` or `@`; a `:` starts a format specifier running to the next `}`.
+         */
+        private fun placeholderEnd(template: String, start: Int): Int {
+            val nameStart = nameStart(template, start)
+            val nameEnd = nameEnd(template, nameStart)
+            if (nameEnd == nameStart || nameEnd == template.length) {
+                return -1
+            }
+            return when (template[nameEnd]) {
+                '}' -> nameEnd + 1
+                ':' -> template.indexOf('}', nameEnd + 1).let { if (it < 0) -1 else it + 1 }
+                else -> -1
+            }
+        }
+
+        private fun placeholderKey(template: String, start: Int): String {
+            val nameStart = nameStart(template, start)
+            return template.substring(nameStart, nameEnd(template, nameStart)).trim()
+        }
+
+        /**
+         * Skips the `@` / `$` prefix, unless it is the whole name (`$` alone is a valid name, `@` isn't).
+         */
+        private fun nameStart(template: String, start: Int): Int {
+            val prefixEnd = start + 1
+            if (prefixEnd < template.length && (template[prefixEnd] == '@' || template[prefixEnd] == '$')) {
+                val afterPrefix = prefixEnd + 1
+                if (template[prefixEnd] == '@' || nameEnd(template, afterPrefix) > afterPrefix) {
+                    return afterPrefix
+                }
+            }
+            return prefixEnd
+        }
+
+        private fun nameEnd(template: String, nameStart: Int): Int {
+            var i = nameStart
+            while (i < template.length && template[i] != '}' && template[i] != ':' && template[i] != '@') {
+                i++
+            }
+            return i
+        }
+    }
+}
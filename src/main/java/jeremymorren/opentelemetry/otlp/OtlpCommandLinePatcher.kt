@@ -6,12 +6,19 @@ import java.net.URI
 
 object OtlpCommandLinePatcher {
     @JvmStatic
-    fun patchEnvironment(commandLine: GeneralCommandLine, settings: AppSettingState, endpoint: URI) {
+    @JvmOverloads
+    fun patchEnvironment(
+        commandLine: GeneralCommandLine,
+        settings: AppSettingState,
+        endpoint: URI,
+        grpcEndpoint: URI? = null,
+        scopeKey: String? = null,
+    ) {
         if (!settings.enableLoopbackOtlpReceiver.value || !settings.injectOtlpEnvironmentVariables.value) {
             return
         }
 
-        val resolved = OtlpEnvironmentVariables.resolve(settings.otlpEnvironmentVariables, endpoint)
+        val resolved = OtlpEnvironmentVariables.resolve(settings.otlpEnvironmentVariables, endpoint, grpcEndpoint, scopeKey)
         commandLine.withEnvironment(resolved)
     }
-}
\ No newline at end of file
+}
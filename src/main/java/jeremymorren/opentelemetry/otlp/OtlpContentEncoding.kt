@@ -0,0 +1,77 @@
+package jeremymorren.opentelemetry.otlp
+
+import java.io.BufferedInputStream
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+
+/**
+ * Decodes HTTP `Content-Encoding` of OTLP payloads as a stream.
+ *
+ * The decoded stream is read straight into the protobuf parser, so compressed exports are never inflated
+ * into an intermediate byte array.
+ * Supports `gzip` and `deflate` (zlib-wrapped or raw); other codings such as `zstd` are rejected (answered with 415).
+ */
+object OtlpContentEncoding {
+    private const val BUFFER_SIZE = 8 * 1024
+
+    /**
+     * Checks whether every coding in a `Content-Encoding` header value can be decoded.
+     */
+    @JvmStatic
+    fun isSupported(contentEncoding: String?): Boolean =
+        codings(contentEncoding).all { coding ->
+            when (coding) {
+                "identity", "gzip", "x-gzip", "deflate" -> true
+                else -> false
+            }
+        }
+
+    /**
+     * Checks whether the header value requires decoding at all.
+     */
+    @JvmStatic
+    fun isIdentity(contentEncoding: String?): Boolean = codings(contentEncoding).all { it == "identity" }
+
+    /**
+     * Wraps [input] in decoders for each coding, undoing them in the reverse order they were applied.
+     *
+     * @throws IllegalArgumentException if a coding is not supported (check with [isSupported] first)
+     */
+    @JvmStatic
+    fun decode(contentEncoding: String?, input: InputStream): InputStream {
+        var stream = input
+        for (coding in codings(contentEncoding).asReversed()) {
+            stream = when (coding) {
+                "identity" -> stream
+                "gzip", "x-gzip" -> GZIPInputStream(stream, BUFFER_SIZE)
+                "deflate" -> inflate(stream)
+                else -> throw IllegalArgumentException("Unsupported Content-Encoding: $coding")
+            }
+        }
+        return stream
+    }
+
+    /**
+     * HTTP `deflate` is specified as zlib-wrapped, but some senders emit raw deflate; detect the zlib header.
+     */
+    private fun inflate(input: InputStream): InputStream {
+        val buffered = if (input.markSupported()) input else BufferedInputStream(input, BUFFER_SIZE)
+        buffered.mark(2)
+        val cmf = buffered.read()
+        val flg = buffered.read()
+        buffered.reset()
+        val zlibWrapped = cmf >= 0 && flg >= 0 && (cmf and 0x0f) == 8 && ((cmf shl 8) or flg) % 31 == 0
+        return InflaterInputStream(buffered, Inflater(!zlibWrapped), BUFFER_SIZE)
+    }
+
+    private fun codings(contentEncoding: String?): List<String> {
+        if (contentEncoding.isNullOrBlank()) {
+            return emptyList()
+        }
+        return contentEncoding.split(',')
+            .map { it.trim().lowercase() }
+            .filter { it.isNotEmpty() }
+    }
+}
@@ -1,8 +1,11 @@
 package jeremymorren.opentelemetry.otlp;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -12,21 +15,49 @@ public final class OtlpEnvironmentVariables {
             "OTEL_EXPORTER_OTLP_ENDPOINT=${OTLP_ENDPOINT}",
             "OTEL_EXPORTER_OTLP_PROTOCOL=http/protobuf",
             "OTEL_BSP_SCHEDULE_DELAY=100",
-            "OTEL_BLRP_SCHEDULE_DELAY=100"
+            "OTEL_BLRP_SCHEDULE_DELAY=100",
+            "# Uncomment to gzip large export batches (the receiver also accepts deflate):",
+            "# OTEL_EXPORTER_OTLP_COMPRESSION=gzip",
+            "# To export over OTLP/gRPC instead, replace the first two lines with:",
+            "# OTEL_EXPORTER_OTLP_ENDPOINT=${OTLP_GRPC_ENDPOINT}",
+            "# OTEL_EXPORTER_OTLP_PROTOCOL=grpc",
+            "# OTEL_EXPORTER_OTLP_HEADERS=" + OtlpProjectScope.SCOPE_HEADER + "=${OTLP_SCOPE}"
     );
 
+    /**
+     * Placeholder for the loopback OTLP/gRPC endpoint. The gRPC receiver is only started when the template uses it.
+     */
+    public static final String GRPC_ENDPOINT_PLACEHOLDER = "${OTLP_GRPC_ENDPOINT}";
+
     private OtlpEnvironmentVariables() {
     }
 
     @NotNull
     public static Map<String, String> resolve(@NotNull String template, @NotNull URI endpoint) {
+        return resolve(template, endpoint, null, null);
+    }
+
+    @NotNull
+    public static Map<String, String> resolve(
+            @NotNull String template,
+            @NotNull URI endpoint,
+            @Nullable URI grpcEndpoint,
+            @Nullable String scopeKey
+    ) {
         LinkedHashMap<String, String> result = new LinkedHashMap<>();
 
-        Map<String, String> replacements = Map.of(
-                "${OTLP_ENDPOINT}", endpoint.toString(),
-                "${OTLP_HOST}", endpoint.getHost(),
-                "${OTLP_PORT}", Integer.toString(endpoint.getPort())
-        );
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("${OTLP_ENDPOINT}", endpoint.toString());
+        replacements.put("${OTLP_HOST}", endpoint.getHost());
+        replacements.put("${OTLP_PORT}", Integer.toString(endpoint.getPort()));
+        if (grpcEndpoint != null) {
+            replacements.put(GRPC_ENDPOINT_PLACEHOLDER, grpcEndpoint.toString());
+            replacements.put("${OTLP_GRPC_PORT}", Integer.toString(grpcEndpoint.getPort()));
+        }
+        if (scopeKey != null) {
+            // OTEL_EXPORTER_OTLP_HEADERS values are URL-encoded
+            replacements.put("${OTLP_SCOPE}", URLEncoder.encode(scopeKey, StandardCharsets.UTF_8));
+        }
 
         for (String rawLine : template.split("\\R")) {
             String line = rawLine.trim();
@@ -52,4 +83,17 @@ public final class OtlpEnvironmentVariables {
 
         return result;
     }
+
+    /**
+     * Checks whether the template references the OTLP/gRPC endpoint (ignoring comment lines).
+     */
+    public static boolean usesGrpcEndpoint(@NotNull String template) {
+        for (String rawLine : template.split("\\R")) {
+            String line = rawLine.trim();
+            if (!line.startsWith("#") && line.contains(GRPC_ENDPOINT_PLACEHOLDER)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
\ No newline at end of file
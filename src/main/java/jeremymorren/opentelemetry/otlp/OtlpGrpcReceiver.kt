@@ -0,0 +1,174 @@
+package jeremymorren.opentelemetry.otlp
+
+import com.intellij.openapi.diagnostic.Logger
+import io.grpc.Context
+import io.grpc.Contexts
+import io.grpc.Metadata
+import io.grpc.MethodDescriptor
+import io.grpc.Server
+import io.grpc.ServerCall
+import io.grpc.ServerCallHandler
+import io.grpc.ServerInterceptor
+import io.grpc.ServerInterceptors
+import io.grpc.ServerServiceDefinition
+import io.grpc.Status
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder
+import io.grpc.stub.ServerCalls
+import jeremymorren.opentelemetry.otlp.OtlpHttpReceiverService.SignalType
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.URI
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Loopback OTLP/gRPC receiver.
+ *
+ * Serves the `Export` method of the OTLP `TraceService`, `LogsService` and `MetricsService` over HTTP/2.
+ * Requests are not parsed by gRPC: the raw protobuf message bytes are handed to [sink], so gRPC exports
+ * go through the same decode → publish pipeline as the OTLP/HTTP endpoint. [sink] returns false when the
+ * pipeline is saturated, which is reported as `UNAVAILABLE` so the exporter retries with backoff.
+ *
+ * gRPC paths are fixed by the service definition, so the project scope is carried in the
+ * [OtlpProjectScope.SCOPE_HEADER] request header instead of the URL path.
+ */
+internal class OtlpGrpcReceiver(
+    private val sink: (scopeKey: String, signalType: SignalType, payload: ByteArray) -> Boolean,
+) : AutoCloseable {
+    private val logger = Logger.getInstance(OtlpGrpcReceiver::class.java)
+
+    // gRPC server instance; null until start() is called
+    @Volatile
+    private var server: Server? = null
+
+    // Runs the service calls; not owned by gRPC, so it is shut down by close()
+    @Volatile
+    private var executor: ExecutorService? = null
+
+    /**
+     * Starts the gRPC server on a random loopback port.
+     *
+     * @return URI of the started server (e.g., "http://127.0.0.1:4317")
+     */
+    fun start(): URI {
+        // Daemon threads so they don't block IDE shutdown (mirrors the HTTP receiver pool)
+        val callExecutor = Executors.newFixedThreadPool(4) { runnable ->
+            Thread(runnable, "OpenTelemetry-OTLP-gRPC-Receiver").apply { isDaemon = true }
+        }
+        executor = callExecutor
+        val grpcServer = try {
+            NettyServerBuilder
+                .forAddress(InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0))
+                .executor(callExecutor)
+                // OTLP batches can be large; the .NET exporter does not chunk them
+                .maxInboundMessageSize(MAX_MESSAGE_SIZE)
+                .apply {
+                    SignalType.entries.forEach { signalType ->
+                        addService(ServerInterceptors.intercept(createService(signalType), ScopeInterceptor))
+                    }
+                }
+                .build()
+                .start()
+        } catch (ex: Exception) {
+            callExecutor.shutdownNow()
+            executor = null
+            throw ex
+        }
+
+        server = grpcServer
+        val endpoint = URI("http://127.0.0.1:${grpcServer.port}")
+        logger.info("Loopback OTLP/gRPC receiver listening on $endpoint")
+        return endpoint
+    }
+
+    /**
+     * Creates the service definition for a single signal type, e.g. `opentelemetry.proto.collector.trace.v1.TraceService`.
+     */
+    private fun createService(signalType: SignalType): ServerServiceDefinition {
+        val method = MethodDescriptor.newBuilder<ByteArray, ByteArray>()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(signalType.grpcServiceName, "Export"))
+            .setRequestMarshaller(ByteArrayMarshaller)
+            .setResponseMarshaller(ByteArrayMarshaller)
+            .build()
+
+        val handler = ServerCalls.asyncUnaryCall<ByteArray, ByteArray> { payload, responseObserver ->
+            try {
+                if (!sink(SCOPE_CONTEXT_KEY.get() ?: OtlpHttpReceiverService.DEFAULT_SCOPE, signalType, payload)) {
+                    // OTLP/gRPC throttling: UNAVAILABLE is a retryable status for exporters
+                    responseObserver.onError(
+                        Status.UNAVAILABLE
+                            .withDescription("OTLP receiver is busy")
+                            .asRuntimeException()
+                    )
+                    return@asyncUnaryCall
+                }
+                // An empty Export*ServiceResponse (no partial_success) encodes to zero bytes
+                responseObserver.onNext(EMPTY_RESPONSE)
+                responseObserver.onCompleted()
+            } catch (ex: Exception) {
+                logger.warn("Failed to accept OTLP/gRPC payload", ex)
+                responseObserver.onError(
+                    Status.INVALID_ARGUMENT
+                        .withDescription(ex.message ?: "Invalid OTLP payload")
+                        .asRuntimeException()
+                )
+            }
+        }
+
+        return ServerServiceDefinition.builder(signalType.grpcServiceName)
+            .addMethod(method, handler)
+            .build()
+    }
+
+    /**
+     * Stops the gRPC server and its executor immediately.
+     */
+    override fun close() {
+        server?.shutdownNow()?.awaitTermination(1, TimeUnit.SECONDS)
+        server = null
+        executor?.let {
+            it.shutdownNow()
+            it.awaitTermination(1, TimeUnit.SECONDS)
+        }
+        executor = null
+    }
+
+    /**
+     * Copies the project scope header (if any) into the gRPC context for the call.
+     */
+    private object ScopeInterceptor : ServerInterceptor {
+        override fun <ReqT, RespT> interceptCall(
+            call: ServerCall<ReqT, RespT>,
+            headers: Metadata,
+            next: ServerCallHandler<ReqT, RespT>,
+        ): ServerCall.Listener<ReqT> {
+            val scopeKey = headers.get(SCOPE_METADATA_KEY)?.takeUnless { it.isBlank() }
+                ?: return next.startCall(call, headers)
+            return Contexts.interceptCall(Context.current().withValue(SCOPE_CONTEXT_KEY, scopeKey), call, headers, next)
+        }
+    }
+
+    /**
+     * Passes protobuf messages through as raw bytes; decoding is left to [OtlpWireTelemetryDecoder].
+     */
+    private object ByteArrayMarshaller : MethodDescriptor.Marshaller<ByteArray> {
+        override fun stream(value: ByteArray): InputStream = ByteArrayInputStream(value)
+
+        override fun parse(stream: InputStream): ByteArray = stream.use { it.readAllBytes() }
+    }
+
+    companion object {
+        private const val MAX_MESSAGE_SIZE = 64 * 1024 * 1024
+
+        private val EMPTY_RESPONSE = ByteArray(0)
+
+        private val SCOPE_METADATA_KEY: Metadata.Key<String> =
+            Metadata.Key.of(OtlpProjectScope.SCOPE_HEADER, Metadata.ASCII_STRING_MARSHALLER)
+
+        private val SCOPE_CONTEXT_KEY: Context.Key<String> = Context.key("otlp-project-scope")
+    }
+}
@@ -6,13 +6,19 @@ import com.intellij.openapi.diagnostic.Logger
 import com.sun.net.httpserver.HttpExchange
 import com.sun.net.httpserver.HttpServer
 import jeremymorren.opentelemetry.models.TelemetryItem
+import jeremymorren.opentelemetry.models.TelemetryType
+import jeremymorren.opentelemetry.models.TraceId
+import jeremymorren.opentelemetry.models.TraceSummary
+import jeremymorren.opentelemetry.models.TraceTree
 import jeremymorren.opentelemetry.settings.AppSettingState
+import java.io.ByteArrayInputStream
 import java.io.IOException
+import java.io.InputStream
 import java.net.InetAddress
 import java.net.InetSocketAddress
 import java.net.URI
 import java.nio.charset.StandardCharsets
-import java.util.ArrayDeque
+import java.util.EnumSet
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.Executors
@@ -24,21 +30,38 @@ import java.util.function.Consumer
  * This is a singleton application service that:
  * - Starts a lightweight HTTP server on localhost with a random available port
  * - Listens for POST requests on /{projectKey}/v1/traces, /{projectKey}/v1/logs, and /{projectKey}/v1/metrics endpoints
- * - Decodes incoming protobuf OTLP payloads and converts them to domain models
- * - Publishes telemetry items to registered listeners (e.g., UI tool window, debug console)
- * - Maintains a bounded telemetry history per project scope for later debug sessions in that project
+ * - Acknowledges requests immediately and queues the raw payloads in a bounded ring buffer ([OtlpIngestQueue])
+ * - Accepts gzip/deflate `Content-Encoding`, decompressed as a stream while decoding
+ * - Accepts both `application/x-protobuf` and `application/json` (OTLP/HTTP JSON) payloads
+ * - Decodes queued protobuf OTLP payloads on a separate worker thread and converts them to domain models
+ * - Publishes telemetry items to registered listeners (e.g., UI tool window, debug console), one batch per request
+ * - Maintains a telemetry history per project scope for later debug sessions in that project, bounded by the
+ *   configured memory budget ([TelemetryHistory])
+ * - Skips decoding signals whose telemetry types every listener of the scope hides, keeping their raw payloads
+ *   ([OtlpSpillBuffer], within 1/8 of the memory budget) until a listener shows them
+ *   ([ListenerRegistration.setVisibleTypes])
  * 
  * The server is created once per IDE session and reused for all debug/run configurations.
  * Uses a bounded fixed thread pool (4 threads) for handling concurrent HTTP requests from loopback.
+ *
+ * An OTLP/gRPC receiver ([OtlpGrpcReceiver]) can be started alongside the HTTP server on demand;
+ * it feeds the same decode → publish pipeline.
  */
-class OtlpHttpReceiverService : Disposable {
+class OtlpHttpReceiverService(ingestQueueCapacity: Int) : Disposable {
+    constructor() : this(DEFAULT_INGEST_QUEUE_CAPACITY)
+
     private val logger = Logger.getInstance(OtlpHttpReceiverService::class.java)
     
-    // Decoder: converts raw OTLP protobuf payloads into TelemetryItem domain models
-    private val decoder = OtlpTelemetryDecoder()
+    // Decoders: convert raw OTLP protobuf / JSON payloads into TelemetryItem domain models
+    private val decoder = OtlpWireTelemetryDecoder()
+    private val jsonDecoder = OtlpJsonTelemetryDecoder()
+
+    // Decouples receiving from decoding/dispatching so slow listeners never stall the exporter
+    private val ingestQueue = OtlpIngestQueue(ingestQueueCapacity, ::ingest)
     
-    private val listenersByScope = ConcurrentHashMap<String, CopyOnWriteArrayList<(TelemetryItem) -> Unit>>()
-    private val recentTelemetriesByScope = ConcurrentHashMap<String, ArrayDeque<TelemetryItem>>()
+    private val listenersByScope = ConcurrentHashMap<String, CopyOnWriteArrayList<ScopeListener>>()
+    private val recentTelemetriesByScope = ConcurrentHashMap<String, TelemetryHistory>()
+    private val spilledByScope = ConcurrentHashMap<String, OtlpSpillBuffer>()
     
     // HTTP server instance; lazily initialized on first ensureStarted() call
     @Volatile
@@ -48,43 +71,129 @@ class OtlpHttpReceiverService : Disposable {
     @Volatile
     private var endpoint: URI? = null
 
+    // gRPC receiver instance; lazily initialized on first ensureGrpcStarted() call
+    @Volatile
+    private var grpcReceiver: OtlpGrpcReceiver? = null
+
+    // gRPC endpoint URI (e.g., "http://127.0.0.1:4317"); null until gRPC receiver starts
+    @Volatile
+    private var grpcEndpoint: URI? = null
+
     /**
     * Registers a listener to receive newly published telemetry items for a project scope.
      * 
      * @param scopeKey project scope identifier
      * @param listener callback function invoked for each new telemetry item
-     * @return AutoCloseable that unregisters the listener when closed
+     * @param evictionListener callback function invoked with the items evicted from the scope's history
+     *   to stay within its memory budget
+     * @return registration that unregisters the listener when closed
      */
-    fun addListener(scopeKey: String, listener: (TelemetryItem) -> Unit): AutoCloseable {
-        val scopeListeners = listenersByScope.computeIfAbsent(scopeKey) { CopyOnWriteArrayList() }
-        scopeListeners.add(listener)
+    fun addListener(
+        scopeKey: String,
+        listener: (TelemetryItem) -> Unit,
+        evictionListener: (List<TelemetryItem>) -> Unit = {}
+    ): ListenerRegistration =
+        addBatchListener(scopeKey, { batch -> batch.forEach(listener) }, evictionListener)
 
-        val history = recentTelemetriesByScope.computeIfAbsent(scopeKey) { ArrayDeque() }
-        synchronized(history) {
-            history.forEach(listener)
-        }
+    /**
+     * Convenience overload for Java callers using Consumer interface.
+     */
+    fun addListener(scopeKey: String, listener: Consumer<TelemetryItem>): ListenerRegistration =
+        addListener(scopeKey, { telemetryItem -> listener.accept(telemetryItem) })
 
-        return AutoCloseable {
-            scopeListeners.remove(listener)
-            if (scopeListeners.isEmpty()) {
-                listenersByScope.remove(scopeKey, scopeListeners)
+    /**
+     * Convenience overload for Java callers using Consumer interface.
+     */
+    fun addListener(
+        scopeKey: String,
+        listener: Consumer<TelemetryItem>,
+        evictionListener: Consumer<List<TelemetryItem>>
+    ): ListenerRegistration =
+        addListener(scopeKey, { telemetryItem -> listener.accept(telemetryItem) }, { evicted -> evictionListener.accept(evicted) })
+
+    /**
+     * Registers a listener to receive newly published telemetry items for a project scope in batches:
+     * the scope's history is replayed as one batch, then each decoded export request is delivered as one batch.
+     *
+     * @param scopeKey project scope identifier
+     * @param listener callback function invoked for each batch of new telemetry items (never empty)
+     * @param evictionListener callback function invoked with the items evicted from the scope's history
+     *   to stay within its memory budget
+     * @return registration that unregisters the listener when closed; the listener is sent all telemetry types
+     *   until it sets the types it shows
+     */
+    fun addBatchListener(
+        scopeKey: String,
+        listener: (List<TelemetryItem>) -> Unit,
+        evictionListener: (List<TelemetryItem>) -> Unit = {}
+    ): ListenerRegistration {
+        val scopeListener = ScopeListener(listener, evictionListener)
+        val scopeListeners = listenersByScope.computeIfAbsent(scopeKey) { CopyOnWriteArrayList() }
+        scopeListeners.add(scopeListener)
+
+        getHistory(scopeKey).replay { history ->
+            if (history.isNotEmpty()) {
+                listener(history)
             }
         }
+        // Telemetry skipped while the scope's other listeners hid it is sent as it is decoded
+        releaseSpilled(scopeKey)
+
+        return ListenerRegistration(scopeKey, scopeListeners, scopeListener)
     }
 
     /**
      * Convenience overload for Java callers using Consumer interface.
      */
-    fun addListener(scopeKey: String, listener: Consumer<TelemetryItem>): AutoCloseable =
-        addListener(scopeKey) { telemetryItem -> listener.accept(telemetryItem) }
+    fun addBatchListener(scopeKey: String, listener: Consumer<List<TelemetryItem>>): ListenerRegistration =
+        addBatchListener(scopeKey, { batch -> listener.accept(batch) })
+
+    /**
+     * Convenience overload for Java callers using Consumer interface.
+     */
+    fun addBatchListener(
+        scopeKey: String,
+        listener: Consumer<List<TelemetryItem>>,
+        evictionListener: Consumer<List<TelemetryItem>>
+    ): ListenerRegistration =
+        addBatchListener(scopeKey, { batch -> listener.accept(batch) }, { evicted -> evictionListener.accept(evicted) })
 
     fun clear(scopeKey: String) {
-        val history = recentTelemetriesByScope[scopeKey] ?: return
-        synchronized(history) {
-            history.clear()
-        }
+        recentTelemetriesByScope[scopeKey]?.clear()
+        spilledByScope[scopeKey]?.clear()
+    }
+
+    /**
+     * Gets the current item count and estimated memory usage of a project scope's telemetry history,
+     * with the number of hidden export requests dropped before they were decoded.
+     */
+    fun getHistoryUsage(scopeKey: String): TelemetryHistory.Usage {
+        val usage = getHistory(scopeKey).usage
+        val dropped = spilledByScope[scopeKey]?.droppedCount ?: 0
+        return if (dropped == 0) usage else usage.copy(droppedRequests = dropped)
     }
 
+    /**
+     * Assembles the spans of a trace retained in a project scope's telemetry history into a tree.
+     *
+     * @return the tree, or null if no span of the trace is retained
+     */
+    fun getTrace(scopeKey: String, traceId: TraceId): TraceTree? = recentTelemetriesByScope[scopeKey]?.getTrace(traceId)
+
+    /**
+     * Gets the span count and version of a trace retained in a project scope's telemetry history.
+     *
+     * @return the summary, or null if no span of the trace is retained
+     */
+    fun getTraceSummary(scopeKey: String, traceId: TraceId): TraceSummary? =
+        recentTelemetriesByScope[scopeKey]?.getTraceSummary(traceId)
+
+    private fun getHistory(scopeKey: String): TelemetryHistory =
+        recentTelemetriesByScope.computeIfAbsent(scopeKey) {
+            val settings = AppSettingState.getInstance()
+            TelemetryHistory(historyBudgetBytes(settings), settings.historyEvictionPolicy.value)
+        }
+
     /**
      * Ensures the HTTP server is started; starts it on first call, returns cached endpoint on subsequent calls.
      * 
@@ -129,16 +238,45 @@ class OtlpHttpReceiverService : Disposable {
         return endpoint!!
     }
 
+    /**
+     * Ensures the OTLP/gRPC receiver is started; starts it on first call, returns cached endpoint on subsequent calls.
+     *
+     * The gRPC receiver listens on its own loopback port, since the HTTP server does not support HTTP/2.
+     *
+     * @return URI of the started gRPC server (e.g., "http://127.0.0.1:4317")
+     * @throws IllegalStateException if loopback OTLP receiver is disabled in settings
+     */
+    @Synchronized
+    fun ensureGrpcStarted(): URI {
+        grpcEndpoint?.let { return it }
+
+        val settings = AppSettingState.getInstance()
+        if (!settings.enableLoopbackOtlpReceiver.value) {
+            throw IllegalStateException("Loopback OTLP receiver is disabled in settings")
+        }
+
+        logger.info("Starting open telemetry loopback OTLP/gRPC receiver...")
+
+        val receiver = OtlpGrpcReceiver { scopeKey, signalType, payload ->
+            ingestQueue.offer(OtlpIngestRequest(scopeKey, signalType, payload))
+        }
+        val uri = receiver.start()
+        grpcReceiver = receiver
+        grpcEndpoint = uri
+        return uri
+    }
+
     /**
      * Handles incoming HTTP requests to the OTLP endpoints.
      * 
      * Process:
      * 1. Validates HTTP method is POST
-     * 2. Reads raw protobuf payload from request body
-     * 3. Decodes protobuf into TelemetryItem domain models based on signal type
-     * 4. Publishes each telemetry item to all registered listeners
-     * 5. Sends HTTP response (200 on success, 400 on decode error, 405 for non-POST)
-     * 
+     * 2. Validates the Content-Type and Content-Encoding (415 if either cannot be decoded)
+     * 3. Reads raw (possibly compressed) protobuf payload from request body
+     * 4. Enqueues the payload for decoding and publishing on the ingest worker thread
+     * 5. Sends HTTP response (200 once queued, 503 + Retry-After when the queue is full, 405 for non-POST)
+     *
+     * Decode errors happen after the response is sent; they are logged and the payload is dropped.
      * Runs on thread pool executor threads (bounded by fixed pool size).
      */
     private fun handle(exchange: HttpExchange) {
@@ -157,52 +295,182 @@ class OtlpHttpReceiverService : Disposable {
             }
             val scopeKey = OtlpProjectScope.tryExtractScopeKey(path) ?: DEFAULT_SCOPE
 
-            // Read and decode OTLP protobuf payload
-            val telemetries = exchange.requestBody.use { body ->
-                val payload = body.readAllBytes()
-                // Decode based on signal type
-                when (signalType) {
-                    SignalType.TRACES -> decoder.decodeTraces(payload)
-                    SignalType.LOGS -> decoder.decodeLogs(payload)
-                    SignalType.METRICS -> decoder.decodeMetrics(payload)
-                }
+            val contentType = exchange.requestHeaders.getFirst("Content-Type")
+            val payloadFormat = PayloadFormat.fromContentType(contentType)
+            if (payloadFormat == null) {
+                sendResponse(exchange, 415, "Unsupported Content-Type: $contentType")
+                return
+            }
+
+            val contentEncoding = exchange.requestHeaders.getFirst("Content-Encoding")
+            if (!OtlpContentEncoding.isSupported(contentEncoding)) {
+                sendResponse(exchange, 415, "Unsupported Content-Encoding: $contentEncoding")
+                return
             }
 
-            // Publish each decoded telemetry item to listeners
-            telemetries.forEach { publish(scopeKey, it) }
-            sendResponse(exchange, 200, "")
+            // Read OTLP payload as-is (still compressed) and hand it to the decode stage
+            val payload = exchange.requestBody.use { body -> body.readAllBytes() }
+            val request = OtlpIngestRequest(scopeKey, signalType, payload, contentEncoding, payloadFormat)
+            if (!ingestQueue.offer(request)) {
+                // OTLP/HTTP throttling: exporters retry 503 responses after the Retry-After delay
+                exchange.responseHeaders.add("Retry-After", RETRY_AFTER_SECONDS.toString())
+                sendResponse(exchange, 503, "Service Unavailable")
+                return
+            }
+            // OTLP/HTTP responds in the request's encoding; an empty Export*ServiceResponse is "" (protobuf) or "{}" (JSON)
+            when (payloadFormat) {
+                PayloadFormat.PROTOBUF -> sendResponse(exchange, 200, "")
+                PayloadFormat.JSON -> sendResponse(exchange, 200, "{}", "application/json")
+            }
         } catch (ex: Exception) {
-            logger.warn("Failed to decode OTLP payload", ex)
+            logger.warn("Failed to read OTLP payload", ex)
             sendResponse(exchange, 400, ex.message ?: "Invalid OTLP payload")
         }
     }
 
     /**
-     * Publishes a single telemetry item to all registered listeners.
+     * Waits until every accepted payload has been decoded and published to listeners.
+     *
+     * @return true if all pending payloads were processed within the timeout
+     */
+    fun awaitIngestIdle(timeoutMillis: Long): Boolean = ingestQueue.awaitIdle(timeoutMillis)
+
+    /**
+     * Decodes a raw OTLP payload and publishes the decoded telemetry items to listeners as one batch.
+     *
+     * Runs on the ingest worker thread for payloads from both the HTTP handler and the gRPC receiver.
+     * Compressed protobuf payloads are inflated as a stream directly into the protobuf parser; compressed JSON
+     * payloads are inflated into memory first, since the raw JSON of each item is sliced from the payload.
+     * Throws if the payload cannot be decoded.
+     */
+    private fun ingest(request: OtlpIngestRequest) {
+        val signalType = request.signalType
+        if (isHidden(request.scopeKey, signalType)) {
+            spill(request)
+            return
+        }
+        val identity = OtlpContentEncoding.isIdentity(request.contentEncoding)
+
+        // Decode based on payload format and signal type
+        val telemetries = when {
+            request.payloadFormat == PayloadFormat.JSON -> {
+                val payload = if (identity) request.payload else inflate(request).use { it.readAllBytes() }
+                when (signalType) {
+                    SignalType.TRACES -> jsonDecoder.decodeTraces(payload)
+                    SignalType.LOGS -> jsonDecoder.decodeLogs(payload)
+                    SignalType.METRICS -> jsonDecoder.decodeMetrics(payload)
+                }
+            }
+
+            identity -> when (signalType) {
+                SignalType.TRACES -> decoder.decodeTraces(request.payload)
+                SignalType.LOGS -> decoder.decodeLogs(request.payload)
+                SignalType.METRICS -> decoder.decodeMetrics(request.payload)
+            }
+
+            else -> inflate(request).use { input ->
+                when (signalType) {
+                    SignalType.TRACES -> decoder.decodeTraces(input)
+                    SignalType.LOGS -> decoder.decodeLogs(input)
+                    SignalType.METRICS -> decoder.decodeMetrics(input)
+                }
+            }
+        }
+
+        // Publish the decoded telemetry items to listeners
+        publish(request.scopeKey, telemetries)
+
+        // Requeue skipped requests that did not fit in the queue when they were released
+        if (spilledByScope[request.scopeKey]?.isEmpty == false) {
+            releaseSpilled(request.scopeKey)
+        }
+    }
+
+    /**
+     * Checks whether no listener of a project scope shows any of the telemetry types of a signal.
+     * Without listeners nothing is hidden: the history keeps all telemetry for the next session.
+     */
+    private fun isHidden(scopeKey: String, signalType: SignalType): Boolean {
+        val scopeListeners = listenersByScope[scopeKey]
+        if (scopeListeners.isNullOrEmpty()) {
+            return false
+        }
+        return scopeListeners.none { scopeListener -> signalType.telemetryTypes.any { it in scopeListener.visibleTypes } }
+    }
+
+    /**
+     * Keeps a request of a hidden signal raw instead of decoding it.
+     */
+    private fun spill(request: OtlpIngestRequest) {
+        val spilled = spilledByScope.computeIfAbsent(request.scopeKey) { OtlpSpillBuffer() }
+        // Raw payloads are a fraction of the size of the decoded items, so a fraction of the history budget keeps
+        // a comparable amount of telemetry without taking the scope far over its budget
+        val dropped = spilled.add(request, historyBudgetBytes(AppSettingState.getInstance()) / SPILL_BUDGET_DIVISOR)
+        if (dropped > 0) {
+            logger.debug("Dropped $dropped hidden OTLP requests beyond the spill budget")
+        }
+        // A listener may have shown the signal meanwhile (after releasing the spilled requests)
+        if (!isHidden(request.scopeKey, request.signalType)) {
+            releaseSpilled(request.scopeKey)
+        }
+    }
+
+    /**
+     * Requeues the skipped requests of a project scope whose signals a listener now shows, in arrival order.
+     * Requests that don't fit in the ingest queue stay spilled, and are requeued as the queue drains.
+     */
+    private fun releaseSpilled(scopeKey: String) {
+        val spilled = spilledByScope[scopeKey] ?: return
+        val released = spilled.removeAll { !isHidden(scopeKey, it.signalType) }
+        for ((index, request) in released.withIndex()) {
+            if (!ingestQueue.offer(request)) {
+                spilled.addAllFirst(released.subList(index, released.size))
+                return
+            }
+        }
+    }
+
+    private fun inflate(request: OtlpIngestRequest): InputStream =
+        OtlpContentEncoding.decode(request.contentEncoding, ByteArrayInputStream(request.payload))
+
+    /**
+     * Publishes a batch of telemetry items to all registered listeners.
      * 
      * Process:
-     * 1. Notifies all listeners (typically: UI tool window, debug console, etc.)
+     * 1. Adds the items to the scope's history, applying the current budget and eviction policy settings
+     * 2. Notifies all listeners (typically: UI tool window, debug console, etc.) once with the whole batch
+     * 3. Notifies all listeners of the items evicted from the history, if any
      * 
      * Thread-safe: listeners is thread-safe (CopyOnWriteArrayList).
      * Listener exceptions are caught and logged but don't block other listeners.
      */
-    private fun publish(scopeKey: String, telemetryItem: TelemetryItem) {
-        val history = recentTelemetriesByScope.computeIfAbsent(scopeKey) { ArrayDeque() }
-        synchronized(history) {
-            history.addLast(telemetryItem)
-            while (history.size > 100_000) {
-                history.removeFirst()
-            }
+    private fun publish(scopeKey: String, telemetryItems: List<TelemetryItem>) {
+        if (telemetryItems.isEmpty()) {
+            return
         }
+        val settings = AppSettingState.getInstance()
+        val history = getHistory(scopeKey)
+        val evicted = history.configure(historyBudgetBytes(settings), settings.historyEvictionPolicy.value) +
+                history.addAll(telemetryItems)
 
-        listenersByScope[scopeKey]?.forEach { listener ->
+        val scopeListeners = listenersByScope[scopeKey] ?: return
+        scopeListeners.forEach { scopeListener ->
             try {
-                listener(telemetryItem)
+                scopeListener.onTelemetry(telemetryItems)
             } catch (ex: Exception) {
                 // Log but don't propagate: prevent one listener's error from affecting others
                 logger.warn("Failed to dispatch telemetry item to listener", ex)
             }
         }
+        if (evicted.isNotEmpty()) {
+            scopeListeners.forEach { scopeListener ->
+                try {
+                    scopeListener.onEvicted(evicted)
+                } catch (ex: Exception) {
+                    logger.warn("Failed to dispatch evicted telemetry items to listener", ex)
+                }
+            }
+        }
     }
 
     /**
@@ -211,14 +479,15 @@ class OtlpHttpReceiverService : Disposable {
      * @param exchange HTTP exchange object
      * @param statusCode HTTP status code (e.g., 200, 400, 405)
      * @param body response body (typically empty for OTLP endpoints)
+     * @param contentType media type of [body]
      * 
      * Handles I/O errors gracefully; always closes the exchange in finally block.
      */
-    private fun sendResponse(exchange: HttpExchange, statusCode: Int, body: String) {
+    private fun sendResponse(exchange: HttpExchange, statusCode: Int, body: String, contentType: String = "text/plain") {
         try {
             // Encode response body as UTF-8
             val bytes = body.toByteArray(StandardCharsets.UTF_8)
-            exchange.responseHeaders.add("Content-Type", "text/plain; charset=utf-8")
+            exchange.responseHeaders.add("Content-Type", "$contentType; charset=utf-8")
             // Send HTTP headers with response status and content length
             exchange.sendResponseHeaders(statusCode, bytes.size.toLong())
             // Write response body
@@ -241,19 +510,68 @@ class OtlpHttpReceiverService : Disposable {
     override fun dispose() {
         // Stop server with zero-second timeout (immediate shutdown)
         server?.stop(0)
+        ingestQueue.close()
         server = null
         endpoint = null
+        grpcReceiver?.close()
+        grpcReceiver = null
+        grpcEndpoint = null
         listenersByScope.clear()
         recentTelemetriesByScope.clear()
+        spilledByScope.clear()
+    }
+
+    internal class ScopeListener(
+        val onTelemetry: (List<TelemetryItem>) -> Unit,
+        val onEvicted: (List<TelemetryItem>) -> Unit
+    ) {
+        @Volatile
+        var visibleTypes: Set<TelemetryType> = EnumSet.allOf(TelemetryType::class.java)
+    }
+
+    /**
+     * A registered listener of a project scope; closing it unregisters the listener.
+     */
+    inner class ListenerRegistration internal constructor(
+        private val scopeKey: String,
+        private val scopeListeners: CopyOnWriteArrayList<ScopeListener>,
+        private val scopeListener: ScopeListener,
+    ) : AutoCloseable {
+        /**
+         * Sets the telemetry types the listener shows (e.g. the session's type filters).
+         *
+         * Signals none of whose telemetry types any listener of the scope shows are not decoded; their requests are
+         * kept raw and decoded once a listener shows one of the types again (e.g. metrics are re-enabled).
+         */
+        fun setVisibleTypes(types: Set<TelemetryType>) {
+            scopeListener.visibleTypes = types.toSet()
+            releaseSpilled(scopeKey)
+        }
+
+        override fun close() {
+            scopeListeners.remove(scopeListener)
+            if (scopeListeners.isEmpty()) {
+                listenersByScope.remove(scopeKey, scopeListeners)
+            }
+        }
     }
 
     /**
      * Enum of OTLP signal types that can be received.
+     *
+     * @property grpcServiceName fully qualified OTLP/gRPC collector service for the signal
+     * @property telemetryTypes the types of the telemetry decoded from the signal
      */
-    private enum class SignalType {
-        TRACES,   // Distributed traces (spans)
-        LOGS,     // Log records
-        METRICS,  // Metrics (gauges, counters, histograms, etc.)
+    internal enum class SignalType(val grpcServiceName: String, val telemetryTypes: Set<TelemetryType>) {
+        // Distributed traces (spans)
+        TRACES(
+            "opentelemetry.proto.collector.trace.v1.TraceService",
+            EnumSet.of(TelemetryType.Activity, TelemetryType.Request, TelemetryType.Dependency, TelemetryType.Exception),
+        ),
+        // Log records
+        LOGS("opentelemetry.proto.collector.logs.v1.LogsService", EnumSet.of(TelemetryType.Message, TelemetryType.Exception)),
+        // Metrics (gauges, counters, histograms, etc.)
+        METRICS("opentelemetry.proto.collector.metrics.v1.MetricsService", EnumSet.of(TelemetryType.Metric)),
 
         ;
 
@@ -267,11 +585,43 @@ class OtlpHttpReceiverService : Disposable {
         }
     }
 
+    /**
+     * OTLP/HTTP payload encodings, negotiated from the request `Content-Type`.
+     */
+    internal enum class PayloadFormat {
+        PROTOBUF, // application/x-protobuf (also assumed when no Content-Type is sent)
+        JSON,     // application/json (OTLP JSON encoding)
+
+        ;
+
+        companion object {
+            fun fromContentType(contentType: String?): PayloadFormat? {
+                val mediaType = contentType?.substringBefore(';')?.trim()?.lowercase()
+                return when (mediaType) {
+                    null, "", "application/x-protobuf", "application/protobuf" -> PROTOBUF
+                    "application/json" -> JSON
+                    else -> null
+                }
+            }
+        }
+    }
+
     /**
      * Companion object providing static access to the singleton instance.
      */
     companion object {
-        private const val DEFAULT_SCOPE = "default"
+        internal const val DEFAULT_SCOPE = "default"
+
+        // Number of export requests that may wait for decoding before exporters are asked to back off
+        private const val DEFAULT_INGEST_QUEUE_CAPACITY = 256
+
+        private const val RETRY_AFTER_SECONDS = 1
+
+        // Requests of hidden signals are kept raw within this fraction (1/n) of the history budget
+        private const val SPILL_BUDGET_DIVISOR = 8
+
+        private fun historyBudgetBytes(settings: AppSettingState): Long =
+            settings.historyBudgetMegabytes.value.toLong() * 1024 * 1024
 
         @JvmStatic
         fun getInstance(): OtlpHttpReceiverService =
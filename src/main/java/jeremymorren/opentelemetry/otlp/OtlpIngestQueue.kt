@@ -0,0 +1,126 @@
+package jeremymorren.opentelemetry.otlp
+
+import com.intellij.openapi.diagnostic.Logger
+import jeremymorren.opentelemetry.otlp.OtlpHttpReceiverService.PayloadFormat
+import jeremymorren.opentelemetry.otlp.OtlpHttpReceiverService.SignalType
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * A raw OTLP export request accepted by a receiver, waiting to be decoded.
+ *
+ * [payload] is kept exactly as received (still compressed if [contentEncoding] is set, protobuf or JSON per
+ * [payloadFormat]) and only decoded on the worker thread, so compressed exports also occupy less queue memory.
+ */
+internal class OtlpIngestRequest(
+    val scopeKey: String,
+    val signalType: SignalType,
+    val payload: ByteArray,
+    val contentEncoding: String? = null,
+    val payloadFormat: PayloadFormat = PayloadFormat.PROTOBUF,
+)
+
+/**
+ * Bounded hand-off between the OTLP receivers and the decode/dispatch stage.
+ *
+ * Receivers [offer] raw payloads and acknowledge the exporter immediately; a single daemon worker thread
+ * (started by the first [offer]) decodes and dispatches them in arrival order via [consumer]. A slow listener therefore only delays the
+ * worker, never the exporter. When the ring buffer is full, [offer] fails fast so the receiver can ask the
+ * exporter to back off (HTTP 503 + `Retry-After`, gRPC `UNAVAILABLE`).
+ */
+internal class OtlpIngestQueue(
+    capacity: Int,
+    private val consumer: (OtlpIngestRequest) -> Unit,
+) : AutoCloseable {
+    private val logger = Logger.getInstance(OtlpIngestQueue::class.java)
+
+    // ArrayBlockingQueue is a fixed-size ring buffer; it never grows beyond capacity
+    private val queue = ArrayBlockingQueue<OtlpIngestRequest>(capacity)
+
+    // Number of accepted requests not yet fully dispatched (queued + in flight); guarded by itself
+    private val pendingLock = Object()
+    private var pending = 0
+
+    @Volatile
+    private var closed = false
+
+    // Started on the first offer, so a queue that never receives a request owns no thread; guarded by pendingLock
+    private var worker: Thread? = null
+
+    /**
+     * Enqueues a request without blocking.
+     *
+     * @return false if the queue is full (or closed) and the exporter should retry later
+     */
+    fun offer(request: OtlpIngestRequest): Boolean {
+        synchronized(pendingLock) {
+            if (closed || !queue.offer(request)) {
+                return false
+            }
+            pending++
+            if (worker == null) {
+                worker = Thread(::run, "OpenTelemetry-OTLP-Decoder").apply {
+                    isDaemon = true
+                    start()
+                }
+            }
+        }
+        return true
+    }
+
+    /**
+     * Waits until every accepted request has been decoded and dispatched.
+     *
+     * @return true if the queue drained within the timeout
+     */
+    fun awaitIdle(timeoutMillis: Long): Boolean {
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+        synchronized(pendingLock) {
+            while (pending > 0) {
+                val remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())
+                if (remaining <= 0) {
+                    return false
+                }
+                pendingLock.wait(remaining)
+            }
+        }
+        return true
+    }
+
+    private fun run() {
+        while (!closed) {
+            val request = try {
+                queue.take()
+            } catch (_: InterruptedException) {
+                break
+            }
+
+            try {
+                consumer(request)
+            } catch (ex: Throwable) {
+                // The exporter has already been acknowledged; all we can do is log.
+                // Catch everything so a single bad payload can never stop the worker (and stall every exporter).
+                logger.warn("Failed to decode OTLP payload", ex)
+            } finally {
+                synchronized(pendingLock) {
+                    // close() may already have reset the counter
+                    pending = maxOf(0, pending - 1)
+                    pendingLock.notifyAll()
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the worker thread; queued requests are discarded.
+     */
+    override fun close() {
+        synchronized(pendingLock) {
+            closed = true
+            worker?.interrupt()
+            queue.clear()
+            pending = 0
+            pendingLock.notifyAll()
+        }
+    }
+}
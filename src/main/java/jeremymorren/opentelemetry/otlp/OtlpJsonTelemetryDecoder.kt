@@ -0,0 +1,599 @@
+package jeremymorren.opentelemetry.otlp
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import io.opentelemetry.proto.logs.v1.SeverityNumber
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality
+import io.opentelemetry.proto.trace.v1.Span
+import io.opentelemetry.proto.trace.v1.Status
+import jeremymorren.opentelemetry.models.*
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.aggregationTemporality
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.createLogMessage
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.displayString
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toActivityKind
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toActivityStatus
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toDuration
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toInstant
+import java.io.StringWriter
+import java.nio.ByteBuffer
+import java.util.*
+
+/**
+ * Decodes OTLP/HTTP JSON (`application/json`) export requests.
+ *
+ * Reads the payload with the Jackson streaming parser and builds the domain models while reading, without an
+ * intermediate JSON tree or protobuf message. Follows the OTLP JSON encoding:
+ * - keys are lowerCamelCase (the original snake_case field names are accepted too)
+ * - trace and span IDs are hex strings
+ * - 64-bit integers may be JSON numbers or strings
+ * - enums are integers (enum value names are accepted too)
+ *
+ * Unknown fields are skipped. The raw JSON of each item is its own object from the payload, re-indented on demand.
+ */
+class OtlpJsonTelemetryDecoder(
+    private val telemetryFactory: TelemetryFactory = TelemetryFactory(),
+) {
+    private val interner = TelemetryInterner()
+
+    fun decodeTraces(payload: ByteArray): List<TelemetryItem> =
+        decode(payload, "resourceSpans", "scopeSpans", "spans", ::readSpan)
+
+    fun decodeLogs(payload: ByteArray): List<TelemetryItem> =
+        decode(payload, "resourceLogs", "scopeLogs", "logRecords", ::readLogRecord)
+
+    fun decodeMetrics(payload: ByteArray): List<TelemetryItem> =
+        decode(payload, "resourceMetrics", "scopeMetrics", "metrics", ::readMetric)
+
+    /**
+     * Decodes `{ <resourceListKey>: [ { resource, <scopeListKey>: [ { scope, <itemListKey>: [ ... ] } ] } ] }`.
+     *
+     * Object keys may come in any order, so each item is read into a builder that is only invoked once the
+     * enclosing scope and resource are known.
+     */
+    private fun decode(
+        payload: ByteArray,
+        resourceListKey: String,
+        scopeListKey: String,
+        itemListKey: String,
+        readItem: (JsonParser) -> PendingTelemetry,
+    ): List<TelemetryItem> {
+        val items = ArrayList<TelemetryItem>()
+        jsonFactory.createParser(payload).use { parser ->
+            parser.nextToken()
+            parser.forEachField { key ->
+                if (key != resourceListKey) {
+                    parser.skipChildren()
+                    return@forEachField
+                }
+                parser.forEachElement {
+                    var resource: ObjectDictionary? = null
+                    val pending = ArrayList<Pair<DecodedScope, PendingItem>>()
+                    parser.forEachField { resourceKey ->
+                        when (resourceKey) {
+                            "resource" -> resource = readInterned(parser, payload, interner::resource, ::readResource)
+                            scopeListKey -> parser.forEachElement {
+                                readScopeEntry(parser, payload, itemListKey, readItem, pending)
+                            }
+
+                            else -> parser.skipChildren()
+                        }
+                    }
+                    for ((scope, item) in pending) {
+                        items.add(telemetryFactory.createFromTelemetry(item.build(scope, resource), item.rawJson))
+                    }
+                }
+            }
+        }
+        return items
+    }
+
+    private fun readScopeEntry(
+        parser: JsonParser,
+        payload: ByteArray,
+        itemListKey: String,
+        readItem: (JsonParser) -> PendingTelemetry,
+        pending: MutableList<Pair<DecodedScope, PendingItem>>,
+    ) {
+        var scope = DecodedScope.EMPTY
+        val scopeItems = ArrayList<PendingItem>()
+        parser.forEachField { key ->
+            when (key) {
+                "scope" -> scope = readInterned(parser, payload, interner::scope, ::readScope)
+                itemListKey -> parser.forEachElement {
+                    val start = parser.currentTokenLocation().byteOffset.toInt()
+                    val build = readItem(parser)
+                    val end = parser.currentLocation().byteOffset.toInt()
+                    scopeItems.add(PendingItem(build, JsonSliceRawJson(payload.copyOfRange(start, end))))
+                }
+
+                else -> parser.skipChildren()
+            }
+        }
+        scopeItems.forEach { pending.add(scope to it) }
+    }
+
+    /**
+     * Reads the object at the current token through [intern], keyed by a copy of the object's bytes,
+     * so an object seen before (e.g. the same resource in every export) is skipped rather than decoded.
+     */
+    private inline fun <T> readInterned(
+        parser: JsonParser,
+        payload: ByteArray,
+        intern: (key: Any, decode: () -> T) -> T,
+        crossinline read: (JsonParser) -> T,
+    ): T {
+        if (parser.currentToken != JsonToken.START_OBJECT) {
+            return read(parser)
+        }
+        val start = parser.currentTokenLocation().byteOffset.toInt()
+        parser.skipChildren()
+        val end = parser.currentLocation().byteOffset.toInt()
+        return intern(ByteBuffer.wrap(payload.copyOfRange(start, end))) {
+            jsonFactory.createParser(payload, start, end - start).use { slice ->
+                slice.nextToken()
+                read(slice)
+            }
+        }
+    }
+
+    private fun readResource(parser: JsonParser): ObjectDictionary? {
+        var attributes: ObjectDictionary? = null
+        parser.forEachField { key ->
+            when (key) {
+                "attributes" -> attributes = readAttributes(parser)
+                else -> parser.skipChildren()
+            }
+        }
+        return attributes
+    }
+
+    private fun readScope(parser: JsonParser): DecodedScope {
+        var name = ""
+        var version = ""
+        var attributes: ObjectDictionary? = null
+        parser.forEachField { key ->
+            when (key) {
+                "name" -> name = readString(parser)
+                "version" -> version = readString(parser)
+                "attributes" -> attributes = readAttributes(parser)
+                else -> parser.skipChildren()
+            }
+        }
+        return DecodedScope(name, version, attributes)
+    }
+
+    private fun readSpan(parser: JsonParser): PendingTelemetry {
+        var traceId: TraceId? = null
+        var spanId: SpanId? = null
+        var parentSpanId: SpanId? = null
+        var flags = 0
+        var name = ""
+        var kind = 0
+        var startTimeUnixNano = 0L
+        var endTimeUnixNano = 0L
+        var attributes: ObjectDictionary? = null
+        val events = ArrayList<ActivityEvent>()
+        var statusCode = 0
+        var statusMessage = ""
+        parser.forEachField { key ->
+            when (key) {
+                "traceId" -> traceId = readTraceId(parser)
+                "spanId" -> spanId = readSpanId(parser)
+                "parentSpanId" -> parentSpanId = readSpanId(parser)
+                "flags" -> flags = readLong(parser).toInt()
+                "name" -> name = readString(parser)
+                "kind" -> kind = readEnum(parser) { Span.SpanKind.getDescriptor().findValueByName(it)?.number }
+                "startTimeUnixNano" -> startTimeUnixNano = readLong(parser)
+                "endTimeUnixNano" -> endTimeUnixNano = readLong(parser)
+                "attributes" -> attributes = readAttributes(parser)
+                "events" -> parser.forEachElement { events.add(readEvent(parser)) }
+                "status" -> parser.forEachField { statusKey ->
+                    when (statusKey) {
+                        "code" -> statusCode = readEnum(parser) { Status.StatusCode.getDescriptor().findValueByName(it)?.number }
+                        "message" -> statusMessage = readString(parser)
+                        else -> parser.skipChildren()
+                    }
+                }
+
+                else -> parser.skipChildren()
+            }
+        }
+
+        return { scope, resource ->
+            val activity = Activity(
+                traceId = traceId,
+                spanId = spanId,
+                parentSpanId = parentSpanId,
+                activityTraceFlags = flags.toString(),
+                source = scope.activitySource,
+                displayName = name.takeUnless { it.isBlank() },
+                kind = toActivityKind(Span.SpanKind.forNumber(kind)),
+                startTime = toInstant(startTimeUnixNano),
+                duration = toDuration(startTimeUnixNano, endTimeUnixNano),
+                tags = attributes,
+                operationName = name.takeUnless { it.isBlank() },
+                status = toActivityStatus(Status.StatusCode.forNumber(statusCode)),
+                statusDescription = statusMessage.takeUnless { it.isBlank() },
+                events = events,
+            )
+            Telemetry(activity = activity, resource = resource)
+        }
+    }
+
+    private fun readEvent(parser: JsonParser): ActivityEvent {
+        var name = ""
+        var timeUnixNano = 0L
+        var attributes: ObjectDictionary? = null
+        parser.forEachField { key ->
+            when (key) {
+                "name" -> name = readString(parser)
+                "timeUnixNano" -> timeUnixNano = readLong(parser)
+                "attributes" -> attributes = readAttributes(parser)
+                else -> parser.skipChildren()
+            }
+        }
+        return ActivityEvent(
+            name = name.takeUnless { it.isBlank() },
+            timestamp = toInstant(timeUnixNano),
+            tags = attributes,
+        )
+    }
+
+    private fun readLogRecord(parser: JsonParser): PendingTelemetry {
+        var timeUnixNano = 0L
+        var severityNumber = 0
+        var severityText = ""
+        var body: Any? = null
+        var attributes: ObjectDictionary? = null
+        var traceId: TraceId? = null
+        var spanId: SpanId? = null
+        parser.forEachField { key ->
+            when (key) {
+                "timeUnixNano" -> timeUnixNano = readLong(parser)
+                "severityNumber" -> severityNumber = readEnum(parser) { SeverityNumber.getDescriptor().findValueByName(it)?.number }
+                "severityText" -> severityText = readString(parser)
+                "body" -> body = readAnyValue(parser, stripCarriageReturns = false)
+                "attributes" -> attributes = readAttributes(parser)
+                "traceId" -> traceId = readTraceId(parser)
+                "spanId" -> spanId = readSpanId(parser)
+                else -> parser.skipChildren()
+            }
+        }
+
+        return { scope, resource ->
+            val log = createLogMessage(
+                body = displayString(body),
+                attributes = attributes,
+                severityNumber = severityNumber,
+                severityText = severityText,
+                timeUnixNano = timeUnixNano,
+                traceId = traceId,
+                spanId = spanId,
+                scopeName = scope.name,
+            )
+            Telemetry(log = log, resource = resource)
+        }
+    }
+
+    private fun readMetric(parser: JsonParser): PendingTelemetry {
+        var name = ""
+        var description = ""
+        var unit = ""
+        var metricType = "DATA_NOT_SET"
+        var temporality = 0
+        var points: List<MetricPoint> = emptyList()
+        parser.forEachField { key ->
+            when (key) {
+                "name" -> name = readString(parser)
+                "description" -> description = readString(parser)
+                "unit" -> unit = readString(parser)
+                "gauge", "sum", "histogram", "exponentialHistogram", "summary" -> {
+                    metricType = key.replaceFirstChar { it.uppercaseChar() }
+                    parser.forEachField { dataKey ->
+                        when (dataKey) {
+                            "dataPoints" -> points = readDataPoints(parser, key)
+                            "aggregationTemporality" -> temporality = readEnum(parser) {
+                                AggregationTemporality.getDescriptor().findValueByName(it)?.number
+                            }
+
+                            else -> parser.skipChildren()
+                        }
+                    }
+                }
+
+                else -> parser.skipChildren()
+            }
+        }
+
+        return { scope, resource ->
+            val metric = Metric(
+                metricType = metricType,
+                // Gauges and summaries have no temporality
+                temporality = aggregationTemporality(AggregationTemporality.forNumber(temporality))
+                    .takeUnless { metricType == "Gauge" || metricType == "Summary" },
+                name = name.takeUnless { it.isBlank() },
+                description = description.takeUnless { it.isBlank() },
+                unit = unit.takeUnless { it.isBlank() },
+                meterName = scope.name.takeUnless { it.isBlank() },
+                meterVersion = scope.version.takeUnless { it.isBlank() },
+                meterTags = scope.attributes,
+                points = points,
+            )
+            Telemetry(metric = metric, resource = resource)
+        }
+    }
+
+    private fun readDataPoints(parser: JsonParser, dataKey: String): List<MetricPoint> {
+        val points = ArrayList<MetricPoint>()
+        parser.forEachElement {
+            var startTimeUnixNano = 0L
+            var timeUnixNano = 0L
+            var attributes: ObjectDictionary? = null
+            var asInt: Long? = null
+            var asDouble: Double? = null
+            var count = 0L
+            var sum: Double? = null
+            parser.forEachField { key ->
+                when (key) {
+                    "startTimeUnixNano" -> startTimeUnixNano = readLong(parser)
+                    "timeUnixNano" -> timeUnixNano = readLong(parser)
+                    "attributes" -> attributes = readAttributes(parser)
+                    "asInt" -> asInt = readLong(parser)
+                    "asDouble" -> asDouble = readDouble(parser)
+                    "count" -> count = readLong(parser)
+                    "sum" -> sum = readDouble(parser)
+                    else -> parser.skipChildren()
+                }
+            }
+
+            points.add(
+                when (dataKey) {
+                    "gauge", "sum" -> MetricPoint(
+                        startTime = toInstant(startTimeUnixNano),
+                        endTime = toInstant(timeUnixNano),
+                        tags = attributes,
+                        longSum = asInt,
+                        doubleSum = asDouble,
+                        longGauge = asInt,
+                        doubleGauge = asDouble,
+                    )
+
+                    else -> MetricPoint(
+                        startTime = toInstant(startTimeUnixNano),
+                        endTime = toInstant(timeUnixNano),
+                        tags = attributes,
+                        histogramCount = count,
+                        // Summary sum is not optional
+                        histogramSum = sum ?: (if (dataKey == "summary") 0.0 else null),
+                    )
+                }
+            )
+        }
+        return points
+    }
+
+    private fun readAttributes(parser: JsonParser): ObjectDictionary? {
+        val keys = ArrayList<String>()
+        val values = ArrayList<Any?>()
+        readKeyValueList(parser, stripCarriageReturns = true) { key, value ->
+            keys.add(key)
+            values.add(value)
+        }
+        if (keys.isEmpty()) {
+            return null
+        }
+        // Typed values straight from the parser (no JSON intermediate, int64 kept exact)
+        return ObjectDictionary.of(keys.toTypedArray(), values.toTypedArray())
+    }
+
+    private inline fun readKeyValueList(parser: JsonParser, stripCarriageReturns: Boolean, action: (String, Any?) -> Unit) {
+        parser.forEachElement {
+            var key = ""
+            var value: Any? = null
+            parser.forEachField { field ->
+                when (field) {
+                    "key" -> key = readString(parser)
+                    "value" -> value = readAnyValue(parser, stripCarriageReturns)
+                    else -> parser.skipChildren()
+                }
+            }
+            action(key, value)
+        }
+    }
+
+    /**
+     * Reads an AnyValue as the native value stored in an [ObjectDictionary] (null for an empty value).
+     */
+    private fun readAnyValue(parser: JsonParser, stripCarriageReturns: Boolean): Any? {
+        var value: Any? = null
+        parser.forEachField { key ->
+            when (key) {
+                "stringValue" -> value = readString(parser).let { if (stripCarriageReturns) it.replace("\r", "") else it }
+                "boolValue" -> value = readBoolean(parser)
+                "intValue" -> value = readLong(parser)
+                "doubleValue" -> value = readDouble(parser)
+                // Already base64, which is also how the protobuf decoder displays bytes
+                "bytesValue" -> value = readString(parser)
+                "arrayValue" -> {
+                    val values = ArrayList<Any?>()
+                    parser.forEachField { arrayKey ->
+                        when (arrayKey) {
+                            "values" -> parser.forEachElement { values.add(readAnyValue(parser, stripCarriageReturns)) }
+                            else -> parser.skipChildren()
+                        }
+                    }
+                    value = values
+                }
+
+                "kvlistValue" -> {
+                    val values = LinkedHashMap<String, Any?>()
+                    parser.forEachField { kvlistKey ->
+                        when (kvlistKey) {
+                            "values" -> readKeyValueList(parser, stripCarriageReturns) { k, v -> values[k] = v }
+                            else -> parser.skipChildren()
+                        }
+                    }
+                    value = values
+                }
+
+                else -> parser.skipChildren()
+            }
+        }
+        return value
+    }
+
+    /**
+     * Keeps the item's own JSON object as UTF-8 bytes and re-indents it only when displayed.
+     */
+    private class JsonSliceRawJson(private val json: ByteArray) : RawJsonSource {
+        override fun render(): String {
+            val writer = StringWriter(json.size * 2)
+            jsonFactory.createParser(json).use { parser ->
+                jsonFactory.createGenerator(writer).useDefaultPrettyPrinter().use { generator ->
+                    parser.nextToken()
+                    generator.copyCurrentStructure(parser)
+                }
+            }
+            return writer.toString()
+        }
+
+        override fun estimatedSize(): Int = json.size
+    }
+
+    companion object {
+        private val jsonFactory = JsonFactory()
+
+        /**
+         * Invokes [action] for each field of the object at the current token, with the parser on the field value.
+         * [action] must consume the whole value (e.g. via [JsonParser.skipChildren]). A JSON `null` is an empty object.
+         */
+        private inline fun JsonParser.forEachField(action: (key: String) -> Unit) {
+            if (currentToken == JsonToken.VALUE_NULL) {
+                return
+            }
+            if (currentToken != JsonToken.START_OBJECT) {
+                throw JsonParseException(this, "Expected a JSON object but found $currentToken")
+            }
+            while (nextToken() == JsonToken.FIELD_NAME) {
+                val name = currentName()
+                nextToken()
+                action(if ('_' in name) snakeToCamelCase(name) else name)
+            }
+        }
+
+        /**
+         * Invokes [action] for each element of the array at the current token, with the parser on the element.
+         * A JSON `null` is an empty array.
+         */
+        private inline fun JsonParser.forEachElement(action: () -> Unit) {
+            if (currentToken == JsonToken.VALUE_NULL) {
+                return
+            }
+            if (currentToken != JsonToken.START_ARRAY) {
+                throw JsonParseException(this, "Expected a JSON array but found $currentToken")
+            }
+            while (nextToken() != JsonToken.END_ARRAY) {
+                action()
+            }
+        }
+
+        private fun snakeToCamelCase(name: String): String {
+            val builder = StringBuilder(name.length)
+            var upper = false
+            for (c in name) {
+                if (c == '_') {
+                    upper = true
+                } else {
+                    builder.append(if (upper) c.uppercaseChar() else c)
+                    upper = false
+                }
+            }
+            return builder.toString()
+        }
+
+        private fun readString(parser: JsonParser): String =
+            when (parser.currentToken) {
+                JsonToken.VALUE_NULL -> ""
+                JsonToken.START_OBJECT, JsonToken.START_ARRAY -> throw JsonParseException(parser, "Expected a JSON string")
+                else -> parser.text
+            }
+
+        private fun readBoolean(parser: JsonParser): Boolean =
+            when (parser.currentToken) {
+                JsonToken.VALUE_TRUE -> true
+                JsonToken.VALUE_STRING -> parser.text.toBoolean()
+                else -> false
+            }
+
+        /**
+         * Reads a 64-bit integer, which the OTLP JSON encoding allows as a number or a (decimal) string.
+         * `fixed64` timestamps are unsigned, so positive strings are parsed as unsigned.
+         */
+        private fun readLong(parser: JsonParser): Long =
+            when (parser.currentToken) {
+                JsonToken.VALUE_NUMBER_INT -> parser.bigIntegerValue.toLong()
+                JsonToken.VALUE_NUMBER_FLOAT -> parser.doubleValue.toLong()
+                JsonToken.VALUE_STRING -> parser.text.trim().let {
+                    if (it.startsWith('-')) it.toLong() else java.lang.Long.parseUnsignedLong(it)
+                }
+
+                JsonToken.VALUE_NULL -> 0L
+                else -> throw JsonParseException(parser, "Expected a JSON integer")
+            }
+
+        /**
+         * Reads a double, which may also be one of the strings `NaN`, `Infinity` and `-Infinity`.
+         */
+        private fun readDouble(parser: JsonParser): Double =
+            when (parser.currentToken) {
+                JsonToken.VALUE_NUMBER_INT, JsonToken.VALUE_NUMBER_FLOAT -> parser.doubleValue
+                JsonToken.VALUE_STRING -> parser.text.trim().toDouble()
+                JsonToken.VALUE_NULL -> 0.0
+                else -> throw JsonParseException(parser, "Expected a JSON number")
+            }
+
+        /**
+         * Reads an enum as its number; enum value names are resolved with [numberOfName].
+         */
+        private inline fun readEnum(parser: JsonParser, numberOfName: (String) -> Int?): Int =
+            when (parser.currentToken) {
+                JsonToken.VALUE_NUMBER_INT -> parser.intValue
+                JsonToken.VALUE_STRING -> parser.text.toIntOrNull() ?: numberOfName(parser.text) ?: 0
+                else -> {
+                    parser.skipChildren()
+                    0
+                }
+            }
+
+        /**
+         * Reads a trace/span ID. OTLP JSON encodes IDs as (case-insensitive) hex; protobuf's generic JSON mapping
+         * would use base64, which is accepted as a fallback.
+         */
+        private inline fun <T> readId(parser: JsonParser, parse: (String) -> T?, fromBytes: (ByteArray) -> T?): T? {
+            val text = readString(parser).takeUnless { it.isEmpty() } ?: return null
+            if (text.all { it.isHexDigit() }) {
+                return parse(text.lowercase())
+            }
+            return try {
+                fromBytes(Base64.getDecoder().decode(text))
+            } catch (_: IllegalArgumentException) {
+                parse(text)
+            }
+        }
+
+        private fun readTraceId(parser: JsonParser): TraceId? = readId(parser, TraceId::parse, TraceId::fromBytes)
+
+        private fun readSpanId(parser: JsonParser): SpanId? = readId(parser, SpanId::parse, SpanId::fromBytes)
+
+        private fun Char.isHexDigit(): Boolean = this in '0'..'9' || this in 'a'..'f' || this in 'A'..'F'
+    }
+}
+
+/**
+ * Builds a decoded item once its enclosing scope and resource have been read.
+ */
+private typealias PendingTelemetry = (scope: DecodedScope, resource: ObjectDictionary?) -> Telemetry
+
+private class PendingItem(val build: PendingTelemetry, val rawJson: RawJsonSource)
@@ -9,6 +9,11 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 
 public final class OtlpProjectScope {
+    /**
+     * Request header carrying the project scope key for OTLP/gRPC exports (gRPC paths cannot be scoped).
+     */
+    public static final String SCOPE_HEADER = "x-otlp-scope";
+
     private OtlpProjectScope() {
     }
 
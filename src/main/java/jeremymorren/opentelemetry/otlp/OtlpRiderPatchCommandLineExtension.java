@@ -60,6 +60,16 @@ public final class OtlpRiderPatchCommandLineExtension implements PatchCommandLin
                 OtlpHttpReceiverService.getInstance().ensureStarted(),
                 project
         );
-        OtlpCommandLinePatcher.patchEnvironment(commandLine, settings, endpoint);
+        // Only start the gRPC receiver when the environment template actually advertises it
+        var grpcEndpoint = OtlpEnvironmentVariables.usesGrpcEndpoint(settings.otlpEnvironmentVariables)
+                ? OtlpHttpReceiverService.getInstance().ensureGrpcStarted()
+                : null;
+        OtlpCommandLinePatcher.patchEnvironment(
+                commandLine,
+                settings,
+                endpoint,
+                grpcEndpoint,
+                OtlpProjectScope.getScopeKey(project)
+        );
     }
 }
@@ -0,0 +1,69 @@
+package jeremymorren.opentelemetry.otlp
+
+/**
+ * Export requests of a project scope that were not decoded because no listener shows their telemetry
+ * (e.g. metrics while every session has them unchecked), kept as received until they are shown again.
+ *
+ * The payloads stay raw (and still compressed), which is far smaller than the decoded items with their search JSON.
+ * Only the newest requests within the byte limit passed to [add] are kept. Thread-safe.
+ */
+internal class OtlpSpillBuffer {
+    private val requests = ArrayDeque<OtlpIngestRequest>()
+    private var bytes = 0L
+
+    val isEmpty: Boolean @Synchronized get() = requests.isEmpty()
+
+    /**
+     * Number of requests dropped (beyond the byte limit) since the buffer was created or cleared.
+     */
+    var droppedCount: Int = 0
+        @Synchronized get
+        private set
+
+    /**
+     * Adds a request, dropping the oldest requests beyond [maxBytes] of payload.
+     *
+     * @return the number of requests dropped
+     */
+    @Synchronized
+    fun add(request: OtlpIngestRequest, maxBytes: Long): Int {
+        requests.addLast(request)
+        bytes += request.payload.size
+        var dropped = 0
+        while (bytes > maxBytes && requests.isNotEmpty()) {
+            bytes -= requests.removeFirst().payload.size
+            dropped++
+        }
+        droppedCount += dropped
+        return dropped
+    }
+
+    /**
+     * Removes the requests matching [predicate], in the order they were received.
+     */
+    @Synchronized
+    fun removeAll(predicate: (OtlpIngestRequest) -> Boolean): List<OtlpIngestRequest> {
+        val removed = requests.filter(predicate)
+        if (removed.isNotEmpty()) {
+            requests.removeAll(predicate)
+            bytes -= removed.sumOf { it.payload.size.toLong() }
+        }
+        return removed
+    }
+
+    /**
+     * Puts back requests taken by [removeAll] that could not be processed yet, ahead of the others.
+     */
+    @Synchronized
+    fun addAllFirst(putBack: List<OtlpIngestRequest>) {
+        requests.addAll(0, putBack)
+        bytes += putBack.sumOf { it.payload.size.toLong() }
+    }
+
+    @Synchronized
+    fun clear() {
+        requests.clear()
+        bytes = 0
+        droppedCount = 0
+    }
+}
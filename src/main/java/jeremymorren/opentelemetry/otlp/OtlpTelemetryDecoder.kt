@@ -3,6 +3,9 @@
 package jeremymorren.opentelemetry.otlp
 
 import com.google.protobuf.ByteString
+import com.google.protobuf.CodedInputStream
+import com.google.protobuf.MessageOrBuilder
+import com.google.protobuf.Parser
 import com.google.protobuf.util.JsonFormat
 import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest
 import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest
@@ -11,90 +14,109 @@ import io.opentelemetry.proto.common.v1.AnyValue
 import io.opentelemetry.proto.common.v1.InstrumentationScope
 import io.opentelemetry.proto.common.v1.KeyValue
 import io.opentelemetry.proto.logs.v1.LogRecord
-import io.opentelemetry.proto.logs.v1.SeverityNumber
 import io.opentelemetry.proto.metrics.v1.*
 import io.opentelemetry.proto.metrics.v1.Metric
+import io.opentelemetry.proto.resource.v1.Resource
 import io.opentelemetry.proto.trace.v1.Span
-import io.opentelemetry.proto.trace.v1.Status
 import jeremymorren.opentelemetry.models.*
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.aggregationTemporality
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.createLogMessage
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toActivityKind
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toActivityStatus
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toDuration
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toInstant
 import kotlinx.serialization.json.*
-import java.time.Duration
-import java.time.Instant
+import java.io.InputStream
 import java.util.*
 
+/**
+ * Decodes OTLP/protobuf export requests through the generated protobuf message classes.
+ *
+ * The receiver uses [OtlpWireTelemetryDecoder], which reads the wire format directly; this decoder is the reference
+ * it is verified against.
+ */
 class OtlpTelemetryDecoder(
     private val telemetryFactory: TelemetryFactory = TelemetryFactory(),
 ) {
-    private val jsonPrinter: JsonFormat.Printer = JsonFormat.printer().alwaysPrintFieldsWithNoPresence()
+    private val interner = TelemetryInterner()
 
-    private val messageTemplateRegex = Regex("""\{[@$]?([^}:@]+?)(?::[^}]*)?}""")
+    fun decodeTraces(payload: ByteArray): List<TelemetryItem> = decodeTraces(ExportTraceServiceRequest.parseFrom(payload))
 
-    fun decodeTraces(payload: ByteArray): List<TelemetryItem> {
-        val request = ExportTraceServiceRequest.parseFrom(payload)
+    /**
+     * Decodes a (possibly decompressing) stream straight into the protobuf parser, without buffering it into an array.
+     */
+    fun decodeTraces(input: InputStream): List<TelemetryItem> =
+        decodeTraces(ExportTraceServiceRequest.parseFrom(CodedInputStream.newInstance(input)))
+
+    private fun decodeTraces(request: ExportTraceServiceRequest): List<TelemetryItem> {
         return buildList {
             for (resourceSpan in request.resourceSpansList) {
-                val resource = attributesToObjectDictionary(resourceSpan.resource.attributesList)
+                val resource = internResource(resourceSpan.resource)
                 for (scopeSpan in resourceSpan.scopeSpansList) {
+                    val scope = internScope(scopeSpan.scope)
                     for (span in scopeSpan.spansList) {
-                        val telemetry = toTraceTelemetry(span, resource, scopeSpan.scope)
-                        add(telemetryFactory.createFromTelemetry(telemetry, jsonPrinter.print(span)))
+                        val telemetry = toTraceTelemetry(span, resource, scope)
+                        add(telemetryFactory.createFromTelemetry(telemetry, ProtobufRawJson(span.toByteString(), Span.parser())))
                     }
                 }
             }
         }
     }
 
-    fun decodeLogs(payload: ByteArray): List<TelemetryItem> {
-        val request = ExportLogsServiceRequest.parseFrom(payload)
+    fun decodeLogs(payload: ByteArray): List<TelemetryItem> = decodeLogs(ExportLogsServiceRequest.parseFrom(payload))
+
+    fun decodeLogs(input: InputStream): List<TelemetryItem> =
+        decodeLogs(ExportLogsServiceRequest.parseFrom(CodedInputStream.newInstance(input)))
+
+    private fun decodeLogs(request: ExportLogsServiceRequest): List<TelemetryItem> {
         return buildList {
             for (resourceLog in request.resourceLogsList) {
-                val resource = attributesToObjectDictionary(resourceLog.resource.attributesList)
+                val resource = internResource(resourceLog.resource)
                 for (scopeLog in resourceLog.scopeLogsList) {
+                    val scope = internScope(scopeLog.scope)
                     for (logRecord in scopeLog.logRecordsList) {
-                        val telemetry = toLogTelemetry(logRecord, resource, scopeLog.scope)
-                        add(telemetryFactory.createFromTelemetry(telemetry, jsonPrinter.print(logRecord)))
+                        val telemetry = toLogTelemetry(logRecord, resource, scope)
+                        add(telemetryFactory.createFromTelemetry(telemetry, ProtobufRawJson(logRecord.toByteString(), LogRecord.parser())))
                     }
                 }
             }
         }
     }
 
-    fun decodeMetrics(payload: ByteArray): List<TelemetryItem> {
-        val request = ExportMetricsServiceRequest.parseFrom(payload)
+    fun decodeMetrics(payload: ByteArray): List<TelemetryItem> = decodeMetrics(ExportMetricsServiceRequest.parseFrom(payload))
+
+    fun decodeMetrics(input: InputStream): List<TelemetryItem> =
+        decodeMetrics(ExportMetricsServiceRequest.parseFrom(CodedInputStream.newInstance(input)))
+
+    private fun decodeMetrics(request: ExportMetricsServiceRequest): List<TelemetryItem> {
         return buildList {
             for (resourceMetric in request.resourceMetricsList) {
-                val resource = attributesToObjectDictionary(resourceMetric.resource.attributesList)
+                val resource = internResource(resourceMetric.resource)
                 for (scopeMetric in resourceMetric.scopeMetricsList) {
+                    val scope = internScope(scopeMetric.scope)
                     for (metric in scopeMetric.metricsList) {
-                        val telemetry = toMetricTelemetry(metric, resource, scopeMetric.scope)
-                        add(telemetryFactory.createFromTelemetry(telemetry, jsonPrinter.print(metric)))
+                        val telemetry = toMetricTelemetry(metric, resource, scope)
+                        add(telemetryFactory.createFromTelemetry(telemetry, ProtobufRawJson(metric.toByteString(), Metric.parser())))
                     }
                 }
             }
         }
     }
 
-    private fun toTraceTelemetry(span: Span, resource: ObjectDictionary?, scope: InstrumentationScope): Telemetry {
-        val duration =
-            if (span.startTimeUnixNano > 0 && span.endTimeUnixNano >= span.startTimeUnixNano) {
-                Duration.ofNanos(span.endTimeUnixNano - span.startTimeUnixNano)
-            } else {
-                null
-            }
-
+    private fun toTraceTelemetry(span: Span, resource: ObjectDictionary?, scope: DecodedScope): Telemetry {
         val activity = Activity(
-            traceId = bytesToHex(span.traceId),
-            spanId = bytesToHex(span.spanId),
-            parentSpanId = bytesToHex(span.parentSpanId).takeUnless { it.isNullOrBlank() },
+            traceId = toTraceId(span.traceId),
+            spanId = toSpanId(span.spanId),
+            parentSpanId = toSpanId(span.parentSpanId),
             activityTraceFlags = span.flags.toString(),
-            source = scopeToActivitySource(scope),
+            source = scope.activitySource,
             displayName = span.name.takeUnless { it.isBlank() },
             kind = toActivityKind(span.kind),
             startTime = toInstant(span.startTimeUnixNano),
-            duration = duration,
+            duration = toDuration(span.startTimeUnixNano, span.endTimeUnixNano),
             tags = attributesToObjectDictionary(span.attributesList),
             operationName = span.name.takeUnless { it.isBlank() },
-            status = toActivityStatus(span.status),
+            status = toActivityStatus(span.status.code),
             statusDescription = span.status.message.takeUnless { it.isBlank() },
             events = span.eventsList.map { event ->
                 ActivityEvent(
@@ -108,43 +130,22 @@ class OtlpTelemetryDecoder(
         return Telemetry(activity = activity, resource = resource)
     }
 
-    private fun toLogTelemetry(logRecord: LogRecord, resource: ObjectDictionary?, scope: InstrumentationScope): Telemetry {
-        val attributes = attributesToObjectDictionary(logRecord.attributesList)
-        val exception = exceptionFromAttributes(attributes)
-        val body = anyValueToDisplayString(logRecord.body)
-        val formattedMessage = formatLogMessage(body, attributes)
-        val log = LogMessage(
-            body = body,
-            formattedMessage = formattedMessage,
-            logLevel = toLogLevel(logRecord.severityNumber, logRecord.severityText),
-            timestamp = toInstant(logRecord.timeUnixNano),
-            exception = exception,
-            attributes = attributes,
-            traceId = bytesToHex(logRecord.traceId).takeUnless { it.isNullOrBlank() },
-            spanId = bytesToHex(logRecord.spanId).takeUnless { it.isNullOrBlank() },
-            categoryName = attributes?.getString("categoryName") ?: scope.name.takeUnless { it.isBlank() },
-            eventId = attributes?.getString("event.id")?.toIntOrNull()?.let { EventId(it, attributes.getString("event.name")) },
+    private fun toLogTelemetry(logRecord: LogRecord, resource: ObjectDictionary?, scope: DecodedScope): Telemetry {
+        val log = createLogMessage(
+            body = anyValueToDisplayString(logRecord.body),
+            attributes = attributesToObjectDictionary(logRecord.attributesList),
+            severityNumber = logRecord.severityNumberValue,
+            severityText = logRecord.severityText,
+            timeUnixNano = logRecord.timeUnixNano,
+            traceId = toTraceId(logRecord.traceId),
+            spanId = toSpanId(logRecord.spanId),
+            scopeName = scope.name,
         )
 
         return Telemetry(log = log, resource = resource)
     }
 
-    /**
-     * Formats a log message body using the Microsoft.Extensions.Logging / Serilog message template convention.
-     *
-     * The template is taken directly from [body]. Each `{PropertyName}` placeholder (with optional
-     * Serilog destructuring prefix `@` / `$` and format specifier `:fmt`) is replaced with the
-     * corresponding attribute value. If [attributes] is null, [body] is returned unchanged.
-     */
-    private fun formatLogMessage(body: String?, attributes: ObjectDictionary?): String? {
-        if (attributes == null || body == null) return body
-        return messageTemplateRegex.replace(body) { match ->
-            val key = match.groupValues[1].trim()
-            attributes.getString(key) ?: match.value
-        }
-    }
-
-    private fun toMetricTelemetry(metric: Metric, resource: ObjectDictionary?, scope: InstrumentationScope): Telemetry {
+    private fun toMetricTelemetry(metric: Metric, resource: ObjectDictionary?, scope: DecodedScope): Telemetry {
         val mappedMetric = when (metric.dataCase) {
             Metric.DataCase.GAUGE -> jeremymorren.opentelemetry.models.Metric(
                 metricType = "Gauge",
@@ -154,7 +155,7 @@ class OtlpTelemetryDecoder(
                 unit = metric.unit.takeUnless { it.isBlank() },
                 meterName = scope.name.takeUnless { it.isBlank() },
                 meterVersion = scope.version.takeUnless { it.isBlank() },
-                meterTags = attributesToObjectDictionary(scope.attributesList),
+                meterTags = scope.attributes,
                 points = toGaugePoints(metric.gauge),
             )
 
@@ -166,7 +167,7 @@ class OtlpTelemetryDecoder(
                 unit = metric.unit.takeUnless { it.isBlank() },
                 meterName = scope.name.takeUnless { it.isBlank() },
                 meterVersion = scope.version.takeUnless { it.isBlank() },
-                meterTags = attributesToObjectDictionary(scope.attributesList),
+                meterTags = scope.attributes,
                 points = toSumPoints(metric.sum),
             )
 
@@ -178,7 +179,7 @@ class OtlpTelemetryDecoder(
                 unit = metric.unit.takeUnless { it.isBlank() },
                 meterName = scope.name.takeUnless { it.isBlank() },
                 meterVersion = scope.version.takeUnless { it.isBlank() },
-                meterTags = attributesToObjectDictionary(scope.attributesList),
+                meterTags = scope.attributes,
                 points = toHistogramPoints(metric.histogram),
             )
 
@@ -190,7 +191,7 @@ class OtlpTelemetryDecoder(
                 unit = metric.unit.takeUnless { it.isBlank() },
                 meterName = scope.name.takeUnless { it.isBlank() },
                 meterVersion = scope.version.takeUnless { it.isBlank() },
-                meterTags = attributesToObjectDictionary(scope.attributesList),
+                meterTags = scope.attributes,
                 points = metric.exponentialHistogram.dataPointsList.map(::toExponentialHistogramPoint),
             )
 
@@ -202,7 +203,7 @@ class OtlpTelemetryDecoder(
                 unit = metric.unit.takeUnless { it.isBlank() },
                 meterName = scope.name.takeUnless { it.isBlank() },
                 meterVersion = scope.version.takeUnless { it.isBlank() },
-                meterTags = attributesToObjectDictionary(scope.attributesList),
+                meterTags = scope.attributes,
                 points = metric.summary.dataPointsList.map(::toSummaryPoint),
             )
 
@@ -213,7 +214,7 @@ class OtlpTelemetryDecoder(
                 unit = metric.unit.takeUnless { it.isBlank() },
                 meterName = scope.name.takeUnless { it.isBlank() },
                 meterVersion = scope.version.takeUnless { it.isBlank() },
-                meterTags = attributesToObjectDictionary(scope.attributesList),
+                meterTags = scope.attributes,
                 points = emptyList(),
             )
         }
@@ -265,89 +266,43 @@ class OtlpTelemetryDecoder(
             histogramSum = dataPoint.sum,
         )
 
-    private fun aggregationTemporality(temporality: AggregationTemporality): String? =
-        when (temporality) {
-            AggregationTemporality.AGGREGATION_TEMPORALITY_UNSPECIFIED -> null
-            else -> temporality.name.removePrefix("AGGREGATION_TEMPORALITY_")
-        }
-
-    private fun exceptionFromAttributes(attributes: ObjectDictionary?): ExceptionInfo? {
-        if (attributes == null) {
-            return null
-        }
-
-        val message = attributes.getString("exception.message")
-        val type = attributes.getString("exception.type")
-        val stacktrace = attributes.getString("exception.stacktrace")
-        if (message == null && type == null && stacktrace == null) {
-            return null
-        }
-
-        return ExceptionInfo(
-            message = message,
-            display = stacktrace ?: message,
-            type = type,
-        )
-    }
-
-    private fun toActivityKind(kind: Span.SpanKind): ActivityKind =
-        when (kind) {
-            Span.SpanKind.SPAN_KIND_SERVER -> ActivityKind.Server
-            Span.SpanKind.SPAN_KIND_CLIENT -> ActivityKind.Client
-            Span.SpanKind.SPAN_KIND_PRODUCER -> ActivityKind.Producer
-            Span.SpanKind.SPAN_KIND_CONSUMER -> ActivityKind.Consumer
-            else -> ActivityKind.Internal
-        }
-
-    private fun toActivityStatus(status: Status): ActivityStatusCode =
-        when (status.code) {
-            Status.StatusCode.STATUS_CODE_OK -> ActivityStatusCode.Ok
-            Status.StatusCode.STATUS_CODE_ERROR -> ActivityStatusCode.Error
-            else -> ActivityStatusCode.Unset
-        }
-
-    private fun toLogLevel(severityNumber: SeverityNumber, severityText: String): LogLevel =
-        when {
-            severityNumber.number in SeverityNumber.SEVERITY_NUMBER_TRACE.number..SeverityNumber.SEVERITY_NUMBER_TRACE4.number -> LogLevel.Trace
-            severityNumber.number in SeverityNumber.SEVERITY_NUMBER_DEBUG.number..SeverityNumber.SEVERITY_NUMBER_DEBUG4.number -> LogLevel.Debug
-            severityNumber.number in SeverityNumber.SEVERITY_NUMBER_INFO.number..SeverityNumber.SEVERITY_NUMBER_INFO4.number -> LogLevel.Information
-            severityNumber.number in SeverityNumber.SEVERITY_NUMBER_WARN.number..SeverityNumber.SEVERITY_NUMBER_WARN4.number -> LogLevel.Warning
-            severityNumber.number in SeverityNumber.SEVERITY_NUMBER_ERROR.number..SeverityNumber.SEVERITY_NUMBER_ERROR4.number -> LogLevel.Error
-            severityNumber.number in SeverityNumber.SEVERITY_NUMBER_FATAL.number..SeverityNumber.SEVERITY_NUMBER_FATAL4.number -> LogLevel.Critical
-            severityText.equals("warning", ignoreCase = true) -> LogLevel.Warning
-            severityText.equals("error", ignoreCase = true) -> LogLevel.Error
-            severityText.equals("critical", ignoreCase = true) -> LogLevel.Critical
-            else -> LogLevel.Information
-        }
-
-    private fun scopeToActivitySource(scope: InstrumentationScope): ActivitySource? {
-        if (scope.name.isBlank()) {
+    /**
+     * Decodes a resource, sharing the instance with earlier requests that sent the same resource.
+     * The (already parsed) message is the key: protobuf messages compare by content.
+     */
+    private fun internResource(resource: Resource): ObjectDictionary? {
+        if (resource.attributesCount == 0) {
             return null
         }
-        return ActivitySource(scope.name, scope.version.takeUnless { it.isBlank() })
+        return interner.resource(resource) { attributesToObjectDictionary(resource.attributesList) }
     }
 
-    private fun toInstant(unixNano: Long): Instant? =
-        if (unixNano <= 0) {
-            null
-        } else {
-            Instant.ofEpochSecond(0, unixNano)
-        }
+    private fun internScope(scope: InstrumentationScope): DecodedScope =
+        interner.scope(scope) { DecodedScope(scope.name, scope.version, attributesToObjectDictionary(scope.attributesList)) }
 
     private fun attributesToObjectDictionary(attributes: List<KeyValue>): ObjectDictionary? {
         if (attributes.isEmpty()) {
             return null
         }
 
-        return ObjectDictionary(
-            JsonObject(
-                attributes.associate { attribute ->
-                    attribute.key to anyValueToJson(attribute.value)
-                },
-            ),
-        )
+        // Typed values straight from the protobuf values (no JSON intermediate, int64 kept exact)
+        val keys = Array(attributes.size) { attributes[it].key }
+        val values = Array(attributes.size) { anyValueToObject(attributes[it].value) }
+        return ObjectDictionary.of(keys, values)
     }
 
+    private fun anyValueToObject(anyValue: AnyValue): Any? =
+        when (anyValue.valueCase) {
+            AnyValue.ValueCase.STRING_VALUE -> anyValue.stringValue.replace("\r", "") //Remove carriage returns from strings
+            AnyValue.ValueCase.BOOL_VALUE -> anyValue.boolValue
+            AnyValue.ValueCase.INT_VALUE -> anyValue.intValue
+            AnyValue.ValueCase.DOUBLE_VALUE -> anyValue.doubleValue
+            AnyValue.ValueCase.BYTES_VALUE -> Base64.getEncoder().encodeToString(anyValue.bytesValue.toByteArray())
+            AnyValue.ValueCase.ARRAY_VALUE -> anyValue.arrayValue.valuesList.map(::anyValueToObject)
+            AnyValue.ValueCase.KVLIST_VALUE -> anyValue.kvlistValue.valuesList.associate { it.key to anyValueToObject(it.value) }
+            else -> null
+        }
+
     private fun anyValueToDisplayString(anyValue: AnyValue): String? =
         when (anyValue.valueCase) {
             AnyValue.ValueCase.STRING_VALUE -> anyValue.stringValue
@@ -374,14 +329,36 @@ class OtlpTelemetryDecoder(
             else -> JsonNull
         }
 
-    private fun bytesToHex(bytes: ByteString): String? {
-        if (bytes.isEmpty) {
-            return null
+    // IDs of the expected length are read straight from the message bytes (big-endian, as in the hex form)
+
+    private fun toTraceId(bytes: ByteString): TraceId? {
+        if (bytes.size() != 16) {
+            return TraceId.fromBytes(bytes.toByteArray())
         }
+        val buffer = bytes.asReadOnlyByteBuffer()
+        return TraceId(buffer.getLong(), buffer.getLong())
+    }
 
-        return bytes.toByteArray().joinToString(separator = "") { byte ->
-            "%02x".format(byte.toInt() and 0xff)
+    private fun toSpanId(bytes: ByteString): SpanId? {
+        if (bytes.size() != 8) {
+            return SpanId.fromBytes(bytes.toByteArray())
         }
+        return SpanId(bytes.asReadOnlyByteBuffer().getLong())
     }
+}
+
+/**
+ * Keeps the serialized message (far smaller than its pretty-printed JSON) and prints it only when displayed.
+ */
+internal class ProtobufRawJson(
+    private val message: ByteString,
+    private val parser: Parser<out MessageOrBuilder>,
+) : RawJsonSource {
+    override fun render(): String = jsonPrinter.print(parser.parseFrom(message))
 
-}
\ No newline at end of file
+    override fun estimatedSize(): Int = message.size()
+
+    companion object {
+        private val jsonPrinter: JsonFormat.Printer = JsonFormat.printer().alwaysPrintFieldsWithNoPresence()
+    }
+}
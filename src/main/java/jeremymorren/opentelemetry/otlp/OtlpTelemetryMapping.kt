@@ -0,0 +1,142 @@
+package jeremymorren.opentelemetry.otlp
+
+import io.opentelemetry.proto.logs.v1.SeverityNumber
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality
+import io.opentelemetry.proto.trace.v1.Span
+import io.opentelemetry.proto.trace.v1.Status
+import jeremymorren.opentelemetry.models.*
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * OTLP → domain model mapping shared by the protobuf ([OtlpWireTelemetryDecoder], [OtlpTelemetryDecoder]) and JSON ([OtlpJsonTelemetryDecoder]) decoders,
+ * so both encodings produce identical telemetry.
+ */
+internal object OtlpTelemetryMapping {
+    fun createLogMessage(
+        body: String?,
+        attributes: ObjectDictionary?,
+        severityNumber: Int,
+        severityText: String,
+        timeUnixNano: Long,
+        traceId: TraceId?,
+        spanId: SpanId?,
+        scopeName: String,
+    ): LogMessage =
+        LogMessage(
+            body = body,
+            formattedMessage = formatLogMessage(body, attributes),
+            logLevel = toLogLevel(severityNumber, severityText),
+            timestamp = toInstant(timeUnixNano),
+            exception = exceptionFromAttributes(attributes),
+            attributes = attributes,
+            traceId = traceId,
+            spanId = spanId,
+            categoryName = attributes?.getString("categoryName") ?: scopeName.takeUnless { it.isBlank() },
+            eventId = attributes?.getString("event.id")?.toIntOrNull()?.let { EventId(it, attributes.getString("event.name")) },
+        )
+
+    /**
+     * Formats a log message body using the Microsoft.Extensions.Logging / Serilog message template convention.
+     *
+     * The template is taken directly from [body]. Each `{PropertyName}` placeholder (with optional
+     * Serilog destructuring prefix `@` / `$` and format specifier `:fmt`) is replaced with the
+     * corresponding attribute value. If [attributes] is null, [body] is returned unchanged.
+     * Each distinct template is parsed once ([MessageTemplate]).
+     */
+    fun formatLogMessage(body: String?, attributes: ObjectDictionary?): String? {
+        if (attributes == null || body == null || body.indexOf('{') < 0) return body
+        return MessageTemplate.of(body).format(attributes)
+    }
+
+    /**
+     * Formats an AnyValue, decoded to its [ObjectDictionary] value, for display (e.g. a log body):
+     * arrays and key-value lists as JSON.
+     */
+    fun displayString(value: Any?): String? =
+        when (value) {
+            null -> null
+            is List<*>, is Map<*, *> -> ObjectDictionary.toJson(value).toString()
+            else -> value.toString()
+        }
+
+    fun exceptionFromAttributes(attributes: ObjectDictionary?): ExceptionInfo? {
+        if (attributes == null) {
+            return null
+        }
+
+        val message = attributes.getString("exception.message")
+        val type = attributes.getString("exception.type")
+        val stacktrace = attributes.getString("exception.stacktrace")
+        if (message == null && type == null && stacktrace == null) {
+            return null
+        }
+
+        return ExceptionInfo(
+            message = message,
+            display = stacktrace ?: message,
+            type = type,
+        )
+    }
+
+    fun toLogLevel(severityNumber: Int, severityText: String): LogLevel =
+        when {
+            severityNumber in SeverityNumber.SEVERITY_NUMBER_TRACE.number..SeverityNumber.SEVERITY_NUMBER_TRACE4.number -> LogLevel.Trace
+            severityNumber in SeverityNumber.SEVERITY_NUMBER_DEBUG.number..SeverityNumber.SEVERITY_NUMBER_DEBUG4.number -> LogLevel.Debug
+            severityNumber in SeverityNumber.SEVERITY_NUMBER_INFO.number..SeverityNumber.SEVERITY_NUMBER_INFO4.number -> LogLevel.Information
+            severityNumber in SeverityNumber.SEVERITY_NUMBER_WARN.number..SeverityNumber.SEVERITY_NUMBER_WARN4.number -> LogLevel.Warning
+            severityNumber in SeverityNumber.SEVERITY_NUMBER_ERROR.number..SeverityNumber.SEVERITY_NUMBER_ERROR4.number -> LogLevel.Error
+            severityNumber in SeverityNumber.SEVERITY_NUMBER_FATAL.number..SeverityNumber.SEVERITY_NUMBER_FATAL4.number -> LogLevel.Critical
+            severityText.equals("warning", ignoreCase = true) -> LogLevel.Warning
+            severityText.equals("error", ignoreCase = true) -> LogLevel.Error
+            severityText.equals("critical", ignoreCase = true) -> LogLevel.Critical
+            else -> LogLevel.Information
+        }
+
+    fun toActivityKind(kind: Span.SpanKind?): ActivityKind =
+        when (kind) {
+            Span.SpanKind.SPAN_KIND_SERVER -> ActivityKind.Server
+            Span.SpanKind.SPAN_KIND_CLIENT -> ActivityKind.Client
+            Span.SpanKind.SPAN_KIND_PRODUCER -> ActivityKind.Producer
+            Span.SpanKind.SPAN_KIND_CONSUMER -> ActivityKind.Consumer
+            else -> ActivityKind.Internal
+        }
+
+    fun toActivityStatus(code: Status.StatusCode?): ActivityStatusCode =
+        when (code) {
+            Status.StatusCode.STATUS_CODE_OK -> ActivityStatusCode.Ok
+            Status.StatusCode.STATUS_CODE_ERROR -> ActivityStatusCode.Error
+            else -> ActivityStatusCode.Unset
+        }
+
+    fun aggregationTemporality(temporality: AggregationTemporality?): String? =
+        when (temporality) {
+            null,
+            AggregationTemporality.AGGREGATION_TEMPORALITY_UNSPECIFIED,
+            AggregationTemporality.UNRECOGNIZED,
+            -> null
+
+            else -> temporality.name.removePrefix("AGGREGATION_TEMPORALITY_")
+        }
+
+    fun scopeToActivitySource(name: String, version: String): ActivitySource? {
+        if (name.isBlank()) {
+            return null
+        }
+        return ActivitySource(name, version.takeUnless { it.isBlank() })
+    }
+
+    fun toDuration(startTimeUnixNano: Long, endTimeUnixNano: Long): Duration? =
+        if (startTimeUnixNano > 0 && endTimeUnixNano >= startTimeUnixNano) {
+            Duration.ofNanos(endTimeUnixNano - startTimeUnixNano)
+        } else {
+            null
+        }
+
+    fun toInstant(unixNano: Long): Instant? =
+        if (unixNano <= 0) {
+            null
+        } else {
+            Instant.ofEpochSecond(0, unixNano)
+        }
+}
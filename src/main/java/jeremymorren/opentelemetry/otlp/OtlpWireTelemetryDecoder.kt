@@ -0,0 +1,767 @@
+package jeremymorren.opentelemetry.otlp
+
+import com.google.protobuf.ByteString
+import com.google.protobuf.CodedInputStream
+import com.google.protobuf.InvalidProtocolBufferException
+import com.google.protobuf.WireFormat
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest
+import io.opentelemetry.proto.common.v1.AnyValue
+import io.opentelemetry.proto.common.v1.ArrayValue
+import io.opentelemetry.proto.common.v1.InstrumentationScope
+import io.opentelemetry.proto.common.v1.KeyValue
+import io.opentelemetry.proto.common.v1.KeyValueList
+import io.opentelemetry.proto.logs.v1.LogRecord
+import io.opentelemetry.proto.logs.v1.ResourceLogs
+import io.opentelemetry.proto.logs.v1.ScopeLogs
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality
+import io.opentelemetry.proto.metrics.v1.ExponentialHistogram
+import io.opentelemetry.proto.metrics.v1.ExponentialHistogramDataPoint
+import io.opentelemetry.proto.metrics.v1.Gauge
+import io.opentelemetry.proto.metrics.v1.Histogram
+import io.opentelemetry.proto.metrics.v1.HistogramDataPoint
+import io.opentelemetry.proto.metrics.v1.Metric
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics
+import io.opentelemetry.proto.metrics.v1.ScopeMetrics
+import io.opentelemetry.proto.metrics.v1.Sum
+import io.opentelemetry.proto.metrics.v1.Summary
+import io.opentelemetry.proto.metrics.v1.SummaryDataPoint
+import io.opentelemetry.proto.resource.v1.Resource
+import io.opentelemetry.proto.trace.v1.ResourceSpans
+import io.opentelemetry.proto.trace.v1.ScopeSpans
+import io.opentelemetry.proto.trace.v1.Span
+import io.opentelemetry.proto.trace.v1.Status
+import jeremymorren.opentelemetry.models.*
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.aggregationTemporality
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.createLogMessage
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.displayString
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toActivityKind
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toActivityStatus
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toDuration
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.toInstant
+import java.io.InputStream
+import java.util.*
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Decodes OTLP/protobuf export requests straight from the wire format.
+ *
+ * [OtlpTelemetryDecoder] parses a request into the generated message graph (`ResourceSpans` → `ScopeSpans` → `Span`
+ * → `KeyValue` → `AnyValue`) and then copies it into the domain models. This decoder walks the message with
+ * [CodedInputStream] and builds the models directly: the only intermediates are the serialized bytes of each item
+ * (kept anyway for its raw JSON) and of each resource and scope (the [TelemetryInterner] keys, so a resource seen
+ * before is not decoded again). Field numbers are taken from the generated classes.
+ *
+ * The items of large requests (e.g. a batch processor flushing thousands of spans) are decoded in parallel, in chunks
+ * of up to [CHUNK_SIZE]; they are returned in request order either way.
+ *
+ * Produces the same telemetry as [OtlpTelemetryDecoder], and rejects the same malformed input
+ * ([InvalidProtocolBufferException]). Repeated occurrences of a singular sub-message are merged, as protobuf
+ * specifies, for resources, scopes, span status and metric data; attribute values and log bodies are assumed to occur
+ * once (as every encoder writes them) and the last one wins.
+ */
+class OtlpWireTelemetryDecoder(
+    private val telemetryFactory: TelemetryFactory = TelemetryFactory(),
+    /**
+     * The number of items from which a request is decoded in parallel (on the common ForkJoin pool);
+     * smaller requests are decoded on the calling thread, where forking would cost more than it saves.
+     */
+    private val parallelThreshold: Int = DEFAULT_PARALLEL_THRESHOLD,
+) {
+    private val interner = TelemetryInterner()
+
+    fun decodeTraces(payload: ByteArray): List<TelemetryItem> = decodeTraces(CodedInputStream.newInstance(payload))
+
+    /**
+     * Decodes a (possibly decompressing) stream without buffering the whole request into an array.
+     */
+    fun decodeTraces(input: InputStream): List<TelemetryItem> = decodeTraces(CodedInputStream.newInstance(input))
+
+    fun decodeLogs(payload: ByteArray): List<TelemetryItem> = decodeLogs(CodedInputStream.newInstance(payload))
+
+    fun decodeLogs(input: InputStream): List<TelemetryItem> = decodeLogs(CodedInputStream.newInstance(input))
+
+    fun decodeMetrics(payload: ByteArray): List<TelemetryItem> = decodeMetrics(CodedInputStream.newInstance(payload))
+
+    fun decodeMetrics(input: InputStream): List<TelemetryItem> = decodeMetrics(CodedInputStream.newInstance(input))
+
+    private fun decodeTraces(input: CodedInputStream): List<TelemetryItem> =
+        decode(
+            input,
+            ExportTraceServiceRequest.RESOURCE_SPANS_FIELD_NUMBER,
+            ResourceSpans.RESOURCE_FIELD_NUMBER,
+            ResourceSpans.SCOPE_SPANS_FIELD_NUMBER,
+            ScopeSpans.SCOPE_FIELD_NUMBER,
+            ScopeSpans.SPANS_FIELD_NUMBER,
+        ) { bytes, scope, resource ->
+            val telemetry = readSpan(bytes.newCodedInput(), ITEM_DEPTH, scope, resource)
+            telemetryFactory.createFromTelemetry(telemetry, ProtobufRawJson(bytes, Span.parser()))
+        }
+
+    private fun decodeLogs(input: CodedInputStream): List<TelemetryItem> =
+        decode(
+            input,
+            ExportLogsServiceRequest.RESOURCE_LOGS_FIELD_NUMBER,
+            ResourceLogs.RESOURCE_FIELD_NUMBER,
+            ResourceLogs.SCOPE_LOGS_FIELD_NUMBER,
+            ScopeLogs.SCOPE_FIELD_NUMBER,
+            ScopeLogs.LOG_RECORDS_FIELD_NUMBER,
+        ) { bytes, scope, resource ->
+            val telemetry = readLogRecord(bytes.newCodedInput(), ITEM_DEPTH, scope, resource)
+            telemetryFactory.createFromTelemetry(telemetry, ProtobufRawJson(bytes, LogRecord.parser()))
+        }
+
+    private fun decodeMetrics(input: CodedInputStream): List<TelemetryItem> =
+        decode(
+            input,
+            ExportMetricsServiceRequest.RESOURCE_METRICS_FIELD_NUMBER,
+            ResourceMetrics.RESOURCE_FIELD_NUMBER,
+            ResourceMetrics.SCOPE_METRICS_FIELD_NUMBER,
+            ScopeMetrics.SCOPE_FIELD_NUMBER,
+            ScopeMetrics.METRICS_FIELD_NUMBER,
+        ) { bytes, scope, resource ->
+            val telemetry = readMetric(bytes.newCodedInput(), ITEM_DEPTH, scope, resource)
+            telemetryFactory.createFromTelemetry(telemetry, ProtobufRawJson(bytes, Metric.parser()))
+        }
+
+    /**
+     * Decodes `request { repeated resourceX { resource, repeated scopeX { scope, repeated item } } }`.
+     *
+     * Fields may come in any order, so each item's bytes are kept until the enclosing scope and resource are known,
+     * then decoded by [decodeItem]: on this thread for small requests, otherwise in parallel (see [DecodeChunksTask]).
+     */
+    private fun decode(
+        input: CodedInputStream,
+        resourceListField: Int,
+        resourceField: Int,
+        scopeListField: Int,
+        scopeField: Int,
+        itemListField: Int,
+        decodeItem: (bytes: ByteString, scope: DecodedScope, resource: ObjectDictionary?) -> TelemetryItem,
+    ): List<TelemetryItem> {
+        val chunks = ArrayList<ItemChunk>()
+        var itemCount = 0
+        input.readFields { tag ->
+            if (tag != lengthDelimited(resourceListField)) {
+                input.skip(tag)
+                return@readFields
+            }
+            var resourceBytes: ByteString? = null
+            val scopes = ArrayList<Pair<ByteString?, List<ByteString>>>()
+            input.readMessage(1) { resourceTag ->
+                when (resourceTag) {
+                    lengthDelimited(resourceField) -> resourceBytes = merge(resourceBytes, input.readBytes())
+                    lengthDelimited(scopeListField) -> {
+                        var scopeBytes: ByteString? = null
+                        val itemBytes = ArrayList<ByteString>()
+                        input.readMessage(2) { scopeTag ->
+                            when (scopeTag) {
+                                lengthDelimited(scopeField) -> scopeBytes = merge(scopeBytes, input.readBytes())
+                                lengthDelimited(itemListField) -> itemBytes.add(input.readBytes())
+                                else -> input.skip(scopeTag)
+                            }
+                        }
+                        scopes.add(scopeBytes to itemBytes)
+                    }
+
+                    else -> input.skip(resourceTag)
+                }
+            }
+
+            // Resources and scopes are decoded (and interned) here, so the chunks share them
+            val resource = resourceBytes?.let(::internResource)
+            for ((scopeBytes, itemBytes) in scopes) {
+                val scope = scopeBytes?.let(::internScope) ?: DecodedScope.EMPTY
+                // Large scopes (e.g. a batch processor flush) are split so that they decode in parallel too
+                for (from in itemBytes.indices step CHUNK_SIZE) {
+                    val chunkItems = itemBytes.subList(from, minOf(from + CHUNK_SIZE, itemBytes.size))
+                    chunks.add(ItemChunk(chunkItems, scope, resource, itemCount + from))
+                }
+                itemCount += itemBytes.size
+            }
+        }
+
+        val items = arrayOfNulls<TelemetryItem>(itemCount)
+        if (itemCount < parallelThreshold || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            for (chunk in chunks) {
+                chunk.decodeInto(items, decodeItem)
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(DecodeChunksTask(chunks, 0, chunks.size, items, decodeItem))
+        }
+        @Suppress("UNCHECKED_CAST")
+        return (items as Array<TelemetryItem>).asList()
+    }
+
+    /**
+     * Items of one scope (or a part of a large one), with the position of the first in the decoded request.
+     */
+    private class ItemChunk(
+        val items: List<ByteString>,
+        val scope: DecodedScope,
+        val resource: ObjectDictionary?,
+        val offset: Int,
+    ) {
+        fun decodeInto(
+            output: Array<TelemetryItem?>,
+            decodeItem: (bytes: ByteString, scope: DecodedScope, resource: ObjectDictionary?) -> TelemetryItem,
+        ) {
+            for (i in items.indices) {
+                output[offset + i] = decodeItem(items[i], scope, resource)
+            }
+        }
+    }
+
+    /**
+     * Decodes [chunks] from [from] until [to] by halving the range, each chunk into its own slots of [output]
+     * (so the items keep their request order whichever thread decodes them).
+     */
+    private class DecodeChunksTask(
+        private val chunks: List<ItemChunk>,
+        private val from: Int,
+        private val to: Int,
+        private val output: Array<TelemetryItem?>,
+        private val decodeItem: (bytes: ByteString, scope: DecodedScope, resource: ObjectDictionary?) -> TelemetryItem,
+    ) : RecursiveAction() {
+        override fun compute() {
+            if (to - from == 1) {
+                chunks[from].decodeInto(output, decodeItem)
+                return
+            }
+            val middle = (from + to) ushr 1
+            invokeAll(
+                DecodeChunksTask(chunks, from, middle, output, decodeItem),
+                DecodeChunksTask(chunks, middle, to, output, decodeItem),
+            )
+        }
+    }
+
+    /**
+     * Decodes a resource, sharing the instance with earlier requests that sent the same resource bytes.
+     */
+    private fun internResource(bytes: ByteString): ObjectDictionary? =
+        interner.resource(bytes) {
+            val attributes = AttributeList()
+            bytes.newCodedInput().readFields(depth = 2) { tag ->
+                when (tag) {
+                    lengthDelimited(Resource.ATTRIBUTES_FIELD_NUMBER) -> attributes.read(this, 3)
+                    else -> skip(tag)
+                }
+            }
+            attributes.build()
+        }
+
+    private fun internScope(bytes: ByteString): DecodedScope =
+        interner.scope(bytes) {
+            var name = ""
+            var version = ""
+            val attributes = AttributeList()
+            bytes.newCodedInput().readFields(depth = 3) { tag ->
+                when (tag) {
+                    lengthDelimited(InstrumentationScope.NAME_FIELD_NUMBER) -> name = readStringRequireUtf8()
+                    lengthDelimited(InstrumentationScope.VERSION_FIELD_NUMBER) -> version = readStringRequireUtf8()
+                    lengthDelimited(InstrumentationScope.ATTRIBUTES_FIELD_NUMBER) -> attributes.read(this, 4)
+                    else -> skip(tag)
+                }
+            }
+            DecodedScope(name, version, attributes.build())
+        }
+
+    private fun readSpan(input: CodedInputStream, depth: Int, scope: DecodedScope, resource: ObjectDictionary?): Telemetry {
+        var traceId: TraceId? = null
+        var spanId: SpanId? = null
+        var parentSpanId: SpanId? = null
+        var flags = 0
+        var name = ""
+        var kind = 0
+        var startTimeUnixNano = 0L
+        var endTimeUnixNano = 0L
+        val attributes = AttributeList()
+        val events = ArrayList<ActivityEvent>()
+        var statusCode = 0
+        var statusMessage = ""
+        input.readFields(depth) { tag ->
+            when (tag) {
+                lengthDelimited(Span.TRACE_ID_FIELD_NUMBER) -> traceId = readTraceId(input)
+                lengthDelimited(Span.SPAN_ID_FIELD_NUMBER) -> spanId = readSpanId(input)
+                lengthDelimited(Span.PARENT_SPAN_ID_FIELD_NUMBER) -> parentSpanId = readSpanId(input)
+                fixed32(Span.FLAGS_FIELD_NUMBER) -> flags = input.readFixed32()
+                lengthDelimited(Span.NAME_FIELD_NUMBER) -> name = input.readStringRequireUtf8()
+                varint(Span.KIND_FIELD_NUMBER) -> kind = input.readEnum()
+                fixed64(Span.START_TIME_UNIX_NANO_FIELD_NUMBER) -> startTimeUnixNano = input.readFixed64()
+                fixed64(Span.END_TIME_UNIX_NANO_FIELD_NUMBER) -> endTimeUnixNano = input.readFixed64()
+                lengthDelimited(Span.ATTRIBUTES_FIELD_NUMBER) -> attributes.read(input, depth + 1)
+                lengthDelimited(Span.EVENTS_FIELD_NUMBER) -> events.add(readEvent(input, depth + 1))
+                lengthDelimited(Span.STATUS_FIELD_NUMBER) -> input.readMessage(depth + 1) { statusTag ->
+                    when (statusTag) {
+                        varint(Status.CODE_FIELD_NUMBER) -> statusCode = input.readEnum()
+                        lengthDelimited(Status.MESSAGE_FIELD_NUMBER) -> statusMessage = input.readStringRequireUtf8()
+                        else -> input.skip(statusTag)
+                    }
+                }
+
+                else -> input.skip(tag)
+            }
+        }
+
+        val activity = Activity(
+            traceId = traceId,
+            spanId = spanId,
+            parentSpanId = parentSpanId,
+            activityTraceFlags = flags.toString(),
+            source = scope.activitySource,
+            displayName = name.takeUnless { it.isBlank() },
+            kind = toActivityKind(Span.SpanKind.forNumber(kind)),
+            startTime = toInstant(startTimeUnixNano),
+            duration = toDuration(startTimeUnixNano, endTimeUnixNano),
+            tags = attributes.build(),
+            operationName = name.takeUnless { it.isBlank() },
+            status = toActivityStatus(Status.StatusCode.forNumber(statusCode)),
+            statusDescription = statusMessage.takeUnless { it.isBlank() },
+            events = events,
+        )
+        return Telemetry(activity = activity, resource = resource)
+    }
+
+    private fun readEvent(input: CodedInputStream, depth: Int): ActivityEvent {
+        var name = ""
+        var timeUnixNano = 0L
+        val attributes = AttributeList()
+        input.readMessage(depth) { tag ->
+            when (tag) {
+                fixed64(Span.Event.TIME_UNIX_NANO_FIELD_NUMBER) -> timeUnixNano = input.readFixed64()
+                lengthDelimited(Span.Event.NAME_FIELD_NUMBER) -> name = input.readStringRequireUtf8()
+                lengthDelimited(Span.Event.ATTRIBUTES_FIELD_NUMBER) -> attributes.read(input, depth + 1)
+                else -> input.skip(tag)
+            }
+        }
+        return ActivityEvent(
+            name = name.takeUnless { it.isBlank() },
+            timestamp = toInstant(timeUnixNano),
+            tags = attributes.build(),
+        )
+    }
+
+    private fun readLogRecord(input: CodedInputStream, depth: Int, scope: DecodedScope, resource: ObjectDictionary?): Telemetry {
+        var timeUnixNano = 0L
+        var severityNumber = 0
+        var severityText = ""
+        var body: Any? = null
+        val attributes = AttributeList()
+        var traceId: TraceId? = null
+        var spanId: SpanId? = null
+        input.readFields(depth) { tag ->
+            when (tag) {
+                fixed64(LogRecord.TIME_UNIX_NANO_FIELD_NUMBER) -> timeUnixNano = input.readFixed64()
+                varint(LogRecord.SEVERITY_NUMBER_FIELD_NUMBER) -> severityNumber = input.readEnum()
+                lengthDelimited(LogRecord.SEVERITY_TEXT_FIELD_NUMBER) -> severityText = input.readStringRequireUtf8()
+                // The body is displayed as sent (carriage returns kept)
+                lengthDelimited(LogRecord.BODY_FIELD_NUMBER) -> body = readAnyValue(input, depth + 1, stripCarriageReturns = false)
+                lengthDelimited(LogRecord.ATTRIBUTES_FIELD_NUMBER) -> attributes.read(input, depth + 1)
+                lengthDelimited(LogRecord.TRACE_ID_FIELD_NUMBER) -> traceId = readTraceId(input)
+                lengthDelimited(LogRecord.SPAN_ID_FIELD_NUMBER) -> spanId = readSpanId(input)
+                else -> input.skip(tag)
+            }
+        }
+
+        val log = createLogMessage(
+            body = displayString(body),
+            attributes = attributes.build(),
+            severityNumber = severityNumber,
+            severityText = severityText,
+            timeUnixNano = timeUnixNano,
+            traceId = traceId,
+            spanId = spanId,
+            scopeName = scope.name,
+        )
+        return Telemetry(log = log, resource = resource)
+    }
+
+    private fun readMetric(input: CodedInputStream, depth: Int, scope: DecodedScope, resource: ObjectDictionary?): Telemetry {
+        var name = ""
+        var description = ""
+        var unit = ""
+        // The data oneof: the field number of the data message read last (0 if none)
+        var dataField = 0
+        var temporality = 0
+        var points = ArrayList<MetricPoint>()
+        input.readFields(depth) { tag ->
+            when (tag) {
+                lengthDelimited(Metric.NAME_FIELD_NUMBER) -> name = input.readStringRequireUtf8()
+                lengthDelimited(Metric.DESCRIPTION_FIELD_NUMBER) -> description = input.readStringRequireUtf8()
+                lengthDelimited(Metric.UNIT_FIELD_NUMBER) -> unit = input.readStringRequireUtf8()
+                lengthDelimited(Metric.GAUGE_FIELD_NUMBER),
+                lengthDelimited(Metric.SUM_FIELD_NUMBER),
+                lengthDelimited(Metric.HISTOGRAM_FIELD_NUMBER),
+                lengthDelimited(Metric.EXPONENTIAL_HISTOGRAM_FIELD_NUMBER),
+                lengthDelimited(Metric.SUMMARY_FIELD_NUMBER),
+                -> {
+                    val field = WireFormat.getTagFieldNumber(tag)
+                    // Another data field replaces the oneof; the same one again is merged into it
+                    if (field != dataField) {
+                        dataField = field
+                        temporality = 0
+                        points = ArrayList()
+                    }
+                    input.readMessage(depth + 1) { dataTag ->
+                        when {
+                            dataTag == lengthDelimited(DATA_POINTS_FIELD_NUMBER) ->
+                                points.add(readDataPoint(input, depth + 2, field))
+
+                            dataTag == varint(AGGREGATION_TEMPORALITY_FIELD_NUMBER) && field in TEMPORALITY_DATA_FIELDS ->
+                                temporality = input.readEnum()
+
+                            else -> input.skip(dataTag)
+                        }
+                    }
+                }
+
+                else -> input.skip(tag)
+            }
+        }
+
+        val metricType = when (dataField) {
+            Metric.GAUGE_FIELD_NUMBER -> "Gauge"
+            Metric.SUM_FIELD_NUMBER -> "Sum"
+            Metric.HISTOGRAM_FIELD_NUMBER -> "Histogram"
+            Metric.EXPONENTIAL_HISTOGRAM_FIELD_NUMBER -> "ExponentialHistogram"
+            Metric.SUMMARY_FIELD_NUMBER -> "Summary"
+            else -> Metric.DataCase.DATA_NOT_SET.name
+        }
+        val mappedMetric = jeremymorren.opentelemetry.models.Metric(
+            metricType = metricType,
+            temporality = if (dataField in TEMPORALITY_DATA_FIELDS) aggregationTemporality(AggregationTemporality.forNumber(temporality)) else null,
+            name = name.takeUnless { it.isBlank() },
+            description = description.takeUnless { it.isBlank() },
+            unit = unit.takeUnless { it.isBlank() },
+            meterName = scope.name.takeUnless { it.isBlank() },
+            meterVersion = scope.version.takeUnless { it.isBlank() },
+            meterTags = scope.attributes,
+            points = points,
+        )
+        return Telemetry(metric = mappedMetric, resource = resource)
+    }
+
+    /**
+     * Reads a data point of the metric data message with field number [dataField].
+     */
+    private fun readDataPoint(input: CodedInputStream, depth: Int, dataField: Int): MetricPoint =
+        when (dataField) {
+            Metric.GAUGE_FIELD_NUMBER, Metric.SUM_FIELD_NUMBER -> readNumberDataPoint(input, depth)
+            Metric.HISTOGRAM_FIELD_NUMBER -> readHistogramDataPoint(
+                input, depth,
+                HistogramDataPoint.ATTRIBUTES_FIELD_NUMBER,
+                HistogramDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER,
+                HistogramDataPoint.TIME_UNIX_NANO_FIELD_NUMBER,
+                HistogramDataPoint.COUNT_FIELD_NUMBER,
+                HistogramDataPoint.SUM_FIELD_NUMBER,
+                defaultSum = null,
+            )
+
+            Metric.EXPONENTIAL_HISTOGRAM_FIELD_NUMBER -> readHistogramDataPoint(
+                input, depth,
+                ExponentialHistogramDataPoint.ATTRIBUTES_FIELD_NUMBER,
+                ExponentialHistogramDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER,
+                ExponentialHistogramDataPoint.TIME_UNIX_NANO_FIELD_NUMBER,
+                ExponentialHistogramDataPoint.COUNT_FIELD_NUMBER,
+                ExponentialHistogramDataPoint.SUM_FIELD_NUMBER,
+                defaultSum = null,
+            )
+
+            // The summary sum isn't optional (0 if not sent)
+            else -> readHistogramDataPoint(
+                input, depth,
+                SummaryDataPoint.ATTRIBUTES_FIELD_NUMBER,
+                SummaryDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER,
+                SummaryDataPoint.TIME_UNIX_NANO_FIELD_NUMBER,
+                SummaryDataPoint.COUNT_FIELD_NUMBER,
+                SummaryDataPoint.SUM_FIELD_NUMBER,
+                defaultSum = 0.0,
+            )
+        }
+
+    private fun readNumberDataPoint(input: CodedInputStream, depth: Int): MetricPoint {
+        var startTimeUnixNano = 0L
+        var timeUnixNano = 0L
+        val attributes = AttributeList()
+        var longValue: Long? = null
+        var doubleValue: Double? = null
+        input.readMessage(depth) { tag ->
+            when (tag) {
+                fixed64(NumberDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER) -> startTimeUnixNano = input.readFixed64()
+                fixed64(NumberDataPoint.TIME_UNIX_NANO_FIELD_NUMBER) -> timeUnixNano = input.readFixed64()
+                lengthDelimited(NumberDataPoint.ATTRIBUTES_FIELD_NUMBER) -> attributes.read(input, depth + 1)
+                // The value oneof: the last one wins
+                fixed64(NumberDataPoint.AS_DOUBLE_FIELD_NUMBER) -> {
+                    doubleValue = input.readDouble()
+                    longValue = null
+                }
+
+                fixed64(NumberDataPoint.AS_INT_FIELD_NUMBER) -> {
+                    longValue = input.readSFixed64()
+                    doubleValue = null
+                }
+
+                else -> input.skip(tag)
+            }
+        }
+        return MetricPoint(
+            startTime = toInstant(startTimeUnixNano),
+            endTime = toInstant(timeUnixNano),
+            tags = attributes.build(),
+            longSum = longValue,
+            doubleSum = doubleValue,
+            longGauge = longValue,
+            doubleGauge = doubleValue,
+        )
+    }
+
+    /**
+     * Reads a histogram, exponential histogram or summary data point (only the fields the models keep).
+     */
+    private fun readHistogramDataPoint(
+        input: CodedInputStream,
+        depth: Int,
+        attributesField: Int,
+        startTimeField: Int,
+        timeField: Int,
+        countField: Int,
+        sumField: Int,
+        defaultSum: Double?,
+    ): MetricPoint {
+        var startTimeUnixNano = 0L
+        var timeUnixNano = 0L
+        val attributes = AttributeList()
+        var count = 0L
+        var sum = defaultSum
+        input.readMessage(depth) { tag ->
+            when (tag) {
+                fixed64(startTimeField) -> startTimeUnixNano = input.readFixed64()
+                fixed64(timeField) -> timeUnixNano = input.readFixed64()
+                lengthDelimited(attributesField) -> attributes.read(input, depth + 1)
+                fixed64(countField) -> count = input.readFixed64()
+                fixed64(sumField) -> sum = input.readDouble()
+                else -> input.skip(tag)
+            }
+        }
+        return MetricPoint(
+            startTime = toInstant(startTimeUnixNano),
+            endTime = toInstant(timeUnixNano),
+            tags = attributes.build(),
+            histogramCount = count,
+            histogramSum = sum,
+        )
+    }
+
+    /**
+     * Collects repeated `KeyValue` attributes into an [ObjectDictionary].
+     */
+    private class AttributeList {
+        private var keys: ArrayList<String>? = null
+        private var values: ArrayList<Any?>? = null
+
+        fun read(input: CodedInputStream, depth: Int) {
+            readKeyValue(input, depth, stripCarriageReturns = true) { key, value ->
+                (keys ?: ArrayList<String>().also { keys = it }).add(key)
+                (values ?: ArrayList<Any?>().also { values = it }).add(value)
+            }
+        }
+
+        fun build(): ObjectDictionary? {
+            val keys = keys ?: return null
+            // Typed values straight from the wire (no JSON intermediate, int64 kept exact)
+            return ObjectDictionary.of(keys.toTypedArray(), values!!.toTypedArray())
+        }
+    }
+
+    private companion object {
+        /**
+         * The nesting depth of items: request → resource list entry → scope list entry → item.
+         */
+        const val ITEM_DEPTH = 3
+
+        const val DEFAULT_PARALLEL_THRESHOLD = 1024
+
+        /**
+         * The maximum number of items decoded by a single task.
+         */
+        const val CHUNK_SIZE = 256
+
+        /**
+         * The maximum nesting depth of messages, as enforced by [CodedInputStream] for generated messages.
+         */
+        const val RECURSION_LIMIT = 100
+
+        // The same in all five metric data messages
+        val DATA_POINTS_FIELD_NUMBER = Gauge.DATA_POINTS_FIELD_NUMBER
+        val AGGREGATION_TEMPORALITY_FIELD_NUMBER = Sum.AGGREGATION_TEMPORALITY_FIELD_NUMBER
+
+        /**
+         * The metric data messages with an aggregation temporality.
+         */
+        val TEMPORALITY_DATA_FIELDS = intArrayOf(
+            Metric.SUM_FIELD_NUMBER,
+            Metric.HISTOGRAM_FIELD_NUMBER,
+            Metric.EXPONENTIAL_HISTOGRAM_FIELD_NUMBER,
+        )
+
+        init {
+            check(
+                DATA_POINTS_FIELD_NUMBER == Sum.DATA_POINTS_FIELD_NUMBER &&
+                    DATA_POINTS_FIELD_NUMBER == Histogram.DATA_POINTS_FIELD_NUMBER &&
+                    DATA_POINTS_FIELD_NUMBER == ExponentialHistogram.DATA_POINTS_FIELD_NUMBER &&
+                    DATA_POINTS_FIELD_NUMBER == Summary.DATA_POINTS_FIELD_NUMBER &&
+                    AGGREGATION_TEMPORALITY_FIELD_NUMBER == Histogram.AGGREGATION_TEMPORALITY_FIELD_NUMBER &&
+                    AGGREGATION_TEMPORALITY_FIELD_NUMBER == ExponentialHistogram.AGGREGATION_TEMPORALITY_FIELD_NUMBER
+            )
+        }
+
+        fun varint(field: Int): Int = field shl 3 or WireFormat.WIRETYPE_VARINT
+
+        fun fixed64(field: Int): Int = field shl 3 or WireFormat.WIRETYPE_FIXED64
+
+        fun lengthDelimited(field: Int): Int = field shl 3 or WireFormat.WIRETYPE_LENGTH_DELIMITED
+
+        fun fixed32(field: Int): Int = field shl 3 or WireFormat.WIRETYPE_FIXED32
+
+        /**
+         * Invokes [readField] with the tag of each field up to the current limit (or the end of the input).
+         * [readField] must consume the field's value (e.g. via [skip]).
+         */
+        inline fun CodedInputStream.readFields(readField: CodedInputStream.(tag: Int) -> Unit) {
+            while (true) {
+                val tag = readTag()
+                if (tag == 0) {
+                    return
+                }
+                readField(tag)
+            }
+        }
+
+        /**
+         * [readFields] of a message at the given nesting [depth] (read from its own bytes).
+         */
+        inline fun CodedInputStream.readFields(depth: Int, readField: CodedInputStream.(tag: Int) -> Unit) {
+            checkDepth(depth)
+            readFields(readField)
+        }
+
+        /**
+         * Reads the length-delimited message at the current field, at the given nesting [depth].
+         */
+        inline fun CodedInputStream.readMessage(depth: Int, readField: CodedInputStream.(tag: Int) -> Unit) {
+            checkDepth(depth)
+            val limit = pushLimit(readRawVarint32())
+            readFields(readField)
+            popLimit(limit)
+        }
+
+        fun checkDepth(depth: Int) {
+            if (depth > RECURSION_LIMIT) {
+                throw InvalidProtocolBufferException(
+                    "Protocol message had too many levels of nesting.  May be malicious.  " +
+                        "Use setRecursionLimit() to increase the recursion depth limit."
+                )
+            }
+        }
+
+        fun CodedInputStream.skip(tag: Int) {
+            // An end-group tag outside of a group: the generated parsers reject it too
+            if (!skipField(tag)) {
+                throw InvalidProtocolBufferException("Protocol message end-group tag did not match expected tag.")
+            }
+        }
+
+        /**
+         * Merges a repeated occurrence of a singular message field: the concatenation of two messages is their merge.
+         */
+        fun merge(current: ByteString?, next: ByteString): ByteString = current?.concat(next) ?: next
+
+        inline fun readKeyValue(
+            input: CodedInputStream,
+            depth: Int,
+            stripCarriageReturns: Boolean,
+            action: (key: String, value: Any?) -> Unit,
+        ) {
+            var key = ""
+            var value: Any? = null
+            input.readMessage(depth) { tag ->
+                when (tag) {
+                    lengthDelimited(KeyValue.KEY_FIELD_NUMBER) -> key = readStringRequireUtf8()
+                    lengthDelimited(KeyValue.VALUE_FIELD_NUMBER) -> value = readAnyValue(this, depth + 1, stripCarriageReturns)
+                    else -> skip(tag)
+                }
+            }
+            action(key, value)
+        }
+
+        /**
+         * Reads an AnyValue as the native value stored in an [ObjectDictionary] (null for an empty value).
+         */
+        fun readAnyValue(input: CodedInputStream, depth: Int, stripCarriageReturns: Boolean): Any? {
+            var value: Any? = null
+            input.readMessage(depth) { tag ->
+                when (tag) {
+                    lengthDelimited(AnyValue.STRING_VALUE_FIELD_NUMBER) ->
+                        value = readStringRequireUtf8().let { if (stripCarriageReturns) it.replace("\r", "") else it }
+
+                    varint(AnyValue.BOOL_VALUE_FIELD_NUMBER) -> value = readBool()
+                    varint(AnyValue.INT_VALUE_FIELD_NUMBER) -> value = readInt64()
+                    fixed64(AnyValue.DOUBLE_VALUE_FIELD_NUMBER) -> value = readDouble()
+                    lengthDelimited(AnyValue.BYTES_VALUE_FIELD_NUMBER) -> value = Base64.getEncoder().encodeToString(readByteArray())
+                    lengthDelimited(AnyValue.ARRAY_VALUE_FIELD_NUMBER) -> {
+                        val values = ArrayList<Any?>()
+                        readMessage(depth + 1) { arrayTag ->
+                            when (arrayTag) {
+                                lengthDelimited(ArrayValue.VALUES_FIELD_NUMBER) ->
+                                    values.add(readAnyValue(this, depth + 2, stripCarriageReturns))
+
+                                else -> skip(arrayTag)
+                            }
+                        }
+                        value = values
+                    }
+
+                    lengthDelimited(AnyValue.KVLIST_VALUE_FIELD_NUMBER) -> {
+                        val values = LinkedHashMap<String, Any?>()
+                        readMessage(depth + 1) { kvlistTag ->
+                            when (kvlistTag) {
+                                lengthDelimited(KeyValueList.VALUES_FIELD_NUMBER) ->
+                                    readKeyValue(this, depth + 2, stripCarriageReturns) { k, v -> values[k] = v }
+
+                                else -> skip(kvlistTag)
+                            }
+                        }
+                        value = values
+                    }
+
+                    else -> skip(tag)
+                }
+            }
+            return value
+        }
+
+        // IDs of the expected length are read straight from the wire (big-endian, as in the hex form)
+
+        fun readTraceId(input: CodedInputStream): TraceId? {
+            val length = input.readRawVarint32()
+            if (length != 16) {
+                return TraceId.fromBytes(input.readRawBytes(length))
+            }
+            return TraceId(readBigEndianLong(input), readBigEndianLong(input))
+        }
+
+        fun readSpanId(input: CodedInputStream): SpanId? {
+            val length = input.readRawVarint32()
+            if (length != 8) {
+                return SpanId.fromBytes(input.readRawBytes(length))
+            }
+            return SpanId(readBigEndianLong(input))
+        }
+
+        private fun readBigEndianLong(input: CodedInputStream): Long = java.lang.Long.reverseBytes(input.readRawLittleEndian64())
+    }
+}
@@ -0,0 +1,246 @@
+package jeremymorren.opentelemetry.otlp
+
+import jeremymorren.opentelemetry.models.LogLevel
+import jeremymorren.opentelemetry.models.Telemetry
+import jeremymorren.opentelemetry.models.TelemetryItem
+import jeremymorren.opentelemetry.models.TelemetryType
+import jeremymorren.opentelemetry.models.TraceId
+import jeremymorren.opentelemetry.models.TraceSummary
+import jeremymorren.opentelemetry.models.TraceTree
+import jeremymorren.opentelemetry.settings.HistoryEvictionPolicy
+import java.util.TreeMap
+
+/**
+ * The telemetry received for one project scope, bounded by an estimated memory budget
+ * (the sum of [TelemetryItem.estimatedSize]).
+ *
+ * When an added item takes the history over its budget, items are evicted until it is back under
+ * [LOW_WATERMARK] of the budget, so evictions (and the listener refreshes they cause) happen in batches.
+ * The [HistoryEvictionPolicy] decides which items go first: every item is given a retention rank, and the oldest
+ * item of the lowest non-empty rank is evicted first. Items are always replayed in arrival order.
+ *
+ * The spans of the history are indexed by trace ([TraceIndex]), so span trees can be assembled; evicted spans
+ * are removed from the index.
+ *
+ * Thread-safe: all members synchronize on the history.
+ */
+class TelemetryHistory(budgetBytes: Long, policy: HistoryEvictionPolicy) {
+    private var budgetBytes = budgetBytes
+    private var policy = policy
+
+    // Items by retention rank (index), each ordered by arrival sequence number
+    private val ranks = Array(RANK_COUNT) { TreeMap<Long, Entry>() }
+    private var nextSequence = 0L
+    private var usedBytes = 0L
+    private var itemCount = 0
+
+    // Traces known to contain an error (KeepErrorTraces); insertion-ordered so the oldest can be forgotten
+    private val errorTraceIds = LinkedHashSet<TraceId>()
+
+    private val traceIndex = TraceIndex()
+
+    /**
+     * Adds an item, evicting items if the history exceeds its budget.
+     *
+     * @return the evicted items (empty if none)
+     */
+    @Synchronized
+    fun add(item: TelemetryItem): List<TelemetryItem> {
+        append(item)
+        return evictIfOverBudget()
+    }
+
+    /**
+     * Adds a batch of items, then evicts items if the history exceeds its budget
+     * (which may include items of the batch itself).
+     *
+     * @return the evicted items (empty if none)
+     */
+    @Synchronized
+    fun addAll(items: List<TelemetryItem>): List<TelemetryItem> {
+        items.forEach { append(it) }
+        return evictIfOverBudget()
+    }
+
+    /**
+     * Changes the budget and eviction policy; items are re-ranked if the policy changed.
+     *
+     * @return the items evicted to fit the new budget (empty if none)
+     */
+    @Synchronized
+    fun configure(budgetBytes: Long, policy: HistoryEvictionPolicy): List<TelemetryItem> {
+        if (budgetBytes == this.budgetBytes && policy == this.policy) {
+            return emptyList()
+        }
+        this.budgetBytes = budgetBytes
+        if (policy != this.policy) {
+            this.policy = policy
+            val entries = entriesInArrivalOrder()
+            ranks.forEach { it.clear() }
+            errorTraceIds.clear()
+            if (policy == HistoryEvictionPolicy.KeepErrorTraces) {
+                entries.filter { it.traceId != null && isError(it.item.telemetry) }.forEach { rememberErrorTrace(it.traceId!!) }
+            }
+            entries.forEach { ranks[rankOf(it)][it.sequence] = it }
+        }
+        return evictIfOverBudget()
+    }
+
+    /**
+     * Invokes [action] for each retained item in arrival order, while holding the history lock
+     * (so no item is added or evicted concurrently).
+     */
+    @Synchronized
+    fun forEach(action: (TelemetryItem) -> Unit) {
+        entriesInArrivalOrder().forEach { action(it.item) }
+    }
+
+    /**
+     * Invokes [action] once with all retained items in arrival order, while holding the history lock.
+     */
+    @Synchronized
+    fun replay(action: (List<TelemetryItem>) -> Unit) {
+        action(entriesInArrivalOrder().map { it.item })
+    }
+
+    /**
+     * Assembles the retained spans of a trace into a tree.
+     *
+     * @return the tree, or null if no span of the trace is retained
+     */
+    @Synchronized
+    fun getTrace(traceId: TraceId): TraceTree? = traceIndex.getTrace(traceId)
+
+    /**
+     * Gets the span count and version of a retained trace without assembling its tree.
+     *
+     * @return the summary, or null if no span of the trace is retained
+     */
+    @Synchronized
+    fun getTraceSummary(traceId: TraceId): TraceSummary? = traceIndex.getSummary(traceId)
+
+    @Synchronized
+    fun clear() {
+        ranks.forEach { it.clear() }
+        errorTraceIds.clear()
+        traceIndex.clear()
+        usedBytes = 0
+        itemCount = 0
+    }
+
+    /**
+     * Current item count, estimated size and budget of the history.
+     */
+    @get:Synchronized
+    val usage: Usage get() = Usage(itemCount, usedBytes, budgetBytes)
+
+    private fun append(item: TelemetryItem) {
+        val entry = Entry(nextSequence++, item, traceIdOf(item.telemetry))
+        if (policy == HistoryEvictionPolicy.KeepErrorTraces && entry.traceId != null && isError(item.telemetry)) {
+            rememberErrorTrace(entry.traceId)
+        }
+        ranks[rankOf(entry)][entry.sequence] = entry
+        traceIndex.add(item)
+        usedBytes += item.estimatedSize
+        itemCount++
+    }
+
+    private fun evictIfOverBudget(): List<TelemetryItem> {
+        if (usedBytes <= budgetBytes) {
+            return emptyList()
+        }
+        val target = (budgetBytes * LOW_WATERMARK).toLong()
+        val evicted = ArrayList<TelemetryItem>()
+        while (usedBytes > target) {
+            val rank = ranks.first { it.isNotEmpty() }
+            val entry = rank.pollFirstEntry().value
+            // Errors may arrive after the rest of their trace; promote such items instead of evicting them
+            if (rank === ranks[0] && entry.traceId != null && entry.traceId in errorTraceIds) {
+                ranks[ERROR_RANK][entry.sequence] = entry
+                continue
+            }
+            traceIndex.remove(entry.item)
+            usedBytes -= entry.item.estimatedSize
+            itemCount--
+            evicted.add(entry.item)
+        }
+        return evicted
+    }
+
+    private fun entriesInArrivalOrder(): List<Entry> {
+        val nonEmpty = ranks.filter { it.isNotEmpty() }
+        if (nonEmpty.size == 1) {
+            return ArrayList(nonEmpty[0].values)
+        }
+        return nonEmpty.flatMap { it.values }.sortedBy { it.sequence }
+    }
+
+    private fun rememberErrorTrace(traceId: TraceId) {
+        errorTraceIds.add(traceId)
+        if (errorTraceIds.size > MAX_ERROR_TRACES) {
+            errorTraceIds.remove(errorTraceIds.first())
+        }
+    }
+
+    /**
+     * Retention rank of an item under the current policy; higher ranks are evicted later.
+     */
+    private fun rankOf(entry: Entry): Int {
+        val telemetry = entry.item.telemetry
+        return when (policy) {
+            HistoryEvictionPolicy.Fifo -> 0
+            HistoryEvictionPolicy.DropLowestSeverityFirst -> severityRank(telemetry)
+            HistoryEvictionPolicy.KeepErrorTraces ->
+                if (isError(telemetry) || (entry.traceId != null && entry.traceId in errorTraceIds)) ERROR_RANK else 0
+        }
+    }
+
+    private class Entry(val sequence: Long, val item: TelemetryItem, val traceId: TraceId?)
+
+    /**
+     * Usage of a telemetry history.
+     *
+     * @property itemCount number of retained items
+     * @property usedBytes estimated retained bytes
+     * @property budgetBytes estimated bytes the history may retain
+     * @property droppedRequests export requests of hidden signals dropped before they were decoded (filled in by
+     *   [OtlpHttpReceiverService.getHistoryUsage])
+     */
+    data class Usage @JvmOverloads constructor(
+        val itemCount: Int,
+        val usedBytes: Long,
+        val budgetBytes: Long,
+        val droppedRequests: Int = 0
+    )
+
+    companion object {
+        // Ranks: 0 = metrics, trace & debug logs; 1 = information; 2 = warnings; 3 = errors
+        private const val RANK_COUNT = 4
+        private const val ERROR_RANK = 3
+
+        // After exceeding the budget, evict down to this fraction of it
+        private const val LOW_WATERMARK = 0.9
+
+        private const val MAX_ERROR_TRACES = 10_000
+
+        private fun traceIdOf(telemetry: Telemetry): TraceId? = telemetry.activity?.traceId ?: telemetry.log?.traceId
+
+        private fun isError(telemetry: Telemetry): Boolean = severityRank(telemetry) == ERROR_RANK
+
+        private fun severityRank(telemetry: Telemetry): Int {
+            if (telemetry.type == TelemetryType.Exception) {
+                return ERROR_RANK
+            }
+            telemetry.activity?.let { return if (it.isError) ERROR_RANK else 1 }
+            telemetry.log?.let {
+                return when (it.logLevel) {
+                    LogLevel.Trace, LogLevel.Debug -> 0
+                    LogLevel.Warning -> 2
+                    LogLevel.Error, LogLevel.Critical -> ERROR_RANK
+                    else -> 1
+                }
+            }
+            return 0
+        }
+    }
+}
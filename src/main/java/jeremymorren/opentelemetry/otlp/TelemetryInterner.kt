@@ -0,0 +1,47 @@
+package jeremymorren.opentelemetry.otlp
+
+import jeremymorren.opentelemetry.models.ActivitySource
+import jeremymorren.opentelemetry.models.ObjectDictionary
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryMapping.scopeToActivitySource
+
+/**
+ * An instrumentation scope as decoded once for all of its telemetry items.
+ */
+internal class DecodedScope(val name: String, val version: String, val attributes: ObjectDictionary?) {
+    /**
+     * The activity source of the scope's spans.
+     */
+    val activitySource: ActivitySource? = scopeToActivitySource(name, version)
+
+    companion object {
+        val EMPTY = DecodedScope("", "", null)
+    }
+}
+
+/**
+ * Interns the resources and instrumentation scopes decoded by a receiver, keyed by their serialized content.
+ *
+ * SDKs send the same resource (service, SDK, host and process attributes) and scopes with every export, so
+ * decoding them once and sharing the instance between requests saves both decode time and retained memory.
+ * The least recently used entries are dropped beyond [maxEntries] (resources and scopes each). Thread-safe.
+ */
+internal class TelemetryInterner(maxEntries: Int = DEFAULT_MAX_ENTRIES) {
+    private val resources = LruCache<Any, ObjectDictionary>(maxEntries)
+    private val scopes = LruCache<Any, DecodedScope>(maxEntries)
+
+    /**
+     * Gets the resource with the given content key, decoding it if it hasn't been seen.
+     *
+     * @param key the content of the resource (a protobuf message or a copy of its JSON bytes), compared by value
+     */
+    fun resource(key: Any, decode: () -> ObjectDictionary?): ObjectDictionary? = resources.getOrPut(key, decode)
+
+    /**
+     * Gets the scope with the given content key, decoding it if it hasn't been seen.
+     */
+    fun scope(key: Any, decode: () -> DecodedScope): DecodedScope = scopes.getOrPut(key, decode)!!
+
+    private companion object {
+        const val DEFAULT_MAX_ENTRIES = 256
+    }
+}
@@ -0,0 +1,192 @@
+package jeremymorren.opentelemetry.otlp
+
+import jeremymorren.opentelemetry.models.Activity
+import jeremymorren.opentelemetry.models.SpanId
+import jeremymorren.opentelemetry.models.SpanNode
+import jeremymorren.opentelemetry.models.TelemetryItem
+import jeremymorren.opentelemetry.models.TraceId
+import jeremymorren.opentelemetry.models.TraceSummary
+import jeremymorren.opentelemetry.models.TraceTree
+import java.time.Instant
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * The spans of a telemetry history, indexed by trace ID, span ID and parent span ID.
+ *
+ * IDs are compared as primitives ([TraceId], [SpanId]), never as hex strings.
+ * Spans arrive independently and in any order (a parent usually ends, and so is exported, after its children).
+ * Children are indexed by their parent's span ID rather than linked to the parent, so a span's parent and children
+ * are found in O(1) whichever arrives first. Spans are removed with the history items they belong to, also in O(1).
+ * Each change to a trace gives it a new version, so views of a trace can be cached until it changes.
+ *
+ * Not thread-safe (guarded by [TelemetryHistory]).
+ */
+class TraceIndex {
+    private val traces = HashMap<TraceId, TraceSpans>()
+    private var lastVersion = 0L
+
+    /**
+     * The number of traces with at least one span.
+     */
+    val traceCount: Int get() = traces.size
+
+    /**
+     * Adds an item; ignored unless it is a span with a trace ID and span ID.
+     */
+    fun add(item: TelemetryItem) {
+        val activity = item.telemetry.activity ?: return
+        val traceId = activity.traceId ?: return
+        val spanId = activity.spanId ?: return
+        val trace = traces.getOrPut(traceId) { TraceSpans() }
+        trace.add(spanId, parentSpanIdOf(activity), item)
+        trace.version = ++lastVersion
+    }
+
+    /**
+     * Removes an item (e.g. evicted from the history).
+     */
+    fun remove(item: TelemetryItem) {
+        val activity = item.telemetry.activity ?: return
+        val traceId = activity.traceId ?: return
+        val spanId = activity.spanId ?: return
+        val trace = traces[traceId] ?: return
+        trace.remove(spanId, parentSpanIdOf(activity), item)
+        trace.version = ++lastVersion
+        if (trace.isEmpty()) {
+            traces.remove(traceId)
+        }
+    }
+
+    fun clear() {
+        traces.clear()
+    }
+
+    /**
+     * Gets the span with the given ID, or null if it hasn't been received.
+     */
+    fun getSpan(traceId: TraceId, spanId: SpanId): TelemetryItem? = traces[traceId]?.spansById?.get(spanId)
+
+    /**
+     * Gets the spans received so far whose parent is the given span (in arrival order).
+     */
+    fun getChildren(traceId: TraceId, spanId: SpanId): List<TelemetryItem> =
+        traces[traceId]?.childrenByParentId?.get(spanId)?.let { ArrayList(it.values) } ?: emptyList()
+
+    /**
+     * Gets the span count and version of a trace without assembling its tree.
+     *
+     * @return the summary, or null if no span of the trace has been received
+     */
+    fun getSummary(traceId: TraceId): TraceSummary? =
+        traces[traceId]?.let { TraceSummary(traceId, it.spansById.size, it.version) }
+
+    /**
+     * Assembles the spans received so far for a trace into a tree.
+     *
+     * @return the tree, or null if no span of the trace has been received
+     */
+    fun getTrace(traceId: TraceId): TraceTree? {
+        val trace = traces[traceId] ?: return null
+        val visited = Collections.newSetFromMap(IdentityHashMap<TelemetryItem, Boolean>())
+        val roots = ArrayList<SpanNode>()
+        for (item in sortedByStartTime(trace.spansById.values)) {
+            val parentSpanId = parentSpanIdOf(item.telemetry.activity!!)
+            if (parentSpanId == null || parentSpanId !in trace.spansById) {
+                addSubtree(trace, item, parentSpanId != null, roots, visited)
+            }
+        }
+        // Spans in a parent cycle (malformed input) aren't reachable from a root; show them as orphans
+        if (visited.size < trace.spansById.size) {
+            for (item in sortedByStartTime(trace.spansById.values)) {
+                if (item !in visited) {
+                    addSubtree(trace, item, true, roots, visited)
+                }
+            }
+        }
+        return TraceTree(traceId, roots, visited.size, trace.version)
+    }
+
+    /**
+     * Appends the node of [item] and its descendants to [siblings], depth first with an explicit stack
+     * (a long chain of nested spans would overflow the call stack).
+     */
+    private fun addSubtree(
+        trace: TraceSpans,
+        item: TelemetryItem,
+        missingParent: Boolean,
+        siblings: MutableList<SpanNode>,
+        visited: MutableSet<TelemetryItem>
+    ) {
+        val pending = ArrayDeque<PendingNode>()
+        pending.addLast(PendingNode(item, missingParent, siblings))
+        while (pending.isNotEmpty()) {
+            val next = pending.removeLast()
+            if (!visited.add(next.item)) {
+                continue
+            }
+            val children = ArrayList<SpanNode>(0)
+            next.siblings.add(SpanNode(next.item, children, next.missingParent))
+            val spanId = next.item.telemetry.activity!!.spanId!!
+            val childItems = trace.childrenByParentId[spanId]?.values ?: continue
+            // Pushed in reverse, so children are popped (and appended) in start time order
+            for (child in sortedByStartTime(childItems).asReversed()) {
+                pending.addLast(PendingNode(child, false, children))
+            }
+        }
+    }
+
+    private class PendingNode(val item: TelemetryItem, val missingParent: Boolean, val siblings: MutableList<SpanNode>)
+
+    /**
+     * The spans of one trace.
+     */
+    private class TraceSpans {
+        val spansById = HashMap<SpanId, TelemetryItem>(4)
+        // Children by span ID (in arrival order), so a child is removed in O(1) however many siblings it has
+        val childrenByParentId = HashMap<SpanId, LinkedHashMap<SpanId, TelemetryItem>>(4)
+        var version = 0L
+
+        fun add(spanId: SpanId, parentSpanId: SpanId?, item: TelemetryItem) {
+            // A span received twice replaces the earlier copy
+            val replaced = spansById.put(spanId, item)
+            if (replaced != null) {
+                removeChild(spanId, parentSpanIdOf(replaced.telemetry.activity!!), replaced)
+            }
+            if (parentSpanId != null) {
+                childrenByParentId.getOrPut(parentSpanId) { LinkedHashMap(2) }[spanId] = item
+            }
+        }
+
+        fun remove(spanId: SpanId, parentSpanId: SpanId?, item: TelemetryItem) {
+            if (spansById[spanId] === item) {
+                spansById.remove(spanId)
+            }
+            removeChild(spanId, parentSpanId, item)
+        }
+
+        private fun removeChild(spanId: SpanId, parentSpanId: SpanId?, item: TelemetryItem) {
+            if (parentSpanId == null) {
+                return
+            }
+            val siblings = childrenByParentId[parentSpanId] ?: return
+            // The replaced copy of a span received twice is no longer indexed as a child
+            if (siblings[spanId] === item) {
+                siblings.remove(spanId)
+                if (siblings.isEmpty()) {
+                    childrenByParentId.remove(parentSpanId)
+                }
+            }
+        }
+
+        fun isEmpty(): Boolean = spansById.isEmpty()
+    }
+
+    private companion object {
+        // Root spans have an empty (or, from some exporters, all-zero) parent span ID
+        fun parentSpanIdOf(activity: Activity): SpanId? = activity.parentSpanId?.takeUnless { it.isZero }
+
+        fun sortedByStartTime(items: Collection<TelemetryItem>): List<TelemetryItem> =
+            items.sortedBy { it.telemetry.activity?.startTime ?: Instant.MAX }
+    }
+}
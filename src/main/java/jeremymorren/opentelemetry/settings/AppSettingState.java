@@ -12,6 +12,8 @@ import com.jetbrains.rd.util.reactive.Property;
 import jeremymorren.opentelemetry.otlp.OtlpEnvironmentVariables;
 import jeremymorren.opentelemetry.settings.converters.BooleanPropertyConverter;
 import jeremymorren.opentelemetry.settings.converters.FilterTelemetryModePropertyConverter;
+import jeremymorren.opentelemetry.settings.converters.HistoryEvictionPolicyPropertyConverter;
+import jeremymorren.opentelemetry.settings.converters.IntegerPropertyConverter;
 import kotlin.Unit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -32,6 +34,13 @@ public class AppSettingState implements PersistentStateComponentWithModification
     @OptionTag(converter = BooleanPropertyConverter.class)
     public final Property<Boolean> injectOtlpEnvironmentVariables = new Property<>(true);
     public String otlpEnvironmentVariables = OtlpEnvironmentVariables.DEFAULT_ENVIRONMENT_VARIABLES;
+    /**
+     * Estimated memory (in MB) the received telemetry of one project may retain before older telemetry is evicted.
+     */
+    @OptionTag(converter = IntegerPropertyConverter.class)
+    public final Property<Integer> historyBudgetMegabytes = new Property<>(256);
+    @OptionTag(converter = HistoryEvictionPolicyPropertyConverter.class)
+    public final Property<HistoryEvictionPolicy> historyEvictionPolicy = new Property<>(HistoryEvictionPolicy.Fifo);
 
     public AppSettingState() {
         registerAllPropertyToIncrementTrackerOnChanges(this);
@@ -62,6 +71,8 @@ public class AppSettingState implements PersistentStateComponentWithModification
         incrementTrackerWhenPropertyChanges(state.filterTelemetryMode);
         incrementTrackerWhenPropertyChanges(state.enableLoopbackOtlpReceiver);
         incrementTrackerWhenPropertyChanges(state.injectOtlpEnvironmentVariables);
+        incrementTrackerWhenPropertyChanges(state.historyBudgetMegabytes);
+        incrementTrackerWhenPropertyChanges(state.historyEvictionPolicy);
     }
 
     private <T> void incrementTrackerWhenPropertyChanges(Property<T> property) {
@@ -1,5 +1,8 @@
 package jeremymorren.opentelemetry.settings;
 
+import com.intellij.openapi.ui.ComboBox;
+import com.intellij.ui.JBIntSpinner;
+import com.intellij.ui.SimpleListCellRenderer;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBScrollPane;
@@ -13,15 +16,20 @@ public class AppSettingsComponent {
     private final JBCheckBox enableLoopbackOtlpReceiver = new JBCheckBox("Enable loopback OTLP/HTTP receiver (binds to 127.0.0.1 only)");
     private final JBCheckBox injectOtlpEnvironmentVariables = new JBCheckBox("Inject OTLP environment variables into launched processes");
     private final JBTextArea otlpEnvironmentVariables = new JBTextArea(10, 80);
+    private final JBIntSpinner historyBudgetMegabytes = new JBIntSpinner(256, 16, 16_384, 64);
+    private final ComboBox<HistoryEvictionPolicy> historyEvictionPolicy = new ComboBox<>(HistoryEvictionPolicy.values());
 
     public AppSettingsComponent() {
         otlpEnvironmentVariables.setLineWrap(false);
         otlpEnvironmentVariables.setWrapStyleWord(false);
+        historyEvictionPolicy.setRenderer(SimpleListCellRenderer.create("", HistoryEvictionPolicy::getDisplayName));
 
         panel = FormBuilder.createFormBuilder()
                 .addComponent(enableLoopbackOtlpReceiver, 1)
                 .addComponent(injectOtlpEnvironmentVariables, 1)
-                .addLabeledComponent(new JBLabel("Environment variables (KEY=VALUE, supports ${OTLP_ENDPOINT}, ${OTLP_HOST}, ${OTLP_PORT})"), new JBScrollPane(otlpEnvironmentVariables), 1, false)
+                .addLabeledComponent(new JBLabel("Telemetry history budget per project (MB):"), historyBudgetMegabytes, 1, false)
+                .addLabeledComponent(new JBLabel("When the budget is exceeded, evict:"), historyEvictionPolicy, 1, false)
+                .addLabeledComponent(new JBLabel("Environment variables (KEY=VALUE, supports ${OTLP_ENDPOINT}, ${OTLP_HOST}, ${OTLP_PORT}, ${OTLP_GRPC_ENDPOINT}, ${OTLP_GRPC_PORT}, ${OTLP_SCOPE})"), new JBScrollPane(otlpEnvironmentVariables), 1, false)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
     }
@@ -57,4 +65,20 @@ public class AppSettingsComponent {
     public void setOtlpEnvironmentVariables(String value) {
         otlpEnvironmentVariables.setText(value);
     }
+
+    public int getHistoryBudgetMegabytes() {
+        return historyBudgetMegabytes.getNumber();
+    }
+
+    public void setHistoryBudgetMegabytes(int value) {
+        historyBudgetMegabytes.setNumber(value);
+    }
+
+    public HistoryEvictionPolicy getHistoryEvictionPolicy() {
+        return historyEvictionPolicy.getItem();
+    }
+
+    public void setHistoryEvictionPolicy(HistoryEvictionPolicy value) {
+        historyEvictionPolicy.setItem(value);
+    }
 }
\ No newline at end of file
@@ -28,7 +28,9 @@ public class AppSettingsConfigurable implements SearchableConfigurable {
         AppSettingState settings = AppSettingState.getInstance();
         return settingsComponent.getEnableLoopbackOtlpReceiver() != settings.enableLoopbackOtlpReceiver.getValue()
                 || settingsComponent.getInjectOtlpEnvironmentVariables() != settings.injectOtlpEnvironmentVariables.getValue()
-                || !Objects.equals(settingsComponent.getOtlpEnvironmentVariables(), settings.otlpEnvironmentVariables);
+                || !Objects.equals(settingsComponent.getOtlpEnvironmentVariables(), settings.otlpEnvironmentVariables)
+                || settingsComponent.getHistoryBudgetMegabytes() != settings.historyBudgetMegabytes.getValue()
+                || settingsComponent.getHistoryEvictionPolicy() != settings.historyEvictionPolicy.getValue();
     }
 
     @Override
@@ -37,6 +39,8 @@ public class AppSettingsConfigurable implements SearchableConfigurable {
         settings.enableLoopbackOtlpReceiver.setValue(settingsComponent.getEnableLoopbackOtlpReceiver());
         settings.injectOtlpEnvironmentVariables.setValue(settingsComponent.getInjectOtlpEnvironmentVariables());
         settings.otlpEnvironmentVariables = settingsComponent.getOtlpEnvironmentVariables();
+        settings.historyBudgetMegabytes.setValue(settingsComponent.getHistoryBudgetMegabytes());
+        settings.historyEvictionPolicy.setValue(settingsComponent.getHistoryEvictionPolicy());
     }
 
     @Override
@@ -45,6 +49,8 @@ public class AppSettingsConfigurable implements SearchableConfigurable {
         settingsComponent.setEnableLoopbackOtlpReceiver(settings.enableLoopbackOtlpReceiver.getValue());
         settingsComponent.setInjectOtlpEnvironmentVariables(settings.injectOtlpEnvironmentVariables.getValue());
         settingsComponent.setOtlpEnvironmentVariables(settings.otlpEnvironmentVariables);
+        settingsComponent.setHistoryBudgetMegabytes(settings.historyBudgetMegabytes.getValue());
+        settingsComponent.setHistoryEvictionPolicy(settings.historyEvictionPolicy.getValue());
     }
 
     @Override
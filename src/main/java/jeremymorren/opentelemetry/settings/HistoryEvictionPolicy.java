@@ -0,0 +1,33 @@
+package jeremymorren.opentelemetry.settings;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Enum representing which telemetry is evicted first when a telemetry history exceeds its memory budget.
+ */
+public enum HistoryEvictionPolicy {
+    /**
+     * Evict the oldest telemetry first.
+     */
+    Fifo("Oldest first"),
+    /**
+     * Evict metrics and debug/trace logs first, then informational telemetry, then warnings; errors last.
+     */
+    DropLowestSeverityFirst("Lowest severity first"),
+    /**
+     * Evict the oldest telemetry first, but keep telemetry of traces containing an error for as long as possible.
+     */
+    KeepErrorTraces("Oldest first, keeping error traces");
+
+    @NotNull
+    private final String displayName;
+
+    HistoryEvictionPolicy(@NotNull String displayName) {
+        this.displayName = displayName;
+    }
+
+    @NotNull
+    public String getDisplayName() {
+        return displayName;
+    }
+}
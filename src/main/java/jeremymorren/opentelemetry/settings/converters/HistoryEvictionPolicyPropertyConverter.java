@@ -0,0 +1,19 @@
+package jeremymorren.opentelemetry.settings.converters;
+
+import com.intellij.util.xmlb.Converter;
+import com.jetbrains.rd.util.reactive.Property;
+import jeremymorren.opentelemetry.settings.HistoryEvictionPolicy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class HistoryEvictionPolicyPropertyConverter extends Converter<Property<HistoryEvictionPolicy>> {
+    @Override
+    public @Nullable Property<HistoryEvictionPolicy> fromString(@NotNull String s) {
+        return new Property<>(HistoryEvictionPolicy.valueOf(s));
+    }
+
+    @Override
+    public @Nullable String toString(@NotNull Property<HistoryEvictionPolicy> property) {
+        return property.getValue().toString();
+    }
+}
@@ -5,7 +5,6 @@ import com.intellij.ui.components.fields.ExtendableTextComponent;
 import com.intellij.ui.components.fields.ExtendableTextField;
 
 import javax.swing.*;
-import java.awt.event.KeyListener;
 
 public class ClearTextFieldExtension implements ExtendableTextComponent.Extension {
     private final ExtendableTextField textField;
@@ -27,14 +26,10 @@ public class ClearTextFieldExtension implements ExtendableTextComponent.Extensio
     @Override
     public Runnable getActionOnClick() {
         return () -> {
+            // Document listeners on the text field pick up the change
             if (!textField.getText().isEmpty()) {
                 textField.setText(null);
             }
-            // Trigger key events to update the UI
-            for (KeyListener keyListener : textField.getKeyListeners()) {
-                keyListener.keyTyped(null);
-                keyListener.keyReleased(null);
-            }
         };
     }
 }
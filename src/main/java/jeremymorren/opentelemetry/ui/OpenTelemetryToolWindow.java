@@ -24,13 +24,16 @@ import com.intellij.openapi.editor.highlighter.EditorHighlighterFactory;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.ui.DocumentAdapter;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.LanguageTextField;
 import com.intellij.ui.components.fields.ExtendableTextField;
 import com.intellij.ui.table.JBTable;
+import com.intellij.ui.treeStructure.Tree;
 import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.JBUI;
 import com.jetbrains.rider.stacktrace.RiderStacktraceUtil;
@@ -38,24 +41,34 @@ import com.jetbrains.rider.unitTesting.RiderUnitTestConsoleHyperlinkFilter;
 import com.jetbrains.rd.util.lifetime.Lifetime;
 import groovy.lang.Tuple2;
 import jeremymorren.opentelemetry.OpenTelemetrySession;
+import jeremymorren.opentelemetry.models.SpanId;
+import jeremymorren.opentelemetry.models.SpanNode;
 import jeremymorren.opentelemetry.models.Telemetry;
 import jeremymorren.opentelemetry.models.TelemetryItem;
 import jeremymorren.opentelemetry.models.TelemetryType;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.models.TraceTimeline;
+import jeremymorren.opentelemetry.models.TraceTree;
+import jeremymorren.opentelemetry.otlp.TelemetryHistory;
 import jeremymorren.opentelemetry.ui.components.*;
 import jeremymorren.opentelemetry.ui.renderers.DurationRenderer;
 import jeremymorren.opentelemetry.ui.renderers.InstantRenderer;
+import jeremymorren.opentelemetry.ui.renderers.SpanTreeCellRenderer;
 import jeremymorren.opentelemetry.ui.renderers.TelemetryRenderer;
 import jeremymorren.opentelemetry.ui.renderers.TelemetryTypeRenderer;
 import jeremymorren.opentelemetry.util.DurationFormatter;
+import jeremymorren.opentelemetry.util.TelemetryQuery;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ItemEvent;
-import java.awt.event.KeyEvent;
-import java.awt.event.KeyListener;
 import java.text.DecimalFormat;
 import java.time.Duration;
 import java.time.Instant;
@@ -67,6 +80,12 @@ import java.util.regex.Pattern;
 public class OpenTelemetryToolWindow {
     private static final Logger LOG = Logger.getInstance(OpenTelemetryToolWindow.class);
 
+    // Received telemetry is added to the table at most this often
+    private static final int UPDATE_INTERVAL_MILLIS = 100;
+
+    private static final int TRACE_TAB = 4;
+    private static final int TIMELINE_TAB = 5;
+
     // UI Designer can call createUIComponents() before constructor assigns fields.
     @SuppressWarnings("ConstantValue")
     private Project getUiProjectOrDefault() {
@@ -114,6 +133,10 @@ public class OpenTelemetryToolWindow {
     private JCheckBox messageCheckBox;
     private JLabel messageCounter;
     private JComponent exceptionPanel;
+    private JLabel historyUsageLabel;
+    private JScrollPane traceScrollPane;
+    private Tree traceTree;
+    private JScrollPane waterfallScrollPane;
 
     @NotNull
     private final Project project;
@@ -144,8 +167,44 @@ public class OpenTelemetryToolWindow {
     @NotNull
     private final Map<TelemetryType, Integer> telemetryCountPerType = new HashMap<>();
 
+    @NotNull
+    private final SpanTreeCellRenderer traceTreeRenderer = new SpanTreeCellRenderer();
+
+    /**
+     * Waterfall timeline of the trace of the selected telemetry.
+     */
+    private final TraceWaterfallPanel traceWaterfall = new TraceWaterfallPanel();
+
+    /**
+     * Telemetry whose trace the trace tabs show; its tree and timeline are built when one of the tabs is selected.
+     */
+    @Nullable
+    private TelemetryItem traceTelemetry;
+
+    /**
+     * Span tree and timeline of the trace last shown, reused until the trace changes.
+     */
+    @Nullable
+    private TraceView traceView;
+
+    @NotNull
+    private final TelemetryUpdateScheduler updateScheduler =
+            new TelemetryUpdateScheduler(UPDATE_INTERVAL_MILLIS, this::flushTelemetries);
+
     private boolean autoScrollToTheEnd;
 
+    // True while the selected row is selected again after the table data changed, see addRows
+    private boolean restoringSelection;
+
+    // The filter run whose result the table shows; results of older runs are ignored
+    private long currentFilterRun;
+    // Sequence of the first telemetry batch not contained in the current filter snapshot
+    private long snapshotSequence;
+    // Removal epoch of the current filter snapshot; it doesn't contain telemetry removed up to this epoch
+    private long snapshotEpoch;
+    // True while the filter text is set from the session (so it isn't reported back)
+    private boolean syncingFilterText;
+
     public OpenTelemetryToolWindow(
             @NotNull OpenTelemetrySession opentelemetrySession,
             @NotNull Project project,
@@ -177,6 +236,7 @@ public class OpenTelemetryToolWindow {
         logsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
         telemetryTableModel = new TelemetryTableModel();
+        telemetryTableModel.setRows(List.of(), opentelemetrySession.getTelemetryComparator());
         logsTable.setModel(telemetryTableModel);
         logsTable.getColumnModel().getColumn(0).setPreferredWidth(90);
         logsTable.getColumnModel().getColumn(0).setMaxWidth(130);
@@ -187,30 +247,51 @@ public class OpenTelemetryToolWindow {
         logsTable.getTableHeader().setUI(null);
 
         filter.setExtensions(new ClearTextFieldExtension(filter));
-
-        filter.addKeyListener(new KeyListener() {
-            @Override
-            public void keyTyped(KeyEvent e) {
-            }
-
-            @Override
-            public void keyPressed(KeyEvent e) {
-                OpenTelemetryToolWindow.this.openTelemetrySession.updateFilter(filter.getText());
-            }
-
+        filter.getEmptyText().setText("Filter, e.g. type:Dependency duration>200ms status:error");
+        filter.setToolTipText("<html>Free text is searched for in the telemetry JSON. Fields:<br>"
+                + "<code>type:Dependency</code> <code>status:error</code> <code>level&gt;=Warning</code> "
+                + "<code>kind:Server</code> <code>duration&gt;200ms</code><br>"
+                + "<code>source:Sample.*</code> <code>name:</code> <code>message:</code> <code>trace:</code> "
+                + "<code>span:</code> or any attribute, e.g. <code>db.system=postgresql</code><br>"
+                + "Operators: <code>: = != &gt; &gt;= &lt; &lt;=</code>; quote values containing spaces</html>");
+
+        // The session debounces the filter, so it can be updated on every change
+        filter.getDocument().addDocumentListener(new DocumentAdapter() {
             @Override
-            public void keyReleased(KeyEvent e) {
-                OpenTelemetryToolWindow.this.openTelemetrySession.updateFilter(filter.getText());
+            protected void textChanged(@NotNull DocumentEvent e) {
+                if (!syncingFilterText) {
+                    openTelemetrySession.updateFilter(filter.getText());
+                }
             }
         });
 
         logsTable.getSelectionModel().addListSelectionListener(e -> {
             // Ignore intermediate events while selection is still changing.
-            if (e.getValueIsAdjusting()) {
+            if (e.getValueIsAdjusting() || restoringSelection) {
                 return;
             }
             selectTelemetry(telemetryTableModel.getRow(logsTable.getSelectedRow()));
         });
+
+        traceTree.setCellRenderer(traceTreeRenderer);
+        traceTree.setModel(null);
+        // Double-click a span to show its details
+        traceTree.addMouseListener(new ClickListener(e -> {
+            if (e.getClickCount() != 2) {
+                return;
+            }
+            var path = traceTree.getPathForLocation(e.getX(), e.getY());
+            if (path != null
+                    && path.getLastPathComponent() instanceof DefaultMutableTreeNode node
+                    && node.getUserObject() instanceof SpanNode span) {
+                selectTelemetry(span.getItem());
+            }
+        }));
+
+        waterfallScrollPane.setViewportView(traceWaterfall);
+        waterfallScrollPane.setColumnHeaderView(traceWaterfall.getTimeAxis());
+        traceWaterfall.setOnSpanClicked(this::selectTelemetry);
+        tabbedPane.addChangeListener(e -> showTrace());
     }
 
     private void selectTelemetry(@Nullable TelemetryItem telemetry) {
@@ -221,6 +302,7 @@ public class OpenTelemetryToolWindow {
         updateJsonPreview(telemetry.getRawJson());
         updateSqlPreview(telemetry.getTelemetry().getSql());
         updateExceptionView(telemetry.getTelemetry());
+        updateTraceView(telemetry);
         updateFormattedDisplay(telemetry.getTelemetry());
     }
 
@@ -229,16 +311,57 @@ public class OpenTelemetryToolWindow {
         return mainPanel;
     }
 
+    /**
+     * Replaces all telemetry with the (first) result of a filter run; the rest of the result follows through
+     * {@link #addFilteredTelemetries}.
+     *
+     * @param run the filter run; results of runs older than the current one are ignored
+     * @param sequence the sequence of the first telemetry batch not contained in the snapshot
+     * @param epoch the removal epoch of the snapshot, see {@link #removeTelemetries}
+     * @param telemetries snapshot of all telemetry
+     * @param visibleTelemetries the telemetry that passes the filter, sorted by comparator
+     * @param comparator the order telemetry added later is inserted in, or null to append it
+     */
     public void setTelemetries(
+            long run,
+            long sequence,
+            long epoch,
             @NotNull List<TelemetryItem> telemetries,
-            @NotNull List<TelemetryItem> visibleTelemetries
+            @NotNull List<TelemetryItem> visibleTelemetries,
+            @Nullable Comparator<TelemetryItem> comparator
     ) {
+        if (run < currentFilterRun) {
+            return;
+        }
+        currentFilterRun = run;
+        snapshotSequence = sequence;
+        snapshotEpoch = epoch;
+        // The snapshot supersedes buffered batches it already contains
+        updateScheduler.discard(sequence);
         syncControlsFromSession();
         rebuildTelemetryTypeCounter(telemetries);
-        telemetryTableModel.setRows(visibleTelemetries);
+        telemetryTableModel.setRows(visibleTelemetries, comparator);
+        updateHistoryUsage();
+    }
+
+    /**
+     * Holds back received telemetry while a filter run is pending (its snapshot may not contain it),
+     * until {@link #releaseTelemetryUpdates()}.
+     */
+    public void holdTelemetryUpdates() {
+        updateScheduler.hold();
+    }
+
+    /**
+     * Shows the telemetry held back by {@link #holdTelemetryUpdates()}, once the pending filter run's first result
+     * is shown: the batches its snapshot contains have been discarded by {@link #setTelemetries}.
+     */
+    public void releaseTelemetryUpdates() {
+        updateScheduler.release();
     }
 
     public void dispose() {
+        updateScheduler.dispose();
         if (jsonEditor != null && !jsonEditor.isDisposed()) {
             EditorFactory.getInstance().releaseEditor(jsonEditor);
         }
@@ -250,24 +373,105 @@ public class OpenTelemetryToolWindow {
         }
     }
 
-    public void addTelemetry(
-            int index,
-            @NotNull TelemetryItem telemetry,
-            boolean visible,
+    /**
+     * Adds more of the result of the current filter run.
+     *
+     * @param run the filter run; ignored unless it is the current one
+     * @param visibleTelemetries further telemetry that passes the filter, in arrival order
+     */
+    public void addFilteredTelemetries(long run, @NotNull List<TelemetryItem> visibleTelemetries) {
+        if (run != currentFilterRun || visibleTelemetries.isEmpty()) {
+            return;
+        }
+        addRows(visibleTelemetries);
+    }
+
+    /**
+     * Adds a batch of received telemetry; the table is updated on the next flush of the update scheduler.
+     *
+     * @param sequence the sequence of the batch; ignored if the current filter snapshot already contains it
+     * @param telemetries all received items (counted per type)
+     * @param visibleTelemetries the items that pass the filter, in arrival order
+     */
+    public void addTelemetries(
+            long sequence,
+            @NotNull List<TelemetryItem> telemetries,
+            @NotNull List<TelemetryItem> visibleTelemetries,
             boolean shouldScroll
     ) {
-        if (visible) {
-            if (index != -1)
-                telemetryTableModel.addRow(index, telemetry);
-            else
-                telemetryTableModel.addRow(telemetry);
-            SwingUtilities.invokeLater(() -> {
-                if (autoScrollToTheEnd && shouldScroll) {
-                    performAutoScrollToTheEnd();
-                }
-            });
+        if (sequence < snapshotSequence) {
+            return;
+        }
+        updateScheduler.add(sequence, telemetries, visibleTelemetries, shouldScroll);
+    }
+
+    /**
+     * Removes telemetry evicted from the project's telemetry history: its rows (keeping the selection and scroll
+     * position of the others) and its type counts.
+     *
+     * @param epoch the removal epoch after the eviction; ignored if the current filter snapshot is as recent
+     * @param evicted the evicted items, compared by identity
+     */
+    public void removeTelemetries(long epoch, @NotNull Set<TelemetryItem> evicted) {
+        if (epoch <= snapshotEpoch) {
+            return;
+        }
+        // Buffered items haven't been counted or shown yet
+        Set<TelemetryItem> buffered = Collections.newSetFromMap(new IdentityHashMap<>());
+        buffered.addAll(updateScheduler.remove(evicted));
+        for (TelemetryItem telemetry : evicted) {
+            if (!buffered.contains(telemetry)) {
+                uncountTelemetryType(telemetry);
+            }
+        }
+        refreshTelemetryTypeCounter();
+        telemetryTableModel.removeRows(evicted);
+        updateHistoryUsage();
+    }
+
+    /**
+     * Adds the telemetry buffered by the update scheduler: appended rows as one insert event (sorted rows as one
+     * insert event per contiguous range), then a single auto-scroll and counter refresh.
+     */
+    private void flushTelemetries(
+            @NotNull List<TelemetryItem> telemetries,
+            @NotNull List<TelemetryItem> visibleTelemetries,
+            boolean shouldScroll
+    ) {
+        if (!visibleTelemetries.isEmpty()) {
+            addRows(visibleTelemetries);
+            if (autoScrollToTheEnd && shouldScroll) {
+                // Scroll once the table has been resized for the new rows
+                SwingUtilities.invokeLater(this::performAutoScrollToTheEnd);
+            }
+        }
+        for (TelemetryItem telemetry : telemetries) {
+            countTelemetryType(telemetry);
+        }
+        refreshTelemetryTypeCounter();
+        updateHistoryUsage();
+    }
+
+    /**
+     * Adds rows to the table, keeping the selected row selected (a large batch of sorted rows replaces the table data,
+     * which clears the selection).
+     */
+    private void addRows(@NotNull List<TelemetryItem> visibleTelemetries) {
+        var selected = telemetryTableModel.getRow(logsTable.getSelectedRow());
+        telemetryTableModel.addRows(visibleTelemetries);
+        if (selected == null || logsTable.getSelectedRow() >= 0) {
+            return;
+        }
+        var row = telemetryTableModel.indexOfRow(selected);
+        if (row >= 0) {
+            // The same telemetry stays selected, so its details don't need to be shown again
+            restoringSelection = true;
+            try {
+                logsTable.setRowSelectionInterval(row, row);
+            } finally {
+                restoringSelection = false;
+            }
         }
-        updateTelemetryTypeCounter(telemetry);
     }
 
     private void performAutoScrollToTheEnd() {
@@ -410,22 +614,28 @@ public class OpenTelemetryToolWindow {
         }
     }
 
-    private void updateTelemetryTypeCounter(@Nullable TelemetryItem telemetry)
+    private void countTelemetryType(@Nullable TelemetryItem telemetry)
     {
         if (telemetry == null) return;
         var type = telemetry.getTelemetry().getType();
         if (type == null) return;
-        var count = telemetryCountPerType.getOrDefault(type, 0);
-        count++;
-        telemetryCountPerType.put(type, count);
+        telemetryCountPerType.merge(type, 1, Integer::sum);
+    }
+
+    private void uncountTelemetryType(@NotNull TelemetryItem telemetry) {
+        var type = telemetry.getTelemetry().getType();
+        if (type == null) return;
+        telemetryCountPerType.computeIfPresent(type, (t, count) -> count > 1 ? count - 1 : null);
+    }
 
+    /**
+     * Updates the counter labels from the telemetry type counts
+     */
+    private void refreshTelemetryTypeCounter() {
         for (JLabel counter: telemetryTypesCounter)
         {
             TelemetryType telemetryType = (TelemetryType) counter.getClientProperty("TelemetryType");
-            if (telemetryType == type) {
-                counter.setText(format(count));
-                break;
-            }
+            counter.setText(format(telemetryCountPerType.getOrDefault(telemetryType, 0)));
         }
     }
 
@@ -442,8 +652,27 @@ public class OpenTelemetryToolWindow {
     private void rebuildTelemetryTypeCounter(@NotNull List<TelemetryItem> telemetries) {
         clearTelemetryTypeCounter();
         for (TelemetryItem telemetry : telemetries) {
-            updateTelemetryTypeCounter(telemetry);
+            countTelemetryType(telemetry);
         }
+        refreshTelemetryTypeCounter();
+    }
+
+    /**
+     * Shows the estimated memory used by the project's telemetry history, relative to its budget
+     */
+    private void updateHistoryUsage() {
+        TelemetryHistory.Usage usage = openTelemetrySession.getHistoryUsage();
+        String text = StringUtil.formatFileSize(usage.getUsedBytes())
+                + " / " + StringUtil.formatFileSize(usage.getBudgetBytes());
+        String toolTip = "Telemetry history: " + format(usage.getItemCount())
+                + " items, estimated memory usage / budget (see OpenTelemetry: Global Settings)";
+        if (usage.getDroppedRequests() > 0) {
+            text += " (" + format(usage.getDroppedRequests()) + " dropped)";
+            toolTip += "; " + format(usage.getDroppedRequests())
+                    + " export requests of hidden telemetry types were dropped before they were shown";
+        }
+        historyUsageLabel.setText(text);
+        historyUsageLabel.setToolTipText(toolTip);
     }
 
     private void initTelemetryTypeFilters() {
@@ -465,9 +694,19 @@ public class OpenTelemetryToolWindow {
         }
     }
 
+    private void setFilterText(@NotNull String text) {
+        syncingFilterText = true;
+        try {
+            filter.setText(text);
+        }
+        finally {
+            syncingFilterText = false;
+        }
+    }
+
     private void syncControlsFromSession() {
         if (!Objects.equals(filter.getText(), openTelemetrySession.getFilter())) {
-            filter.setText(openTelemetrySession.getFilter());
+            setFilterText(openTelemetrySession.getFilter());
         }
 
         for (JCheckBox checkBox: new JCheckBox[]{metricCheckBox, exceptionCheckBox, messageCheckBox, dependencyCheckBox, requestCheckBox, activityCheckBox}) {
@@ -510,6 +749,90 @@ public class OpenTelemetryToolWindow {
         updateFoldRegions(sqlEditor);
     }
 
+    /**
+     * Enables the trace tabs if the telemetry (or the span of a log) belongs to a trace. The span tree and timeline are
+     * only built while one of the tabs is shown, see {@link #showTrace}.
+     */
+    private void updateTraceView(@NotNull TelemetryItem telemetry) {
+        var traceId = traceIdOf(telemetry);
+        var summary = traceId == null ? null : openTelemetrySession.getTraceSummary(traceId);
+        if (summary == null) {
+            //No trace for this telemetry. Disable the trace tabs and select the first tab
+            tabbedPane.setEnabledAt(TRACE_TAB, false);
+            if (tabbedPane.getSelectedIndex() == TRACE_TAB)
+                tabbedPane.setSelectedIndex(0);
+            tabbedPane.setEnabledAt(TIMELINE_TAB, false);
+            if (tabbedPane.getSelectedIndex() == TIMELINE_TAB)
+                tabbedPane.setSelectedIndex(0);
+            traceTelemetry = null;
+            traceView = null;
+            traceTree.setModel(null);
+            traceWaterfall.setTimeline(null, null);
+            return;
+        }
+        tabbedPane.setEnabledAt(TRACE_TAB, true);
+        tabbedPane.setTitleAt(TRACE_TAB, "Trace (" + summary.getSpanCount() + ")");
+        tabbedPane.setEnabledAt(TIMELINE_TAB, true);
+        traceTelemetry = telemetry;
+        showTrace();
+    }
+
+    /**
+     * Shows the span tree and timeline of the trace of {@link #traceTelemetry}, with its span (or the span of a log)
+     * selected, if a trace tab is shown. The tree and timeline are reused until the trace changes.
+     */
+    private void showTrace() {
+        var telemetry = traceTelemetry;
+        var selectedTab = tabbedPane.getSelectedIndex();
+        if (telemetry == null || (selectedTab != TRACE_TAB && selectedTab != TIMELINE_TAB)) {
+            return;
+        }
+        var traceId = Objects.requireNonNull(traceIdOf(telemetry));
+        var view = traceView;
+        if (view == null || !view.trace().getTraceId().equals(traceId)) {
+            view = null;
+        } else {
+            var summary = openTelemetrySession.getTraceSummary(traceId);
+            if (summary == null || summary.getVersion() != view.trace().getVersion()) {
+                view = null;
+            }
+        }
+        if (view == null) {
+            var trace = openTelemetrySession.getTrace(traceId);
+            if (trace == null) {
+                // Evicted since the telemetry was selected
+                return;
+            }
+            view = TraceView.build(trace);
+            traceView = view;
+            traceTreeRenderer.setCriticalPath(view.timeline().getCriticalPath());
+            traceTree.setModel(view.model());
+        }
+
+        var activity = telemetry.getTelemetry().getActivity();
+        var spanId = activity != null ? activity.getSpanId() : Objects.requireNonNull(telemetry.getTelemetry().getLog()).getSpanId();
+        var selected = view.nodesBySpanId().get(spanId);
+        var selectedItem = selected != null ? ((SpanNode) selected.getUserObject()).getItem() : null;
+        traceTreeRenderer.setSelectedItem(selectedItem);
+        traceWaterfall.setTimeline(view.timeline(), selectedItem);
+        if (selected != null) {
+            // Selecting a node expands its ancestors; the rest of the tree keeps its expansion state
+            var path = new TreePath(selected.getPath());
+            traceTree.setSelectionPath(path);
+            traceTree.scrollPathToVisible(path);
+        } else {
+            traceTree.clearSelection();
+        }
+        traceTree.repaint();
+    }
+
+    @Nullable
+    private static TraceId traceIdOf(@NotNull TelemetryItem telemetry) {
+        var activity = telemetry.getTelemetry().getActivity();
+        var log = telemetry.getTelemetry().getLog();
+        return activity != null ? activity.getTraceId() : log != null ? log.getTraceId() : null;
+    }
+
     private void updateExceptionView(@Nullable Telemetry telemetry) {
         if (telemetry == null || telemetry.getException() == null) {
             //No exception for this telemetry. Disable the exception tab and select the first tab
@@ -608,6 +931,39 @@ public class OpenTelemetryToolWindow {
         }));
     }
 
+    /**
+     * The span tree and timeline of a trace, as shown by the trace tabs.
+     *
+     * @param nodesBySpanId tree nodes by span ID, to select the span of a telemetry
+     */
+    private record TraceView(@NotNull TraceTree trace,
+                             @NotNull DefaultTreeModel model,
+                             @NotNull Map<SpanId, DefaultMutableTreeNode> nodesBySpanId,
+                             @NotNull TraceTimeline timeline) {
+        @NotNull
+        static TraceView build(@NotNull TraceTree trace) {
+            var root = new DefaultMutableTreeNode(trace);
+            var nodesBySpanId = new HashMap<SpanId, DefaultMutableTreeNode>(trace.getSpanCount() * 2);
+            var pending = new ArrayDeque<DefaultMutableTreeNode>();
+            for (SpanNode span : trace.getRoots()) {
+                var node = new DefaultMutableTreeNode(span);
+                root.add(node);
+                pending.add(node);
+            }
+            while (!pending.isEmpty()) {
+                var node = pending.poll();
+                var span = (SpanNode) node.getUserObject();
+                nodesBySpanId.putIfAbsent(span.getActivity().getSpanId(), node);
+                for (SpanNode child : span.getChildren()) {
+                    var childNode = new DefaultMutableTreeNode(child);
+                    node.add(childNode);
+                    pending.add(childNode);
+                }
+            }
+            return new TraceView(trace, new DefaultTreeModel(root), nodesBySpanId, new TraceTimeline(trace));
+        }
+    }
+
     private static final class ExistingFilePathFilter implements Filter {
         private static final Pattern PATH_WITH_LINE = Pattern.compile("([A-Za-z]:\\\\[^\\r\\n:]+?):(?:line\\s+)?(\\d+)");
 
@@ -866,8 +1222,9 @@ public class OpenTelemetryToolWindow {
         JLabel jLabel = new JLabel("<html>" + escapeHtml(label) + ": " + "<a href=''>" + escapeHtml(display) + "</a></html>");
         jLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
         jLabel.addMouseListener(new ClickListener(e -> {
-            openTelemetrySession.updateFilter(value);
-            this.filter.setText(value);
+            var query = TelemetryQuery.quote(value);
+            openTelemetrySession.updateFilter(query);
+            setFilterText(query);
 
             // If the label was right-clicked, copy the value to the clipboard
             if (SwingUtilities.isRightMouseButton(e)) {
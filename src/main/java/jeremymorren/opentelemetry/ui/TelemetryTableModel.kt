@@ -3,6 +3,7 @@ package jeremymorren.opentelemetry.ui
 import jeremymorren.opentelemetry.models.Telemetry
 import jeremymorren.opentelemetry.models.TelemetryItem
 import jeremymorren.opentelemetry.models.TelemetryType
+import jeremymorren.opentelemetry.util.IndexedSortedList
 import java.time.Duration
 import java.time.Instant
 import javax.swing.table.AbstractTableModel
@@ -16,7 +17,8 @@ class TelemetryTableModel : AbstractTableModel() {
         Instant::class.java, Duration::class.java, TelemetryType::class.java, Telemetry::class.java
     )
 
-    private val telemetries: MutableList<TelemetryItem> = ArrayList()
+    // Rows in display order; kept sorted as rows are added in the Duration/Timestamp modes
+    private val telemetries = IndexedSortedList<TelemetryItem>()
 
     override fun getColumnName(column: Int): String = columnNames[column]
 
@@ -37,27 +39,88 @@ class TelemetryTableModel : AbstractTableModel() {
         }
     }
 
-    fun addRow(telemetry: TelemetryItem) {
-        telemetries.add(telemetry)
-        this.fireTableRowsInserted(telemetries.size - 1, telemetries.size - 1)
+    /**
+     * Adds rows at their sorted position, firing one insert event per contiguous range of new rows; without a sort
+     * order they are appended with a single insert event.
+     *
+     * If the rows are many compared to the table, a single data changed event is fired instead (which clears the
+     * selection of a table, see [indexOfRow]).
+     */
+    fun addRows(telemetries: List<TelemetryItem>) {
+        if (telemetries.isEmpty()) return
+        val comparator = this.telemetries.comparator
+        if (comparator == null) {
+            val first = this.telemetries.size
+            telemetries.forEach { this.telemetries.insert(it) }
+            this.fireTableRowsInserted(first, this.telemetries.size - 1)
+            return
+        }
+        // Inserted in sorted order, each row lands after the previously inserted one, so the recorded indexes
+        // are the final (ascending) indexes of the new rows
+        val sorted = telemetries.sortedWith(comparator)
+        val inserted = IntArray(sorted.size) { this.telemetries.insert(sorted[it]) }
+        if (inserted.size.toLong() * LARGE_BATCH_DIVISOR > this.telemetries.size) {
+            this.fireTableDataChanged()
+            return
+        }
+        // Fire from the first range to the last, so the indexes of each event are valid after the previous ones
+        var start = 0
+        while (start < inserted.size) {
+            var end = start
+            while (end < inserted.size - 1 && inserted[end + 1] == inserted[end] + 1) {
+                end++
+            }
+            this.fireTableRowsInserted(inserted[start], inserted[end])
+            start = end + 1
+        }
     }
 
-    fun addRow(i: Int, telemetry: TelemetryItem) {
-        telemetries.add(i, telemetry)
-        this.fireTableRowsInserted(telemetries.size - 1, telemetries.size - 1)
+    /**
+     * Removes the given rows, firing one delete event per contiguous range of rows (so the selection of the
+     * remaining rows is kept).
+     */
+    fun removeRows(telemetries: Set<TelemetryItem>) {
+        if (telemetries.isEmpty()) return
+        val removed = this.telemetries.removeAll { it in telemetries }
+        // Fire from the last range to the first, so the indexes of each event are valid after the previous ones
+        var end = removed.size - 1
+        while (end >= 0) {
+            var start = end
+            while (start > 0 && removed[start - 1] == removed[start] - 1) {
+                start--
+            }
+            this.fireTableRowsDeleted(removed[start], removed[end])
+            end = start - 1
+        }
     }
 
-    fun setRows(telemetries: List<TelemetryItem>) {
+    /**
+     * Replaces all rows.
+     *
+     * @param telemetries the new rows, already sorted by [comparator]
+     * @param comparator the order rows added later are inserted in, or null to append them
+     */
+    fun setRows(telemetries: List<TelemetryItem>, comparator: Comparator<in TelemetryItem>?) {
         val previousSize = this.telemetries.size
-        this.telemetries.clear()
+        this.telemetries.reset(emptyList(), comparator)
         this.fireTableRowsDeleted(0, max(0.0, (previousSize - 1).toDouble()).toInt())
-        this.telemetries.addAll(telemetries)
+        this.telemetries.reset(telemetries, comparator)
         this.fireTableRowsInserted(0, max(0.0, (this.telemetries.size - 1).toDouble()).toInt())
     }
 
+    /**
+     * Gets the index of a row (compared by identity), or -1 if it isn't in the table.
+     */
+    fun indexOfRow(telemetry: TelemetryItem): Int = telemetries.indexOfFirst { it === telemetry }
+
     fun getRow(selectedRow: Int): TelemetryItem? {
         if (selectedRow < 0) return null
         if (selectedRow >= this.rowCount) return null
         return telemetries[selectedRow]
     }
+
+    private companion object {
+        // Batches of more than 1/4 of the rows are shown with a single data changed event
+        const val LARGE_BATCH_DIVISOR = 4
+    }
 }
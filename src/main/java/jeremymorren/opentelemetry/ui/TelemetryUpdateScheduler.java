@@ -0,0 +1,157 @@
+package jeremymorren.opentelemetry.ui;
+
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Buffers telemetry added to the tool window and flushes it at most once per interval,
+ * so bursts of telemetry cost one table update, one auto-scroll and one counter refresh per flush.
+ * <p>
+ * All methods must be called on the EDT; the flush callback runs on the EDT as well.
+ */
+class TelemetryUpdateScheduler {
+    /**
+     * Receives the telemetry buffered since the last flush.
+     */
+    interface Flush {
+        /**
+         * @param telemetries all buffered items
+         * @param visibleTelemetries the buffered items that pass the filter, in arrival order
+         * @param shouldScroll true if any buffered batch asked to scroll to the end
+         */
+        void flush(
+                @NotNull List<TelemetryItem> telemetries,
+                @NotNull List<TelemetryItem> visibleTelemetries,
+                boolean shouldScroll);
+    }
+
+    @NotNull
+    private final Flush flush;
+    @NotNull
+    private final Timer timer;
+
+    /**
+     * A buffered batch of telemetry.
+     */
+    private record Batch(
+            long sequence,
+            @NotNull List<TelemetryItem> telemetries,
+            @NotNull List<TelemetryItem> visibleTelemetries,
+            boolean shouldScroll) {
+    }
+
+    @NotNull
+    private final List<Batch> batches = new ArrayList<>();
+
+    // True while flushes are held back, see hold()
+    private boolean held;
+
+    TelemetryUpdateScheduler(int intervalMillis, @NotNull Flush flush) {
+        this.flush = flush;
+        this.timer = new Timer(intervalMillis, e -> flush());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Buffers a batch of telemetry; see {@link Flush#flush} for the parameters.
+     *
+     * @param sequence the sequence of the batch, see {@link #discard(long)}
+     */
+    void add(
+            long sequence,
+            @NotNull List<TelemetryItem> telemetries,
+            @NotNull List<TelemetryItem> visibleTelemetries,
+            boolean shouldScroll
+    ) {
+        batches.add(new Batch(sequence, telemetries, visibleTelemetries, shouldScroll));
+        if (!held && !timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Holds back flushes until {@link #release}, e.g. while a filter run is pending: its snapshot replaces the rows,
+     * so batches flushed before it is shown but not contained in it would be lost.
+     */
+    void hold() {
+        held = true;
+        timer.stop();
+    }
+
+    /**
+     * Resumes flushing after {@link #hold}; the buffered batches are flushed after the interval.
+     */
+    void release() {
+        held = false;
+        if (!batches.isEmpty() && !timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Discards the buffered batches with a sequence lower than the given one,
+     * e.g. because the tool window was refreshed from a snapshot containing them.
+     */
+    void discard(long sequence) {
+        batches.removeIf(batch -> batch.sequence() < sequence);
+        if (batches.isEmpty()) {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Removes items from the buffered batches, e.g. because they were evicted before being flushed.
+     *
+     * @return the removed items
+     */
+    @NotNull
+    List<TelemetryItem> remove(@NotNull Set<TelemetryItem> removed) {
+        var removedItems = new ArrayList<TelemetryItem>();
+        for (int i = 0; i < batches.size(); i++) {
+            Batch batch = batches.get(i);
+            if (batch.telemetries().stream().noneMatch(removed::contains)) {
+                continue;
+            }
+            var telemetries = new ArrayList<TelemetryItem>();
+            for (TelemetryItem telemetry : batch.telemetries()) {
+                if (removed.contains(telemetry)) {
+                    removedItems.add(telemetry);
+                } else {
+                    telemetries.add(telemetry);
+                }
+            }
+            var visibleTelemetries = new ArrayList<>(batch.visibleTelemetries());
+            visibleTelemetries.removeIf(removed::contains);
+            batches.set(i, new Batch(batch.sequence(), telemetries, visibleTelemetries, batch.shouldScroll()));
+        }
+        return removedItems;
+    }
+
+    void dispose() {
+        held = false;
+        timer.stop();
+        batches.clear();
+    }
+
+    private void flush() {
+        timer.stop();
+        if (held || batches.isEmpty()) {
+            return;
+        }
+        var telemetries = new ArrayList<TelemetryItem>();
+        var visibleTelemetries = new ArrayList<TelemetryItem>();
+        boolean shouldScroll = false;
+        for (Batch batch : batches) {
+            telemetries.addAll(batch.telemetries());
+            visibleTelemetries.addAll(batch.visibleTelemetries());
+            shouldScroll |= batch.shouldScroll();
+        }
+        batches.clear();
+        flush.flush(telemetries, visibleTelemetries, shouldScroll);
+    }
+}
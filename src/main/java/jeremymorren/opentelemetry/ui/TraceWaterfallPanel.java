@@ -0,0 +1,344 @@
+package jeremymorren.opentelemetry.ui;
+
+import com.intellij.ui.JBColor;
+import com.intellij.util.ui.JBUI;
+import com.intellij.util.ui.UIUtil;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TelemetryType;
+import jeremymorren.opentelemetry.models.TraceTimeline;
+import jeremymorren.opentelemetry.ui.renderers.SpanTreeCellRenderer;
+import jeremymorren.opentelemetry.util.DurationFormatter;
+import org.apache.commons.text.StringEscapeUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Waterfall timeline of the spans of a trace: one row per span (indented by depth) with a bar from its start to its end.
+ * Database calls are split into the time to the first response and the time spent reading,
+ * and spans on the critical path are highlighted.
+ * <p>
+ * Spans are painted directly rather than as components, and only the rows within the clip are painted,
+ * so traces with tens of thousands of spans scroll smoothly. Bars narrower than a pixel are drawn as 1px ticks,
+ * and detail (database segments, durations) is only drawn where there is room for it.
+ */
+class TraceWaterfallPanel extends JComponent implements Scrollable {
+    private static final int ROW_HEIGHT = 20;
+    private static final int INDENT = 12;
+    private static final int MAX_LABEL_WIDTH = 320;
+    private static final int MIN_TICK_SPACING = 80;
+    private static final int MIN_SEGMENT_WIDTH = 6;
+
+    private static final Color ACTIVITY_COLOR = JBColor.namedColor("OpenTelemetry.TelemetryColor.Activity", JBColor.cyan);
+    private static final Color REQUEST_COLOR = JBColor.namedColor("OpenTelemetry.TelemetryColor.Request", JBColor.green);
+    private static final Color DEPENDENCY_COLOR = JBColor.namedColor("OpenTelemetry.TelemetryColor.Dependency", JBColor.blue);
+    private static final Color ERROR_COLOR = JBColor.namedColor("OpenTelemetry.SeverityLevel.Error", JBColor.red);
+
+    private final TimeAxis timeAxis = new TimeAxis();
+
+    @Nullable
+    private TraceTimeline timeline;
+    private int selectedRow = -1;
+    @Nullable
+    private Consumer<TelemetryItem> onSpanClicked;
+
+    TraceWaterfallPanel() {
+        setOpaque(true);
+        ToolTipManager.sharedInstance().registerComponent(this);
+        // Double-click a span to show its details (as in the trace tree)
+        addMouseListener(new ClickListener(e -> {
+            if (e.getClickCount() != 2) {
+                return;
+            }
+            int row = rowAt(e.getY());
+            if (row >= 0 && onSpanClicked != null && timeline != null) {
+                onSpanClicked.accept(timeline.getItem(row));
+            }
+        }));
+    }
+
+    /**
+     * The header showing the time axis, for the column header of the enclosing scroll pane.
+     */
+    @NotNull
+    JComponent getTimeAxis() {
+        return timeAxis;
+    }
+
+    /**
+     * Sets the callback for a double-click on a span.
+     */
+    void setOnSpanClicked(@Nullable Consumer<TelemetryItem> onSpanClicked) {
+        this.onSpanClicked = onSpanClicked;
+    }
+
+    /**
+     * Shows a trace, with the row of the selected item (if part of the trace) highlighted and scrolled to.
+     */
+    void setTimeline(@Nullable TraceTimeline timeline, @Nullable TelemetryItem selected) {
+        this.timeline = timeline;
+        selectedRow = timeline != null && selected != null ? timeline.rowOf(selected) : -1;
+        revalidate();
+        repaint();
+        timeAxis.repaint();
+        if (selectedRow >= 0) {
+            int rowHeight = rowHeight();
+            scrollRectToVisible(new Rectangle(0, selectedRow * rowHeight, 1, rowHeight));
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int rows = timeline != null ? timeline.getRowCount() : 0;
+        return new Dimension(JBUI.scale(MAX_LABEL_WIDTH * 2), rows * rowHeight());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        var g2 = (Graphics2D) g.create();
+        try {
+            UIUtil.applyRenderingHints(g2);
+            var clip = g2.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g2.setColor(UIUtil.getTreeBackground());
+            g2.fill(clip);
+            if (timeline == null || timeline.getRowCount() == 0) {
+                return;
+            }
+
+            int rowHeight = rowHeight();
+            int first = Math.max(0, clip.y / rowHeight);
+            int last = Math.min(timeline.getRowCount() - 1, (clip.y + clip.height) / rowHeight);
+            int labelWidth = labelWidth();
+            int barsX = labelWidth + JBUI.scale(4);
+            double pixelsPerNano = barsWidth(barsX) / (double) timeline.getTotalNanos();
+
+            var fm = g2.getFontMetrics();
+            int textOffset = (rowHeight - fm.getHeight()) / 2 + fm.getAscent();
+            int barInset = JBUI.scale(4);
+            int minSegmentWidth = JBUI.scale(MIN_SEGMENT_WIDTH);
+            var criticalPath = timeline.getCriticalPath();
+            var labels = (Graphics2D) g2.create(0, 0, labelWidth, getHeight());
+            try {
+                for (int row = first; row <= last; row++) {
+                    int y = row * rowHeight;
+                    var item = timeline.getItem(row);
+                    var activity = item.getTelemetry().getActivity();
+                    if (activity == null) {
+                        continue;
+                    }
+                    if (row == selectedRow) {
+                        g2.setColor(UIUtil.getTreeSelectionBackground(false));
+                        g2.fillRect(clip.x, y, clip.width, rowHeight);
+                    }
+
+                    var color = activity.isError() ? ERROR_COLOR : colorOf(activity.getType());
+                    labels.setColor(activity.isError() ? ERROR_COLOR
+                            : criticalPath.isOnPath(item) ? SpanTreeCellRenderer.CRITICAL_PATH_COLOR
+                            : UIUtil.getTreeForeground());
+                    labels.drawString(labelOf(item), JBUI.scale(4) + timeline.getDepths()[row] * JBUI.scale(INDENT), y + textOffset);
+
+                    long start = timeline.getStartNanos()[row];
+                    if (start < 0) {
+                        continue;
+                    }
+                    long duration = Math.max(timeline.getDurationNanos()[row], 0);
+                    int x = barsX + (int) (start * pixelsPerNano);
+                    int width = Math.max(1, (int) (duration * pixelsPerNano));
+                    if (x + width < clip.x || x > clip.x + clip.width) {
+                        continue;
+                    }
+                    g2.setColor(color);
+                    g2.fillRect(x, y + barInset, width, rowHeight - barInset * 2);
+                    if (criticalPath.isOnPath(item)) {
+                        // Underline the spans on the critical path
+                        g2.setColor(SpanTreeCellRenderer.CRITICAL_PATH_COLOR);
+                        g2.fillRect(x, y + rowHeight - barInset, width, JBUI.scale(2));
+                    }
+
+                    // Time to the first database response, darker than the time spent reading
+                    long dbQuery = timeline.getDbQueryNanos()[row];
+                    if (dbQuery >= 0 && width >= minSegmentWidth) {
+                        int queryWidth = Math.min(width, (int) (dbQuery * pixelsPerNano));
+                        g2.setColor(color.darker());
+                        g2.fillRect(x, y + barInset, queryWidth, rowHeight - barInset * 2);
+                    }
+
+                    if (duration > 0) {
+                        var text = DurationFormatter.Companion.format(Duration.ofNanos(duration));
+                        int textX = x + width + JBUI.scale(4);
+                        if (textX + fm.stringWidth(text) <= getWidth()) {
+                            g2.setColor(UIUtil.getContextHelpForeground());
+                            g2.drawString(text, textX, y + textOffset);
+                        }
+                    }
+                }
+            } finally {
+                labels.dispose();
+            }
+
+            g2.setColor(JBColor.border());
+            g2.drawLine(labelWidth, clip.y, labelWidth, clip.y + clip.height);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        int row = rowAt(event.getY());
+        if (row < 0 || timeline == null) {
+            return null;
+        }
+        var item = timeline.getItem(row);
+        var activity = item.getTelemetry().getActivity();
+        if (activity == null) {
+            return null;
+        }
+        var sb = new StringBuilder("<html><b>")
+                .append(StringEscapeUtils.escapeHtml4(labelOf(item)))
+                .append("</b><br>").append(activity.getTypeDisplay());
+        long start = timeline.getStartNanos()[row];
+        if (start >= 0) {
+            sb.append("<br>Start: ").append(formatOffset(start));
+        }
+        if (activity.getDuration() != null) {
+            sb.append("<br>Duration: ").append(DurationFormatter.Companion.format(activity.getDuration()));
+        }
+        var selfTime = timeline.getCriticalPath().getSelfTime(item);
+        if (selfTime != null) {
+            sb.append("<br>Self: ").append(DurationFormatter.Companion.format(selfTime));
+        }
+        var criticalTime = timeline.getCriticalPath().getCriticalTime(item);
+        if (criticalTime != null) {
+            sb.append("<br>Critical path: ").append(DurationFormatter.Companion.format(criticalTime));
+        }
+        if (activity.getDbQueryTime() != null) {
+            sb.append("<br>Query: ").append(DurationFormatter.Companion.format(activity.getDbQueryTime()));
+        }
+        if (activity.getDbReadTime() != null) {
+            sb.append("<br>Read: ").append(DurationFormatter.Companion.format(activity.getDbReadTime()));
+        }
+        return sb.append("</html>").toString();
+    }
+
+    private int rowAt(int y) {
+        if (timeline == null || y < 0) {
+            return -1;
+        }
+        int row = y / rowHeight();
+        return row < timeline.getRowCount() ? row : -1;
+    }
+
+    private static int rowHeight() {
+        return JBUI.scale(ROW_HEIGHT);
+    }
+
+    private int labelWidth() {
+        return Math.min(getWidth() * 2 / 5, JBUI.scale(MAX_LABEL_WIDTH));
+    }
+
+    private int barsWidth(int barsX) {
+        // Leave room for the duration of the longest span
+        return Math.max(1, getWidth() - barsX - JBUI.scale(60));
+    }
+
+    @NotNull
+    private static String labelOf(@NotNull TelemetryItem item) {
+        var activity = item.getTelemetry().getActivity();
+        if (activity == null) {
+            return "";
+        }
+        var name = activity.getDisplayName() != null ? activity.getDisplayName() : activity.getOperationName();
+        return name != null ? name : activity.getSpanId() != null ? activity.getSpanId().toString() : "";
+    }
+
+    /**
+     * Formats a time relative to the start of the trace.
+     */
+    @NotNull
+    private static String formatOffset(long nanos) {
+        return nanos == 0 ? "0" : "+" + DurationFormatter.Companion.format(Duration.ofNanos(nanos));
+    }
+
+    @NotNull
+    private static Color colorOf(@NotNull TelemetryType type) {
+        return switch (type) {
+            case Request -> REQUEST_COLOR;
+            case Dependency -> DEPENDENCY_COLOR;
+            default -> ACTIVITY_COLOR;
+        };
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return rowHeight();
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    /**
+     * The time axis above the bars, with ticks at round intervals.
+     */
+    private class TimeAxis extends JComponent {
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(TraceWaterfallPanel.this.getWidth(), rowHeight());
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            var g2 = (Graphics2D) g.create();
+            try {
+                UIUtil.applyRenderingHints(g2);
+                g2.setColor(UIUtil.getPanelBackground());
+                g2.fillRect(0, 0, getWidth(), getHeight());
+                g2.setColor(JBColor.border());
+                g2.drawLine(0, getHeight() - 1, getWidth(), getHeight() - 1);
+                if (timeline == null) {
+                    return;
+                }
+
+                int barsX = labelWidth() + JBUI.scale(4);
+                int barsWidth = barsWidth(barsX);
+                long total = timeline.getTotalNanos();
+                long interval = TraceTimeline.tickInterval(total, Math.max(1, barsWidth / JBUI.scale(MIN_TICK_SPACING)));
+                var fm = g2.getFontMetrics();
+                int textY = (getHeight() - fm.getHeight()) / 2 + fm.getAscent();
+                g2.setColor(UIUtil.getContextHelpForeground());
+                for (long t = 0; t <= total; t += interval) {
+                    int x = barsX + (int) (t * (barsWidth / (double) total));
+                    g2.drawLine(x, getHeight() - JBUI.scale(4), x, getHeight() - 1);
+                    g2.drawString(formatOffset(t), x + JBUI.scale(2), textY);
+                }
+            } finally {
+                g2.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package jeremymorren.opentelemetry.ui.renderers
+
+import com.intellij.ui.ColoredTreeCellRenderer
+import com.intellij.ui.JBColor
+import com.intellij.ui.SimpleTextAttributes
+import jeremymorren.opentelemetry.models.CriticalPath
+import jeremymorren.opentelemetry.models.SpanNode
+import jeremymorren.opentelemetry.models.TelemetryItem
+import jeremymorren.opentelemetry.util.DurationFormatter
+import javax.swing.JTree
+import javax.swing.tree.DefaultMutableTreeNode
+
+/**
+ * Renders the [SpanNode]s of a trace tree: name, type, duration and self time, with errors in red,
+ * spans on the critical path highlighted and the span of the selected telemetry in bold.
+ */
+class SpanTreeCellRenderer : ColoredTreeCellRenderer() {
+    /**
+     * The span (or log) selected in the telemetry table.
+     */
+    var selectedItem: TelemetryItem? = null
+
+    /**
+     * The critical path of the trace.
+     */
+    var criticalPath: CriticalPath? = null
+
+    override fun customizeCellRenderer(
+        tree: JTree,
+        value: Any?,
+        selected: Boolean,
+        expanded: Boolean,
+        leaf: Boolean,
+        row: Int,
+        hasFocus: Boolean
+    ) {
+        val node = (value as? DefaultMutableTreeNode)?.userObject as? SpanNode ?: return
+        val activity = node.activity
+
+        val style = if (node.item === selectedItem) SimpleTextAttributes.STYLE_BOLD else SimpleTextAttributes.STYLE_PLAIN
+        val onPath = criticalPath?.isOnPath(node.item) == true
+        val color =
+            if (activity.isError) JBColor.namedColor("OpenTelemetry.SeverityLevel.Error", JBColor.red)
+            else if (onPath) CRITICAL_PATH_COLOR
+            else null
+        append(activity.displayName ?: activity.operationName ?: activity.spanId?.toString() ?: "", SimpleTextAttributes(style, color))
+
+        append("  ${activity.typeDisplay}", SimpleTextAttributes.GRAYED_ATTRIBUTES)
+        activity.source?.let { append("  ${it.name}", SimpleTextAttributes.GRAYED_ATTRIBUTES) }
+        activity.duration?.let { append("  ${DurationFormatter.format(it)}", SimpleTextAttributes.GRAYED_ATTRIBUTES) }
+        if (node.children.isNotEmpty()) {
+            criticalPath?.getSelfTime(node.item)?.let {
+                append("  self ${DurationFormatter.format(it)}", SimpleTextAttributes.GRAYED_ATTRIBUTES)
+            }
+        }
+        if (onPath) {
+            criticalPath?.getCriticalTime(node.item)?.takeUnless { it.isZero }?.let {
+                append(
+                    "  critical path ${DurationFormatter.format(it)}",
+                    SimpleTextAttributes(SimpleTextAttributes.STYLE_PLAIN, CRITICAL_PATH_COLOR)
+                )
+            }
+        }
+        if (node.missingParent) {
+            append("  (parent span not received)", SimpleTextAttributes.GRAYED_ITALIC_ATTRIBUTES)
+        }
+    }
+
+    companion object {
+        /**
+         * The color of spans on the critical path.
+         */
+        @JvmField
+        val CRITICAL_PATH_COLOR: JBColor = JBColor.namedColor("OpenTelemetry.CriticalPath", JBColor(0xD35400, 0xF39C12))
+    }
+}
@@ -0,0 +1,115 @@
+package jeremymorren.opentelemetry.util
+
+import jeremymorren.opentelemetry.models.TelemetryItem
+import java.util.function.BooleanSupplier
+
+/**
+ * Applies a [TelemetryFilter] to a snapshot of received telemetry in chunks, so the work can be cancelled and
+ * the result shown progressively.
+ *
+ * The last completed result is remembered: when the next filter [narrows][TelemetryFilter.narrows] it (e.g. more
+ * text was typed), only the previous matches and the telemetry received since are scanned. Otherwise the candidates
+ * found by a search index (see [TrigramIndex]) are scanned, if any. Removed telemetry is dropped from the remembered
+ * result ([remove]), so it can still be refined afterwards.
+ *
+ * Not thread-safe: runs must not overlap (e.g. use a single-threaded executor).
+ */
+class IncrementalTelemetryFilter(private val chunkSize: Int = DEFAULT_CHUNK_SIZE) {
+    private var previousFilter: TelemetryFilter? = null
+    private var previousMatches: List<TelemetryItem> = emptyList()
+    private var previousScanned = 0
+    private var previousEpoch = 0L
+
+    /**
+     * Filters [telemetries].
+     *
+     * @param telemetries snapshot of the received telemetry, in arrival order
+     * @param indexCandidates the items of [telemetries] that may match according to a search index (in arrival
+     *   order), or null if all may match
+     * @param epoch changes whenever telemetry is removed, which invalidates the previous result unless the removal
+     *   was passed to [remove] (telemetry only appended since the previous run can still be refined)
+     * @param cancelled checked between chunks; the run stops (and is not remembered) once it returns true
+     * @param onMatches invoked after each chunk with the matches found in that chunk, in arrival order
+     * @return all matches in arrival order, or null if the run was cancelled
+     */
+    fun filter(
+        filter: TelemetryFilter,
+        telemetries: List<TelemetryItem>,
+        indexCandidates: List<TelemetryItem>?,
+        epoch: Long,
+        cancelled: BooleanSupplier,
+        onMatches: (List<TelemetryItem>) -> Unit
+    ): List<TelemetryItem>? {
+        val previous = previousFilter
+        var candidates: List<TelemetryItem> = indexCandidates ?: telemetries
+        if (previous != null && epoch == previousEpoch && previousScanned <= telemetries.size && filter.narrows(previous)) {
+            val narrowed = CandidateList(previousMatches, telemetries.subList(previousScanned, telemetries.size))
+            if (narrowed.size < candidates.size) {
+                candidates = narrowed
+            }
+        }
+
+        val matches = ArrayList<TelemetryItem>()
+        var start = 0
+        while (start < candidates.size) {
+            if (cancelled.asBoolean) {
+                return null
+            }
+            val end = minOf(start + chunkSize, candidates.size)
+            val chunkMatches = ArrayList<TelemetryItem>()
+            for (i in start until end) {
+                val telemetry = candidates[i]
+                if (filter.matches(telemetry)) {
+                    chunkMatches.add(telemetry)
+                }
+            }
+            matches.addAll(chunkMatches)
+            onMatches(chunkMatches)
+            start = end
+        }
+
+        previousFilter = filter
+        previousMatches = matches
+        previousScanned = telemetries.size
+        previousEpoch = epoch
+        return matches
+    }
+
+    /**
+     * Drops removed telemetry from the remembered result.
+     *
+     * @param removed the removed items
+     * @param removedIndexes the indexes the removed items had in the telemetry before the removal, in ascending order
+     * @param epoch the epoch after the removal; the remembered result is only kept if it is of the epoch before
+     */
+    fun remove(removed: Set<TelemetryItem>, removedIndexes: IntArray, epoch: Long) {
+        if (previousFilter == null || previousEpoch != epoch - 1) {
+            return
+        }
+        // The scanned snapshot is a prefix of the telemetry before the removal (telemetry is only appended in between)
+        var removedScanned = removedIndexes.binarySearch(previousScanned)
+        if (removedScanned < 0) {
+            removedScanned = -removedScanned - 1
+        }
+        previousMatches = previousMatches.filterNot { it in removed }
+        previousScanned -= removedScanned
+        previousEpoch = epoch
+    }
+
+    /**
+     * The previous matches followed by the telemetry received since, without copying either.
+     */
+    private class CandidateList(
+        private val head: List<TelemetryItem>,
+        private val tail: List<TelemetryItem>
+    ) : AbstractList<TelemetryItem>(), RandomAccess {
+        override val size: Int get() = head.size + tail.size
+
+        override fun get(index: Int): TelemetryItem =
+            if (index < head.size) head[index] else tail[index - head.size]
+    }
+
+    companion object {
+        const val DEFAULT_CHUNK_SIZE = 10_000
+    }
+}
@@ -0,0 +1,220 @@
+package jeremymorren.opentelemetry.util
+
+/**
+ * A list kept sorted by [comparator] (or in insertion order if it is null), with O(log n) insertion and
+ * O(log n) access by index. Removal ([removeAll]) takes a single pass over the elements.
+ *
+ * Elements are stored in chunks of at most [MAX_CHUNK_SIZE] elements (a two-level B+-tree): an insert
+ * binary-searches the chunks and then the chunk, and shifts at most one chunk. A Fenwick tree over the chunk sizes
+ * maps between list indexes and chunks. Elements that compare equal keep their insertion order.
+ *
+ * Not thread-safe.
+ */
+class IndexedSortedList<T>(comparator: Comparator<in T>? = null) : AbstractList<T>(), RandomAccess {
+    /**
+     * The sort order, or null if elements are kept in insertion order.
+     */
+    var comparator: Comparator<in T>? = comparator
+        private set
+
+    private val chunks = ArrayList<ArrayList<T>>()
+
+    // Fenwick (binary indexed) tree over chunk sizes, 1-based
+    private var chunkSizeTree = IntArray(1)
+
+    private var elementCount = 0
+
+    override val size: Int get() = elementCount
+
+    override fun get(index: Int): T {
+        if (index < 0 || index >= elementCount) {
+            throw IndexOutOfBoundsException("Index $index out of bounds for length $elementCount")
+        }
+        // Descend the Fenwick tree to the chunk containing the index
+        var chunk = 0
+        var remaining = index
+        var step = Integer.highestOneBit(chunks.size)
+        while (step > 0) {
+            val next = chunk + step
+            if (next <= chunks.size && chunkSizeTree[next] <= remaining) {
+                chunk = next
+                remaining -= chunkSizeTree[next]
+            }
+            step = step shr 1
+        }
+        return chunks[chunk][remaining]
+    }
+
+    /**
+     * Inserts an element at its sorted position (after any equal elements), or at the end if unsorted.
+     *
+     * @return the index the element was inserted at
+     */
+    fun insert(element: T): Int {
+        if (chunks.isEmpty()) {
+            chunks.add(ArrayList())
+            rebuildIndex()
+        }
+        val comparator = comparator
+        val chunkIndex: Int
+        val offset: Int
+        if (comparator == null) {
+            chunkIndex = chunks.size - 1
+            offset = chunks[chunkIndex].size
+        } else {
+            chunkIndex = upperBoundChunk(element, comparator)
+            offset = upperBound(chunks[chunkIndex], element, comparator)
+        }
+
+        val chunk = chunks[chunkIndex]
+        chunk.add(offset, element)
+        elementCount++
+        val index = prefixSize(chunkIndex) + offset
+        if (chunk.size > MAX_CHUNK_SIZE) {
+            split(chunkIndex)
+        } else {
+            addToChunkSize(chunkIndex, 1)
+        }
+        return index
+    }
+
+    /**
+     * Replaces the contents and sort order.
+     *
+     * @param elements the new elements, already sorted by [comparator] (or in insertion order if it is null)
+     */
+    fun reset(elements: List<T>, comparator: Comparator<in T>?) {
+        this.comparator = comparator
+        chunks.clear()
+        var start = 0
+        while (start < elements.size) {
+            val end = minOf(start + MIN_CHUNK_SIZE, elements.size)
+            chunks.add(ArrayList(elements.subList(start, end)))
+            start = end
+        }
+        elementCount = elements.size
+        rebuildIndex()
+    }
+
+    /**
+     * Removes the elements matching [predicate], keeping the order of the others.
+     *
+     * @return the indexes the removed elements had before the removal, in ascending order
+     */
+    fun removeAll(predicate: (T) -> Boolean): IntArray {
+        var removed = IntArray(0)
+        var removedCount = 0
+        var index = 0
+        for (chunk in chunks) {
+            val chunkStart = index
+            index += chunk.size
+            var kept = 0
+            for (i in chunk.indices) {
+                val element = chunk[i]
+                if (predicate(element)) {
+                    if (removedCount == removed.size) {
+                        removed = removed.copyOf(maxOf(16, removedCount * 2))
+                    }
+                    removed[removedCount++] = chunkStart + i
+                } else {
+                    chunk[kept++] = element
+                }
+            }
+            chunk.subList(kept, chunk.size).clear()
+        }
+        if (removedCount == 0) {
+            return removed
+        }
+        elementCount -= removedCount
+
+        // Merge chunks that became small into their predecessor, so the number of chunks stays proportional to size
+        val merged = ArrayList<ArrayList<T>>()
+        for (chunk in chunks) {
+            val previous = merged.lastOrNull()
+            if (previous != null && previous.size + chunk.size <= MIN_CHUNK_SIZE) {
+                previous.addAll(chunk)
+            } else if (chunk.isNotEmpty()) {
+                merged.add(chunk)
+            }
+        }
+        chunks.clear()
+        chunks.addAll(merged)
+        rebuildIndex()
+        return removed.copyOf(removedCount)
+    }
+
+    /**
+     * Index of the first chunk whose last element is greater than [element]; the last chunk if there is none.
+     */
+    private fun upperBoundChunk(element: T, comparator: Comparator<in T>): Int {
+        var low = 0
+        var high = chunks.size - 1
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (comparator.compare(element, chunks[mid].last()) < 0) {
+                high = mid
+            } else {
+                low = mid + 1
+            }
+        }
+        return low
+    }
+
+    private fun upperBound(chunk: List<T>, element: T, comparator: Comparator<in T>): Int {
+        var low = 0
+        var high = chunk.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (comparator.compare(element, chunk[mid]) < 0) {
+                high = mid
+            } else {
+                low = mid + 1
+            }
+        }
+        return low
+    }
+
+    private fun split(chunkIndex: Int) {
+        val chunk = chunks[chunkIndex]
+        val tail = chunk.subList(MIN_CHUNK_SIZE, chunk.size)
+        chunks.add(chunkIndex + 1, ArrayList(tail))
+        tail.clear()
+        // Happens once per MIN_CHUNK_SIZE inserts, so rebuilding the (chunk-count sized) index is amortized
+        rebuildIndex()
+    }
+
+    private fun prefixSize(chunkIndex: Int): Int {
+        var sum = 0
+        var i = chunkIndex
+        while (i > 0) {
+            sum += chunkSizeTree[i]
+            i -= i and -i
+        }
+        return sum
+    }
+
+    private fun addToChunkSize(chunkIndex: Int, delta: Int) {
+        var i = chunkIndex + 1
+        while (i <= chunks.size) {
+            chunkSizeTree[i] += delta
+            i += i and -i
+        }
+    }
+
+    private fun rebuildIndex() {
+        val tree = IntArray(chunks.size + 1)
+        for (i in 1..chunks.size) {
+            tree[i] += chunks[i - 1].size
+            val parent = i + (i and -i)
+            if (parent <= chunks.size) {
+                tree[parent] += tree[i]
+            }
+        }
+        chunkSizeTree = tree
+    }
+
+    companion object {
+        private const val MIN_CHUNK_SIZE = 512
+        private const val MAX_CHUNK_SIZE = 2 * MIN_CHUNK_SIZE
+    }
+}
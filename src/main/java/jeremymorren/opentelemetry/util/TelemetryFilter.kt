@@ -0,0 +1,34 @@
+package jeremymorren.opentelemetry.util
+
+import jeremymorren.opentelemetry.models.TelemetryItem
+import jeremymorren.opentelemetry.models.TelemetryType
+
+/**
+ * The criteria telemetry must match to be shown: one of the visible types, and matching the filter query.
+ *
+ * @property text the filter query (see [TelemetryQuery]; empty to match all telemetry)
+ * @property ignoreCase true if free text in the query is matched case-insensitively
+ * @property visibleTypes the telemetry types to show (telemetry without a type is always shown)
+ */
+class TelemetryFilter(
+    val text: String,
+    val ignoreCase: Boolean,
+    val visibleTypes: Set<TelemetryType>
+) {
+    val query = TelemetryQuery.parse(text, ignoreCase)
+
+    fun matches(telemetry: TelemetryItem): Boolean {
+        val type = telemetry.telemetry.type
+        if (type != null && type !in visibleTypes) {
+            return false
+        }
+        return query.matches(telemetry)
+    }
+
+    /**
+     * Checks whether every item matching this filter also matches [previous] (e.g. a query term was added),
+     * so this filter can be applied to the result of [previous] instead of all telemetry.
+     */
+    fun narrows(previous: TelemetryFilter): Boolean =
+        previous.visibleTypes.containsAll(visibleTypes) && query.narrows(previous.query)
+}
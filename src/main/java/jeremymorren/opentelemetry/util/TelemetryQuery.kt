@@ -0,0 +1,372 @@
+package jeremymorren.opentelemetry.util
+
+import jeremymorren.opentelemetry.models.ActivityKind
+import jeremymorren.opentelemetry.models.ActivityStatusCode
+import jeremymorren.opentelemetry.models.DependencyType
+import jeremymorren.opentelemetry.models.LogLevel
+import jeremymorren.opentelemetry.models.Telemetry
+import jeremymorren.opentelemetry.models.TelemetryItem
+import jeremymorren.opentelemetry.models.TelemetryType
+import java.time.Duration
+import java.util.*
+import java.util.regex.Pattern
+
+/**
+ * A telemetry filter query: whitespace-separated terms, all of which must match.
+ *
+ * - `field:value` or `field=value` matches a field equal to the value (ignoring case; `*` matches any characters),
+ *   `field!=value` the opposite.
+ * - `field>value`, `>=`, `<` and `<=` compare durations (`200ms`, `1.5s`; plain numbers are milliseconds),
+ *   log levels, numbers or (otherwise) strings.
+ * - Anything else is free text, searched for in the telemetry JSON.
+ *
+ * Fields are `type` (telemetry or dependency type), `duration`, `status` (`error`, `ok`, `unset`), `level`, `kind`,
+ * `source` (activity source, log category or meter), `name`, `message`, `trace` and `span`. Dotted keys are
+ * looked up in the span, log, metric and resource attributes (e.g. `db.system=postgresql`). Any other token is free
+ * text, even if it contains an operator (e.g. `http://localhost:5000/api` or `SqlException:`).
+ * Field terms are evaluated against the telemetry model, without searching the JSON.
+ *
+ * Values containing spaces or operators can be quoted (`"..."`, with `\"` and `\\` escapes).
+ * Enum values (types, levels etc.) can be abbreviated to a prefix, e.g. `level>=warn`.
+ */
+class TelemetryQuery private constructor(val terms: List<Term>) {
+
+    fun matches(telemetry: TelemetryItem): Boolean = terms.all { it.matches(telemetry) }
+
+    /**
+     * Checks whether every item matching this query also matches [previous] (e.g. a term was added or free text
+     * was extended), so this query can be applied to the result of [previous] instead of all telemetry.
+     */
+    fun narrows(previous: TelemetryQuery): Boolean =
+        previous.terms.all { p -> p.matchesAll || terms.any { it.narrows(p) } }
+
+    /**
+     * A term of the query.
+     */
+    sealed class Term {
+        /**
+         * True if the term matches all telemetry (e.g. a field term without a value, while it is being typed).
+         */
+        open val matchesAll: Boolean get() = false
+
+        abstract fun matches(telemetry: TelemetryItem): Boolean
+
+        /**
+         * Checks whether every item matching this term also matches [previous].
+         */
+        abstract fun narrows(previous: Term): Boolean
+    }
+
+    /**
+     * Free text, searched for in the telemetry JSON.
+     */
+    class TextTerm(val text: String, val ignoreCase: Boolean) : Term() {
+        /**
+         * The text as searched for in the JSON.
+         * NB: We have to escape the string to JSON to allow filtering on special characters
+         */
+        val searchText: String = escapeJson(text)
+
+        private val search = Utf8TextSearch(searchText, ignoreCase)
+
+        override fun matches(telemetry: TelemetryItem): Boolean = telemetry.matches(search)
+
+        override fun narrows(previous: Term): Boolean =
+            previous is TextTerm &&
+                    // A case-sensitive match is also a case-insensitive match, but not the other way round
+                    (previous.ignoreCase || !ignoreCase) &&
+                    text.contains(previous.text, ignoreCase = previous.ignoreCase)
+    }
+
+    /**
+     * A comparison of a telemetry field with a value.
+     */
+    class FieldTerm(val field: String, val operator: Operator, val value: String) : Term() {
+        private val predicate: (Telemetry) -> Boolean = compile(field.lowercase(Locale.ROOT), operator, value)
+
+        override val matchesAll: Boolean get() = value.isEmpty()
+
+        override fun matches(telemetry: TelemetryItem): Boolean = predicate(telemetry.telemetry)
+
+        override fun narrows(previous: Term): Boolean =
+            previous is FieldTerm &&
+                    field.equals(previous.field, ignoreCase = true) &&
+                    operator == previous.operator &&
+                    value == previous.value
+    }
+
+    enum class Operator(val symbol: String) {
+        Equal(":"),
+        NotEqual("!="),
+        GreaterThan(">"),
+        GreaterThanOrEqual(">="),
+        LessThan("<"),
+        LessThanOrEqual("<=");
+
+        val isEquality: Boolean get() = this == Equal || this == NotEqual
+
+        /**
+         * Checks whether the result of comparing a field to the value (see [Comparator.compare]) satisfies the operator.
+         */
+        fun test(comparison: Int): Boolean =
+            when (this) {
+                Equal -> comparison == 0
+                NotEqual -> comparison != 0
+                GreaterThan -> comparison > 0
+                GreaterThanOrEqual -> comparison >= 0
+                LessThan -> comparison < 0
+                LessThanOrEqual -> comparison <= 0
+            }
+
+        companion object {
+            fun parse(symbol: String): Operator =
+                if (symbol == "=") Equal else entries.first { it.symbol == symbol }
+        }
+    }
+
+    companion object {
+        private val MATCH_NOTHING: (Telemetry) -> Boolean = { false }
+
+        // A field name followed by an operator (longest operators first)
+        private val FIELD_PREFIX = Pattern.compile("([A-Za-z_][A-Za-z0-9_.\\-]*)(!=|>=|<=|[:=<>])")
+
+        private val DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(ns|us|µs|ms|s|m|h)?", Pattern.CASE_INSENSITIVE)
+
+        private val FIELDS = setOf("type", "duration", "status", "level", "kind", "source", "name", "message", "trace", "span")
+
+        private val NEEDS_QUOTES = Pattern.compile("[\\s\"\\\\:=<>!]")
+
+        /**
+         * Parses a query.
+         *
+         * @param ignoreCase true if free text is matched case-insensitively (field values always ignore case)
+         */
+        @JvmStatic
+        fun parse(query: String, ignoreCase: Boolean): TelemetryQuery {
+            val terms = mutableListOf<Term>()
+            var position = 0
+            while (true) {
+                while (position < query.length && query[position].isWhitespace()) {
+                    position++
+                }
+                if (position >= query.length) {
+                    return TelemetryQuery(terms)
+                }
+
+                val matcher = FIELD_PREFIX.matcher(query).region(position, query.length)
+                if (query[position] != '"' && matcher.lookingAt() && isField(matcher.group(1))) {
+                    val value = StringBuilder()
+                    position = readValue(query, matcher.end(), value)
+                    terms.add(FieldTerm(matcher.group(1), Operator.parse(matcher.group(2)), value.toString()))
+                } else {
+                    val text = StringBuilder()
+                    position = readValue(query, position, text)
+                    if (text.isNotEmpty()) {
+                        terms.add(TextTerm(text.toString(), ignoreCase))
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks whether a name followed by an operator is a field (or attribute key) rather than part of free text.
+         */
+        private fun isField(name: String): Boolean = name.lowercase(Locale.ROOT) in FIELDS || name.contains('.')
+
+        /**
+         * Quotes a value (if necessary) so it is parsed as a single free text term.
+         */
+        @JvmStatic
+        fun quote(value: String): String {
+            if (!NEEDS_QUOTES.matcher(value).find()) {
+                return value
+            }
+            return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+        }
+
+        /**
+         * Reads a quoted value, or an unquoted value up to the next whitespace.
+         *
+         * @return the position after the value
+         */
+        private fun readValue(query: String, start: Int, value: StringBuilder): Int {
+            var position = start
+            if (position < query.length && query[position] == '"') {
+                position++
+                while (position < query.length && query[position] != '"') {
+                    if (query[position] == '\\' && position + 1 < query.length) {
+                        position++
+                    }
+                    value.append(query[position++])
+                }
+                // Skip the closing quote (if the query isn't still being typed)
+                return minOf(position + 1, query.length)
+            }
+            while (position < query.length && !query[position].isWhitespace()) {
+                value.append(query[position++])
+            }
+            return position
+        }
+
+        private fun compile(field: String, operator: Operator, value: String): (Telemetry) -> Boolean {
+            if (value.isEmpty()) {
+                return { true }
+            }
+            return when (field) {
+                "type" -> {
+                    if (!operator.isEquality) return MATCH_NOTHING
+                    val type = parseEnum<TelemetryType>(value)
+                    val dependencyType = parseEnum<DependencyType>(value)
+                    if (type == null && dependencyType == null) return MATCH_NOTHING
+                    equality(operator) { it.type == type || (dependencyType != null && it.activity?.dependencyType == dependencyType) }
+                }
+                "duration" -> {
+                    val duration = parseDuration(value) ?: return MATCH_NOTHING
+                    compare(operator) { telemetry ->
+                        (telemetry.activity?.duration ?: telemetry.metric?.duration)?.compareTo(duration)
+                    }
+                }
+                "status" -> {
+                    if (!operator.isEquality) return MATCH_NOTHING
+                    val status = parseEnum<ActivityStatusCode>(value) ?: return MATCH_NOTHING
+                    equality(operator) { status(it) == status }
+                }
+                "level" -> {
+                    val level = parseEnum<LogLevel>(value) ?: return MATCH_NOTHING
+                    compare(operator) { telemetry ->
+                        val logLevel = telemetry.log?.logLevel
+                        when {
+                            logLevel == null -> null
+                            // None (logging disabled) is not ordered relative to the other levels
+                            !operator.isEquality && (logLevel == LogLevel.None || level == LogLevel.None) -> null
+                            else -> logLevel.compareTo(level)
+                        }
+                    }
+                }
+                "kind" -> {
+                    if (!operator.isEquality) return MATCH_NOTHING
+                    val kind = parseEnum<ActivityKind>(value) ?: return MATCH_NOTHING
+                    equality(operator) { it.activity?.kind == kind }
+                }
+                "source" -> compareValue(operator, value) {
+                    it.activity?.source?.name ?: it.log?.categoryName ?: it.metric?.meterName
+                }
+                "name" -> compareValue(operator, value) {
+                    it.activity?.displayName ?: it.metric?.name ?: it.log?.eventId?.name
+                }
+                "message" -> compareValue(operator, value) { it.log?.formattedMessage ?: it.log?.body }
+                "trace" -> compareValue(operator, value) { it.activity?.traceId ?: it.log?.traceId }
+                "span" -> compareValue(operator, value) { it.activity?.spanId ?: it.log?.spanId }
+                else -> compareValue(operator, value) { attribute(it, field) }
+            }
+        }
+
+        /**
+         * The status of an activity; logs at [LogLevel.Error] and above (or with an exception) count as errors.
+         */
+        private fun status(telemetry: Telemetry): ActivityStatusCode? {
+            val activity = telemetry.activity
+            if (activity != null) {
+                return if (activity.isError) ActivityStatusCode.Error else activity.status ?: ActivityStatusCode.Unset
+            }
+            val log = telemetry.log ?: return null
+            val level = log.logLevel
+            return if (log.exception != null || level == LogLevel.Error || level == LogLevel.Critical)
+                ActivityStatusCode.Error
+            else
+                ActivityStatusCode.Unset
+        }
+
+        /**
+         * Looks up an attribute of the span, log or metric, or of the resource.
+         */
+        private fun attribute(telemetry: Telemetry, key: String): Any? {
+            telemetry.activity?.tags?.get(key)?.let { return it }
+            telemetry.log?.attributes?.get(key)?.let { return it }
+            telemetry.metric?.let { metric ->
+                metric.meterTags?.get(key)?.let { return it }
+                metric.points?.firstNotNullOfOrNull { it.tags?.get(key) }?.let { return it }
+            }
+            return telemetry.resource?.get(key)
+        }
+
+        /**
+         * A predicate for an equality operator; [NotEqual][Operator.NotEqual] negates [equals].
+         */
+        private inline fun equality(operator: Operator, crossinline equals: (Telemetry) -> Boolean): (Telemetry) -> Boolean =
+            if (operator == Operator.Equal) { telemetry -> equals(telemetry) } else { telemetry -> !equals(telemetry) }
+
+        /**
+         * A predicate comparing a field to the value; [compare] returns null if the field is missing
+         * (which only matches [NotEqual][Operator.NotEqual]).
+         */
+        private inline fun compare(operator: Operator, crossinline compare: (Telemetry) -> Int?): (Telemetry) -> Boolean =
+            { telemetry ->
+                val comparison = compare(telemetry)
+                if (comparison == null) operator == Operator.NotEqual else operator.test(comparison)
+            }
+
+        /**
+         * A predicate comparing a string, number or boolean field to the value: numerically if both are numbers,
+         * otherwise as strings ignoring case (equality supports `*` wildcards).
+         */
+        private fun compareValue(operator: Operator, value: String, field: (Telemetry) -> Any?): (Telemetry) -> Boolean {
+            val number = value.toDoubleOrNull()
+            val glob = if (operator.isEquality && value.contains('*')) globPattern(value) else null
+            return compare(operator) { telemetry ->
+                when (val actual = field(telemetry)) {
+                    null, is List<*>, is Map<*, *> -> null
+                    is Number -> if (number != null) actual.toDouble().compareTo(number) else compareString(actual.toString(), value, glob)
+                    else -> {
+                        val string = actual.toString()
+                        val actualNumber = if (number != null) string.toDoubleOrNull() else null
+                        if (actualNumber != null) actualNumber.compareTo(number!!) else compareString(string, value, glob)
+                    }
+                }
+            }
+        }
+
+        private fun compareString(actual: String, value: String, glob: Pattern?): Int =
+            if (glob != null) {
+                if (glob.matcher(actual).matches()) 0 else 1
+            } else {
+                actual.compareTo(value, ignoreCase = true)
+            }
+
+        private fun globPattern(glob: String): Pattern =
+            Pattern.compile(
+                glob.split('*').joinToString(".*") { if (it.isEmpty()) "" else Pattern.quote(it) },
+                Pattern.CASE_INSENSITIVE or Pattern.UNICODE_CASE or Pattern.DOTALL)
+
+        /**
+         * Parses a duration such as `200ms`, `1.5s` or `200` (milliseconds).
+         */
+        private fun parseDuration(value: String): Duration? {
+            val matcher = DURATION.matcher(value)
+            if (!matcher.matches()) {
+                return null
+            }
+            val amount = matcher.group(1).toBigDecimal()
+            val nanosPerUnit = when (matcher.group(2)?.lowercase(Locale.ROOT)) {
+                "ns" -> 1L
+                "us", "µs" -> 1_000L
+                null, "ms" -> 1_000_000L
+                "s" -> 1_000_000_000L
+                "m" -> 60_000_000_000L
+                else -> 3_600_000_000_000L
+            }
+            return Duration.ofNanos(amount.multiply(nanosPerUnit.toBigDecimal()).toLong())
+        }
+
+        /**
+         * Parses an enum value by name or name prefix, ignoring case.
+         */
+        private inline fun <reified T : Enum<T>> parseEnum(value: String): T? {
+            val values = enumValues<T>()
+            return values.firstOrNull { it.name.equals(value, ignoreCase = true) }
+                ?: values.firstOrNull { it.name.startsWith(value, ignoreCase = true) }
+        }
+
+        private fun escapeJson(input: String): String = input.replace("\\", "\\\\")
+    }
+}
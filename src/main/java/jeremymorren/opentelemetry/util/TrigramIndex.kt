@@ -0,0 +1,306 @@
+package jeremymorren.opentelemetry.util
+
+import jeremymorren.opentelemetry.models.TelemetryItem
+import java.nio.charset.StandardCharsets
+
+/**
+ * An incremental trigram index over the search JSON of telemetry items, used to find the candidates for the free
+ * text of a [TelemetryQuery] without scanning every item.
+ *
+ * Items are numbered in the order they are added. For each trigram (three consecutive UTF-8 bytes, with ASCII
+ * letters lower-cased) a posting list holds the numbers of the items containing it, delta and varint encoded
+ * (mostly one byte per posting). A query intersects the posting lists of the trigrams of its text; the candidates
+ * must still be verified with [TelemetryQuery.matches], since trigrams can match out of order.
+ *
+ * Removed items leave stale postings until more than half the items are removed, when the index is rebuilt.
+ *
+ * Not thread-safe.
+ */
+class TrigramIndex {
+    // Items by number; null once removed
+    private var items = arrayOfNulls<TelemetryItem>(INITIAL_CAPACITY)
+    private var itemCount = 0
+    private var removedCount = 0
+
+    // Open-addressing hash map from trigram to posting list
+    private var keys = IntArray(INITIAL_CAPACITY)
+    private var postings = arrayOfNulls<PostingList>(INITIAL_CAPACITY)
+    private var trigramCount = 0
+
+    /**
+     * The number of indexed items.
+     */
+    val size: Int get() = itemCount - removedCount
+
+    /**
+     * Approximate heap used by the index in bytes (excluding the items themselves).
+     */
+    val estimatedSize: Long
+        get() {
+            var bytes = items.size * 4L + keys.size * 8L
+            for (posting in postings) {
+                if (posting != null) {
+                    bytes += POSTING_LIST_OVERHEAD + posting.bytes.size
+                }
+            }
+            return bytes
+        }
+
+    fun add(item: TelemetryItem) {
+        if (itemCount == items.size) {
+            items = items.copyOf(itemCount * 2)
+        }
+        val number = itemCount++
+        items[number] = item
+
+        val text = item.searchText
+        if (text.size < 3) {
+            return
+        }
+        var trigram = (fold(text[0]) shl 8) or fold(text[1])
+        for (i in 2 until text.size) {
+            trigram = ((trigram shl 8) or fold(text[i])) and 0xFFFFFF
+            getOrAddPostings(trigram).add(number)
+        }
+    }
+
+    fun addAll(items: Collection<TelemetryItem>) {
+        for (item in items) {
+            add(item)
+        }
+    }
+
+    /**
+     * Removes items.
+     *
+     * @param removed the items to remove (compared by identity, e.g. an identity hash set)
+     */
+    fun removeAll(removed: Set<TelemetryItem>) {
+        for (i in 0 until itemCount) {
+            val item = items[i]
+            if (item != null && item in removed) {
+                items[i] = null
+                removedCount++
+            }
+        }
+        if (removedCount > MIN_REBUILD_REMOVED && removedCount > itemCount / 2) {
+            rebuild()
+        }
+    }
+
+    fun clear() {
+        items = arrayOfNulls(INITIAL_CAPACITY)
+        itemCount = 0
+        removedCount = 0
+        keys = IntArray(INITIAL_CAPACITY)
+        postings = arrayOfNulls(INITIAL_CAPACITY)
+        trigramCount = 0
+    }
+
+    /**
+     * Finds the items that may match the free text of a query.
+     *
+     * @return the candidates in the order they were added, or null if the query has no free text the index can
+     *   narrow down (e.g. shorter than three bytes), in which case all items are candidates
+     */
+    fun candidates(query: TelemetryQuery): List<TelemetryItem>? {
+        val trigrams = HashSet<Int>()
+        for (term in query.terms) {
+            if (term is TelemetryQuery.TextTerm) {
+                addTrigrams(term, trigrams)
+            }
+        }
+        if (trigrams.isEmpty()) {
+            return null
+        }
+
+        val lists = ArrayList<PostingList>(trigrams.size)
+        for (trigram in trigrams) {
+            lists.add(getPostings(trigram) ?: return emptyList())
+        }
+        // Start from the rarest trigram, so the intersection only shrinks
+        lists.sortBy { it.count }
+        var numbers = lists[0].decode()
+        var count = numbers.size
+        for (i in 1 until lists.size) {
+            if (count == 0) {
+                break
+            }
+            count = lists[i].retainAll(numbers, count)
+        }
+
+        val candidates = ArrayList<TelemetryItem>(count)
+        for (i in 0 until count) {
+            items[numbers[i]]?.let { candidates.add(it) }
+        }
+        return candidates
+    }
+
+    private fun addTrigrams(term: TelemetryQuery.TextTerm, trigrams: MutableSet<Int>) {
+        val text = term.searchText
+        // Case-insensitive search of non-ASCII text lower-cases whole strings, which can map non-ASCII
+        // characters to ASCII ones (e.g. the Kelvin sign); such terms can't use the index
+        if (term.ignoreCase && text.any { it.code >= 0x80 }) {
+            return
+        }
+        val bytes = text.toByteArray(StandardCharsets.UTF_8)
+        for (i in 2 until bytes.size) {
+            trigrams.add((fold(bytes[i - 2]) shl 16) or (fold(bytes[i - 1]) shl 8) or fold(bytes[i]))
+        }
+    }
+
+    private fun rebuild() {
+        val live = ArrayList<TelemetryItem>(size)
+        for (i in 0 until itemCount) {
+            items[i]?.let { live.add(it) }
+        }
+        clear()
+        addAll(live)
+    }
+
+    private fun getPostings(trigram: Int): PostingList? {
+        var slot = slot(trigram)
+        while (true) {
+            val postingList = postings[slot] ?: return null
+            if (keys[slot] == trigram) {
+                return postingList
+            }
+            slot = (slot + 1) and (keys.size - 1)
+        }
+    }
+
+    private fun getOrAddPostings(trigram: Int): PostingList {
+        var slot = slot(trigram)
+        while (true) {
+            val postingList = postings[slot]
+            if (postingList == null) {
+                val added = PostingList()
+                keys[slot] = trigram
+                postings[slot] = added
+                if (++trigramCount * 4 > keys.size * 3) {
+                    growTable()
+                }
+                return added
+            }
+            if (keys[slot] == trigram) {
+                return postingList
+            }
+            slot = (slot + 1) and (keys.size - 1)
+        }
+    }
+
+    private fun growTable() {
+        val oldKeys = keys
+        val oldPostings = postings
+        keys = IntArray(oldKeys.size * 2)
+        postings = arrayOfNulls(oldKeys.size * 2)
+        for (i in oldKeys.indices) {
+            val postingList = oldPostings[i] ?: continue
+            var slot = slot(oldKeys[i])
+            while (postings[slot] != null) {
+                slot = (slot + 1) and (keys.size - 1)
+            }
+            keys[slot] = oldKeys[i]
+            postings[slot] = postingList
+        }
+    }
+
+    private fun slot(trigram: Int): Int = (trigram * -0x61c88647 ushr 8) and (keys.size - 1)
+
+    /**
+     * Ascending item numbers, stored as varint-encoded deltas.
+     */
+    private class PostingList {
+        var bytes = ByteArray(4)
+        var length = 0
+        var count = 0
+        private var last = -1
+
+        fun add(number: Int) {
+            // A trigram repeated within an item is only recorded once
+            if (number == last) {
+                return
+            }
+            var delta = number - last
+            last = number
+            count++
+            if (length + 5 > bytes.size) {
+                bytes = bytes.copyOf(maxOf(bytes.size * 3 / 2, length + 5))
+            }
+            while (delta >= 0x80) {
+                bytes[length++] = (delta or 0x80).toByte()
+                delta = delta ushr 7
+            }
+            bytes[length++] = delta.toByte()
+        }
+
+        fun decode(): IntArray {
+            val numbers = IntArray(count)
+            var position = 0
+            var number = -1
+            for (i in 0 until count) {
+                var delta = 0
+                var shift = 0
+                while (true) {
+                    val b = bytes[position++].toInt()
+                    delta = delta or ((b and 0x7F) shl shift)
+                    if (b >= 0) break
+                    shift += 7
+                }
+                number += delta
+                numbers[i] = number
+            }
+            return numbers
+        }
+
+        /**
+         * Keeps the first [count] (ascending) [numbers] that are in this list, moving them to the front.
+         *
+         * @return the number kept
+         */
+        fun retainAll(numbers: IntArray, count: Int): Int {
+            var kept = 0
+            var position = 0
+            var number = -1
+            var decoded = 0
+            for (i in 0 until count) {
+                val wanted = numbers[i]
+                while (number < wanted && decoded < this.count) {
+                    var delta = 0
+                    var shift = 0
+                    while (true) {
+                        val b = bytes[position++].toInt()
+                        delta = delta or ((b and 0x7F) shl shift)
+                        if (b >= 0) break
+                        shift += 7
+                    }
+                    number += delta
+                    decoded++
+                }
+                if (number == wanted) {
+                    numbers[kept++] = wanted
+                } else if (number < wanted) {
+                    // This list is exhausted
+                    break
+                }
+            }
+            return kept
+        }
+    }
+
+    private companion object {
+        const val INITIAL_CAPACITY = 1024
+        const val MIN_REBUILD_REMOVED = 4096
+
+        // Object header, fields and array header
+        const val POSTING_LIST_OVERHEAD = 48
+
+        /**
+         * The unsigned value of a byte, with ASCII letters lower-cased.
+         */
+        fun fold(b: Byte): Int {
+            val value = b.toInt() and 0xFF
+            return if (value in 'A'.code..'Z'.code) value + ('a' - 'A') else value
+        }
+    }
+}
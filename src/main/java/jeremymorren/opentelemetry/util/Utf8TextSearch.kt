@@ -0,0 +1,56 @@
+package jeremymorren.opentelemetry.util
+
+import java.nio.charset.StandardCharsets
+import java.util.*
+
+/**
+ * Substring search over UTF-8 encoded text, without decoding the text being searched.
+ *
+ * Case-sensitive searches compare the UTF-8 bytes of [text] directly (UTF-8 is self-synchronizing, so a byte match
+ * is a character match). Case-insensitive searches for ASCII [text] fold ASCII letters byte by byte; only
+ * case-insensitive searches for non-ASCII text decode and lower-case the searched text.
+ */
+class Utf8TextSearch(text: String, private val ignoreCase: Boolean) {
+    private val asciiFold = ignoreCase && text.all { it.code < 0x80 }
+
+    private val needle: ByteArray =
+        (if (asciiFold) text.lowercase(Locale.ROOT) else text).toByteArray(StandardCharsets.UTF_8)
+
+    private val lowerCaseText = text.lowercase(Locale.ROOT)
+
+    /**
+     * Checks whether the UTF-8 encoded [haystack] contains the search text.
+     */
+    fun matches(haystack: ByteArray): Boolean =
+        when {
+            needle.isEmpty() -> true
+            !ignoreCase -> indexOf(haystack, fold = false) >= 0
+            asciiFold -> indexOf(haystack, fold = true) >= 0
+            else -> String(haystack, StandardCharsets.UTF_8).lowercase(Locale.ROOT).contains(lowerCaseText)
+        }
+
+    private fun indexOf(haystack: ByteArray, fold: Boolean): Int {
+        val first = needle[0]
+        val last = haystack.size - needle.size
+        var i = 0
+        while (i <= last) {
+            // Scan for the first byte, then compare the rest
+            if (byteAt(haystack, i, fold) == first) {
+                var j = 1
+                while (j < needle.size && byteAt(haystack, i + j, fold) == needle[j]) {
+                    j++
+                }
+                if (j == needle.size) {
+                    return i
+                }
+            }
+            i++
+        }
+        return -1
+    }
+
+    private fun byteAt(haystack: ByteArray, index: Int, fold: Boolean): Byte {
+        val b = haystack[index]
+        return if (fold && b >= 'A'.code.toByte() && b <= 'Z'.code.toByte()) (b + ('a' - 'A')).toByte() else b
+    }
+}
@@ -0,0 +1,97 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Activity;
+import jeremymorren.opentelemetry.models.CriticalPath;
+import jeremymorren.opentelemetry.models.SpanId;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.otlp.TraceIndex;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class CriticalPathTests {
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    public void parallelChildrenAreNotCountedTwice() {
+        // root 0-100: a 10-60 and b 20-90 run in parallel, c 30-80 is a child of b
+        TraceIndex index = new TraceIndex();
+        TelemetryItem root = span(index, "root", null, 0, 100);
+        TelemetryItem a = span(index, "a", "root", 10, 50);
+        TelemetryItem b = span(index, "b", "root", 20, 70);
+        TelemetryItem c = span(index, "c", "b", 30, 50);
+
+        CriticalPath path = new CriticalPath(index.getTrace(TraceId.parse("t1")));
+        assert path.isOnPath(root) && path.isOnPath(b) && path.isOnPath(c);
+        // a finished before b, and b started before a finished
+        assert !path.isOnPath(a);
+
+        assert path.getCriticalTime(root).equals(Duration.ofMillis(30));
+        assert path.getCriticalTime(b).equals(Duration.ofMillis(20));
+        assert path.getCriticalTime(c).equals(Duration.ofMillis(50));
+        assert path.getCriticalTime(a) == null;
+
+        // Self time excludes the union of the children: root is covered 10-90
+        assert path.getSelfTime(root).equals(Duration.ofMillis(20));
+        assert path.getSelfTime(b).equals(Duration.ofMillis(20));
+        assert path.getSelfTime(a).equals(Duration.ofMillis(50));
+    }
+
+    @Test
+    public void sequentialChildrenAreAllOnThePath() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem root = span(index, "root", null, 0, 100);
+        TelemetryItem a = span(index, "a", "root", 0, 40);
+        TelemetryItem b = span(index, "b", "root", 40, 30);
+        TelemetryItem c = span(index, "c", "root", 75, 20);
+
+        CriticalPath path = new CriticalPath(index.getTrace(TraceId.parse("t1")));
+        assert path.isOnPath(a) && path.isOnPath(b) && path.isOnPath(c);
+        assert path.getCriticalTime(root).equals(Duration.ofMillis(10));
+        long total = 0;
+        for (TelemetryItem item : new TelemetryItem[] { root, a, b, c }) {
+            total += path.getCriticalTime(item).toMillis();
+        }
+        // The critical path accounts for the whole request
+        assert total == 100;
+    }
+
+    @Test
+    public void childOutlivingParentIsClipped() {
+        // A fire-and-forget child continues after the request completes
+        TraceIndex index = new TraceIndex();
+        TelemetryItem root = span(index, "root", null, 0, 100);
+        TelemetryItem child = span(index, "a", "root", 50, 200);
+
+        CriticalPath path = new CriticalPath(index.getTrace(TraceId.parse("t1")));
+        assert path.getCriticalTime(child).equals(Duration.ofMillis(50));
+        assert path.getCriticalTime(root).equals(Duration.ofMillis(50));
+        assert path.getSelfTime(root).equals(Duration.ofMillis(50));
+    }
+
+    @Test
+    public void spansWithoutTimesAreIgnored() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem root = span(index, "root", null, 0, 100);
+        Activity activity = new Activity(null, TraceId.parse("t1"), SpanId.parse("a"), SpanId.parse("root"), null, null, null, "a", null,
+                null, null, null, null, null, null, null);
+        TelemetryItem noTimes = new TelemetryItem("{}", "{}", new Telemetry(activity, null, null, null));
+        index.add(noTimes);
+
+        CriticalPath path = new CriticalPath(index.getTrace(TraceId.parse("t1")));
+        assert path.getCriticalTime(root).equals(Duration.ofMillis(100));
+        assert !path.isOnPath(noTimes);
+        assert path.getSelfTime(noTimes) == null;
+    }
+
+    private static TelemetryItem span(TraceIndex index, String spanId, String parentSpanId, long startMillis, long durationMillis) {
+        Activity activity = new Activity(null, TraceId.parse("t1"), SpanId.parse(spanId), SpanId.parse(parentSpanId), null, null, null, spanId, null,
+                START.plusMillis(startMillis), Duration.ofMillis(durationMillis), null, null, null, null, null);
+        TelemetryItem item = new TelemetryItem("{}", "{}", new Telemetry(activity, null, null, null));
+        index.add(item);
+        return item;
+    }
+}
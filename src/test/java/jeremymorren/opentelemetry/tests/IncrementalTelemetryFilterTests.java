@@ -0,0 +1,198 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.LogLevel;
+import jeremymorren.opentelemetry.models.LogMessage;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TelemetryType;
+import jeremymorren.opentelemetry.util.IncrementalTelemetryFilter;
+import jeremymorren.opentelemetry.util.TelemetryFilter;
+import kotlin.Unit;
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+public class IncrementalTelemetryFilterTests {
+    private static final Set<TelemetryType> ALL_TYPES = EnumSet.allOf(TelemetryType.class);
+
+    @Test
+    public void filterMatchesTextAndVisibleTypes() {
+        TelemetryItem order = message("{\"Body\":\"Order created\"}");
+        TelemetryItem path = message("{\"Path\":\"C:\\\\temp\"}");
+        TelemetryItem untyped = new TelemetryItem("{}", "{}", new Telemetry(null, null, null, null));
+
+        assert new TelemetryFilter("order", true, ALL_TYPES).matches(order);
+        assert !new TelemetryFilter("order", false, ALL_TYPES).matches(order);
+        // The filter text is escaped to match the JSON
+        assert new TelemetryFilter("\"C:\\\\temp\"", false, ALL_TYPES).matches(path);
+
+        Set<TelemetryType> noMessages = EnumSet.complementOf(EnumSet.of(TelemetryType.Message));
+        assert !new TelemetryFilter("", false, noMessages).matches(order);
+        assert new TelemetryFilter("", false, noMessages).matches(untyped);
+    }
+
+    @Test
+    public void narrowsOnlyWhenResultIsSubsetOfPrevious() {
+        TelemetryFilter previous = new TelemetryFilter("ord", false, ALL_TYPES);
+
+        assert new TelemetryFilter("order", false, ALL_TYPES).narrows(previous);
+        assert new TelemetryFilter("ord", false, EnumSet.of(TelemetryType.Message)).narrows(previous);
+        assert !new TelemetryFilter("or", false, ALL_TYPES).narrows(previous);
+        assert !new TelemetryFilter("order", true, ALL_TYPES).narrows(previous);
+        assert new TelemetryFilter("order", false, ALL_TYPES)
+                .narrows(new TelemetryFilter("ORD", true, ALL_TYPES));
+        assert !new TelemetryFilter("ord", false, ALL_TYPES)
+                .narrows(new TelemetryFilter("ord", false, EnumSet.of(TelemetryType.Message)));
+    }
+
+    @Test
+    public void narrowedFilterScansOnlyPreviousMatchesAndNewTelemetry() {
+        CountingList telemetries = new CountingList();
+        for (int i = 0; i < 1_000; i++) {
+            telemetries.items.add(message("{\"Body\":\"item-" + i + "\"}"));
+        }
+        IncrementalTelemetryFilter incrementalFilter = new IncrementalTelemetryFilter(100);
+
+        List<TelemetryItem> first = filter(incrementalFilter, "item-1", telemetries, 0);
+        assert first.size() == 111;
+        assert telemetries.reads == 1_000;
+
+        telemetries.items.add(message("{\"Body\":\"item-12 (new)\"}"));
+        telemetries.items.add(message("{\"Body\":\"item-2 (new)\"}"));
+        telemetries.reads = 0;
+        List<TelemetryItem> narrowed = filter(incrementalFilter, "item-12", telemetries, 0);
+
+        // 1 (previous matches, read directly) + 2 (new telemetry) reads from the snapshot
+        assert telemetries.reads == 2;
+        assert narrowed.size() == 12;
+        assert narrowed.get(0) == telemetries.items.get(12);
+        assert narrowed.get(11) == telemetries.items.get(1_000);
+    }
+
+    @Test
+    public void widenedFilterOrNewEpochScansEverything() {
+        CountingList telemetries = new CountingList();
+        for (int i = 0; i < 100; i++) {
+            telemetries.items.add(message("{\"Body\":\"item-" + i + "\"}"));
+        }
+        IncrementalTelemetryFilter incrementalFilter = new IncrementalTelemetryFilter(10);
+        filter(incrementalFilter, "item-1", telemetries, 0);
+
+        telemetries.reads = 0;
+        assert filter(incrementalFilter, "item", telemetries, 0).size() == 100;
+        assert telemetries.reads == 100;
+
+        // Removing telemetry invalidates the previous result, even if the filter narrows it
+        telemetries.items.remove(0);
+        telemetries.reads = 0;
+        assert filter(incrementalFilter, "item-5", telemetries, 1).size() == 11;
+        assert telemetries.reads == 99;
+    }
+
+    @Test
+    public void removalPassedToFilterKeepsPreviousResultNarrowable() {
+        CountingList telemetries = new CountingList();
+        for (int i = 0; i < 100; i++) {
+            telemetries.items.add(message("{\"Body\":\"item-" + i + "\"}"));
+        }
+        IncrementalTelemetryFilter incrementalFilter = new IncrementalTelemetryFilter(10);
+        assert filter(incrementalFilter, "item-1", telemetries, 0).size() == 11;
+        telemetries.items.add(message("{\"Body\":\"item-15 (new)\"}"));
+
+        // Remove item-0, item-1 (a match) and the new telemetry (not scanned yet)
+        Set<TelemetryItem> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.add(telemetries.items.get(0));
+        removed.add(telemetries.items.get(1));
+        removed.add(telemetries.items.get(100));
+        telemetries.items.removeAll(removed);
+        incrementalFilter.remove(removed, new int[]{0, 1, 100}, 1);
+        telemetries.items.add(message("{\"Body\":\"item-16 (new)\"}"));
+
+        telemetries.reads = 0;
+        List<TelemetryItem> narrowed = filter(incrementalFilter, "item-1", telemetries, 1);
+
+        // Only the telemetry received since is read from the snapshot
+        assert telemetries.reads == 1;
+        assert narrowed.size() == 11;
+        assert narrowed.get(0) == telemetries.items.get(8);
+        assert narrowed.get(10) == telemetries.items.get(98);
+
+        // A removal of another epoch (e.g. after an unseen one) invalidates the previous result
+        incrementalFilter.remove(Set.of(), new int[0], 3);
+        telemetries.reads = 0;
+        filter(incrementalFilter, "item-1", telemetries, 3);
+        assert telemetries.reads == 99;
+    }
+
+    @Test
+    public void cancelledRunReturnsNullAndIsNotReused() {
+        CountingList telemetries = new CountingList();
+        for (int i = 0; i < 100; i++) {
+            telemetries.items.add(message("{\"Body\":\"item-" + i + "\"}"));
+        }
+        IncrementalTelemetryFilter incrementalFilter = new IncrementalTelemetryFilter(10);
+        List<List<TelemetryItem>> chunks = new ArrayList<>();
+        int[] checks = {0};
+
+        List<TelemetryItem> result = incrementalFilter.filter(
+                new TelemetryFilter("item", false, ALL_TYPES), telemetries, null, 0,
+                () -> ++checks[0] > 3,
+                chunk -> {
+                    chunks.add(chunk);
+                    return Unit.INSTANCE;
+                });
+
+        assert result == null;
+        assert chunks.size() == 3;
+        assert telemetries.reads == 30;
+
+        // The cancelled run is not used to narrow the next one
+        telemetries.reads = 0;
+        assert filter(incrementalFilter, "item-9", telemetries, 0).size() == 11;
+        assert telemetries.reads == 100;
+    }
+
+    private static List<TelemetryItem> filter(
+            IncrementalTelemetryFilter incrementalFilter, String text, List<TelemetryItem> telemetries, long epoch) {
+        List<TelemetryItem> progressive = new ArrayList<>();
+        List<TelemetryItem> result = incrementalFilter.filter(
+                new TelemetryFilter(text, false, ALL_TYPES), telemetries, null, epoch, () -> false,
+                chunk -> {
+                    progressive.addAll(chunk);
+                    return Unit.INSTANCE;
+                });
+        assert result != null;
+        assert result.equals(progressive);
+        return result;
+    }
+
+    private static TelemetryItem message(String json) {
+        LogMessage log = new LogMessage(null, null, LogLevel.Information, null, null, null, null, null, null, null);
+        return new TelemetryItem(json, json, new Telemetry(null, null, log, null));
+    }
+
+    /**
+     * Counts reads, to check which telemetry a filter run scans.
+     */
+    private static class CountingList extends AbstractList<TelemetryItem> {
+        final List<TelemetryItem> items = new ArrayList<>();
+        int reads;
+
+        @Override
+        public TelemetryItem get(int index) {
+            reads++;
+            return items.get(index);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+    }
+}
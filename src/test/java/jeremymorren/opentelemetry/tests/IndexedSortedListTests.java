@@ -0,0 +1,160 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.util.IndexedSortedList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class IndexedSortedListTests {
+    // Sort by key only, so equal keys exercise the insertion-order tie-break
+    private static final Comparator<int[]> BY_KEY = Comparator.comparingInt(e -> e[0]);
+
+    @Test
+    public void insertMatchesStableSortedArrayList() {
+        Random random = new Random(42);
+        IndexedSortedList<int[]> list = new IndexedSortedList<>(BY_KEY);
+        List<int[]> expected = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            int[] element = {random.nextInt(500), i};
+            int expectedIndex = upperBound(expected, element);
+            expected.add(expectedIndex, element);
+
+            assert list.insert(element) == expectedIndex;
+        }
+
+        assert list.size() == expected.size();
+        for (int i = 0; i < expected.size(); i++) {
+            assert list.get(i) == expected.get(i) : "Mismatch at " + i;
+        }
+    }
+
+    @Test
+    public void insertWithoutComparatorAppends() {
+        IndexedSortedList<Integer> list = new IndexedSortedList<>(null);
+        for (int i = 0; i < 5_000; i++) {
+            assert list.insert(5_000 - i) == i;
+        }
+        for (int i = 0; i < 5_000; i++) {
+            assert list.get(i) == 5_000 - i;
+        }
+    }
+
+    @Test
+    public void resetReplacesContentsAndOrder() {
+        IndexedSortedList<Integer> list = new IndexedSortedList<>(null);
+        list.insert(3);
+        List<Integer> sorted = new ArrayList<>();
+        for (int i = 0; i < 2_000; i += 2) {
+            sorted.add(i);
+        }
+
+        list.reset(sorted, Comparator.naturalOrder());
+
+        assert list.size() == 1_000;
+        assert list.insert(1_001) == 501;
+        assert list.get(500) == 1_000;
+        assert list.get(501) == 1_001;
+        assert list.get(502) == 1_002;
+
+        list.reset(List.of(), null);
+        assert list.isEmpty();
+        assert list.insert(7) == 0;
+    }
+
+    @Test
+    public void removeAllMatchesArrayListAndReportsRemovedIndexes() {
+        Random random = new Random(11);
+        IndexedSortedList<int[]> list = new IndexedSortedList<>(BY_KEY);
+        List<int[]> expected = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            int[] element = {random.nextInt(500), i};
+            expected.add(upperBound(expected, element), element);
+            list.insert(element);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            int modulus = 2 + round;
+            List<Integer> expectedIndexes = new ArrayList<>();
+            for (int i = 0; i < expected.size(); i++) {
+                if (expected.get(i)[1] % modulus == 0) {
+                    expectedIndexes.add(i);
+                }
+            }
+            expected.removeIf(e -> e[1] % modulus == 0);
+
+            int[] removed = list.removeAll(e -> e[1] % modulus == 0);
+
+            assert removed.length == expectedIndexes.size();
+            for (int i = 0; i < removed.length; i++) {
+                assert removed[i] == expectedIndexes.get(i);
+            }
+            assert list.size() == expected.size();
+            for (int i = 0; i < expected.size(); i++) {
+                assert list.get(i) == expected.get(i) : "Mismatch at " + i;
+            }
+
+            // Inserts still find their sorted position after removal
+            int[] element = {random.nextInt(500), -1};
+            int index = upperBound(expected, element);
+            expected.add(index, element);
+            assert list.insert(element) == index;
+        }
+    }
+
+    @Test
+    public void removeAllCanEmptyTheList() {
+        IndexedSortedList<Integer> list = new IndexedSortedList<>(null);
+        for (int i = 0; i < 3_000; i++) {
+            list.insert(i);
+        }
+
+        assert list.removeAll(e -> false).length == 0;
+        assert list.removeAll(e -> true).length == 3_000;
+        assert list.isEmpty();
+        assert list.insert(7) == 0;
+        assert list.get(0) == 7;
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getRejectsIndexOutOfBounds() {
+        IndexedSortedList<Integer> list = new IndexedSortedList<>(Comparator.naturalOrder());
+        list.insert(1);
+        list.get(1);
+    }
+
+    @Test
+    public void insertsMillionRowsInLogarithmicTime() {
+        Random random = new Random(7);
+        IndexedSortedList<Long> list = new IndexedSortedList<>(Comparator.naturalOrder());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1_000_000; i++) {
+            list.insert(random.nextLong());
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // An ArrayList with binary search + add(index, ...) takes minutes here
+        assert elapsedMillis < 10_000 : "Took " + elapsedMillis + " ms";
+        for (int i = 1; i < list.size(); i += 997) {
+            assert list.get(i - 1) <= list.get(i);
+        }
+    }
+
+    private static int upperBound(List<int[]> list, int[] element) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BY_KEY.compare(element, list.get(mid)) < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
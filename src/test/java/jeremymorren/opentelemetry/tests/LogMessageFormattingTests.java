@@ -425,6 +425,25 @@ public class LogMessageFormattingTests {
         assertEquals("", log.getFormattedMessage());
     }
 
+    @Test
+    public void malformedPlaceholders_matchTemplateGrammar() {
+        // {$} is a placeholder named "$" and {@} is not; a format specifier runs to the next }, even past a {
+        LogMessage log = decodeLog("{$} {@} {Name:fmt {@Name} {a{b} {{Name}} end {Name",
+                str("$", "dollar"),
+                str("Name", "N"),
+                str("a{b", "braces"));
+        assertEquals("dollar {@} N braces {{Name}} end {Name", log.getFormattedMessage());
+    }
+
+    @Test
+    public void repeatedTemplate_formatsEachRecordWithItsOwnValues() {
+        // The parsed template is cached by body; values must still come from each record
+        for (int i = 0; i < 3; i++) {
+            LogMessage log = decodeLog("Item {Id} of {Count}", intAttr("Id", i), intAttr("Count", 3));
+            assertEquals("Item " + i + " of 3", log.getFormattedMessage());
+        }
+    }
+
     // -----------------------------------------------------------------------
     // 12. Raw JSON tab (protobuf JSON) – basic sanity
     // -----------------------------------------------------------------------
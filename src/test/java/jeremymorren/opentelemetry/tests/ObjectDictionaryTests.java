@@ -0,0 +1,140 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Metric;
+import jeremymorren.opentelemetry.models.MetricPoint;
+import jeremymorren.opentelemetry.models.ObjectDictionary;
+import kotlinx.serialization.json.Json;
+import kotlinx.serialization.json.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class ObjectDictionaryTests {
+    @Test
+    public void looksUpValuesByKey() {
+        ObjectDictionary dictionary = dictionary("""
+                {"zeta": "z", "alpha": 1, "mid": true, "pi": 3.5, "list": [1, "a"], "nested": {"b": 2}, "none": null}""");
+
+        assert dictionary.containsKey("alpha") && dictionary.containsKey("zeta");
+        assert !dictionary.containsKey("missing");
+        assert dictionary.get("alpha").equals(1);
+        assert dictionary.get("pi").equals(3.5);
+        assert dictionary.get("mid").equals(true);
+        assert dictionary.get("list").equals(List.of(1, "a"));
+        assert dictionary.get("nested").equals(Map.of("b", 2));
+        assert dictionary.get("none") == null && dictionary.containsKey("none");
+        assert dictionary.get("missing") == null;
+        assert "z".equals(dictionary.getString("zeta"));
+        assert "1".equals(dictionary.getString("alpha"));
+        assert "default".equals(dictionary.getStringOrDefault("missing", "default"));
+
+        // Sorted by key
+        assert new ArrayList<>(dictionary.getValues().keySet())
+                .equals(List.of("alpha", "list", "mid", "nested", "none", "pi", "zeta"));
+        assert dictionary.getValues().get("zeta").equals("z");
+        assert dictionary.getPrimitiveValues().equals(Map.of("alpha", "1", "mid", "true", "pi", "3.5", "zeta", "z"));
+    }
+
+    @Test
+    public void equalDictionariesHaveEqualHashes() {
+        ObjectDictionary a = dictionary("""
+                {"method": "GET", "status": 200, "tags": ["x", "y"]}""");
+        ObjectDictionary b = dictionary("""
+                {"tags": ["x", "y"], "status": 200, "method": "GET"}""");
+        ObjectDictionary c = dictionary("""
+                {"method": "GET", "status": 201, "tags": ["x", "y"]}""");
+
+        assert a.equals(b) && b.equals(a);
+        assert a.hashCode() == b.hashCode();
+        assert !a.equals(c);
+        // Values of different types are not equal
+        assert !dictionary("{\"a\": 1}").equals(dictionary("{\"a\": 1.5}"));
+        assert !dictionary("{\"a\": 1}").equals(dictionary("{\"b\": 1}"));
+
+        var distinct = new HashSet<ObjectDictionary>();
+        for (int i = 0; i < 1000; i++) {
+            distinct.add(dictionary("{\"route\": \"/orders/" + (i % 100) + "\"}"));
+        }
+        assert distinct.size() == 100;
+    }
+
+    @Test
+    public void doublesAreEqualOnlyIfTheirHashesAre() {
+        ObjectDictionary zero = ObjectDictionary.of(new String[] { "a" }, new Object[] { 0.0 });
+        ObjectDictionary negativeZero = ObjectDictionary.of(new String[] { "a" }, new Object[] { -0.0 });
+        // Compared before the hashes are cached, which would short-circuit equals
+        assert !zero.equals(negativeZero) && !negativeZero.equals(zero);
+        assert zero.hashCode() != negativeZero.hashCode();
+
+        ObjectDictionary nan = ObjectDictionary.of(new String[] { "a" }, new Object[] { Double.NaN });
+        ObjectDictionary otherNan = ObjectDictionary.of(new String[] { "a" }, new Object[] { Double.NaN });
+        assert nan.equals(otherNan);
+        assert nan.hashCode() == otherNan.hashCode();
+        assert new HashSet<>(List.of(nan, otherNan)).size() == 1;
+
+        // Doubles in lists are compared the same way
+        ObjectDictionary nanList = ObjectDictionary.of(new String[] { "a" }, new Object[] { List.of(Double.NaN) });
+        assert nanList.equals(ObjectDictionary.of(new String[] { "a" }, new Object[] { List.of(Double.NaN) }));
+        assert !ObjectDictionary.of(new String[] { "a" }, new Object[] { List.of(0.0) })
+                .equals(ObjectDictionary.of(new String[] { "a" }, new Object[] { List.of(-0.0) }));
+    }
+
+    @Test
+    public void sortsLargeAttributeSets() {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 99; i >= 0; i--) {
+            json.append("\"key").append(i).append("\": ").append(i).append(i > 0 ? "," : "}");
+        }
+        ObjectDictionary dictionary = dictionary(json.toString());
+        for (int i = 0; i < 100; i++) {
+            assert dictionary.get("key" + i).equals(i);
+        }
+    }
+
+    @Test
+    public void taggedPointsOfHighCardinalityMetric() {
+        List<MetricPoint> points = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            ObjectDictionary tags = dictionary("{\"http.route\": \"/orders/" + (i % 10_000) + "\", \"http.method\": \"GET\"}");
+            points.add(new MetricPoint(null, null, tags, (long) i, null, null, null, null, null));
+        }
+        Metric metric = new Metric("Sum", null, "http.requests", null, null, null, null, null, points);
+
+        // Each tag set keeps its last point (quadratic with a constant hash code)
+        List<MetricPoint> tagged = metric.getTaggedPoints();
+        assert tagged.size() == 10_000;
+        assert tagged.stream().allMatch(p -> p.getLongSum() >= 10_000);
+    }
+
+    @Test
+    public void serializesAsJsonObject() {
+        ObjectDictionary dictionary = dictionary("""
+                {"b": "x", "a": [1, 2.5, true], "c": {"d": null}}""");
+        String json = Json.Default.encodeToString(ObjectDictionary.Companion.serializer(), dictionary);
+        assert json.equals("{\"a\":[1,2.5,true],\"b\":\"x\",\"c\":{\"d\":null}}") : json;
+        assert Json.Default.decodeFromString(ObjectDictionary.Companion.serializer(), json).equals(dictionary);
+    }
+
+    @Test
+    public void createsFromTypedValues() {
+        ObjectDictionary dictionary = ObjectDictionary.of(
+                new String[] { "b", "a", "c", "a" },
+                new Object[] { Long.MAX_VALUE, "first", List.of(1L), "second" });
+
+        assert dictionary.getValues().size() == 3;
+        assert dictionary.get("a").equals("second");
+        assert dictionary.get("b").equals(Long.MAX_VALUE);
+        assert dictionary.equals(ObjectDictionary.of(
+                new String[] { "c", "b", "a" },
+                new Object[] { List.of(1L), Long.MAX_VALUE, "second" }));
+        // Long and Int values are different types
+        assert !ObjectDictionary.of(new String[] { "a" }, new Object[] { 1L }).equals(dictionary("{\"a\": 1}"));
+    }
+
+    private static ObjectDictionary dictionary(String json) {
+        return new ObjectDictionary((JsonObject) Json.Default.parseToJsonElement(json));
+    }
+}
@@ -23,6 +23,26 @@ public class OtlpEnvironmentVariablesTests {
         assert "127.0.0.1:4318".equals(resolved.get("CUSTOM"));
     }
 
+    @Test
+    public void resolvesGrpcPlaceholdersIntoConcreteValues() {
+        Map<String, String> resolved = OtlpEnvironmentVariables.resolve(
+                "OTEL_EXPORTER_OTLP_ENDPOINT=${OTLP_GRPC_ENDPOINT}\nOTEL_EXPORTER_OTLP_HEADERS=x-otlp-scope=${OTLP_SCOPE}\nPORT=${OTLP_GRPC_PORT}",
+                URI.create("http://127.0.0.1:4318/scope-123/v1"),
+                URI.create("http://127.0.0.1:4317"),
+                "scope 123"
+        );
+
+        assert "http://127.0.0.1:4317".equals(resolved.get("OTEL_EXPORTER_OTLP_ENDPOINT"));
+        assert "x-otlp-scope=scope+123".equals(resolved.get("OTEL_EXPORTER_OTLP_HEADERS"));
+        assert "4317".equals(resolved.get("PORT"));
+    }
+
+    @Test
+    public void detectsGrpcEndpointPlaceholderOutsideComments() {
+        assert !OtlpEnvironmentVariables.usesGrpcEndpoint(OtlpEnvironmentVariables.DEFAULT_ENVIRONMENT_VARIABLES);
+        assert OtlpEnvironmentVariables.usesGrpcEndpoint("OTEL_EXPORTER_OTLP_ENDPOINT=${OTLP_GRPC_ENDPOINT}");
+    }
+
     @Test
     public void buildsScopedEndpointFromProjectLocationHash() {
         Project project = (Project) Proxy.newProxyInstance(
@@ -0,0 +1,162 @@
+package jeremymorren.opentelemetry.tests;
+
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.MetadataUtils;
+import jeremymorren.opentelemetry.otlp.OtlpGrpcReceiver;
+import jeremymorren.opentelemetry.otlp.OtlpHttpReceiverService;
+import jeremymorren.opentelemetry.otlp.OtlpProjectScope;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class OtlpGrpcReceiverTests {
+    @Test
+    public void exportRoutesPayloadBySignalAndScopeHeader() throws Exception {
+        List<String> received = new ArrayList<>();
+        byte[] payload = new byte[]{10, 0};
+
+        try (OtlpGrpcReceiver receiver = new OtlpGrpcReceiver((scopeKey, signalType, bytes) -> {
+            synchronized (received) {
+                received.add(scopeKey + ":" + signalType + ":" + bytes.length);
+            }
+            return true;
+        })) {
+            URI endpoint = receiver.start();
+            ManagedChannel channel = createChannel(endpoint);
+            try {
+                byte[] response = export(channel, "opentelemetry.proto.collector.trace.v1.TraceService", "project-one", payload);
+                export(channel, "opentelemetry.proto.collector.logs.v1.LogsService", "project-two", payload);
+                export(channel, "opentelemetry.proto.collector.metrics.v1.MetricsService", null, payload);
+
+                assert response.length == 0;
+            } finally {
+                channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            }
+        }
+
+        assert received.equals(List.of(
+                "project-one:TRACES:2",
+                "project-two:LOGS:2",
+                "default:METRICS:2"
+        ));
+    }
+
+    @Test
+    public void exportReturnsInvalidArgumentWhenSinkRejectsPayload() throws Exception {
+        try (OtlpGrpcReceiver receiver = new OtlpGrpcReceiver((scopeKey, signalType, bytes) -> {
+            throw new IllegalArgumentException("bad payload");
+        })) {
+            URI endpoint = receiver.start();
+            ManagedChannel channel = createChannel(endpoint);
+            try {
+                export(channel, "opentelemetry.proto.collector.trace.v1.TraceService", "project-one", new byte[]{1, 2, 3});
+                assert false : "Expected export to fail";
+            } catch (StatusRuntimeException ex) {
+                assert ex.getStatus().getCode() == io.grpc.Status.Code.INVALID_ARGUMENT;
+                assert "bad payload".equals(ex.getStatus().getDescription());
+            } finally {
+                channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void exportReturnsUnavailableWhenSinkIsSaturated() throws Exception {
+        try (OtlpGrpcReceiver receiver = new OtlpGrpcReceiver((scopeKey, signalType, bytes) -> false)) {
+            URI endpoint = receiver.start();
+            ManagedChannel channel = createChannel(endpoint);
+            try {
+                export(channel, "opentelemetry.proto.collector.logs.v1.LogsService", "project-one", new byte[]{10, 0});
+                assert false : "Expected export to fail";
+            } catch (StatusRuntimeException ex) {
+                assert ex.getStatus().getCode() == io.grpc.Status.Code.UNAVAILABLE;
+            } finally {
+                channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void callsRunOnDaemonThreadsStoppedByClose() throws Exception {
+        List<Thread> callThreads = new ArrayList<>();
+        try (OtlpGrpcReceiver receiver = new OtlpGrpcReceiver((scopeKey, signalType, bytes) -> {
+            synchronized (callThreads) {
+                callThreads.add(Thread.currentThread());
+            }
+            return true;
+        })) {
+            URI endpoint = receiver.start();
+            ManagedChannel channel = createChannel(endpoint);
+            try {
+                export(channel, "opentelemetry.proto.collector.trace.v1.TraceService", "project-one", new byte[]{10, 0});
+            } finally {
+                channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            }
+        }
+
+        assert callThreads.size() == 1;
+        Thread callThread = callThreads.get(0);
+        assert callThread.isDaemon();
+        assert callThread.getName().equals("OpenTelemetry-OTLP-gRPC-Receiver");
+        assert !callThread.isAlive();
+    }
+
+    @Test
+    public void signalTypesAdvertiseCollectorServices() {
+        assert "opentelemetry.proto.collector.trace.v1.TraceService".equals(OtlpHttpReceiverService.SignalType.TRACES.getGrpcServiceName());
+        assert "opentelemetry.proto.collector.logs.v1.LogsService".equals(OtlpHttpReceiverService.SignalType.LOGS.getGrpcServiceName());
+        assert "opentelemetry.proto.collector.metrics.v1.MetricsService".equals(OtlpHttpReceiverService.SignalType.METRICS.getGrpcServiceName());
+    }
+
+    private static ManagedChannel createChannel(URI endpoint) {
+        return NettyChannelBuilder.forAddress(endpoint.getHost(), endpoint.getPort()).usePlaintext().build();
+    }
+
+    private static byte[] export(ManagedChannel channel, String serviceName, String scopeKey, byte[] payload) {
+        MethodDescriptor<byte[], byte[]> method = MethodDescriptor.<byte[], byte[]>newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName(serviceName, "Export"))
+                .setRequestMarshaller(BytesMarshaller.INSTANCE)
+                .setResponseMarshaller(BytesMarshaller.INSTANCE)
+                .build();
+
+        Metadata headers = new Metadata();
+        if (scopeKey != null) {
+            headers.put(Metadata.Key.of(OtlpProjectScope.SCOPE_HEADER, Metadata.ASCII_STRING_MARSHALLER), scopeKey);
+        }
+
+        var intercepted = io.grpc.ClientInterceptors.intercept(channel, MetadataUtils.newAttachHeadersInterceptor(headers));
+        return ClientCalls.blockingUnaryCall(intercepted, method, CallOptions.DEFAULT.withDeadlineAfter(5, TimeUnit.SECONDS), payload);
+    }
+
+    private enum BytesMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+        INSTANCE;
+
+        @Override
+        public InputStream stream(byte[] value) {
+            return new ByteArrayInputStream(value);
+        }
+
+        @Override
+        public byte[] parse(InputStream stream) {
+            try (stream) {
+                return stream.readAllBytes();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
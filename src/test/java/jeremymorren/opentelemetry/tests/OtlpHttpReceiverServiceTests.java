@@ -29,7 +29,10 @@ import io.opentelemetry.proto.trace.v1.Status;
 import jeremymorren.opentelemetry.models.Telemetry;
 import jeremymorren.opentelemetry.models.TelemetryItem;
 import jeremymorren.opentelemetry.models.TelemetryType;
+import jeremymorren.opentelemetry.otlp.OtlpContentEncoding;
 import jeremymorren.opentelemetry.otlp.OtlpHttpReceiverService;
+import jeremymorren.opentelemetry.otlp.OtlpIngestRequest;
+import jeremymorren.opentelemetry.otlp.OtlpSpillBuffer;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
@@ -42,10 +45,17 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class OtlpHttpReceiverServiceTests {
     @Test
@@ -104,6 +114,33 @@ public class OtlpHttpReceiverServiceTests {
         assert received.isEmpty();
     }
 
+    @Test
+    public void addBatchListenerReceivesHistoryAndEachRequestAsOneBatch() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        publish(service, "project-one", telemetry("first"));
+        publish(service, "project-one", telemetry("second"));
+        List<List<TelemetryItem>> batches = new CopyOnWriteArrayList<>();
+
+        service.addBatchListener("project-one", (Consumer<List<TelemetryItem>>) batches::add);
+
+        assert batches.size() == 1;
+        assert batches.get(0).size() == 2;
+
+        ExportLogsServiceRequest request = ExportLogsServiceRequest.parseFrom(createLogsPayload());
+        ScopeLogs scopeLogs = request.getResourceLogs(0).getScopeLogs(0);
+        ExportLogsServiceRequest threeRecords = request.toBuilder()
+                .setResourceLogs(0, request.getResourceLogs(0).toBuilder()
+                        .setScopeLogs(0, scopeLogs.toBuilder()
+                                .addLogRecords(scopeLogs.getLogRecords(0))
+                                .addLogRecords(scopeLogs.getLogRecords(0))))
+                .build();
+        handle(service, new FakeHttpExchange("POST", "/project-one/v1/logs", threeRecords.toByteArray()));
+        awaitIngestIdle(service);
+
+        assert batches.size() == 2;
+        assert batches.get(1).size() == 3;
+    }
+
     @Test
     public void resolvesSignalTypeFromRequestPath() throws Exception {
         assert "LOGS".equals(resolveSignalType("/project-one/v1/logs"));
@@ -123,6 +160,7 @@ public class OtlpHttpReceiverServiceTests {
         FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload());
 
         handle(service, exchange);
+        awaitIngestIdle(service);
 
         assert exchange.responseCode == 200;
         assert "".equals(exchange.responseBodyAsString());
@@ -139,6 +177,7 @@ public class OtlpHttpReceiverServiceTests {
         service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
 
         handle(service, new FakeHttpExchange("POST", "/project-one/v1/metrics", createMetricsPayload()));
+        awaitIngestIdle(service);
 
         assert received.size() == 1;
         assert received.get(0).getTelemetry().getType() == TelemetryType.Metric;
@@ -151,11 +190,86 @@ public class OtlpHttpReceiverServiceTests {
         service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
 
         handle(service, new FakeHttpExchange("POST", "/project-one/v1/traces", createTracesPayload()));
+        awaitIngestIdle(service);
 
         assert received.size() == 1;
         assert received.get(0).getTelemetry().getType() == TelemetryType.Exception;
     }
 
+    @Test
+    public void handleSkipsDecodingSignalsHiddenByEveryListenerUntilShown() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        OtlpHttpReceiverService.ListenerRegistration registration =
+                service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
+        registration.setVisibleTypes(EnumSet.complementOf(EnumSet.of(TelemetryType.Metric)));
+
+        handle(service, new FakeHttpExchange("POST", "/project-one/v1/metrics", createMetricsPayload()));
+        handle(service, new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload()));
+        awaitIngestIdle(service);
+
+        // The metrics are neither decoded nor kept in the history
+        assert received.size() == 1;
+        assert received.get(0).getTelemetry().getType() == TelemetryType.Message;
+        assert service.getHistoryUsage("project-one").getItemCount() == 1;
+
+        registration.setVisibleTypes(EnumSet.allOf(TelemetryType.class));
+        awaitIngestIdle(service);
+
+        assert received.size() == 2;
+        assert received.get(1).getTelemetry().getType() == TelemetryType.Metric;
+        assert service.getHistoryUsage("project-one").getItemCount() == 2;
+    }
+
+    @Test
+    public void handleDecodesHiddenSignalsWhenAnotherListenerShowsThem() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        service.addListener("project-one", (Consumer<TelemetryItem>) item -> { })
+                .setVisibleTypes(EnumSet.of(TelemetryType.Message));
+
+        handle(service, new FakeHttpExchange("POST", "/project-one/v1/traces", createTracesPayload()));
+        awaitIngestIdle(service);
+        service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
+        awaitIngestIdle(service);
+
+        assert received.size() == 1;
+        assert received.get(0).getTelemetry().getType() == TelemetryType.Exception;
+    }
+
+    @Test
+    public void spillBufferKeepsNewestRequestsWithinLimitAndCountsDrops() {
+        OtlpSpillBuffer spilled = new OtlpSpillBuffer();
+        for (int i = 0; i < 5; i++) {
+            assert spilled.add(spillRequest(OtlpHttpReceiverService.SignalType.METRICS, 40), 100) == (i < 2 ? 0 : 1);
+        }
+        assert spilled.getDroppedCount() == 3;
+
+        // Only the two newest requests fit in the limit
+        assert spilled.removeAll(request -> true).size() == 2;
+        assert spilled.isEmpty();
+
+        spilled.clear();
+        assert spilled.getDroppedCount() == 0;
+    }
+
+    @Test
+    public void clearDiscardsSkippedRequests() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        OtlpHttpReceiverService.ListenerRegistration registration =
+                service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
+        registration.setVisibleTypes(EnumSet.noneOf(TelemetryType.class));
+
+        handle(service, new FakeHttpExchange("POST", "/project-one/v1/metrics", createMetricsPayload()));
+        awaitIngestIdle(service);
+        service.clear("project-one");
+        registration.setVisibleTypes(EnumSet.allOf(TelemetryType.class));
+        awaitIngestIdle(service);
+
+        assert received.isEmpty();
+    }
+
     @Test
     public void handleRejectsUnknownPath() throws Exception {
         OtlpHttpReceiverService service = new OtlpHttpReceiverService();
@@ -179,14 +293,201 @@ public class OtlpHttpReceiverServiceTests {
     }
 
     @Test
-    public void handleReturnsBadRequestForInvalidPayload() throws Exception {
+    public void handleAcknowledgesInvalidPayloadAndDropsItAfterDecoding() throws Exception {
         OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new ArrayList<>();
+        service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
         FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/logs", new byte[]{1, 2, 3});
 
         handle(service, exchange);
+        awaitIngestIdle(service);
+
+        assert exchange.responseCode == 200;
+        assert received.isEmpty();
+    }
+
+    @Test
+    public void handleAcknowledgesBeforeListenersRun() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        CountDownLatch release = new CountDownLatch(1);
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        service.addListener("project-one", (Consumer<TelemetryItem>) item -> {
+            awaitLatch(release);
+            received.add(item);
+        });
+
+        FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload());
+        handle(service, exchange);
+
+        // The exporter is answered while the listener is still blocked
+        assert exchange.responseCode == 200;
+        assert received.isEmpty();
+
+        release.countDown();
+        awaitIngestIdle(service);
+        assert received.size() == 1;
+    }
+
+    @Test
+    public void handleReturnsServiceUnavailableWithRetryAfterWhenQueueIsFull() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        service.addListener("project-one", (Consumer<TelemetryItem>) item -> {
+            started.countDown();
+            awaitLatch(release);
+        });
+
+        // First payload occupies the worker, second fills the single queue slot
+        FakeHttpExchange first = new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload());
+        handle(service, first);
+        assert started.await(5, TimeUnit.SECONDS);
+        FakeHttpExchange second = new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload());
+        handle(service, second);
+        FakeHttpExchange third = new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload());
+        handle(service, third);
+
+        assert first.responseCode == 200;
+        assert second.responseCode == 200;
+        assert third.responseCode == 503;
+        assert "1".equals(third.getResponseHeaders().getFirst("Retry-After"));
+
+        release.countDown();
+        awaitIngestIdle(service);
+    }
+
+    @Test
+    public void handleDecodesGzipEncodedPayload() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(createTracesPayload());
+        }
+        FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/traces", compressed.toByteArray());
+        exchange.getRequestHeaders().add("Content-Encoding", "gzip");
+
+        handle(service, exchange);
+        awaitIngestIdle(service);
+
+        assert exchange.responseCode == 200;
+        assert received.size() == 1;
+        assert received.get(0).getTelemetry().getType() == TelemetryType.Exception;
+    }
+
+    @Test
+    public void handleDecodesZlibAndRawDeflateEncodedPayloads() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
+
+        for (boolean raw : new boolean[]{false, true}) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+                deflate.write(createLogsPayload());
+            }
+            FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/logs", compressed.toByteArray());
+            exchange.getRequestHeaders().add("Content-Encoding", "deflate");
+
+            handle(service, exchange);
+            assert exchange.responseCode == 200;
+        }
+        awaitIngestIdle(service);
 
-        assert exchange.responseCode == 400;
-        assert !exchange.responseBodyAsString().isEmpty();
+        assert received.size() == 2;
+        assert received.get(0).getTelemetry().getType() == TelemetryType.Message;
+        assert received.get(1).getTelemetry().getType() == TelemetryType.Message;
+    }
+
+    @Test
+    public void decoderThreadStartsWithFirstRequest() throws Exception {
+        long before = decoderThreadCount();
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        try {
+            assert decoderThreadCount() == before;
+
+            handle(service, new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload()));
+            awaitIngestIdle(service);
+            assert decoderThreadCount() == before + 1;
+        } finally {
+            service.dispose();
+        }
+    }
+
+    @Test
+    public void handleRejectsUnsupportedContentEncoding() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
+
+        FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload());
+        exchange.getRequestHeaders().add("Content-Encoding", "br");
+
+        handle(service, exchange);
+        awaitIngestIdle(service);
+
+        assert exchange.responseCode == 415;
+        assert received.isEmpty();
+        // zstd is not bundled, so it isn't advertised or accepted either
+        assert !OtlpContentEncoding.isSupported("zstd");
+        assert !OtlpContentEncoding.isSupported("gzip, zstd");
+    }
+
+    @Test
+    public void handleDecodesJsonPayloadByContentType() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+        List<TelemetryItem> received = new CopyOnWriteArrayList<>();
+        service.addListener("project-one", (Consumer<TelemetryItem>) received::add);
+
+        String json = "{\"resourceLogs\":[{\"scopeLogs\":[{\"logRecords\":[{\"severityNumber\":17,\"body\":{\"stringValue\":\"boom\"}}]}]}]}";
+        FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/logs", json.getBytes(StandardCharsets.UTF_8));
+        exchange.getRequestHeaders().add("Content-Type", "application/json; charset=utf-8");
+
+        handle(service, exchange);
+        awaitIngestIdle(service);
+
+        assert exchange.responseCode == 200;
+        assert "{}".equals(exchange.responseBodyAsString());
+        assert "application/json; charset=utf-8".equals(exchange.getResponseHeaders().getFirst("Content-Type"));
+        assert received.size() == 1;
+        assert "boom".equals(received.get(0).getTelemetry().getLog().getBody());
+    }
+
+    @Test
+    public void handleRejectsUnsupportedContentType() throws Exception {
+        OtlpHttpReceiverService service = new OtlpHttpReceiverService();
+
+        FakeHttpExchange exchange = new FakeHttpExchange("POST", "/project-one/v1/logs", createLogsPayload());
+        exchange.getRequestHeaders().add("Content-Type", "text/xml");
+
+        handle(service, exchange);
+
+        assert exchange.responseCode == 415;
+    }
+
+    private static long decoderThreadCount() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().equals("OpenTelemetry-OTLP-Decoder"))
+                .count();
+    }
+
+    private static OtlpIngestRequest spillRequest(OtlpHttpReceiverService.SignalType signalType, int size) {
+        return new OtlpIngestRequest("project-one", signalType, new byte[size], null,
+                OtlpHttpReceiverService.PayloadFormat.PROTOBUF);
+    }
+
+    private static void awaitIngestIdle(OtlpHttpReceiverService service) {
+        assert service.awaitIngestIdle(5_000);
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            assert latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
     }
 
     private static void handle(OtlpHttpReceiverService service, FakeHttpExchange exchange) throws Exception {
@@ -200,9 +501,9 @@ public class OtlpHttpReceiverServiceTests {
     }
 
     private static void publish(OtlpHttpReceiverService service, String scopeKey, TelemetryItem telemetryItem) throws Exception {
-        Method publish = OtlpHttpReceiverService.class.getDeclaredMethod("publish", String.class, TelemetryItem.class);
+        Method publish = OtlpHttpReceiverService.class.getDeclaredMethod("publish", String.class, List.class);
         publish.setAccessible(true);
-        publish.invoke(service, scopeKey, telemetryItem);
+        publish.invoke(service, scopeKey, List.of(telemetryItem));
     }
 
     private static String resolveSignalType(String path) throws Exception {
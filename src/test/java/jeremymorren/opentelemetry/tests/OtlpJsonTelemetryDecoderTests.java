@@ -0,0 +1,306 @@
+package jeremymorren.opentelemetry.tests;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import io.opentelemetry.proto.metrics.v1.*;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TelemetryType;
+import jeremymorren.opentelemetry.otlp.OtlpJsonTelemetryDecoder;
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryDecoder;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+public class OtlpJsonTelemetryDecoderTests {
+    private final OtlpJsonTelemetryDecoder decoder = new OtlpJsonTelemetryDecoder();
+    private final OtlpTelemetryDecoder protobufDecoder = new OtlpTelemetryDecoder();
+
+    @Test
+    public void decodesTraceSpansLikeProtobufDecoder() {
+        String json = """
+                {"resourceSpans": [{
+                  "resource": {"attributes": [{"key": "service.name", "value": {"stringValue": "demo-api"}}]},
+                  "scopeSpans": [{
+                    "scope": {"name": "demo-tracer", "version": "1.0.0"},
+                    "spans": [{
+                      "traceId": "30313233343536373839616263646566",
+                      "spanId": "7370616E2D696431",
+                      "parentSpanId": "706172656e743031",
+                      "flags": 1,
+                      "name": "GET /weather",
+                      "kind": 2,
+                      "startTimeUnixNano": "1000000000",
+                      "endTimeUnixNano": 2000000000,
+                      "attributes": [
+                        {"key": "url.path", "value": {"stringValue": "/weather"}},
+                        {"key": "http.response.status_code", "value": {"intValue": "200"}}
+                      ],
+                      "events": [{
+                        "name": "exception",
+                        "timeUnixNano": "1500000000",
+                        "attributes": [
+                          {"key": "exception.message", "value": {"stringValue": "boom"}},
+                          {"key": "exception.type", "value": {"stringValue": "System.Exception"}},
+                          {"key": "exception.stacktrace", "value": {"stringValue": "stack"}}
+                        ]
+                      }],
+                      "status": {"code": 2, "message": "failed"}
+                    }]
+                  }]
+                }]}
+                """;
+
+        Span span = Span.newBuilder()
+                .setName("GET /weather")
+                .setKind(Span.SpanKind.SPAN_KIND_SERVER)
+                .setStartTimeUnixNano(1_000_000_000L)
+                .setEndTimeUnixNano(2_000_000_000L)
+                .setTraceId(ByteString.copyFromUtf8("0123456789abcdef"))
+                .setSpanId(ByteString.copyFromUtf8("span-id1"))
+                .setParentSpanId(ByteString.copyFromUtf8("parent01"))
+                .setFlags(1)
+                .addAttributes(stringAttribute("url.path", "/weather"))
+                .addAttributes(KeyValue.newBuilder()
+                        .setKey("http.response.status_code")
+                        .setValue(AnyValue.newBuilder().setIntValue(200)))
+                .addEvents(Span.Event.newBuilder()
+                        .setName("exception")
+                        .setTimeUnixNano(1_500_000_000L)
+                        .addAttributes(stringAttribute("exception.message", "boom"))
+                        .addAttributes(stringAttribute("exception.type", "System.Exception"))
+                        .addAttributes(stringAttribute("exception.stacktrace", "stack")))
+                .setStatus(Status.newBuilder().setCode(Status.StatusCode.STATUS_CODE_ERROR).setMessage("failed"))
+                .build();
+
+        ExportTraceServiceRequest request = ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder()
+                        .setResource(Resource.newBuilder().addAttributes(stringAttribute("service.name", "demo-api")))
+                        .addScopeSpans(ScopeSpans.newBuilder()
+                                .setScope(InstrumentationScope.newBuilder().setName("demo-tracer").setVersion("1.0.0"))
+                                .addSpans(span)))
+                .build();
+
+        List<TelemetryItem> telemetries = decoder.decodeTraces(utf8(json));
+        List<TelemetryItem> expected = protobufDecoder.decodeTraces(request.toByteArray());
+
+        assert telemetries.size() == 1;
+        assert telemetries.get(0).getTelemetry().equals(expected.get(0).getTelemetry());
+        assert telemetries.get(0).getTelemetry().getType() == TelemetryType.Exception;
+        assert "7370616e2d696431".equals(telemetries.get(0).getTelemetry().getActivity().getSpanId().toString());
+        assert Duration.ofSeconds(1).equals(telemetries.get(0).getDuration());
+        assert telemetries.get(0).getRawJson().contains("\"name\" : \"GET /weather\"");
+        assert !telemetries.get(0).getRawJson().contains("demo-tracer");
+    }
+
+    @Test
+    public void decodesLogRecordsLikeProtobufDecoder() {
+        String json = """
+                {"resourceLogs": [{
+                  "resource": {"attributes": [{"key": "service.name", "value": {"stringValue": "demo-api"}}]},
+                  "scopeLogs": [{
+                    "scope": {"name": "demo-logger"},
+                    "logRecords": [{
+                      "timeUnixNano": "3000000000",
+                      "severityNumber": 13,
+                      "body": {"stringValue": "cache miss for {CacheKey}"},
+                      "traceId": "74726163652d6c6f672d313233343536",
+                      "spanId": "7370616e2d6c6f67",
+                      "attributes": [
+                        {"key": "categoryName", "value": {"stringValue": "Demo.Logs"}},
+                        {"key": "event.id", "value": {"stringValue": "7"}},
+                        {"key": "event.name", "value": {"stringValue": "CacheMiss"}},
+                        {"key": "CacheKey", "value": {"stringValue": "user:42"}}
+                      ]
+                    }]
+                  }]
+                }]}
+                """;
+
+        LogRecord logRecord = LogRecord.newBuilder()
+                .setTimeUnixNano(3_000_000_000L)
+                .setSeverityNumber(SeverityNumber.SEVERITY_NUMBER_WARN)
+                .setBody(AnyValue.newBuilder().setStringValue("cache miss for {CacheKey}"))
+                .setTraceId(ByteString.copyFromUtf8("trace-log-123456"))
+                .setSpanId(ByteString.copyFromUtf8("span-log"))
+                .addAttributes(stringAttribute("categoryName", "Demo.Logs"))
+                .addAttributes(stringAttribute("event.id", "7"))
+                .addAttributes(stringAttribute("event.name", "CacheMiss"))
+                .addAttributes(stringAttribute("CacheKey", "user:42"))
+                .build();
+
+        ExportLogsServiceRequest request = ExportLogsServiceRequest.newBuilder()
+                .addResourceLogs(ResourceLogs.newBuilder()
+                        .setResource(Resource.newBuilder().addAttributes(stringAttribute("service.name", "demo-api")))
+                        .addScopeLogs(ScopeLogs.newBuilder()
+                                .setScope(InstrumentationScope.newBuilder().setName("demo-logger"))
+                                .addLogRecords(logRecord)))
+                .build();
+
+        List<TelemetryItem> telemetries = decoder.decodeLogs(utf8(json));
+        List<TelemetryItem> expected = protobufDecoder.decodeLogs(request.toByteArray());
+
+        assert telemetries.size() == 1;
+        assert telemetries.get(0).getTelemetry().equals(expected.get(0).getTelemetry());
+        assert "cache miss for user:42".equals(telemetries.get(0).getTelemetry().getLog().getFormattedMessage());
+    }
+
+    @Test
+    public void decodesMetricsLikeProtobufDecoder() {
+        String json = """
+                {"resourceMetrics": [{
+                  "resource": {"attributes": [{"key": "service.name", "value": {"stringValue": "demo-api"}}]},
+                  "scopeMetrics": [{
+                    "scope": {"name": "demo-meter", "version": "2.0.0"},
+                    "metrics": [{
+                      "name": "http.server.request.duration",
+                      "description": "Request duration",
+                      "unit": "ms",
+                      "sum": {
+                        "aggregationTemporality": 2,
+                        "isMonotonic": true,
+                        "dataPoints": [{
+                          "startTimeUnixNano": "1000000000",
+                          "timeUnixNano": "2000000000",
+                          "asDouble": 42.5,
+                          "attributes": [{"key": "http.method", "value": {"stringValue": "GET"}}]
+                        }]
+                      }
+                    }, {
+                      "name": "queue.length",
+                      "gauge": {"dataPoints": [{"timeUnixNano": "2000000000", "asInt": "9007199254740993"}]}
+                    }]
+                  }]
+                }]}
+                """;
+
+        ExportMetricsServiceRequest request = ExportMetricsServiceRequest.newBuilder()
+                .addResourceMetrics(ResourceMetrics.newBuilder()
+                        .setResource(Resource.newBuilder().addAttributes(stringAttribute("service.name", "demo-api")))
+                        .addScopeMetrics(ScopeMetrics.newBuilder()
+                                .setScope(InstrumentationScope.newBuilder().setName("demo-meter").setVersion("2.0.0"))
+                                .addMetrics(Metric.newBuilder()
+                                        .setName("http.server.request.duration")
+                                        .setDescription("Request duration")
+                                        .setUnit("ms")
+                                        .setSum(Sum.newBuilder()
+                                                .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE)
+                                                .setIsMonotonic(true)
+                                                .addDataPoints(NumberDataPoint.newBuilder()
+                                                        .setStartTimeUnixNano(1_000_000_000L)
+                                                        .setTimeUnixNano(2_000_000_000L)
+                                                        .setAsDouble(42.5)
+                                                        .addAttributes(stringAttribute("http.method", "GET")))))
+                                .addMetrics(Metric.newBuilder()
+                                        .setName("queue.length")
+                                        .setGauge(Gauge.newBuilder()
+                                                .addDataPoints(NumberDataPoint.newBuilder()
+                                                        .setTimeUnixNano(2_000_000_000L)
+                                                        .setAsInt(9_007_199_254_740_993L))))))
+                .build();
+
+        List<TelemetryItem> telemetries = decoder.decodeMetrics(utf8(json));
+        List<TelemetryItem> expected = protobufDecoder.decodeMetrics(request.toByteArray());
+
+        assert telemetries.size() == 2;
+        assert telemetries.get(0).getTelemetry().equals(expected.get(0).getTelemetry());
+        assert telemetries.get(1).getTelemetry().equals(expected.get(1).getTelemetry());
+        assert "CUMULATIVE".equals(telemetries.get(0).getTelemetry().getMetric().getTemporality());
+        assert telemetries.get(1).getTelemetry().getMetric().getPoints().get(0).getLongGauge() == 9_007_199_254_740_993L;
+    }
+
+    @Test
+    public void acceptsSnakeCaseKeysEnumNamesAndOutOfOrderScopes() {
+        String json = """
+                {"resource_spans": [{
+                  "scope_spans": [{
+                    "spans": [{
+                      "trace_id": "AAECAwQFBgcICQoLDA0ODw==",
+                      "span_id": "0001020304050607",
+                      "name": "SELECT",
+                      "kind": "SPAN_KIND_CLIENT",
+                      "status": {"code": "STATUS_CODE_OK"},
+                      "unknown_field": {"nested": [1, 2, {"deep": null}]}
+                    }],
+                    "scope": {"name": "late-scope"}
+                  }],
+                  "resource": {"attributes": [{"key": "service.name", "value": {"stringValue": "late-resource"}}]}
+                }]}
+                """;
+
+        List<TelemetryItem> telemetries = decoder.decodeTraces(utf8(json));
+
+        assert telemetries.size() == 1;
+        var telemetry = telemetries.get(0).getTelemetry();
+        assert "000102030405060708090a0b0c0d0e0f".equals(telemetry.getActivity().getTraceId().toString());
+        assert "0001020304050607".equals(telemetry.getActivity().getSpanId().toString());
+        assert telemetry.getActivity().getKind() == jeremymorren.opentelemetry.models.ActivityKind.Client;
+        assert telemetry.getActivity().getStatus() == jeremymorren.opentelemetry.models.ActivityStatusCode.Ok;
+        assert "late-scope".equals(telemetry.getActivity().getSource().getName());
+        assert "late-resource".equals(telemetry.getResource().getString("service.name"));
+    }
+
+    @Test
+    public void internsResourcesAndScopesAcrossRequests() {
+        String json = """
+                {"resourceSpans": [{
+                  "resource": {"attributes": [{"key": "service.name", "value": {"stringValue": "demo-api"}}]},
+                  "scopeSpans": [{
+                    "scope": {"name": "demo-tracer", "version": "1.0.0"},
+                    "spans": [{"name": "first"}, {"name": "second"}]
+                  }]
+                }]}
+                """;
+
+        List<TelemetryItem> first = decoder.decodeTraces(utf8(json));
+        List<TelemetryItem> second = decoder.decodeTraces(utf8(json));
+
+        var resource = first.get(0).getTelemetry().getResource();
+        var source = first.get(0).getTelemetry().getActivity().getSource();
+        assert "demo-api".equals(resource.getString("service.name"));
+        assert "demo-tracer".equals(source.getName()) && "1.0.0".equals(source.getVersion());
+        assert first.get(1).getTelemetry().getResource() == resource;
+        assert second.get(0).getTelemetry().getResource() == resource;
+        assert second.get(1).getTelemetry().getActivity().getSource() == source;
+
+        var other = decoder.decodeTraces(utf8(json.replace("demo-api", "other-api"))).get(0).getTelemetry().getResource();
+        assert "other-api".equals(other.getString("service.name"));
+    }
+
+    @Test
+    public void decodesEmptyRequest() {
+        assert decoder.decodeTraces(utf8("{}")).isEmpty();
+        assert decoder.decodeLogs(utf8("{\"resourceLogs\": []}")).isEmpty();
+    }
+
+    @Test(expected = Exception.class)
+    public void rejectsMalformedJson() {
+        decoder.decodeLogs(utf8("{\"resourceLogs\": [{\"scopeLogs\": ["));
+    }
+
+    private static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static KeyValue stringAttribute(String key, String value) {
+        return KeyValue.newBuilder()
+                .setKey(key)
+                .setValue(AnyValue.newBuilder().setStringValue(value))
+                .build();
+    }
+}
@@ -20,13 +20,45 @@ import io.opentelemetry.proto.trace.v1.Status;
 import jeremymorren.opentelemetry.models.TelemetryItem;
 import jeremymorren.opentelemetry.models.TelemetryType;
 import jeremymorren.opentelemetry.otlp.OtlpTelemetryDecoder;
+import jeremymorren.opentelemetry.otlp.OtlpWireTelemetryDecoder;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * Decodes the same protobuf payloads with both decoders: the protobuf message decoder, and the wire decoder the
+ * receivers use.
+ */
+@RunWith(Parameterized.class)
 public class OtlpTelemetryDecoderTests {
-    private final OtlpTelemetryDecoder decoder = new OtlpTelemetryDecoder();
+    private final Decoder decoder;
+
+    public OtlpTelemetryDecoderTests(String name, Supplier<Decoder> factory) {
+        // A new decoder per test, so resources and scopes aren't interned across tests
+        this.decoder = factory.get();
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> decoders() {
+        Supplier<Decoder> messageDecoder = () -> {
+            var decoder = new OtlpTelemetryDecoder();
+            return new Decoder(decoder::decodeTraces, decoder::decodeLogs, decoder::decodeMetrics);
+        };
+        Supplier<Decoder> wireDecoder = () -> {
+            var decoder = new OtlpWireTelemetryDecoder();
+            return new Decoder(decoder::decodeTraces, decoder::decodeLogs, decoder::decodeMetrics);
+        };
+        return List.of(
+                new Object[]{"OtlpTelemetryDecoder", messageDecoder},
+                new Object[]{"OtlpWireTelemetryDecoder", wireDecoder});
+    }
 
     @Test
     public void decodesTraceSpansIntoActivities() {
@@ -61,7 +93,7 @@ public class OtlpTelemetryDecoderTests {
                                 .addSpans(span)))
                 .build();
 
-        List<TelemetryItem> telemetries = decoder.decodeTraces(request.toByteArray());
+        List<TelemetryItem> telemetries = decoder.traces().apply(request.toByteArray());
 
         assert telemetries.size() == 1;
         assert telemetries.get(0).getTelemetry().getType() == TelemetryType.Exception;
@@ -94,7 +126,7 @@ public class OtlpTelemetryDecoderTests {
                                 .addLogRecords(logRecord)))
                 .build();
 
-        List<TelemetryItem> telemetries = decoder.decodeLogs(request.toByteArray());
+        List<TelemetryItem> telemetries = decoder.logs().apply(request.toByteArray());
 
         assert telemetries.size() == 1;
         assert telemetries.get(0).getTelemetry().getType() == TelemetryType.Message;
@@ -130,7 +162,7 @@ public class OtlpTelemetryDecoderTests {
                                 .addMetrics(metric)))
                 .build();
 
-        List<TelemetryItem> telemetries = decoder.decodeMetrics(request.toByteArray());
+        List<TelemetryItem> telemetries = decoder.metrics().apply(request.toByteArray());
 
         assert telemetries.size() == 1;
         assert telemetries.get(0).getTelemetry().getType() == TelemetryType.Metric;
@@ -140,6 +172,96 @@ public class OtlpTelemetryDecoderTests {
         assert telemetries.get(0).getTelemetry().getMetric().getPoints().get(0).getDoubleSum() == 42.5;
     }
 
+    @Test
+    public void rawJsonIsRenderedOnDemandAndCached() {
+        ExportLogsServiceRequest request = ExportLogsServiceRequest.newBuilder()
+                .addResourceLogs(ResourceLogs.newBuilder()
+                        .addScopeLogs(ScopeLogs.newBuilder()
+                                .addLogRecords(LogRecord.newBuilder()
+                                        .setBody(AnyValue.newBuilder().setStringValue("first")))
+                                .addLogRecords(LogRecord.newBuilder()
+                                        .setBody(AnyValue.newBuilder().setStringValue("second")))))
+                .build();
+
+        List<TelemetryItem> telemetries = decoder.logs().apply(request.toByteArray());
+
+        String first = telemetries.get(0).getRawJson();
+        assert first.contains("\"stringValue\": \"first\"");
+        assert telemetries.get(1).getRawJson().contains("\"stringValue\": \"second\"");
+        // Re-selecting a recently viewed item reuses the rendered JSON
+        assert telemetries.get(0).getRawJson() == first;
+    }
+
+    @Test
+    public void decodesAttributesAsTypedValues() {
+        Span span = Span.newBuilder()
+                .setName("work")
+                .addAttributes(KeyValue.newBuilder().setKey("big").setValue(AnyValue.newBuilder().setIntValue(9_007_199_254_740_993L)))
+                .addAttributes(KeyValue.newBuilder().setKey("ratio").setValue(AnyValue.newBuilder().setDoubleValue(0.1)))
+                .addAttributes(KeyValue.newBuilder().setKey("flag").setValue(AnyValue.newBuilder().setBoolValue(true)))
+                .addAttributes(stringAttribute("numeric.string", "123"))
+                .addAttributes(stringAttribute("text", "line1\r\nline2"))
+                .addAttributes(KeyValue.newBuilder().setKey("list").setValue(AnyValue.newBuilder()
+                        .setArrayValue(io.opentelemetry.proto.common.v1.ArrayValue.newBuilder()
+                                .addValues(AnyValue.newBuilder().setIntValue(1))
+                                .addValues(AnyValue.newBuilder().setStringValue("a")))))
+                .addAttributes(stringAttribute("dup", "first"))
+                .addAttributes(stringAttribute("dup", "second"))
+                .build();
+        ExportTraceServiceRequest request = ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder()
+                        .addScopeSpans(ScopeSpans.newBuilder().addSpans(span)))
+                .build();
+
+        var tags = decoder.traces().apply(request.toByteArray()).get(0).getTelemetry().getActivity().getTags();
+
+        // int64 is kept exactly (not converted to a double)
+        assert tags.get("big").equals(9_007_199_254_740_993L);
+        assert "9007199254740993".equals(tags.getString("big"));
+        assert tags.get("ratio").equals(0.1);
+        assert tags.get("flag").equals(true);
+        // Strings stay strings, even if they look like numbers
+        assert tags.get("numeric.string").equals("123");
+        assert tags.get("text").equals("line1\nline2");
+        assert tags.get("list").equals(List.of(1L, "a"));
+        // The last of duplicate keys wins
+        assert tags.get("dup").equals("second");
+    }
+
+    @Test
+    public void internsResourcesAndScopesAcrossRequests() {
+        ExportTraceServiceRequest request = ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder()
+                        .setResource(Resource.newBuilder().addAttributes(stringAttribute("service.name", "demo-api")))
+                        .addScopeSpans(ScopeSpans.newBuilder()
+                                .setScope(InstrumentationScope.newBuilder().setName("demo-tracer").setVersion("1.0.0"))
+                                .addSpans(Span.newBuilder().setName("first"))
+                                .addSpans(Span.newBuilder().setName("second"))))
+                .build();
+
+        List<TelemetryItem> first = decoder.traces().apply(request.toByteArray());
+        List<TelemetryItem> second = decoder.traces().apply(request.toByteArray());
+
+        var resource = first.get(0).getTelemetry().getResource();
+        var source = first.get(0).getTelemetry().getActivity().getSource();
+        assert first.get(1).getTelemetry().getResource() == resource;
+        assert second.get(0).getTelemetry().getResource() == resource;
+        assert second.get(1).getTelemetry().getActivity().getSource() == source;
+
+        // A different resource is decoded separately
+        ExportTraceServiceRequest other = request.toBuilder()
+                .setResourceSpans(0, request.getResourceSpans(0).toBuilder()
+                        .setResource(Resource.newBuilder().addAttributes(stringAttribute("service.name", "other-api"))))
+                .build();
+        var otherResource = decoder.traces().apply(other.toByteArray()).get(0).getTelemetry().getResource();
+        assert "other-api".equals(otherResource.getString("service.name"));
+    }
+
+    private record Decoder(Function<byte[], List<TelemetryItem>> traces,
+                           Function<byte[], List<TelemetryItem>> logs,
+                           Function<byte[], List<TelemetryItem>> metrics) {
+    }
+
     private static KeyValue stringAttribute(String key, String value) {
         return KeyValue.newBuilder()
                 .setKey(key)
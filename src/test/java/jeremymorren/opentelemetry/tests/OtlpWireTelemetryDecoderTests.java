@@ -0,0 +1,519 @@
+package jeremymorren.opentelemetry.tests;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnknownFieldSet;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.common.v1.KeyValueList;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.metrics.v1.*;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import jeremymorren.opentelemetry.models.TelemetryFactory;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryDecoder;
+import jeremymorren.opentelemetry.otlp.OtlpWireTelemetryDecoder;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Differential tests of the wire decoder against the generated-message decoder (the reference).
+ */
+public class OtlpWireTelemetryDecoderTests {
+    private final OtlpTelemetryDecoder reference = new OtlpTelemetryDecoder();
+    private final OtlpWireTelemetryDecoder decoder = new OtlpWireTelemetryDecoder();
+    // Decodes every request in parallel
+    private final OtlpWireTelemetryDecoder parallelDecoder = new OtlpWireTelemetryDecoder(new TelemetryFactory(), 1);
+
+    @Test
+    public void decodesLikeGeneratedDecoder() {
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            assertSameTraces(randomTraces(random).toByteArray());
+            assertSameLogs(randomLogs(random).toByteArray());
+            assertSameMetrics(randomMetrics(random).toByteArray());
+        }
+    }
+
+    @Test
+    public void decodesInParallelLikeGeneratedDecoder() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            byte[] traces = randomTraces(random).toByteArray();
+            byte[] logs = randomLogs(random).toByteArray();
+            byte[] metrics = randomMetrics(random).toByteArray();
+            assertSame(traces, reference::decodeTraces, parallelDecoder::decodeTraces);
+            assertSame(logs, reference::decodeLogs, parallelDecoder::decodeLogs);
+            assertSame(metrics, reference::decodeMetrics, parallelDecoder::decodeMetrics);
+        }
+    }
+
+    @Test
+    public void decodesLargeBatchesInRequestOrder() {
+        ExportTraceServiceRequest.Builder request = ExportTraceServiceRequest.newBuilder();
+        int count = 0;
+        for (int r = 0; r < 3; r++) {
+            ResourceSpans.Builder resourceSpans = ResourceSpans.newBuilder()
+                    .setResource(Resource.newBuilder().addAttributes(stringAttribute("service.name", "service-" + r)));
+            // A batch processor flush (one large scope) and a few small scopes
+            for (int s = 0; s < 4; s++) {
+                ScopeSpans.Builder scopeSpans = ScopeSpans.newBuilder()
+                        .setScope(InstrumentationScope.newBuilder().setName("scope-" + s));
+                for (int i = s == 0 ? 1000 : 3; i > 0; i--) {
+                    scopeSpans.addSpans(Span.newBuilder().setName("span-" + count++));
+                }
+                resourceSpans.addScopeSpans(scopeSpans);
+            }
+            request.addResourceSpans(resourceSpans);
+        }
+
+        List<TelemetryItem> items = assertSameTraces(request.build().toByteArray());
+
+        assert items.size() == count;
+        for (int i = 0; i < count; i++) {
+            assert ("span-" + i).equals(items.get(i).getTelemetry().getActivity().getDisplayName());
+        }
+    }
+
+    @Test
+    public void rejectsMalformedItemsWhenDecodingInParallel() {
+        // A span name that isn't valid UTF-8 (only found when the span itself is decoded)
+        Span malformed = Span.newBuilder()
+                .setUnknownFields(UnknownFieldSet.newBuilder()
+                        .addField(Span.NAME_FIELD_NUMBER, UnknownFieldSet.Field.newBuilder()
+                                .addLengthDelimited(ByteString.copyFrom(new byte[] { (byte) 0xff }))
+                                .build())
+                        .build())
+                .build();
+        ScopeSpans.Builder scopeSpans = ScopeSpans.newBuilder();
+        for (int i = 0; i < 2000; i++) {
+            scopeSpans.addSpans(i == 1500 ? malformed : Span.newBuilder().setName("span").build());
+        }
+        byte[] payload = ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder().addScopeSpans(scopeSpans))
+                .build()
+                .toByteArray();
+
+        assert assertSameTraces(payload) == null;
+    }
+
+    @Test
+    public void decodesStreams() {
+        byte[] payload = randomTraces(new Random(1)).toByteArray();
+
+        List<TelemetryItem> expected = reference.decodeTraces(payload);
+        List<TelemetryItem> actual = decoder.decodeTraces(new ByteArrayInputStream(payload));
+
+        assertSame(expected, actual);
+    }
+
+    @Test
+    public void mergesRepeatedMessagesInAnyFieldOrder() throws IOException {
+        // Spans before their scope, and the scope split over two occurrences (merged, as protobuf specifies)
+        ByteString scopeSpans = ScopeSpans.newBuilder().addSpans(Span.newBuilder().setName("work")).build().toByteString()
+                .concat(ScopeSpans.newBuilder().setScope(InstrumentationScope.newBuilder().setName("tracer")).build().toByteString())
+                .concat(ScopeSpans.newBuilder().setScope(InstrumentationScope.newBuilder().setVersion("1.0.0")).build().toByteString());
+        ByteString resourceSpans = lengthDelimited(ResourceSpans.SCOPE_SPANS_FIELD_NUMBER, scopeSpans)
+                .concat(lengthDelimited(ResourceSpans.RESOURCE_FIELD_NUMBER,
+                        Resource.newBuilder().addAttributes(stringAttribute("service.name", "demo-api")).build().toByteString()));
+        byte[] payload = lengthDelimited(ExportTraceServiceRequest.RESOURCE_SPANS_FIELD_NUMBER, resourceSpans).toByteArray();
+
+        List<TelemetryItem> items = assertSameTraces(payload);
+
+        var telemetry = items.get(0).getTelemetry();
+        assert "tracer".equals(telemetry.getActivity().getSource().getName());
+        assert "1.0.0".equals(telemetry.getActivity().getSource().getVersion());
+        assert "demo-api".equals(telemetry.getResource().getString("service.name"));
+    }
+
+    @Test
+    public void rejectsTruncatedPayloadsLikeGeneratedDecoder() {
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            byte[] traces = randomTraces(random).toByteArray();
+            byte[] logs = randomLogs(random).toByteArray();
+            byte[] metrics = randomMetrics(random).toByteArray();
+            for (int length = 0; length < traces.length; length += 1 + random.nextInt(8)) {
+                assertSameTraces(Arrays.copyOf(traces, length));
+            }
+            for (int length = 0; length < logs.length; length += 1 + random.nextInt(8)) {
+                assertSameLogs(Arrays.copyOf(logs, length));
+            }
+            for (int length = 0; length < metrics.length; length += 1 + random.nextInt(8)) {
+                assertSameMetrics(Arrays.copyOf(metrics, length));
+            }
+        }
+    }
+
+    private List<TelemetryItem> assertSameTraces(byte[] payload) {
+        return assertSame(payload, reference::decodeTraces, decoder::decodeTraces);
+    }
+
+    private List<TelemetryItem> assertSameLogs(byte[] payload) {
+        return assertSame(payload, reference::decodeLogs, decoder::decodeLogs);
+    }
+
+    private List<TelemetryItem> assertSameMetrics(byte[] payload) {
+        return assertSame(payload, reference::decodeMetrics, decoder::decodeMetrics);
+    }
+
+    /**
+     * Asserts that both decoders produce the same telemetry, or both reject the payload.
+     */
+    private static List<TelemetryItem> assertSame(
+            byte[] payload,
+            Function<byte[], List<TelemetryItem>> referenceDecode,
+            Function<byte[], List<TelemetryItem>> decode) {
+        List<TelemetryItem> expected;
+        try {
+            expected = referenceDecode.apply(payload);
+        } catch (Exception e) {
+            assert e instanceof InvalidProtocolBufferException : e;
+            try {
+                decode.apply(payload);
+            } catch (Exception actual) {
+                assert actual instanceof InvalidProtocolBufferException : actual;
+                return null;
+            }
+            throw new AssertionError("Accepted a payload rejected by the reference decoder: " + e.getMessage());
+        }
+        List<TelemetryItem> actual = decode.apply(payload);
+        assertSame(expected, actual);
+        return actual;
+    }
+
+    private static void assertSame(List<TelemetryItem> expected, List<TelemetryItem> actual) {
+        assert expected.size() == actual.size();
+        for (int i = 0; i < expected.size(); i++) {
+            assert expected.get(i).getTelemetry().equals(actual.get(i).getTelemetry()) : actual.get(i).getJson();
+            assert expected.get(i).getJson().equals(actual.get(i).getJson());
+            assert expected.get(i).getRawJson().equals(actual.get(i).getRawJson());
+        }
+    }
+
+    private static ExportTraceServiceRequest randomTraces(Random random) {
+        ExportTraceServiceRequest.Builder request = ExportTraceServiceRequest.newBuilder();
+        for (int r = random.nextInt(3); r > 0; r--) {
+            ResourceSpans.Builder resourceSpans = ResourceSpans.newBuilder();
+            if (random.nextBoolean()) {
+                resourceSpans.setResource(randomResource(random));
+            }
+            for (int s = random.nextInt(3); s > 0; s--) {
+                ScopeSpans.Builder scopeSpans = ScopeSpans.newBuilder();
+                if (random.nextBoolean()) {
+                    scopeSpans.setScope(randomScope(random));
+                }
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    scopeSpans.addSpans(randomSpan(random));
+                }
+                resourceSpans.addScopeSpans(scopeSpans);
+            }
+            request.addResourceSpans(resourceSpans);
+        }
+        return request.build();
+    }
+
+    private static Span randomSpan(Random random) {
+        Span.Builder span = Span.newBuilder()
+                .setName(randomString(random))
+                .setTraceId(randomId(random, 16))
+                .setSpanId(randomId(random, 8))
+                .setParentSpanId(randomId(random, 8))
+                .setFlags(random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(2))
+                .setKindValue(random.nextInt(7))
+                .setStartTimeUnixNano(randomTime(random))
+                .setEndTimeUnixNano(randomTime(random))
+                .addAllAttributes(randomAttributes(random, 0));
+        if (random.nextBoolean()) {
+            span.setStatus(Status.newBuilder().setCodeValue(random.nextInt(4)).setMessage(randomString(random)));
+        }
+        for (int i = random.nextInt(3); i > 0; i--) {
+            span.addEvents(Span.Event.newBuilder()
+                    .setName(randomString(random))
+                    .setTimeUnixNano(randomTime(random))
+                    .addAllAttributes(randomAttributes(random, 0)));
+        }
+        if (random.nextInt(5) == 0) {
+            span.setUnknownFields(randomUnknownFields(random));
+        }
+        return span.build();
+    }
+
+    private static ExportLogsServiceRequest randomLogs(Random random) {
+        ExportLogsServiceRequest.Builder request = ExportLogsServiceRequest.newBuilder();
+        for (int r = random.nextInt(3); r > 0; r--) {
+            ResourceLogs.Builder resourceLogs = ResourceLogs.newBuilder();
+            if (random.nextBoolean()) {
+                resourceLogs.setResource(randomResource(random));
+            }
+            for (int s = random.nextInt(3); s > 0; s--) {
+                ScopeLogs.Builder scopeLogs = ScopeLogs.newBuilder();
+                if (random.nextBoolean()) {
+                    scopeLogs.setScope(randomScope(random));
+                }
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    LogRecord.Builder logRecord = LogRecord.newBuilder()
+                            .setTimeUnixNano(randomTime(random))
+                            .setSeverityNumberValue(random.nextInt(26))
+                            .setSeverityText(random.nextBoolean() ? "Error" : randomString(random))
+                            .setTraceId(randomId(random, 16))
+                            .setSpanId(randomId(random, 8))
+                            .addAllAttributes(randomAttributes(random, 0));
+                    if (random.nextInt(4) != 0) {
+                        logRecord.setBody(random.nextBoolean()
+                                ? AnyValue.newBuilder().setStringValue("value {" + randomString(random) + "}\r\n").build()
+                                : randomValue(random, 0));
+                    }
+                    if (random.nextInt(5) == 0) {
+                        logRecord.setUnknownFields(randomUnknownFields(random));
+                    }
+                    scopeLogs.addLogRecords(logRecord);
+                }
+                resourceLogs.addScopeLogs(scopeLogs);
+            }
+            request.addResourceLogs(resourceLogs);
+        }
+        return request.build();
+    }
+
+    private static ExportMetricsServiceRequest randomMetrics(Random random) {
+        ExportMetricsServiceRequest.Builder request = ExportMetricsServiceRequest.newBuilder();
+        for (int r = random.nextInt(3); r > 0; r--) {
+            ResourceMetrics.Builder resourceMetrics = ResourceMetrics.newBuilder();
+            if (random.nextBoolean()) {
+                resourceMetrics.setResource(randomResource(random));
+            }
+            for (int s = random.nextInt(3); s > 0; s--) {
+                ScopeMetrics.Builder scopeMetrics = ScopeMetrics.newBuilder();
+                if (random.nextBoolean()) {
+                    scopeMetrics.setScope(randomScope(random));
+                }
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    scopeMetrics.addMetrics(randomMetric(random));
+                }
+                resourceMetrics.addScopeMetrics(scopeMetrics);
+            }
+            request.addResourceMetrics(resourceMetrics);
+        }
+        return request.build();
+    }
+
+    private static Metric randomMetric(Random random) {
+        Metric.Builder metric = Metric.newBuilder()
+                .setName(randomString(random))
+                .setDescription(randomString(random))
+                .setUnit(randomString(random));
+        int points = random.nextInt(3);
+        switch (random.nextInt(6)) {
+            case 0 -> {
+                Gauge.Builder gauge = Gauge.newBuilder();
+                for (int i = points; i > 0; i--) {
+                    gauge.addDataPoints(randomNumberDataPoint(random));
+                }
+                metric.setGauge(gauge);
+            }
+            case 1 -> {
+                Sum.Builder sum = Sum.newBuilder().setAggregationTemporalityValue(random.nextInt(4)).setIsMonotonic(random.nextBoolean());
+                for (int i = points; i > 0; i--) {
+                    sum.addDataPoints(randomNumberDataPoint(random));
+                }
+                metric.setSum(sum);
+            }
+            case 2 -> {
+                Histogram.Builder histogram = Histogram.newBuilder().setAggregationTemporalityValue(random.nextInt(4));
+                for (int i = points; i > 0; i--) {
+                    HistogramDataPoint.Builder point = HistogramDataPoint.newBuilder()
+                            .setStartTimeUnixNano(randomTime(random))
+                            .setTimeUnixNano(randomTime(random))
+                            .addAllAttributes(randomAttributes(random, 0))
+                            .setCount(random.nextInt(100))
+                            .addBucketCounts(random.nextInt(100))
+                            .addExplicitBounds(random.nextDouble())
+                            .setMin(random.nextDouble());
+                    if (random.nextBoolean()) {
+                        point.setSum(random.nextDouble());
+                    }
+                    histogram.addDataPoints(point);
+                }
+                metric.setHistogram(histogram);
+            }
+            case 3 -> {
+                ExponentialHistogram.Builder histogram = ExponentialHistogram.newBuilder().setAggregationTemporalityValue(random.nextInt(4));
+                for (int i = points; i > 0; i--) {
+                    ExponentialHistogramDataPoint.Builder point = ExponentialHistogramDataPoint.newBuilder()
+                            .addAllAttributes(randomAttributes(random, 0))
+                            .setStartTimeUnixNano(randomTime(random))
+                            .setTimeUnixNano(randomTime(random))
+                            .setCount(random.nextInt(100))
+                            .setScale(random.nextInt(10) - 5)
+                            .setPositive(ExponentialHistogramDataPoint.Buckets.newBuilder().setOffset(1).addBucketCounts(2));
+                    if (random.nextBoolean()) {
+                        point.setSum(random.nextDouble());
+                    }
+                    histogram.addDataPoints(point);
+                }
+                metric.setExponentialHistogram(histogram);
+            }
+            case 4 -> {
+                Summary.Builder summary = Summary.newBuilder();
+                for (int i = points; i > 0; i--) {
+                    summary.addDataPoints(SummaryDataPoint.newBuilder()
+                            .setStartTimeUnixNano(randomTime(random))
+                            .setTimeUnixNano(randomTime(random))
+                            .setCount(random.nextInt(100))
+                            .setSum(random.nextBoolean() ? random.nextDouble() : 0)
+                            .addQuantileValues(SummaryDataPoint.ValueAtQuantile.newBuilder().setQuantile(0.5).setValue(random.nextDouble()))
+                            .addAllAttributes(randomAttributes(random, 0)));
+                }
+                metric.setSummary(summary);
+            }
+            default -> {
+                // No data
+            }
+        }
+        return metric.build();
+    }
+
+    private static NumberDataPoint randomNumberDataPoint(Random random) {
+        NumberDataPoint.Builder point = NumberDataPoint.newBuilder()
+                .setStartTimeUnixNano(randomTime(random))
+                .setTimeUnixNano(randomTime(random))
+                .addAllAttributes(randomAttributes(random, 0));
+        switch (random.nextInt(3)) {
+            case 0 -> point.setAsInt(random.nextLong());
+            case 1 -> point.setAsDouble(random.nextDouble());
+            default -> {
+                // No value
+            }
+        }
+        return point.build();
+    }
+
+    private static Resource randomResource(Random random) {
+        return Resource.newBuilder()
+                // Few distinct resources, so that interning is exercised too
+                .addAttributes(stringAttribute("service.name", "service-" + random.nextInt(3)))
+                .addAllAttributes(random.nextBoolean() ? List.of() : randomAttributes(random, 0))
+                .build();
+    }
+
+    private static InstrumentationScope randomScope(Random random) {
+        InstrumentationScope.Builder scope = InstrumentationScope.newBuilder();
+        if (random.nextInt(4) != 0) {
+            scope.setName("scope-" + random.nextInt(3));
+        }
+        if (random.nextBoolean()) {
+            scope.setVersion("1." + random.nextInt(2));
+        }
+        if (random.nextInt(4) == 0) {
+            scope.addAllAttributes(randomAttributes(random, 0));
+        }
+        return scope.build();
+    }
+
+    private static List<KeyValue> randomAttributes(Random random, int depth) {
+        int count = random.nextInt(4);
+        KeyValue[] attributes = new KeyValue[count];
+        for (int i = 0; i < count; i++) {
+            // Few distinct keys, so that duplicates occur
+            attributes[i] = KeyValue.newBuilder()
+                    .setKey(random.nextInt(4) == 0 ? "exception.message" : "key" + random.nextInt(5))
+                    .setValue(randomValue(random, depth))
+                    .build();
+        }
+        return List.of(attributes);
+    }
+
+    private static AnyValue randomValue(Random random, int depth) {
+        AnyValue.Builder value = AnyValue.newBuilder();
+        switch (random.nextInt(depth < 2 ? 8 : 6)) {
+            case 0 -> value.setStringValue(randomString(random));
+            case 1 -> value.setBoolValue(random.nextBoolean());
+            case 2 -> value.setIntValue(random.nextLong());
+            case 3 -> value.setDoubleValue(random.nextDouble() * 1000);
+            case 4 -> value.setBytesValue(randomId(random, random.nextInt(5)));
+            case 5 -> {
+                // Empty value
+            }
+            case 6 -> {
+                ArrayValue.Builder array = ArrayValue.newBuilder();
+                for (int i = random.nextInt(3); i > 0; i--) {
+                    array.addValues(randomValue(random, depth + 1));
+                }
+                value.setArrayValue(array);
+            }
+            default -> value.setKvlistValue(KeyValueList.newBuilder().addAllValues(randomAttributes(random, depth + 1)));
+        }
+        return value.build();
+    }
+
+    private static String randomString(Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> "";
+            case 1 -> " ";
+            case 2 -> "line1\r\nline2";
+            case 3 -> "ünïcødé ✓";
+            default -> "text" + random.nextInt(100);
+        };
+    }
+
+    private static ByteString randomId(Random random, int length) {
+        // Mostly conforming IDs, sometimes empty or of another length
+        int actualLength = switch (random.nextInt(6)) {
+            case 0 -> 0;
+            case 1 -> random.nextInt(20);
+            default -> length;
+        };
+        byte[] bytes = new byte[actualLength];
+        random.nextBytes(bytes);
+        return ByteString.copyFrom(bytes);
+    }
+
+    private static long randomTime(Random random) {
+        return random.nextInt(4) == 0 ? 0 : 1_700_000_000_000_000_000L + random.nextInt(1_000_000_000);
+    }
+
+    private static UnknownFieldSet randomUnknownFields(Random random) {
+        return UnknownFieldSet.newBuilder()
+                .addField(100 + random.nextInt(10), UnknownFieldSet.Field.newBuilder()
+                        .addVarint(random.nextLong())
+                        .addFixed32(random.nextInt())
+                        .addFixed64(random.nextLong())
+                        .addLengthDelimited(randomId(random, 8))
+                        .build())
+                .build();
+    }
+
+    private static ByteString lengthDelimited(int field, ByteString value) throws IOException {
+        ByteString.Output output = ByteString.newOutput();
+        CodedOutputStream stream = CodedOutputStream.newInstance(output);
+        stream.writeBytes(field, value);
+        stream.flush();
+        return output.toByteString();
+    }
+
+    private static KeyValue stringAttribute(String key, String value) {
+        return KeyValue.newBuilder()
+                .setKey(key)
+                .setValue(AnyValue.newBuilder().setStringValue(value))
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Activity;
+import jeremymorren.opentelemetry.models.ActivityStatusCode;
+import jeremymorren.opentelemetry.models.LogLevel;
+import jeremymorren.opentelemetry.models.LogMessage;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.otlp.TelemetryHistory;
+import jeremymorren.opentelemetry.settings.HistoryEvictionPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TelemetryHistoryTests {
+    // Every test item is estimated at 1,000 bytes, so the budget holds ten items
+    private static final long BUDGET = 10_000;
+    private static final String JSON = "x".repeat(248);
+
+    @Test
+    public void estimatedSizeOfTestItems() {
+        assert log(LogLevel.Information, null).getEstimatedSize() == 1_000;
+    }
+
+    @Test
+    public void fifoEvictsOldestItemsDownToLowWatermark() {
+        TelemetryHistory history = new TelemetryHistory(BUDGET, HistoryEvictionPolicy.Fifo);
+        List<TelemetryItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(log(LogLevel.Error, null));
+            assert history.add(items.get(i)).isEmpty();
+        }
+
+        TelemetryItem last = log(LogLevel.Information, null);
+        List<TelemetryItem> evicted = history.add(last);
+
+        assert evicted.equals(List.of(items.get(0), items.get(1)));
+        assert history.getUsage().equals(new TelemetryHistory.Usage(9, 9_000, BUDGET));
+        List<TelemetryItem> retained = retained(history);
+        assert retained.get(0) == items.get(2);
+        assert retained.get(8) == last;
+    }
+
+    @Test
+    public void dropLowestSeverityFirstEvictsMetricsAndDebugLogsFirst() {
+        TelemetryHistory history = new TelemetryHistory(BUDGET, HistoryEvictionPolicy.DropLowestSeverityFirst);
+        TelemetryItem error = log(LogLevel.Error, null);
+        TelemetryItem warning = log(LogLevel.Warning, null);
+        TelemetryItem debug = log(LogLevel.Debug, null);
+        TelemetryItem metric = new TelemetryItem(JSON, JSON, new Telemetry(null, null, null, null));
+        history.add(error);
+        history.add(warning);
+        history.add(debug);
+        history.add(metric);
+        for (int i = 0; i < 6; i++) {
+            history.add(log(LogLevel.Information, null));
+        }
+
+        List<TelemetryItem> evicted = history.add(log(LogLevel.Information, null));
+
+        assert evicted.equals(List.of(debug, metric));
+        List<TelemetryItem> retained = retained(history);
+        // Replayed in arrival order, whatever the eviction order
+        assert retained.get(0) == error;
+        assert retained.get(1) == warning;
+    }
+
+    @Test
+    public void keepErrorTracesKeepsSpansOfTraceWithLaterError() {
+        TelemetryHistory history = new TelemetryHistory(BUDGET, HistoryEvictionPolicy.KeepErrorTraces);
+        TelemetryItem failingTraceSpan = span("trace-1", ActivityStatusCode.Ok);
+        TelemetryItem otherSpan = span("trace-2", ActivityStatusCode.Ok);
+        history.add(failingTraceSpan);
+        history.add(otherSpan);
+        // The error is reported after the first span of its trace
+        TelemetryItem error = log(LogLevel.Error, "trace-1");
+        history.add(error);
+        for (int i = 0; i < 7; i++) {
+            history.add(span("trace-3", ActivityStatusCode.Unset));
+        }
+
+        List<TelemetryItem> evicted = history.add(span("trace-3", ActivityStatusCode.Unset));
+
+        assert evicted.size() == 2;
+        assert evicted.get(0) == otherSpan;
+        assert !evicted.contains(failingTraceSpan);
+        assert !evicted.contains(error);
+        List<TelemetryItem> retained = retained(history);
+        assert retained.get(0) == failingTraceSpan;
+        assert retained.get(1) == error;
+    }
+
+    @Test
+    public void configureEvictsToNewBudgetAndReranksItems() {
+        TelemetryHistory history = new TelemetryHistory(BUDGET, HistoryEvictionPolicy.Fifo);
+        TelemetryItem error = span("trace-1", ActivityStatusCode.Error);
+        history.add(error);
+        for (int i = 0; i < 9; i++) {
+            history.add(log(LogLevel.Information, null));
+        }
+
+        List<TelemetryItem> evicted = history.configure(5_000, HistoryEvictionPolicy.DropLowestSeverityFirst);
+
+        assert evicted.size() == 6;
+        assert !evicted.contains(error);
+        assert history.getUsage().equals(new TelemetryHistory.Usage(4, 4_000, 5_000));
+    }
+
+    @Test
+    public void clearResetsUsage() {
+        TelemetryHistory history = new TelemetryHistory(BUDGET, HistoryEvictionPolicy.Fifo);
+        history.add(log(LogLevel.Information, null));
+
+        history.clear();
+
+        assert history.getUsage().equals(new TelemetryHistory.Usage(0, 0, BUDGET));
+        assert retained(history).isEmpty();
+    }
+
+    private static List<TelemetryItem> retained(TelemetryHistory history) {
+        List<TelemetryItem> retained = new ArrayList<>();
+        history.forEach(item -> {
+            retained.add(item);
+            return kotlin.Unit.INSTANCE;
+        });
+        return retained;
+    }
+
+    private static TelemetryItem log(LogLevel level, String traceId) {
+        LogMessage log = new LogMessage(null, null, level, null, null, null, TraceId.parse(traceId), null, null, null);
+        return new TelemetryItem(JSON, JSON, new Telemetry(null, null, log, null));
+    }
+
+    private static TelemetryItem span(String traceId, ActivityStatusCode status) {
+        Activity activity = new Activity(null, TraceId.parse(traceId), null, null, null, null, null, null, null, null, null, null,
+                null, status, null, null);
+        return new TelemetryItem(JSON, JSON, new Telemetry(activity, null, null, null));
+    }
+}
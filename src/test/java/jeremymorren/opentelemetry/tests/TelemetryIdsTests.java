@@ -0,0 +1,66 @@
+package jeremymorren.opentelemetry.tests;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import jeremymorren.opentelemetry.models.SpanId;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.otlp.OtlpTelemetryDecoder;
+import org.junit.Test;
+
+public class TelemetryIdsTests {
+    @Test
+    public void encodesAndParsesHex() {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 17);
+        }
+        TraceId traceId = TraceId.fromBytes(bytes);
+        assert "00112233445566778899aabbccddeeff".equals(traceId.toString());
+        // Cached after the first call
+        assert traceId.toString() == traceId.toString();
+        assert traceId.equals(TraceId.parse("00112233445566778899AABBCCDDEEFF"));
+        assert traceId.hashCode() == TraceId.parse("00112233445566778899aabbccddeeff").hashCode();
+
+        SpanId spanId = SpanId.parse("ffeeddccbbaa9988");
+        assert spanId.getValue() == 0xffeeddccbbaa9988L;
+        assert "ffeeddccbbaa9988".equals(spanId.toString());
+        assert spanId.equals(new SpanId(0xffeeddccbbaa9988L));
+        assert !spanId.equals(SpanId.parse("ffeeddccbbaa9989"));
+    }
+
+    @Test
+    public void keepsNonConformingIdsAsText() {
+        assert TraceId.parse(null) == null && TraceId.parse("") == null && SpanId.fromBytes(new byte[0]) == null;
+
+        assert "abc".equals(TraceId.parse("abc").toString());
+        assert TraceId.parse("abc").equals(TraceId.parse("abc"));
+        // Not confused with a binary ID of the same bits
+        assert !SpanId.parse("0").equals(new SpanId(0));
+        assert "0102".equals(SpanId.fromBytes(new byte[] { 1, 2 }).toString());
+
+        assert SpanId.parse("0000000000000000").isZero();
+        assert SpanId.parse("00").isZero();
+        assert !SpanId.parse("0000000000000001").isZero();
+    }
+
+    @Test
+    public void writesHexToSearchJson() {
+        Span span = Span.newBuilder()
+                .setName("work")
+                .setTraceId(ByteString.fromHex("0123456789abcdef0123456789abcdef"))
+                .setSpanId(ByteString.fromHex("0123456789abcdef"))
+                .build();
+        ExportTraceServiceRequest request = ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder().addScopeSpans(ScopeSpans.newBuilder().addSpans(span)))
+                .build();
+
+        var item = new OtlpTelemetryDecoder().decodeTraces(request.toByteArray()).get(0);
+
+        assert item.getTelemetry().getActivity().getTraceId().equals(TraceId.parse("0123456789abcdef0123456789abcdef"));
+        assert item.getJson().contains("\"traceId\":\"0123456789abcdef0123456789abcdef\"");
+        assert item.getJson().contains("\"spanId\":\"0123456789abcdef\"");
+    }
+}
@@ -0,0 +1,237 @@
+package jeremymorren.opentelemetry.tests;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Parser;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.otlp.OtlpWireTelemetryDecoder;
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Guards the retained heap per telemetry item, which bounds how much history fits in the IDE heap, and checks that
+ * {@link TelemetryItem#getEstimatedSize()} (which the history budget is enforced on) tracks it.
+ * <p>
+ * The heap is measured by walking the object graph of the decoded items ({@link RetainedSize}) rather than
+ * comparing heap usage around {@code System.gc()}, so the measurement is deterministic.
+ */
+public class TelemetryItemFootprintTests {
+    private static final int ITEM_COUNT = 2_000;
+
+    // Measured at ~3.4 KB retained per span (model + compact search JSON + serialized message), estimated at
+    // ~4.2 KB; heap deltas around System.gc() gave ~4.1 KB, and ~8.9 KB with the indented json and lowerCaseJson strings
+    private static final long MAX_BYTES_PER_SPAN = 5_000;
+
+    private final OtlpWireTelemetryDecoder decoder = new OtlpWireTelemetryDecoder();
+
+    @Test
+    public void retainedHeapPerSpanStaysWithinBudget() {
+        List<TelemetryItem> items = decodeSpans();
+
+        long bytesPerItem = RetainedSize.of(items) / items.size();
+        assert items.size() == ITEM_COUNT;
+        assert bytesPerItem < MAX_BYTES_PER_SPAN : "Retained " + bytesPerItem + " bytes per span";
+    }
+
+    @Test
+    public void estimatedSizeTracksRetainedHeap() {
+        List<TelemetryItem> items = decodeSpans();
+
+        long retained = RetainedSize.of(items);
+        long estimated = items.stream().mapToLong(TelemetryItem::getEstimatedSize).sum();
+        double ratio = (double) estimated / retained;
+        // The history budget is enforced on estimates, so they must stay close to the real retained heap
+        assert ratio > 0.75 && ratio < 1.5 : "Estimated " + estimated + " bytes, retained " + retained;
+    }
+
+    private List<TelemetryItem> decodeSpans() {
+        List<TelemetryItem> items = new ArrayList<>(ITEM_COUNT);
+        for (int batch = 0; batch < ITEM_COUNT / 100; batch++) {
+            items.addAll(decoder.decodeTraces(createBatch(batch, 100).toByteArray()));
+        }
+        return items;
+    }
+
+    /**
+     * A batch of representative spans: half HTTP client calls, half SQL queries, sharing one resource.
+     */
+    private static ExportTraceServiceRequest createBatch(int batch, int size) {
+        ScopeSpans.Builder scopeSpans = ScopeSpans.newBuilder()
+                .setScope(InstrumentationScope.newBuilder().setName("System.Net.Http").setVersion("8.0.0"));
+        for (int i = 0; i < size; i++) {
+            long id = (long) batch * size + i;
+            Span.Builder span = Span.newBuilder()
+                    .setTraceId(ByteString.copyFrom(ByteBuffer.allocate(16).putLong(id).putLong(~id).array()))
+                    .setSpanId(ByteString.copyFrom(ByteBuffer.allocate(8).putLong(id).array()))
+                    .setParentSpanId(ByteString.copyFrom(ByteBuffer.allocate(8).putLong(id + 1).array()))
+                    .setKind(Span.SpanKind.SPAN_KIND_CLIENT)
+                    .setStartTimeUnixNano(1_700_000_000_000_000_000L + id * 1_000_000L)
+                    .setEndTimeUnixNano(1_700_000_000_000_000_000L + id * 1_000_000L + 25_000_000L);
+            if (i % 2 == 0) {
+                span.setName("GET")
+                        .addAttributes(attribute("http.request.method", "GET"))
+                        .addAttributes(attribute("url.full", "https://api.example.com/orders/" + id + "?include=lines"))
+                        .addAttributes(attribute("server.address", "api.example.com"))
+                        .addAttributes(attribute("server.port", 443))
+                        .addAttributes(attribute("network.protocol.version", "1.1"))
+                        .addAttributes(attribute("http.response.status_code", 200));
+            } else {
+                span.setName("orders")
+                        .addAttributes(attribute("db.system", "postgresql"))
+                        .addAttributes(attribute("db.name", "orders"))
+                        .addAttributes(attribute("db.statement",
+                                "SELECT o.id, o.customer_id, o.created_at, l.sku, l.quantity FROM orders o " +
+                                        "JOIN order_lines l ON l.order_id = o.id WHERE o.id = @p0 AND o.tenant_id = @p1"))
+                        .addAttributes(attribute("server.address", "db.internal"));
+            }
+            scopeSpans.addSpans(span);
+        }
+
+        return ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder()
+                        .setResource(Resource.newBuilder()
+                                .addAttributes(attribute("service.name", "orders-api"))
+                                .addAttributes(attribute("service.instance.id", "8f9c1f7e-5d8b-4c7a-9d7e-2f1b3a4c5d6e"))
+                                .addAttributes(attribute("telemetry.sdk.name", "opentelemetry"))
+                                .addAttributes(attribute("telemetry.sdk.language", "dotnet"))
+                                .addAttributes(attribute("telemetry.sdk.version", "1.9.0")))
+                        .addScopeSpans(scopeSpans))
+                .build();
+    }
+
+    private static KeyValue attribute(String key, String value) {
+        return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setStringValue(value)).build();
+    }
+
+    private static KeyValue attribute(String key, long value) {
+        return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setIntValue(value)).build();
+    }
+
+    /**
+     * Deep size of the objects reachable from telemetry items, assuming a 64-bit JVM with compressed oops
+     * (12-byte object headers, 16-byte array headers, 4-byte references, 8-byte alignment).
+     * <p>
+     * State shared by all items is excluded: the resources and instrumentation scopes (interned by the decoder),
+     * enum constants, classes and protobuf parsers. JDK collections, whose fields can't be read reflectively, are
+     * sized from their contents as the equivalent {@code HashMap} or {@code ArrayList}.
+     */
+    private static final class RetainedSize {
+        private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Deque<Object> pending = new ArrayDeque<>();
+        private long bytes;
+
+        static long of(List<TelemetryItem> items) {
+            RetainedSize size = new RetainedSize();
+            for (TelemetryItem item : items) {
+                Telemetry telemetry = item.getTelemetry();
+                size.exclude(telemetry.getResource());
+                if (telemetry.getActivity() != null) {
+                    size.exclude(telemetry.getActivity().getSource());
+                }
+            }
+            items.forEach(size::push);
+            while (!size.pending.isEmpty()) {
+                size.visit(size.pending.pop());
+            }
+            return size.bytes;
+        }
+
+        private void exclude(Object shared) {
+            if (shared != null) {
+                visited.add(shared);
+            }
+        }
+
+        private void push(Object value) {
+            if (value != null && !isShared(value) && visited.add(value)) {
+                pending.push(value);
+            }
+        }
+
+        private static boolean isShared(Object value) {
+            return value instanceof Class<?> || value instanceof Enum<?> || value instanceof Parser<?>;
+        }
+
+        private void visit(Object value) {
+            Class<?> type = value.getClass();
+            if (type.isArray()) {
+                int length = Array.getLength(value);
+                Class<?> component = type.getComponentType();
+                bytes += align(16L + (long) length * fieldSize(component));
+                if (!component.isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        push(Array.get(value, i));
+                    }
+                }
+            } else if (value instanceof String string) {
+                boolean latin1 = string.chars().allMatch(c -> c <= 0xFF);
+                bytes += 24 + align(16L + (long) string.length() * (latin1 ? 1 : 2));
+            } else if (value instanceof Map<?, ?> map && type.getName().startsWith("java.")) {
+                int capacity = Integer.highestOneBit(Math.max(1, (int) (map.size() / 0.75f)) * 2 - 1);
+                bytes += 48 + align(16L + 4L * capacity) + 32L * map.size();
+                map.forEach((key, entryValue) -> {
+                    push(key);
+                    push(entryValue);
+                });
+            } else if (value instanceof Collection<?> collection && type.getName().startsWith("java.")) {
+                bytes += 24 + align(16L + 4L * collection.size());
+                collection.forEach(this::push);
+            } else {
+                visitFields(value, type);
+            }
+        }
+
+        private void visitFields(Object value, Class<?> type) {
+            long shallow = 12;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    shallow += fieldSize(field.getType());
+                    if (!field.getType().isPrimitive() && field.trySetAccessible()) {
+                        try {
+                            push(field.get(value));
+                        } catch (IllegalAccessException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                }
+            }
+            bytes += align(shallow);
+        }
+
+        private static int fieldSize(Class<?> type) {
+            if (type == long.class || type == double.class) return 8;
+            if (type == int.class || type == float.class) return 4;
+            if (type == short.class || type == char.class) return 2;
+            if (type == byte.class || type == boolean.class) return 1;
+            return 4;
+        }
+
+        private static long align(long size) {
+            return (size + 7) & ~7L;
+        }
+    }
+}
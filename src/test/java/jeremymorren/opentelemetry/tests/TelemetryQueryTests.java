@@ -0,0 +1,162 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Activity;
+import jeremymorren.opentelemetry.models.ActivityKind;
+import jeremymorren.opentelemetry.models.ActivitySource;
+import jeremymorren.opentelemetry.models.ActivityStatusCode;
+import jeremymorren.opentelemetry.models.LogLevel;
+import jeremymorren.opentelemetry.models.LogMessage;
+import jeremymorren.opentelemetry.models.ObjectDictionary;
+import jeremymorren.opentelemetry.models.SpanId;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.util.TelemetryQuery;
+import kotlinx.serialization.json.Json;
+import kotlinx.serialization.json.JsonObject;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+public class TelemetryQueryTests {
+    private static final TelemetryItem SQL_SPAN = span(ActivityKind.Client, "Sample.Data", Duration.ofMillis(350),
+            ActivityStatusCode.Unset, "{\"db.system\":\"postgresql\",\"db.rows\":42}");
+    private static final TelemetryItem FAILED_REQUEST = span(ActivityKind.Server, "Sample.Api", Duration.ofMillis(120),
+            ActivityStatusCode.Error, "{\"url.path\":\"/orders\",\"http.response.status_code\":500}");
+    private static final TelemetryItem WARNING = log(LogLevel.Warning, "Sample.Worker", "Retrying order 500");
+    private static final TelemetryItem DEBUG = log(LogLevel.Debug, "Sample.Worker", "Polling");
+
+    private static final List<TelemetryItem> ALL = List.of(SQL_SPAN, FAILED_REQUEST, WARNING, DEBUG);
+
+    @Test
+    public void fieldTermsMatchTypedModel() {
+        assertMatches("type:Dependency", SQL_SPAN);
+        assertMatches("type:dep", SQL_SPAN);
+        assertMatches("type:SQL", SQL_SPAN);
+        assertMatches("type:Request", FAILED_REQUEST);
+        assertMatches("type!=Message", SQL_SPAN, FAILED_REQUEST);
+        assertMatches("kind:Server", FAILED_REQUEST);
+        assertMatches("status:error", FAILED_REQUEST);
+        assertMatches("level>=Warning", WARNING);
+        assertMatches("level<warn", DEBUG);
+        assertMatches("level:Debug", DEBUG);
+        assertMatches("message:\"Retrying order *\"", WARNING);
+    }
+
+    @Test
+    public void durationComparisonsParseUnits() {
+        assertMatches("duration>200ms", SQL_SPAN);
+        assertMatches("duration>200", SQL_SPAN);
+        assertMatches("duration<=0.12s", FAILED_REQUEST);
+        assertMatches("duration>=120000us", SQL_SPAN, FAILED_REQUEST);
+        assertMatches("duration>1m");
+        // Invalid values match nothing
+        assertMatches("duration>soon");
+    }
+
+    @Test
+    public void sourceAndAttributesSupportWildcardsAndNumbers() {
+        assertMatches("source:Sample.*", SQL_SPAN, FAILED_REQUEST, WARNING, DEBUG);
+        assertMatches("source:sample.a*", FAILED_REQUEST);
+        assertMatches("source:*worker", WARNING, DEBUG);
+        assertMatches("db.system=postgresql", SQL_SPAN);
+        assertMatches("db.system=PostgreSQL", SQL_SPAN);
+        assertMatches("db.rows>=42", SQL_SPAN);
+        assertMatches("db.rows>100");
+        assertMatches("http.response.status_code>=500", FAILED_REQUEST);
+        assertMatches("service.name=orders", SQL_SPAN, FAILED_REQUEST, WARNING, DEBUG);
+        assertMatches("missing.attribute=x");
+    }
+
+    @Test
+    public void termsAreCombinedWithFreeTextFallback() {
+        assertMatches("type:Dependency duration>200ms db.system=postgresql", SQL_SPAN);
+        assertMatches("type:Dependency duration>500ms");
+        // Free text is searched for in the JSON, field terms are not
+        assertMatches("500", FAILED_REQUEST, WARNING);
+        assertMatches("500 level>=Warning", WARNING);
+        assertMatches("\"order 500\"", WARNING);
+        // A field term without a value (i.e. while it is typed) matches everything
+        assertMatches("level>=", SQL_SPAN, FAILED_REQUEST, WARNING, DEBUG);
+    }
+
+    @Test
+    public void tokensWithOperatorsThatAreNotFieldsAreFreeText() {
+        TelemetryItem exception = log(LogLevel.Error, "Sample.Data",
+                "SqlException: Timeout expired calling http://localhost:5000/api?retry=true");
+
+        for (String query : List.of(
+                "http://localhost:5000/api",
+                "SqlException:",
+                "SqlException: Timeout",
+                "\"SqlException: Timeout expired\"",
+                "retry=true",
+                "level:error sqlexception:")) {
+            TelemetryQuery parsed = TelemetryQuery.parse(query, true);
+            assert parsed.matches(exception) : query;
+            assert !parsed.matches(WARNING) : query;
+        }
+
+        List<TelemetryQuery.Term> terms = TelemetryQuery.parse("Exception: http://localhost:5000/api", false).getTerms();
+        assert terms.size() == 2;
+        assert ((TelemetryQuery.TextTerm) terms.get(0)).getText().equals("Exception:");
+        assert ((TelemetryQuery.TextTerm) terms.get(1)).getText().equals("http://localhost:5000/api");
+        // Known fields (in any case) and dotted attribute keys are still field terms
+        assert TelemetryQuery.parse("Level:Error", false).getTerms().get(0) instanceof TelemetryQuery.FieldTerm;
+        assert TelemetryQuery.parse("url.path=/orders", false).getTerms().get(0) instanceof TelemetryQuery.FieldTerm;
+    }
+
+    @Test
+    public void quotedValuesParseAsSingleTextTerm() {
+        String value = "C:\\path \"quoted\" a=b";
+        String quoted = TelemetryQuery.quote(value);
+
+        List<TelemetryQuery.Term> terms = TelemetryQuery.parse(quoted, false).getTerms();
+        assert terms.size() == 1;
+        assert ((TelemetryQuery.TextTerm) terms.get(0)).getText().equals(value);
+        assert TelemetryQuery.quote("plain").equals("plain");
+    }
+
+    @Test
+    public void narrowsOnlyWhenEveryPreviousTermIsKept() {
+        assert narrows("type:Dependency duration>200ms", "type:Dependency");
+        assert narrows("orders", "order");
+        assert narrows("level>=Warning", "level>=");
+        assert !narrows("type:Dependency", "type:Dependency duration>200ms");
+        assert !narrows("duration>2000ms", "duration>200ms");
+        assert !narrows("level>=Warning", "level>=Warn");
+        assert !narrows("order", "orders");
+    }
+
+    private static boolean narrows(String query, String previous) {
+        return TelemetryQuery.parse(query, true).narrows(TelemetryQuery.parse(previous, true));
+    }
+
+    private static void assertMatches(String query, TelemetryItem... expected) {
+        TelemetryQuery parsed = TelemetryQuery.parse(query, true);
+        List<TelemetryItem> matches = ALL.stream().filter(parsed::matches).toList();
+        assert matches.equals(List.of(expected)) : query + " matched " + matches.size() + " items";
+    }
+
+    private static TelemetryItem span(
+            ActivityKind kind, String source, Duration duration, ActivityStatusCode status, String tags) {
+        Activity activity = new Activity(null, TraceId.parse("trace"), SpanId.parse("span"), null, null, null, new ActivitySource(source, null),
+                "span", kind, null, duration, dictionary(tags), null, status, null, null);
+        return item(new Telemetry(activity, null, null, dictionary("{\"service.name\":\"orders\"}")), tags);
+    }
+
+    private static TelemetryItem log(LogLevel level, String category, String message) {
+        LogMessage log = new LogMessage(message, message, level, null, null, null, null, null, category, null);
+        return item(new Telemetry(null, null, log, dictionary("{\"service.name\":\"orders\"}")),
+                "{\"formattedMessage\":\"" + message + "\"}");
+    }
+
+    private static TelemetryItem item(Telemetry telemetry, String json) {
+        return new TelemetryItem(json, json, telemetry);
+    }
+
+    private static ObjectDictionary dictionary(String json) {
+        return new ObjectDictionary((JsonObject) Json.Default.parseToJsonElement(json));
+    }
+}
@@ -0,0 +1,150 @@
+package jeremymorren.opentelemetry.tests;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jeremymorren.opentelemetry.models.Activity;
+import jeremymorren.opentelemetry.models.ActivityEvent;
+import jeremymorren.opentelemetry.models.ActivityKind;
+import jeremymorren.opentelemetry.models.ActivitySource;
+import jeremymorren.opentelemetry.models.ActivityStatusCode;
+import jeremymorren.opentelemetry.models.Metric;
+import jeremymorren.opentelemetry.models.ObjectDictionary;
+import jeremymorren.opentelemetry.models.SpanId;
+import jeremymorren.opentelemetry.models.TelemetryType;
+import jeremymorren.opentelemetry.models.TraceId;
+import kotlinx.serialization.json.Json;
+import kotlinx.serialization.json.JsonObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Checks that the derived properties read by the telemetry table renderers (detail, type, error state)
+ * are computed once, rather than on every repaint of a visible row.
+ * <p>
+ * {@link #repaintCost} measures the per-repaint cost; it is opt-in, as a timing is no pass/fail criterion:
+ * {@code ./gradlew test --tests '*TelemetryRenderingTests.repaintCost' -Pbenchmarks=true}
+ */
+public class TelemetryRenderingTests {
+    private static final Logger LOG = Logger.getInstance(TelemetryRenderingTests.class);
+
+    private static final int VISIBLE_ROWS = 50;
+    private static final int REPAINTS = 20_000;
+
+    @Test
+    public void derivedPropertiesAreComputedOnce() {
+        Activity http = httpClient(1);
+        assert http.getDetail() == http.getDetail();
+        assert http.getUrlPath() == http.getUrlPath();
+        assert http.getDependencyType() == http.getDependencyType();
+
+        Activity request = serverRequest(1);
+        // Activities with an exception event are shown as exceptions
+        assert request.getType() == TelemetryType.Exception;
+        assert request.getRequestPath() == request.getRequestPath();
+        assert request.getDetail() == request.getDetail();
+        assert request.getException() == request.getException();
+        assert request.isError();
+
+        Metric metric = new Metric("Sum", null, "http.requests", "Requests", null, "Microsoft.AspNetCore", "8.0", null, null);
+        assert metric.getDetail() == metric.getDetail();
+        assert metric.getMeter() == metric.getMeter();
+    }
+
+    /**
+     * Reports the cost per visible row of the properties read on a repaint: as computed once at decode time,
+     * and as computed on every read (by deriving them again, i.e. constructing the activity, for each read).
+     */
+    @Test
+    public void repaintCost() {
+        Assume.assumeTrue("Benchmarks run with -Pbenchmarks=true", Boolean.getBoolean("opentelemetry.benchmarks"));
+
+        List<Activity> rows = new ArrayList<>(VISIBLE_ROWS);
+        for (int i = 0; i < VISIBLE_ROWS; i++) {
+            rows.add(i % 3 == 0 ? httpClient(i) : i % 3 == 1 ? sqlClient(i) : serverRequest(i));
+        }
+        // Deriving the properties on each read: the same activity (sharing its parsed tags) constructed per read
+        List<Supplier<Activity>> derivedRows = new ArrayList<>(VISIBLE_ROWS);
+        for (Activity row : rows) {
+            derivedRows.add(() -> copy(row));
+        }
+        List<Supplier<Activity>> cachedRows = rows.stream().<Supplier<Activity>>map(row -> () -> row).toList();
+
+        long cachedNanos = nanosPerRow(cachedRows);
+        long derivedNanos = nanosPerRow(derivedRows);
+
+        LOG.info("Telemetry table repaint: " + cachedNanos + " ns per row with derived properties computed once, "
+                + derivedNanos + " ns per row deriving them on every read");
+    }
+
+    private static long nanosPerRow(List<Supplier<Activity>> rows) {
+        // Warm up, then measure
+        long checksum = paint(rows, REPAINTS / 10);
+        long start = System.nanoTime();
+        checksum += paint(rows, REPAINTS);
+        long nanosPerRow = (System.nanoTime() - start) / ((long) REPAINTS * rows.size());
+        // Keeps the reads from being optimized away
+        assert checksum != 0;
+        return nanosPerRow;
+    }
+
+    /**
+     * Reads the properties the renderers read for each visible row.
+     */
+    private static long paint(List<Supplier<Activity>> rows, int repaints) {
+        long checksum = 0;
+        for (int repaint = 0; repaint < repaints; repaint++) {
+            for (Supplier<Activity> row : rows) {
+                Activity activity = row.get();
+                String detail = activity.getDetail();
+                checksum += detail != null ? detail.length() : 0;
+                checksum += activity.getType().ordinal();
+                checksum += activity.isError() ? 1 : 0;
+            }
+        }
+        return checksum;
+    }
+
+    private static Activity copy(Activity activity) {
+        return new Activity(activity.getRootId(), activity.getTraceId(), activity.getSpanId(), activity.getParentSpanId(),
+                activity.getActivityTraceFlags(), activity.getTraceStateString(), activity.getSource(),
+                activity.getDisplayName(), activity.getKind(), activity.getStartTime(), activity.getDuration(),
+                activity.getTags(), activity.getOperationName(), activity.getStatus(), activity.getStatusDescription(),
+                activity.getEvents());
+    }
+
+    private static Activity httpClient(int i) {
+        return activity(ActivityKind.Client, "GET", tags("""
+                {"http.request.method": "GET", "url.full": "https://api.example.com/orders/%d?include=lines",
+                 "server.address": "api.example.com", "http.response.status_code": 200}""".formatted(i)), null, null);
+    }
+
+    private static Activity sqlClient(int i) {
+        return activity(ActivityKind.Client, "orders", tags("""
+                {"db.system": "postgresql", "db.name": "orders",
+                 "db.statement": "SELECT o.id, o.customer_id FROM orders o WHERE o.id = %d"}""".formatted(i)), null, null);
+    }
+
+    private static Activity serverRequest(int i) {
+        ActivityEvent exception = new ActivityEvent("exception", Instant.EPOCH, tags("""
+                {"exception.message": "Order %d not found", "exception.stacktrace": "at Orders.Get()",
+                 "exception.type": "KeyNotFoundException"}""".formatted(i)));
+        return activity(ActivityKind.Server, "GET", tags("""
+                {"url.path": "/orders/%d", "url.query": "include=lines", "http.response.status_code": 500,
+                 "error.type": "500"}""".formatted(i)), ActivityStatusCode.Error, List.of(exception));
+    }
+
+    private static Activity activity(ActivityKind kind, String displayName, ObjectDictionary tags,
+                                     ActivityStatusCode status, List<ActivityEvent> events) {
+        return new Activity(null, TraceId.parse("t1"), SpanId.parse("s1"), null, null, null, new ActivitySource("Orders.Api", null), displayName,
+                kind, Instant.EPOCH, Duration.ofMillis(25), tags, displayName, status, null, events);
+    }
+
+    private static ObjectDictionary tags(String json) {
+        return new ObjectDictionary((JsonObject) Json.Default.parseToJsonElement(json));
+    }
+}
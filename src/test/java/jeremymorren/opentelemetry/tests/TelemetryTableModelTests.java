@@ -0,0 +1,88 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Activity;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.ui.TelemetryTableModel;
+import org.junit.Test;
+
+import javax.swing.event.TableModelEvent;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class TelemetryTableModelTests {
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Comparator<TelemetryItem> BY_TIMESTAMP = Comparator.comparing(TelemetryItem::getTimestamp);
+
+    @Test
+    public void sortedRowsAreInsertedWithOneEventPerRange() {
+        TelemetryTableModel model = new TelemetryTableModel();
+        model.setRows(rowsAt(0, 10, 100), BY_TIMESTAMP);
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+
+        // Out of order; 15-17 land next to each other after 10, 505 after 500
+        model.addRows(List.of(row(505), row(16), row(15), row(17)));
+
+        assert events.size() == 2;
+        assertInserted(events.get(0), 2, 4);
+        assertInserted(events.get(1), 54, 54);
+        assert model.getRowCount() == 104;
+        for (int i = 1; i < model.getRowCount(); i++) {
+            assert !model.getRow(i - 1).getTimestamp().isAfter(model.getRow(i).getTimestamp());
+        }
+    }
+
+    @Test
+    public void largeBatchesReplaceTheTableData() {
+        TelemetryTableModel model = new TelemetryTableModel();
+        model.setRows(rowsAt(0, 10, 100), BY_TIMESTAMP);
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+
+        TelemetryItem selected = model.getRow(50);
+        model.addRows(rowsAt(5, 10, 50));
+
+        assert events.size() == 1;
+        assert events.get(0).getType() == TableModelEvent.UPDATE;
+        assert events.get(0).getLastRow() == Integer.MAX_VALUE;
+        // The previously selected row can be found to select it again
+        assert model.indexOfRow(selected) == 100;
+        assert model.indexOfRow(row(1)) == -1;
+    }
+
+    @Test
+    public void unsortedRowsAreAppendedWithOneEvent() {
+        TelemetryTableModel model = new TelemetryTableModel();
+        model.setRows(rowsAt(0, 10, 100), null);
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+
+        model.addRows(rowsAt(5, 10, 50));
+
+        assert events.size() == 1;
+        assertInserted(events.get(0), 100, 149);
+    }
+
+    private static void assertInserted(TableModelEvent event, int firstRow, int lastRow) {
+        assert event.getType() == TableModelEvent.INSERT;
+        assert event.getFirstRow() == firstRow : "First row " + event.getFirstRow();
+        assert event.getLastRow() == lastRow : "Last row " + event.getLastRow();
+    }
+
+    private static List<TelemetryItem> rowsAt(int firstSecond, int step, int count) {
+        List<TelemetryItem> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(row(firstSecond + i * step));
+        }
+        return rows;
+    }
+
+    private static TelemetryItem row(int startSeconds) {
+        Activity activity = new Activity(null, null, null, null, null, null, null, "span", null,
+                START.plusSeconds(startSeconds), null, null, null, null, null, null);
+        return new TelemetryItem("{}", "{}", new Telemetry(activity, null, null, null));
+    }
+}
@@ -0,0 +1,205 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Activity;
+import jeremymorren.opentelemetry.models.SpanId;
+import jeremymorren.opentelemetry.models.SpanNode;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.models.TraceSummary;
+import jeremymorren.opentelemetry.models.TraceTree;
+import jeremymorren.opentelemetry.otlp.TelemetryHistory;
+import jeremymorren.opentelemetry.otlp.TraceIndex;
+import jeremymorren.opentelemetry.settings.HistoryEvictionPolicy;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+public class TraceIndexTests {
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    public void assemblesTreeWithParentsArrivingAfterChildren() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem grandchild = span("t1", "c", "b", 3);
+        TelemetryItem child2 = span("t1", "d", "a", 4);
+        TelemetryItem child1 = span("t1", "b", "a", 1);
+        TelemetryItem root = span("t1", "a", null, 0);
+        TelemetryItem otherTrace = span("t2", "a", null, 0);
+        // Children end (and are exported) before their parents
+        for (TelemetryItem item : List.of(grandchild, child2, child1, root, otherTrace)) {
+            index.add(item);
+        }
+
+        TraceTree tree = index.getTrace(TraceId.parse("t1"));
+        assert tree.getSpanCount() == 4;
+        assert tree.getRoots().size() == 1;
+        SpanNode rootNode = tree.getRoots().get(0);
+        assert rootNode.getItem() == root && !rootNode.getMissingParent();
+        // Children are ordered by start time
+        assert rootNode.getChildren().size() == 2;
+        assert rootNode.getChildren().get(0).getItem() == child1;
+        assert rootNode.getChildren().get(1).getItem() == child2;
+        assert rootNode.getChildren().get(0).getChildren().get(0).getItem() == grandchild;
+        assert tree.find(grandchild).getItem() == grandchild;
+        assert tree.find(otherTrace) == null;
+
+        assert index.getSpan(TraceId.parse("t1"), SpanId.parse("b")) == child1;
+        assert index.getChildren(TraceId.parse("t1"), SpanId.parse("a")).equals(List.of(child2, child1));
+        assert index.getTrace(TraceId.parse("missing")) == null;
+        assert index.getTraceCount() == 2;
+    }
+
+    @Test
+    public void spansWithMissingParentsAreRoots() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem orphan = span("t1", "b", "a", 1);
+        TelemetryItem zeroParent = span("t1", "c", "0000000000000000", 2);
+        index.add(orphan);
+        index.add(zeroParent);
+
+        TraceTree tree = index.getTrace(TraceId.parse("t1"));
+        assert tree.getRoots().size() == 2;
+        assert tree.getRoots().get(0).getItem() == orphan && tree.getRoots().get(0).getMissingParent();
+        assert tree.getRoots().get(1).getItem() == zeroParent && !tree.getRoots().get(1).getMissingParent();
+
+        // The parent arriving later adopts the orphan
+        TelemetryItem parent = span("t1", "a", null, 0);
+        index.add(parent);
+        tree = index.getTrace(TraceId.parse("t1"));
+        assert tree.getRoots().size() == 2;
+        assert tree.getRoots().get(0).getItem() == parent;
+        assert tree.getRoots().get(0).getChildren().get(0).getItem() == orphan;
+    }
+
+    @Test
+    public void parentCyclesDoNotLoseSpans() {
+        TraceIndex index = new TraceIndex();
+        index.add(span("t1", "a", "b", 0));
+        index.add(span("t1", "b", "a", 1));
+        index.add(span("t1", "c", "c", 2));
+
+        TraceTree tree = index.getTrace(TraceId.parse("t1"));
+        assert tree.getSpanCount() == 3;
+    }
+
+    @Test
+    public void removedSpansReleaseTheirTrace() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem root = span("t1", "a", null, 0);
+        TelemetryItem child = span("t1", "b", "a", 1);
+        index.add(root);
+        index.add(child);
+
+        index.remove(root);
+        TraceTree tree = index.getTrace(TraceId.parse("t1"));
+        assert tree.getSpanCount() == 1;
+        assert tree.getRoots().get(0).getMissingParent();
+
+        index.remove(child);
+        assert index.getTrace(TraceId.parse("t1")) == null;
+        assert index.getTraceCount() == 0;
+        assert index.getChildren(TraceId.parse("t1"), SpanId.parse("a")).isEmpty();
+    }
+
+    @Test
+    public void duplicateSpanReplacesEarlierCopy() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem first = span("t1", "b", "a", 1);
+        TelemetryItem second = span("t1", "b", "a", 1);
+        index.add(first);
+        index.add(second);
+        assert index.getChildren(TraceId.parse("t1"), SpanId.parse("a")).equals(List.of(second));
+
+        // Removing the replaced copy (e.g. evicted later) keeps the current one
+        index.remove(first);
+        assert index.getSpan(TraceId.parse("t1"), SpanId.parse("b")) == second;
+        assert index.getTrace(TraceId.parse("t1")).getSpanCount() == 1;
+    }
+
+    @Test
+    public void deeplyNestedSpansDoNotOverflowTheStack() {
+        TraceIndex index = new TraceIndex();
+        int depth = 100_000;
+        index.add(span("t1", "s0", null, 0));
+        for (int i = 1; i < depth; i++) {
+            index.add(span("t1", "s" + i, "s" + (i - 1), i));
+        }
+
+        TraceTree tree = index.getTrace(TraceId.parse("t1"));
+        assert tree.getSpanCount() == depth;
+        SpanNode node = tree.getRoots().get(0);
+        int levels = 1;
+        while (!node.getChildren().isEmpty()) {
+            node = node.getChildren().get(0);
+            levels++;
+        }
+        assert levels == depth;
+    }
+
+    @Test
+    public void removingSiblingsKeepsTheRestInArrivalOrder() {
+        TraceIndex index = new TraceIndex();
+        int count = 50_000;
+        TelemetryItem[] children = new TelemetryItem[count];
+        for (int i = 0; i < count; i++) {
+            children[i] = span("t1", "c" + i, "a", i);
+            index.add(children[i]);
+        }
+        // Evicted oldest first, as by the history
+        for (int i = 0; i < count - 2; i++) {
+            index.remove(children[i]);
+        }
+        assert index.getChildren(TraceId.parse("t1"), SpanId.parse("a")).equals(List.of(children[count - 2], children[count - 1]));
+        assert index.getTrace(TraceId.parse("t1")).getSpanCount() == 2;
+    }
+
+    @Test
+    public void summaryVersionChangesWithTheTrace() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem root = span("t1", "a", null, 0);
+        index.add(root);
+        index.add(span("t2", "a", null, 0));
+        TraceSummary summary = index.getSummary(TraceId.parse("t1"));
+        assert summary.getSpanCount() == 1;
+        assert index.getTrace(TraceId.parse("t1")).getVersion() == summary.getVersion();
+
+        // Changes to other traces keep the version
+        index.add(span("t2", "b", "a", 1));
+        assert index.getSummary(TraceId.parse("t1")).getVersion() == summary.getVersion();
+
+        index.add(span("t1", "b", "a", 1));
+        TraceSummary added = index.getSummary(TraceId.parse("t1"));
+        assert added.getSpanCount() == 2 && added.getVersion() != summary.getVersion();
+
+        index.remove(root);
+        TraceSummary removed = index.getSummary(TraceId.parse("t1"));
+        assert removed.getSpanCount() == 1 && removed.getVersion() != added.getVersion();
+        assert index.getSummary(TraceId.parse("missing")) == null;
+    }
+
+    @Test
+    public void historyEvictionRemovesSpansFromTraces() {
+        // Each span is estimated at about 1 KB, so a 10 KB budget evicts the oldest spans
+        TelemetryHistory history = new TelemetryHistory(10_000, HistoryEvictionPolicy.Fifo);
+        for (int i = 0; i < 20; i++) {
+            history.add(span("t" + (i % 2), "s" + i, i < 2 ? null : "s" + (i % 2), i));
+        }
+
+        TraceTree tree = history.getTrace(TraceId.parse("t0"));
+        assert tree.getSpanCount() < 10;
+        // The roots s0/s1 were evicted, so the remaining spans are orphans
+        assert tree.getRoots().stream().allMatch(SpanNode::getMissingParent);
+
+        history.clear();
+        assert history.getTrace(TraceId.parse("t0")) == null;
+    }
+
+    private static TelemetryItem span(String traceId, String spanId, String parentSpanId, int startSeconds) {
+        Activity activity = new Activity(null, TraceId.parse(traceId), SpanId.parse(spanId), SpanId.parse(parentSpanId), null, null, null, spanId, null,
+                START.plusSeconds(startSeconds), null, null, null, null, null, null);
+        String json = "x".repeat(248);
+        return new TelemetryItem(json, json, new Telemetry(activity, null, null, null));
+    }
+}
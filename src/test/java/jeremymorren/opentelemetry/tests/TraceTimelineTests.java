@@ -0,0 +1,97 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Activity;
+import jeremymorren.opentelemetry.models.ActivityEvent;
+import jeremymorren.opentelemetry.models.SpanId;
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.models.TraceId;
+import jeremymorren.opentelemetry.models.TraceTimeline;
+import jeremymorren.opentelemetry.otlp.TraceIndex;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+public class TraceTimelineTests {
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    public void flattensDepthFirstWithOffsetsFromTraceStart() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem root = span("a", null, 100, 1000, null);
+        TelemetryItem child1 = span("b", "a", 200, 300, null);
+        TelemetryItem grandchild = span("c", "b", 250, 50, null);
+        TelemetryItem child2 = span("d", "a", 600, 600, 150L);
+        for (TelemetryItem item : List.of(grandchild, child2, child1, root)) {
+            index.add(item);
+        }
+
+        TraceTimeline timeline = new TraceTimeline(index.getTrace(TraceId.parse("t1")));
+        assert timeline.getRowCount() == 4;
+        assert timeline.getItem(0) == root;
+        assert timeline.getItem(1) == child1;
+        assert timeline.getItem(2) == grandchild;
+        assert timeline.getItem(3) == child2;
+        assert timeline.rowOf(child2) == 3;
+        assert timeline.getDepths()[2] == 2;
+
+        assert timeline.getStart().equals(START.plusMillis(100));
+        assert timeline.getStartNanos()[0] == 0;
+        assert timeline.getStartNanos()[2] == Duration.ofMillis(150).toNanos();
+        assert timeline.getDurationNanos()[3] == Duration.ofMillis(600).toNanos();
+        // child2 ends after the root
+        assert timeline.getTotalNanos() == Duration.ofMillis(1100).toNanos();
+
+        assert timeline.getDbQueryNanos()[0] == -1;
+        assert timeline.getDbQueryNanos()[3] == Duration.ofMillis(150).toNanos();
+    }
+
+    @Test
+    public void deepTraceDoesNotOverflow() {
+        TraceIndex index = new TraceIndex();
+        // Parents arrive last, so each span is indexed before the tree is assembled
+        for (int i = 2_000; i >= 0; i--) {
+            index.add(span("s" + i, i == 0 ? null : "s" + (i - 1), i, 1, null));
+        }
+
+        TraceTimeline timeline = new TraceTimeline(index.getTrace(TraceId.parse("t1")));
+        assert timeline.getRowCount() == 2_001;
+        assert timeline.getDepths()[2_000] == 2_000;
+    }
+
+    @Test
+    public void spansWithoutStartTimeHaveNoBar() {
+        TraceIndex index = new TraceIndex();
+        TelemetryItem item = span("a", null, 0, 0, null);
+        index.add(new TelemetryItem("{}", "{}", new Telemetry(
+                new Activity(null, TraceId.parse("t1"), SpanId.parse("b"), null, null, null, null, "b", null,
+                        null, null, null, null, null, null, null), null, null, null)));
+        index.add(item);
+
+        TraceTimeline timeline = new TraceTimeline(index.getTrace(TraceId.parse("t1")));
+        assert timeline.getStartNanos()[timeline.rowOf(item)] == 0;
+        assert timeline.getStartNanos()[1 - timeline.rowOf(item)] == -1;
+        assert timeline.getTotalNanos() == 1;
+    }
+
+    @Test
+    public void tickIntervalIsRound() {
+        assert TraceTimeline.tickInterval(1_000, 10) == 100;
+        assert TraceTimeline.tickInterval(1_001, 10) == 200;
+        assert TraceTimeline.tickInterval(3_100_000_000L, 5) == 1_000_000_000L;
+        assert TraceTimeline.tickInterval(40_000, 10) == 5_000;
+        assert TraceTimeline.tickInterval(1, 10) == 1;
+        assert TraceTimeline.tickInterval(1_000, 0) == 1_000;
+    }
+
+    private static TelemetryItem span(String spanId, String parentSpanId, long startMillis, long durationMillis, Long dbQueryMillis) {
+        Instant start = START.plusMillis(startMillis);
+        List<ActivityEvent> events = dbQueryMillis == null ? null
+                : List.of(new ActivityEvent("received-first-response", start.plusMillis(dbQueryMillis), null));
+        Activity activity = new Activity(null, TraceId.parse("t1"), SpanId.parse(spanId), SpanId.parse(parentSpanId), null, null, null, spanId, null,
+                start, Duration.ofMillis(durationMillis), null, null, null, null, events);
+        return new TelemetryItem("{}", "{}", new Telemetry(activity, null, null, null));
+    }
+}
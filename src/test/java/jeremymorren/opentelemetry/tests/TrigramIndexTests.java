@@ -0,0 +1,124 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.models.Telemetry;
+import jeremymorren.opentelemetry.models.TelemetryItem;
+import jeremymorren.opentelemetry.util.TelemetryQuery;
+import jeremymorren.opentelemetry.util.TrigramIndex;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+public class TrigramIndexTests {
+    private static final String[] WORDS = {
+            "Order", "order", "created", "GET", "/api/orders", "postgresql", "SELECT", "timeout", "Ünïcode", "C:\\\\temp",
+            "42", "500", "trace", "worker", "Retrying", "\\\"quoted\\\""
+    };
+
+    @Test
+    public void candidatesContainEveryMatch() {
+        Random random = new Random(11);
+        TrigramIndex index = new TrigramIndex();
+        List<TelemetryItem> items = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            TelemetryItem item = item(randomJson(random, i));
+            items.add(item);
+            index.add(item);
+        }
+
+        String[] queries = {"order", "Order", "ORDER created", "/api/ord", "\"C:\\\\temp\"", "postgres 500", "Ünïcode",
+                "ünïcode", "\"quoted\"", "timeout worker", "zzz", "created-42"};
+        for (String text : queries) {
+            for (boolean ignoreCase : new boolean[]{false, true}) {
+                TelemetryQuery query = TelemetryQuery.parse(text, ignoreCase);
+                List<TelemetryItem> expected = items.stream().filter(query::matches).toList();
+                // Null (not indexable, i.e. case-insensitive non-ASCII text) means all items are candidates
+                List<TelemetryItem> candidates = Objects.requireNonNullElse(index.candidates(query), items);
+
+                List<TelemetryItem> verified = candidates.stream().filter(query::matches).toList();
+                assert verified.equals(expected) : text + " (ignoreCase=" + ignoreCase + ")";
+                // Text that doesn't occur (in any case) has no candidates
+                if (text.equals("zzz")) {
+                    assert candidates.isEmpty();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queriesWithoutIndexableTextReturnNull() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(item("{\"Body\":\"order\"}"));
+
+        assert index.candidates(TelemetryQuery.parse("", false)) == null;
+        assert index.candidates(TelemetryQuery.parse("or", false)) == null;
+        assert index.candidates(TelemetryQuery.parse("type:Message level>=Warning", false)) == null;
+        // Case-insensitive non-ASCII text is lower-cased as a whole string, which the index doesn't model
+        assert index.candidates(TelemetryQuery.parse("Ünïcode", true)) == null;
+        assert index.candidates(TelemetryQuery.parse("order type:Message", false)).size() == 1;
+    }
+
+    @Test
+    public void removedItemsAreNotCandidates() {
+        TrigramIndex index = new TrigramIndex();
+        List<TelemetryItem> items = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            TelemetryItem item = item("{\"Body\":\"order " + i + "\"}");
+            items.add(item);
+            index.add(item);
+        }
+        TelemetryQuery query = TelemetryQuery.parse("order", false);
+
+        Set<TelemetryItem> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(items.subList(0, 5_000));
+        index.removeAll(removed);
+        assert index.getSize() == 15_000;
+        assert index.candidates(query).equals(items.subList(5_000, 20_000));
+
+        // Removing more than half rebuilds the index
+        removed.addAll(items.subList(5_000, 15_000));
+        index.removeAll(removed);
+        assert index.getSize() == 5_000;
+        assert index.candidates(query).equals(items.subList(15_000, 20_000));
+
+        index.clear();
+        assert index.getSize() == 0;
+        assert index.candidates(query).isEmpty();
+    }
+
+    @Test
+    public void indexIsMuchSmallerThanIndexedItems() {
+        Random random = new Random(3);
+        TrigramIndex index = new TrigramIndex();
+        long itemBytes = 0;
+        long jsonBytes = 0;
+        for (int i = 0; i < 50_000; i++) {
+            TelemetryItem item = item(randomJson(random, i));
+            itemBytes += item.getEstimatedSize();
+            jsonBytes += item.getJson().getBytes(StandardCharsets.UTF_8).length;
+            index.add(item);
+        }
+
+        // Mostly one byte per distinct trigram per item, i.e. about the size of the JSON itself
+        assert index.getEstimatedSize() < jsonBytes * 1.25 : "Index " + index.getEstimatedSize() + " bytes, JSON " + jsonBytes;
+        assert index.getEstimatedSize() < itemBytes / 2 : "Index " + index.getEstimatedSize() + " bytes, items " + itemBytes;
+    }
+
+    private static String randomJson(Random random, int i) {
+        StringBuilder body = new StringBuilder();
+        for (int w = 0; w < 12; w++) {
+            body.append(WORDS[random.nextInt(WORDS.length)]).append(w % 3 == 0 ? "-" : " ");
+        }
+        return "{\"Id\":" + i + ",\"TraceId\":\"" + Long.toHexString(random.nextLong()) + "\",\"Body\":\"" + body + "\"}";
+    }
+
+    private static TelemetryItem item(String json) {
+        return new TelemetryItem(json, json, new Telemetry(null, null, null, null));
+    }
+}
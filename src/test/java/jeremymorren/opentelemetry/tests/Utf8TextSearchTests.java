@@ -0,0 +1,41 @@
+package jeremymorren.opentelemetry.tests;
+
+import jeremymorren.opentelemetry.util.Utf8TextSearch;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class Utf8TextSearchTests {
+    private static final byte[] TEXT = "{\"displayName\":\"GET /Orders\",\"tags\":{\"city\":\"Zürich\"}}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void caseSensitiveSearchMatchesExactBytes() {
+        assert new Utf8TextSearch("GET /Orders", false).matches(TEXT);
+        assert !new Utf8TextSearch("get /orders", false).matches(TEXT);
+        assert new Utf8TextSearch("Zürich", false).matches(TEXT);
+        assert !new Utf8TextSearch("ZÜRICH", false).matches(TEXT);
+    }
+
+    @Test
+    public void caseInsensitiveSearchFoldsAsciiWithoutDecoding() {
+        assert new Utf8TextSearch("get /orders", true).matches(TEXT);
+        assert new Utf8TextSearch("DISPLAYNAME", true).matches(TEXT);
+        assert !new Utf8TextSearch("post /orders", true).matches(TEXT);
+    }
+
+    @Test
+    public void caseInsensitiveSearchHandlesNonAsciiText() {
+        assert new Utf8TextSearch("ZÜRICH", true).matches(TEXT);
+        assert !new Utf8TextSearch("ZÜRICHx", true).matches(TEXT);
+    }
+
+    @Test
+    public void searchHandlesEdgesOfText() {
+        assert new Utf8TextSearch("", true).matches(TEXT);
+        assert new Utf8TextSearch("{\"display", false).matches(TEXT);
+        assert new Utf8TextSearch("\"}}", false).matches(TEXT);
+        assert !new Utf8TextSearch("\"}}}", false).matches(TEXT);
+        assert !new Utf8TextSearch("x", false).matches(new byte[0]);
+    }
+}